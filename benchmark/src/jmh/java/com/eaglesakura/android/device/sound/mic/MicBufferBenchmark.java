@@ -0,0 +1,66 @@
+package com.eaglesakura.android.device.sound.mic;
+
+import com.eaglesakura.android.device.sound.MicAudioBuffer;
+import com.eaglesakura.collection.DataCollection;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import android.media.AudioRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * マイク入力バッファの正規化とRMS計算
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MicBufferBenchmark {
+
+    /**
+     * 1バッファのバイト数
+     */
+    @Param({"4096", "32768"})
+    int bufferBytes;
+
+    AudioRecord mAudioRecord;
+
+    MicBuffer mBuffer;
+
+    AudioContext mAudioContext;
+
+    @Setup
+    public void setup() {
+        MicAudioBuffer parent = new MicAudioBuffer();
+        mAudioRecord = new AudioRecord();
+        mBuffer = new MicBuffer(parent, bufferBytes);
+
+        List<MicBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < 16; ++i) {
+            MicBuffer buffer = new MicBuffer(parent, bufferBytes);
+            buffer.read(mAudioRecord);
+            buffers.add(buffer);
+        }
+        mAudioContext = new AudioContext(new DataCollection<>(buffers));
+    }
+
+    @Benchmark
+    public double read() {
+        mBuffer.read(mAudioRecord);
+        return mBuffer.getRMS();
+    }
+
+    @Benchmark
+    public double averageRMS() {
+        return mAudioContext.getAverageRMS();
+    }
+}
@@ -0,0 +1,162 @@
+package com.eaglesakura.android.graphics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ColorRGBAの色変換
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ColorRGBABenchmark {
+
+    /**
+     * 処理するピクセル数
+     */
+    @Param({"4096", "262144"})
+    int pixels;
+
+    int[] mSource;
+
+    int[] mDestination;
+
+    short[] mShortDestination;
+
+    IntBuffer mDirectBuffer;
+
+    float[] mHSV = new float[3];
+
+    float[] mHSVPixels;
+
+    ColorHistogram mHistogram = new ColorHistogram(ColorHistogram.ColorSpace.HSV, 8);
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        mSource = new int[pixels];
+        mDestination = new int[pixels];
+        mShortDestination = new short[pixels];
+        mHSVPixels = new float[pixels * 3];
+        mDirectBuffer = ByteBuffer.allocateDirect(pixels * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+        for (int i = 0; i < pixels; ++i) {
+            mSource[i] = random.nextInt();
+        }
+        mDirectBuffer.put(mSource);
+        mDirectBuffer.position(0);
+    }
+
+    @Benchmark
+    public int[] argb2rgba() {
+        final int[] src = mSource;
+        final int[] dst = mDestination;
+        for (int i = 0; i < src.length; ++i) {
+            dst[i] = ColorRGBA.argb2rgba(src[i]);
+        }
+        return dst;
+    }
+
+    @Benchmark
+    public int[] argb2rgbaBulk() {
+        ColorRGBA.convertPixels(ColorRGBA.PixelConversion.ArgbToRgba, mSource, 0, mDestination, 0, pixels);
+        return mDestination;
+    }
+
+    @Benchmark
+    public int[] argb2rgbaBulkParallel() {
+        ColorRGBA.convertPixels(ColorRGBA.PixelConversion.ArgbToRgba, mSource, 0, mDestination, 0, pixels, true);
+        return mDestination;
+    }
+
+    @Benchmark
+    public int[] premultiplyBulk() {
+        ColorRGBA.convertPixels(ColorRGBA.PixelConversion.PremultiplyRgba, mSource, 0, mDestination, 0, pixels);
+        return mDestination;
+    }
+
+    @Benchmark
+    public short[] rgba2rgb565Bulk() {
+        ColorRGBA.rgba2rgb565(mSource, 0, mShortDestination, 0, pixels);
+        return mShortDestination;
+    }
+
+    @Benchmark
+    public IntBuffer argb2rgbaDirectBuffer() {
+        ColorRGBA.convertPixels(ColorRGBA.PixelConversion.ArgbToRgba, mDirectBuffer, 0, mDirectBuffer, 0, pixels);
+        return mDirectBuffer;
+    }
+
+    @Benchmark
+    public int[] blendColor() {
+        final int[] src = mSource;
+        final int[] dst = mDestination;
+        for (int i = 0; i < src.length; ++i) {
+            dst[i] = ColorRGBA.blendColor(src[i], dst[i], 0.25f);
+        }
+        return dst;
+    }
+
+    @Benchmark
+    public int[] blendColorsBulk() {
+        ColorRGBA.blendColors(mSource, 0, mDestination, 0, mDestination, 0, pixels, 0.25f);
+        return mDestination;
+    }
+
+    @Benchmark
+    public int[] blendColorsBulkParallel() {
+        ColorRGBA.blendColors(mSource, 0, mDestination, 0, mDestination, 0, pixels, 0.25f, true);
+        return mDestination;
+    }
+
+    @Benchmark
+    public int[] alphaOver() {
+        ColorRGBA.alphaOver(mSource, 0, mDestination, 0, pixels);
+        return mDestination;
+    }
+
+    @Benchmark
+    public void toHSV(Blackhole blackhole) {
+        final int[] src = mSource;
+        for (int i = 0; i < src.length; ++i) {
+            final int rgba = src[i];
+            blackhole.consume(ColorRGBA.toHSV(ColorRGBA.toColorR(rgba), ColorRGBA.toColorG(rgba), ColorRGBA.toColorB(rgba)));
+        }
+    }
+
+    @Benchmark
+    public float[] toHSVOut() {
+        final int[] src = mSource;
+        final float[] hsv = mHSV;
+        for (int i = 0; i < src.length; ++i) {
+            final int rgba = src[i];
+            ColorRGBA.toHSV(ColorRGBA.toColorR(rgba), ColorRGBA.toColorG(rgba), ColorRGBA.toColorB(rgba), hsv);
+        }
+        return hsv;
+    }
+
+    @Benchmark
+    public float[] toHSVBulk() {
+        ColorRGBA.toHSV(mSource, 0, mHSVPixels, 0, pixels);
+        return mHSVPixels;
+    }
+
+    @Benchmark
+    public ColorHistogram histogramParallel() {
+        mHistogram.clear();
+        mHistogram.build(mSource, 0, 512, pixels / 512, 512, 2, true);
+        return mHistogram;
+    }
+}
@@ -0,0 +1,86 @@
+package com.eaglesakura.android.graphics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * フォントサイズ計算と行分割
+ *
+ * Paintは固定幅の計測を行うため、文字列処理と探索回数のコストのみを計測する。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FontCalculatorBenchmark {
+
+    /**
+     * 文字数
+     */
+    @Param({"64", "1024"})
+    int length;
+
+    FontCalculator mCalculator;
+
+    String mText;
+
+    @Setup
+    public void setup() {
+        mCalculator = new FontCalculator(Typeface.DEFAULT);
+        mCalculator.setFontHeight(32);
+
+        final String source = "The quick brown fox jumps over the lazy dog. 吾輩は猫である。名前はまだ無い。\n";
+        StringBuilder text = new StringBuilder();
+        while (text.length() < length) {
+            text.append(source);
+        }
+        text.setLength(length);
+        mText = text.toString();
+    }
+
+    @Benchmark
+    public FontCalculator setFontHeight() {
+        mCalculator.setFontHeight(32);
+        return mCalculator;
+    }
+
+    /**
+     * キャッシュを経由しない行分割
+     */
+    @Benchmark
+    public TextLayout createTextLayout() {
+        Paint paint = new Paint();
+        paint.setTypeface(mCalculator.getFont());
+        paint.setTextSize(mCalculator.fontSize);
+        return TextLayout.create(paint, mText, "...", 480, 8);
+    }
+
+    /**
+     * TextLayoutCacheから取得する行分割
+     */
+    @Benchmark
+    public List<String> calcTextLinesFromRect() {
+        return mCalculator.calcTextLinesFromRect(mText, "...", 480, 8);
+    }
+
+    @Benchmark
+    public String calcTextInRect() {
+        return mCalculator.calcTextInRect(mText, "...", false, 480);
+    }
+
+    @Benchmark
+    public String calcTextInRectNewLine() {
+        return mCalculator.calcTextInRectNewLine(mText, 480);
+    }
+}
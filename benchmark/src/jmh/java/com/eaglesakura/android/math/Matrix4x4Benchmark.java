@@ -0,0 +1,130 @@
+package com.eaglesakura.android.math;
+
+import com.eaglesakura.math.Vector3;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matrix4x4の行列演算
+ *
+ * android.opengl.Matrixを使用していた時点の計測値は、Pure Javaのshimに対するものでありJNIのコストを含まない。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class Matrix4x4Benchmark {
+
+    Matrix4x4 mLeft;
+
+    Matrix4x4 mRight;
+
+    Matrix4x4 mResult;
+
+    Vector3 mScale;
+
+    Vector3 mRotate;
+
+    Vector3 mPosition;
+
+    Vector3 mVector;
+
+    Vector3 mVectorResult;
+
+    /**
+     * まとめて変換する頂点数
+     */
+    @Param({"1024", "65536"})
+    int vertices;
+
+    /**
+     * xyz + uv
+     */
+    static final int STRIDE = 5;
+
+    float[] mVertices;
+
+    float[] mVerticesResult;
+
+    @Setup
+    public void setup() {
+        mScale = new Vector3(1.5f, 2.0f, 0.5f);
+        mRotate = new Vector3(30, 45, 60);
+        mPosition = new Vector3(10, -20, 30);
+        mVector = new Vector3(1, 2, 3);
+        mVectorResult = new Vector3();
+
+        mLeft = Matrix4x4.create(mScale, mRotate, mPosition, new Matrix4x4());
+        mRight = new Matrix4x4();
+        mRight.lookAt(new Vector3(0, 0, -10), new Vector3(), new Vector3(0, 1, 0));
+        mResult = new Matrix4x4();
+
+        Random random = new Random(0);
+        mVertices = new float[vertices * STRIDE];
+        for (int i = 0; i < mVertices.length; ++i) {
+            mVertices[i] = random.nextFloat() * 100 - 50;
+        }
+        mVerticesResult = new float[vertices * 3];
+    }
+
+    @Benchmark
+    public Matrix4x4 multiply() {
+        return mLeft.multiply(mRight, mResult);
+    }
+
+    @Benchmark
+    public Matrix4x4 invert() {
+        return mLeft.invert(mResult);
+    }
+
+    @Benchmark
+    public Matrix4x4 create() {
+        return Matrix4x4.create(mScale, mRotate, mPosition, mResult);
+    }
+
+    @Benchmark
+    public Vector3 transVector() {
+        return mLeft.transVector(mVector, mVectorResult);
+    }
+
+    @Benchmark
+    public float[] transVectorEach() {
+        final Vector3 v = mVector;
+        final Vector3 result = mVectorResult;
+        for (int i = 0; i < vertices; ++i) {
+            v.set(mVertices[i * STRIDE], mVertices[i * STRIDE + 1], mVertices[i * STRIDE + 2]);
+            mLeft.transVector(v, result);
+            mVerticesResult[i * 3] = result.x;
+            mVerticesResult[i * 3 + 1] = result.y;
+            mVerticesResult[i * 3 + 2] = result.z;
+        }
+        return mVerticesResult;
+    }
+
+    @Benchmark
+    public float[] transPositions() {
+        mLeft.transPositions(mVertices, 0, STRIDE, mVerticesResult, 0, 3, vertices);
+        return mVerticesResult;
+    }
+
+    @Benchmark
+    public float[] transPositionsParallel() {
+        mLeft.transPositions(mVertices, 0, STRIDE, mVerticesResult, 0, 3, vertices, true);
+        return mVerticesResult;
+    }
+
+    @Benchmark
+    public float[] transNormals() {
+        mLeft.transNormals(mVertices, 0, STRIDE, mVerticesResult, 0, 3, vertices, true);
+        return mVerticesResult;
+    }
+}
@@ -0,0 +1,42 @@
+package com.eaglesakura.android.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DirectByteBufferの確保
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DirectBufferPoolBenchmark {
+
+    /**
+     * 確保するbyte数
+     */
+    @Param({"4096", "1048576"})
+    int bytes;
+
+    DirectBufferPool mPool = new DirectBufferPool(1024 * 1024 * 32);
+
+    @Benchmark
+    public ByteBuffer allocateDirect() {
+        return ByteBuffer.allocateDirect(bytes);
+    }
+
+    @Benchmark
+    public int obtainAndRelease() {
+        ByteBuffer buffer = mPool.obtain(bytes);
+        int capacity = buffer.capacity();
+        mPool.release(buffer);
+        return capacity;
+    }
+}
@@ -0,0 +1,26 @@
+package com.eaglesakura.android.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SQLite用キー文字列の生成
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SQLiteUtilBenchmark {
+
+    String mValue = "ＡＢＣ　ｄｅｆ_ghi 100% ﾃｽﾄ データ";
+
+    @Benchmark
+    public String makeSimpleKey() {
+        return SQLiteUtil.makeSimpleKey(mValue);
+    }
+}
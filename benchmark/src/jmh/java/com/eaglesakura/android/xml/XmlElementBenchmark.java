@@ -0,0 +1,61 @@
+package com.eaglesakura.android.xml;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * XMLのパースと子要素の検索
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class XmlElementBenchmark {
+
+    /**
+     * 子要素数
+     */
+    @Param({"16", "1024"})
+    int children;
+
+    String mXml;
+
+    XmlElement mRoot;
+
+    @Setup
+    public void setup() throws Exception {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<root>\n");
+        for (int i = 0; i < children; ++i) {
+            xml.append("  <item id=\"").append(i).append("\" type=\"").append(i % 4).append("\">");
+            xml.append("<name>item-").append(i).append("</name>");
+            xml.append("</item>\n");
+        }
+        xml.append("</root>\n");
+        mXml = xml.toString();
+        mRoot = XmlElement.parse(mXml);
+    }
+
+    @Benchmark
+    public XmlElement parse() throws Exception {
+        return XmlElement.parse(mXml);
+    }
+
+    @Benchmark
+    public XmlElement getChildByAttribute() {
+        return mRoot.getChild("item", "id", String.valueOf(children - 1));
+    }
+
+    @Benchmark
+    public List<XmlElement> listChilds() {
+        return mRoot.listChilds("item");
+    }
+}
@@ -0,0 +1,7 @@
+package android.content;
+
+/**
+ * ベンチマーク用のContext
+ */
+public abstract class Context {
+}
@@ -0,0 +1,10 @@
+package android.database;
+
+/**
+ * ベンチマーク用のCursor
+ */
+public interface Cursor {
+    boolean moveToNext();
+
+    String getString(int columnIndex);
+}
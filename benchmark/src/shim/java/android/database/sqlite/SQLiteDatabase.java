@@ -0,0 +1,18 @@
+package android.database.sqlite;
+
+import android.database.Cursor;
+
+/**
+ * ベンチマーク用のSQLiteDatabase
+ * データベースは利用できない
+ */
+public class SQLiteDatabase {
+
+    public static SQLiteDatabase openOrCreateDatabase(String path, Object factory) {
+        throw new UnsupportedOperationException("SQLite is not available");
+    }
+
+    public Cursor rawQuery(String sql, String[] selectionArgs) {
+        throw new UnsupportedOperationException("SQLite is not available");
+    }
+}
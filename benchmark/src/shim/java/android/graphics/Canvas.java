@@ -0,0 +1,10 @@
+package android.graphics;
+
+/**
+ * ベンチマーク用のCanvas
+ * 描画は行わない
+ */
+public class Canvas {
+    public void drawText(String text, float x, float y, Paint paint) {
+    }
+}
@@ -0,0 +1,118 @@
+package android.graphics;
+
+/**
+ * ベンチマーク用のPaint
+ *
+ * 文字幅はASCIIでtextSizeの0.6倍、それ以外はtextSizeと等倍の固定幅で計算する。
+ * 実機のフォントレンダリングのコストは含まれない。
+ */
+public class Paint {
+
+    public static class FontMetrics {
+        public float top;
+
+        public float ascent;
+
+        public float descent;
+
+        public float bottom;
+
+        public float leading;
+    }
+
+    private float mTextSize = 12;
+
+    private Typeface mTypeface = Typeface.DEFAULT;
+
+    private boolean mAntiAlias;
+
+    public Paint() {
+    }
+
+    public void setTextSize(float textSize) {
+        mTextSize = textSize;
+    }
+
+    public float getTextSize() {
+        return mTextSize;
+    }
+
+    public Typeface setTypeface(Typeface typeface) {
+        mTypeface = typeface;
+        return typeface;
+    }
+
+    public Typeface getTypeface() {
+        return mTypeface;
+    }
+
+    public void setAntiAlias(boolean aa) {
+        mAntiAlias = aa;
+    }
+
+    public boolean isAntiAlias() {
+        return mAntiAlias;
+    }
+
+    private float charWidth(char c) {
+        return c < 0x80 ? mTextSize * 0.6f : mTextSize;
+    }
+
+    public float measureText(String text) {
+        return measureText(text, 0, text.length());
+    }
+
+    public float measureText(String text, int start, int end) {
+        float result = 0;
+        for (int i = start; i < end; ++i) {
+            result += charWidth(text.charAt(i));
+        }
+        return result;
+    }
+
+    public int getTextWidths(String text, int start, int end, float[] widths) {
+        for (int i = start; i < end; ++i) {
+            widths[i - start] = charWidth(text.charAt(i));
+        }
+        return end - start;
+    }
+
+    public int breakText(String text, boolean measureForwards, float maxWidth, float[] measuredWidth) {
+        final int length = text.length();
+        float width = 0;
+        int count = 0;
+        while (count < length) {
+            char c = text.charAt(measureForwards ? count : (length - 1 - count));
+            float next = width + charWidth(c);
+            if (next > maxWidth) {
+                break;
+            }
+            width = next;
+            ++count;
+        }
+        if (measuredWidth != null && measuredWidth.length > 0) {
+            measuredWidth[0] = width;
+        }
+        return count;
+    }
+
+    public void getTextBounds(String text, int start, int end, Rect bounds) {
+        FontMetrics metrics = getFontMetrics();
+        bounds.set(0, (int) metrics.ascent, (int) Math.ceil(measureText(text, start, end)), (int) Math.ceil(metrics.descent));
+    }
+
+    public FontMetrics getFontMetrics() {
+        FontMetrics result = new FontMetrics();
+        getFontMetrics(result);
+        return result;
+    }
+
+    public float getFontMetrics(FontMetrics metrics) {
+        metrics.top = -0.9f * mTextSize;
+        metrics.ascent = -0.8f * mTextSize;
+        metrics.descent = 0.2f * mTextSize;
+        metrics.bottom = 0.25f * mTextSize;
+        metrics.leading = 0;
+        return metrics.descent - metrics.ascent;
+    }
+}
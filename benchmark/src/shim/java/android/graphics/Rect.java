@@ -0,0 +1,36 @@
+package android.graphics;
+
+/**
+ * ベンチマーク用のRect
+ */
+public class Rect {
+    public int left;
+
+    public int top;
+
+    public int right;
+
+    public int bottom;
+
+    public Rect() {
+    }
+
+    public Rect(int left, int top, int right, int bottom) {
+        set(left, top, right, bottom);
+    }
+
+    public void set(int left, int top, int right, int bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    public int width() {
+        return right - left;
+    }
+
+    public int height() {
+        return bottom - top;
+    }
+}
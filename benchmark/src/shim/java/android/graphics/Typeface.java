@@ -0,0 +1,10 @@
+package android.graphics;
+
+/**
+ * ベンチマーク用のTypeface
+ */
+public class Typeface {
+    public static final Typeface DEFAULT = new Typeface();
+
+    public static final Typeface MONOSPACE = new Typeface();
+}
@@ -0,0 +1,18 @@
+package android.media;
+
+/**
+ * ベンチマーク用のAudioRecord
+ * 440Hz相当のサイン波を返す
+ */
+public class AudioRecord {
+
+    private long mSample;
+
+    public int read(short[] audioData, int offsetInShorts, int sizeInShorts) {
+        for (int i = 0; i < sizeInShorts; ++i) {
+            double t = (double) (mSample++) / 44100.0;
+            audioData[offsetInShorts + i] = (short) (Math.sin(2.0 * Math.PI * 440.0 * t) * Short.MAX_VALUE * 0.5);
+        }
+        return sizeInShorts;
+    }
+}
@@ -0,0 +1,8 @@
+package com.eaglesakura.android.device.sound;
+
+/**
+ * ベンチマーク用のMicAudioBuffer
+ * MicBufferの親として参照されるのみで、機能は持たない
+ */
+public class MicAudioBuffer {
+}
@@ -1,11 +1,12 @@
 package com.eaglesakura.android.device.egl.res;
 
+import com.eaglesakura.android.util.DirectBufferPool;
+
 import android.annotation.TargetApi;
 import android.graphics.SurfaceTexture;
 import android.os.Build;
 
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 
 /**
@@ -23,10 +24,28 @@ public class PreviewSurfaceTexture extends SurfaceTexture implements SurfaceText
      */
     FloatBuffer textureMatrix;
 
+    /**
+     * textureMatrixの実体
+     */
+    ByteBuffer textureMatrixBuffer;
+
     public PreviewSurfaceTexture(int texName) {
         super(texName);
         setOnFrameAvailableListener(this);
-        textureMatrix = ByteBuffer.allocateDirect(4 * 16).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        textureMatrixBuffer = DirectBufferPool.getDefault().obtain(4 * 16);
+        textureMatrix = textureMatrixBuffer.asFloatBuffer();
+    }
+
+    /**
+     * テクスチャ行列のバッファをプールへ返却する
+     */
+    @Override
+    public void release() {
+        super.release();
+        if (textureMatrixBuffer != null) {
+            DirectBufferPool.getDefault().release(textureMatrixBuffer);
+            textureMatrixBuffer = null;
+        }
     }
 
     /**
@@ -29,6 +29,11 @@ public class MicAudioBuffer {
 
     List<MicBuffer> mBuffers = new ArrayList<>();
 
+    /**
+     * 録音中のバッファ操作とrelease()を排他する
+     */
+    final Object mLock = new Object();
+
     /**
      * 書込み先ポインタ
      */
@@ -65,6 +70,20 @@ public class MicAudioBuffer {
         return mSamplingRate;
     }
 
+    /**
+     * 全てのバッファを解放する
+     * 録音中に呼び出した場合、処理中のバッファのコールバックが完了してから解放し、録音を終了する。
+     * 以後、このオブジェクトは使用できない。
+     */
+    public void release() {
+        synchronized (mLock) {
+            for (MicBuffer buffer : mBuffers) {
+                buffer.release();
+            }
+            mBuffers.clear();
+        }
+    }
+
     /**
      * 次の書込み先ポインタを得る
      */
@@ -104,9 +123,15 @@ public class MicAudioBuffer {
             audioRecord = new AudioRecord(mAudioSource, mSamplingRate, mInput, mAudioEncoding, mBufferBytes);
             audioRecord.startRecording();
             while (!CallbackUtils.isCanceled(cancelCallback)) {
-                MicBuffer buffer = nextWriteBuffer();
-                buffer.read(audioRecord);
-                callback.onRecord(this, audioRecord, new AudioContext(new DataCollection<>(listBuffers())));
+                synchronized (mLock) {
+                    if (mBuffers.isEmpty()) {
+                        // release()済み
+                        break;
+                    }
+                    MicBuffer buffer = nextWriteBuffer();
+                    buffer.read(audioRecord);
+                    callback.onRecord(this, audioRecord, new AudioContext(new DataCollection<>(listBuffers())));
+                }
             }
         } finally {
             Util.safeIfPresent(audioRecord, it -> it.stop());
@@ -1,9 +1,11 @@
 package com.eaglesakura.android.device.sound.mic;
 
 import com.eaglesakura.android.device.sound.MicAudioBuffer;
+import com.eaglesakura.android.util.DirectBufferPool;
 
 import android.media.AudioRecord;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -32,14 +34,14 @@ public class MicBuffer {
 
     /**
      * 読み込み用バッファ
+     * 解放後はnullとなる
      */
-    @NonNull
     ByteBuffer mNativeByteBuffer;
 
     /**
      * 書込み用バッファ
+     * 解放後はnullとなる
      */
-    @NonNull
     ShortBuffer mNativeShortBuffer;
 
     /**
@@ -52,7 +54,7 @@ public class MicBuffer {
         mParent = parent;
         mCacheBuffer = new short[bufferBytes / 2];
         mNormalizedBuffer = new double[mCacheBuffer.length];
-        mNativeByteBuffer = ByteBuffer.allocateDirect(bufferBytes).order(ByteOrder.LITTLE_ENDIAN);
+        mNativeByteBuffer = DirectBufferPool.getDefault().obtain(bufferBytes).order(ByteOrder.LITTLE_ENDIAN);
         mNativeShortBuffer = mNativeByteBuffer.asShortBuffer();
     }
 
@@ -92,8 +94,9 @@ public class MicBuffer {
     /**
      * nio配下のバッファを取得する。
      * このバッファはLittle Endianで管理される
+     * 解放後はnullを返す
      */
-    @NonNull
+    @Nullable
     public ByteBuffer getNativeBuffer() {
         return mNativeByteBuffer;
     }
@@ -104,4 +107,16 @@ public class MicBuffer {
     public double getRMS() {
         return mRMS;
     }
+
+    /**
+     * nio配下のバッファをプールへ返却する
+     * 以後、このバッファは使用できない。
+     */
+    public void release() {
+        if (mNativeByteBuffer != null) {
+            DirectBufferPool.getDefault().release(mNativeByteBuffer);
+            mNativeByteBuffer = null;
+            mNativeShortBuffer = null;
+        }
+    }
 }
@@ -0,0 +1,208 @@
+package com.eaglesakura.android.graphics;
+
+import com.eaglesakura.android.thread.ParallelRange;
+
+/**
+ * RGBA画像の色を量子化して集計する
+ *
+ * 各成分をbinsPerChannel段階に量子化し、binsPerChannel^3個のビンへ集計する。
+ * サムネイル等の代表色を求める場合は、sampleStrideを指定してピクセルを間引いて集計できる。
+ * A成分が0のピクセルは集計しない。
+ * <pre>
+ * ColorHistogram histogram = new ColorHistogram(ColorHistogram.ColorSpace.HSV, 8);
+ * histogram.build(pixels, 0, width, height, width, 4, true);
+ * int color = histogram.getBinColor(histogram.getPeakBin());
+ * </pre>
+ * 集計結果の取得はスレッドセーフではない。
+ */
+public class ColorHistogram {
+
+    /**
+     * 集計する色空間
+     */
+    public enum ColorSpace {
+        /**
+         * R,G,Bの順にビンを並べる
+         */
+        RGB,
+
+        /**
+         * H,S,Vの順にビンを並べる
+         */
+        HSV,
+    }
+
+    /**
+     * 並列処理を行う場合の、1スレッドあたりの最小行数
+     */
+    private static final int PARALLEL_MIN_ROWS = 16;
+
+    private final ColorSpace mColorSpace;
+
+    private final int mBinsPerChannel;
+
+    private final int[] mBins;
+
+    /**
+     * 集計したピクセル数
+     */
+    private int mSampleCount;
+
+    /**
+     * @param colorSpace     集計する色空間
+     * @param binsPerChannel 1成分あたりの段階数(1〜256)
+     */
+    public ColorHistogram(ColorSpace colorSpace, int binsPerChannel) {
+        if (binsPerChannel < 1 || binsPerChannel > 256) {
+            throw new IllegalArgumentException("binsPerChannel = " + binsPerChannel);
+        }
+        mColorSpace = colorSpace;
+        mBinsPerChannel = binsPerChannel;
+        mBins = new int[binsPerChannel * binsPerChannel * binsPerChannel];
+    }
+
+    public ColorSpace getColorSpace() {
+        return mColorSpace;
+    }
+
+    public int getBinsPerChannel() {
+        return mBinsPerChannel;
+    }
+
+    /**
+     * ビンの総数を取得する
+     */
+    public int getBinCount() {
+        return mBins.length;
+    }
+
+    /**
+     * 指定したビンのピクセル数を取得する
+     */
+    public int getCount(int bin) {
+        return mBins[bin];
+    }
+
+    /**
+     * 集計したピクセル数を取得する
+     */
+    public int getSampleCount() {
+        return mSampleCount;
+    }
+
+    /**
+     * 集計結果を破棄する
+     */
+    public void clear() {
+        for (int i = 0; i < mBins.length; ++i) {
+            mBins[i] = 0;
+        }
+        mSampleCount = 0;
+    }
+
+    /**
+     * 画像を集計し、現在の集計結果へ加算する
+     *
+     * @param pixels       RGBA色
+     * @param offset       画像左上の位置
+     * @param width        画像幅
+     * @param height       画像高
+     * @param rowStride    1行あたりのピクセル数
+     * @param sampleStride 縦横それぞれ、何ピクセルごとに集計するか(1以上)
+     * @param parallel     画像が十分に大きい場合、画像を帯状に分割して複数スレッドで処理する
+     */
+    public void build(final int[] pixels, final int offset, final int width, int height, final int rowStride, final int sampleStride, boolean parallel) {
+        if (sampleStride < 1) {
+            throw new IllegalArgumentException("sampleStride = " + sampleStride);
+        }
+
+        // 集計対象の行数単位で分割する
+        final int rows = (height + sampleStride - 1) / sampleStride;
+        if (parallel) {
+            ParallelRange.run(rows, PARALLEL_MIN_ROWS, (begin, end) -> {
+                int[] bins = new int[mBins.length];
+                int samples = build(pixels, offset, width, rowStride, sampleStride, begin, end, bins);
+                merge(bins, samples);
+            });
+        } else {
+            mSampleCount += build(pixels, offset, width, rowStride, sampleStride, 0, rows, mBins);
+        }
+    }
+
+    private synchronized void merge(int[] bins, int samples) {
+        for (int i = 0; i < bins.length; ++i) {
+            mBins[i] += bins[i];
+        }
+        mSampleCount += samples;
+    }
+
+    private int build(int[] pixels, int offset, int width, int rowStride, int sampleStride, int rowBegin, int rowEnd, int[] bins) {
+        final float[] hsv = new float[3];
+        int samples = 0;
+        for (int row = rowBegin; row < rowEnd; ++row) {
+            final int head = offset + row * sampleStride * rowStride;
+            for (int x = 0; x < width; x += sampleStride) {
+                final int rgba = pixels[head + x];
+                if ((rgba & 0xff) == 0) {
+                    continue;
+                }
+                ++bins[getBinIndex(rgba, hsv)];
+                ++samples;
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * RGBA色が集計されるビンを取得する
+     */
+    public int getBinIndex(int rgba) {
+        return getBinIndex(rgba, new float[3]);
+    }
+
+    private int getBinIndex(int rgba, float[] hsv) {
+        final int bins = mBinsPerChannel;
+        int c0, c1, c2;
+        if (mColorSpace == ColorSpace.HSV) {
+            ColorRGBA.toHSV(rgba >>> 24, (rgba >> 16) & 0xff, (rgba >> 8) & 0xff, hsv);
+            c0 = Math.min(bins - 1, (int) (hsv[0] * bins));
+            c1 = Math.min(bins - 1, (int) (hsv[1] * bins));
+            c2 = Math.min(bins - 1, (int) (hsv[2] * bins));
+        } else {
+            c0 = ((rgba >>> 24) * bins) >> 8;
+            c1 = (((rgba >> 16) & 0xff) * bins) >> 8;
+            c2 = (((rgba >> 8) & 0xff) * bins) >> 8;
+        }
+        return (c0 * bins + c1) * bins + c2;
+    }
+
+    /**
+     * 最もピクセル数の多いビンを取得する
+     * 同数の場合はインデックスの小さいビンとなる。
+     */
+    public int getPeakBin() {
+        int result = 0;
+        for (int i = 1; i < mBins.length; ++i) {
+            if (mBins[i] > mBins[result]) {
+                result = i;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * ビンの中央に相当するRGBA色を取得する
+     * Aは255となる。
+     */
+    public int getBinColor(int bin) {
+        final int bins = mBinsPerChannel;
+        final float c0 = ((float) (bin / (bins * bins)) + 0.5f) / bins;
+        final float c1 = ((float) ((bin / bins) % bins) + 0.5f) / bins;
+        final float c2 = ((float) (bin % bins) + 0.5f) / bins;
+        if (mColorSpace == ColorSpace.HSV) {
+            return ColorRGBA.fromHSV(c0, c1, c2);
+        } else {
+            return ColorRGBA.toColorRGBA(c0, c1, c2, 1.0f);
+        }
+    }
+}
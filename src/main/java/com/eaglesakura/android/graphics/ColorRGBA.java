@@ -1,7 +1,12 @@
 package com.eaglesakura.android.graphics;
 
+import com.eaglesakura.android.thread.ParallelRange;
 import com.eaglesakura.util.MathUtil;
 
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
 /**
  * OpenGL向けRGBA色を扱う。
  * <br>
@@ -9,6 +14,74 @@ import com.eaglesakura.util.MathUtil;
  */
 public class ColorRGBA {
 
+    /**
+     * 32bitピクセルの一括変換方法
+     */
+    public enum PixelConversion {
+        /**
+         * ARGB(Canvas color)からRGBA(GL color)へ変換する
+         */
+        ArgbToRgba,
+
+        /**
+         * RGBA(GL color)からARGB(Canvas color)へ変換する
+         */
+        RgbaToArgb,
+
+        /**
+         * ARGBからBGRAへ変換する
+         * リトルエンディアンで格納されたARGBは、メモリ上ではBGRAの順に並ぶ。
+         */
+        ArgbToBgra,
+
+        /**
+         * BGRAからARGBへ変換する
+         */
+        BgraToArgb,
+
+        /**
+         * RGBAの各色成分にAを乗算する
+         */
+        PremultiplyRgba,
+
+        /**
+         * Aを乗算済みのRGBAを、乗算前の値へ戻す
+         */
+        UnpremultiplyRgba,
+
+        /**
+         * ARGBの各色成分にAを乗算する
+         */
+        PremultiplyArgb,
+
+        /**
+         * Aを乗算済みのARGBを、乗算前の値へ戻す
+         */
+        UnpremultiplyArgb,
+    }
+
+    /**
+     * 並列処理を行う場合の、1スレッドあたりの最小ピクセル数
+     */
+    private static final int PARALLEL_MIN_PIXELS = 1024 * 64;
+
+    /**
+     * Bufferの変換時に、一度に配列へ読み込むピクセル数
+     */
+    private static final int BUFFER_CHUNK_PIXELS = 1024 * 2;
+
+    /**
+     * 乗算済みアルファを戻すための係数
+     * (255 / a)を23bit固定小数で保持し、四捨五入が正しく行われるよう切り上げておく
+     */
+    private static final int[] UNPREMULTIPLY_SCALE = new int[256];
+
+    static {
+        for (int a = 1; a < 256; ++a) {
+            UNPREMULTIPLY_SCALE[a] = ((255 << 23) + a - 1) / a;
+        }
+    }
+
     /**
      * 白
      */
@@ -252,6 +325,26 @@ public class ColorRGBA {
      * @return HSV要素
      */
     public static float[] toHSV(int _r8, int _g8, int _b8) {
+        return toHSV(_r8, _g8, _b8, new float[3]);
+    }
+
+    /**
+     * RGB色からHSVへ変換する
+     * <br>
+     * 各要素は0.0〜1.0の範囲となる。
+     *
+     * @param _r8    赤要素8bit
+     * @param _g8    緑要素8bit
+     * @param _b8    青要素8bit
+     * @param result HSV要素の格納先、3以上の長さが必要
+     * @return result
+     */
+    public static float[] toHSV(int _r8, int _g8, int _b8, float[] result) {
+        toHSV(_r8, _g8, _b8, result, 0);
+        return result;
+    }
+
+    private static void toHSV(int _r8, int _g8, int _b8, float[] result, int offset) {
         float r = (float) _r8 / 255.0f;
         float g = (float) _g8 / 255.0f;
         float b = (float) _b8 / 255.0f;
@@ -278,48 +371,617 @@ public class ColorRGBA {
         if (max != 0.0f) {
             s /= max;
         }
-        float v = max;
-        return new float[]{h, s, v};
+        result[offset] = h;
+        result[offset + 1] = s;
+        result[offset + 2] = max;
+    }
+
+    /**
+     * HSVからRGB色へ変換する
+     * <br>
+     * Aは255となる。
+     *
+     * @param h 色相(0.0〜1.0)、範囲外の場合は周回させる
+     * @param s 彩度(0.0〜1.0)
+     * @param v 明度(0.0〜1.0)
+     * @return RGBA色
+     */
+    public static int fromHSV(float h, float s, float v) {
+        return fromHSV(h, s, v, 0xff);
+    }
+
+    /**
+     * HSVからRGB色へ変換する
+     *
+     * @param h  色相(0.0〜1.0)、範囲外の場合は周回させる
+     * @param s  彩度(0.0〜1.0)
+     * @param v  明度(0.0〜1.0)
+     * @param a8 透過要素8bit
+     * @return RGBA色
+     */
+    public static int fromHSV(float h, float s, float v, int a8) {
+        h = (h - (float) Math.floor(h)) * 6.0f;
+        final int sector = Math.min((int) h, 5);
+        final float f = h - sector;
+        final float p = v * (1.0f - s);
+        final float q = v * (1.0f - s * f);
+        final float t = v * (1.0f - s * (1.0f - f));
+
+        float r, g, b;
+        switch (sector) {
+            case 0:
+                r = v;
+                g = t;
+                b = p;
+                break;
+            case 1:
+                r = q;
+                g = v;
+                b = p;
+                break;
+            case 2:
+                r = p;
+                g = v;
+                b = t;
+                break;
+            case 3:
+                r = p;
+                g = q;
+                b = v;
+                break;
+            case 4:
+                r = t;
+                g = p;
+                b = v;
+                break;
+            default:
+                r = v;
+                g = p;
+                b = q;
+                break;
+        }
+        return toColorRGBA(toColor8(r), toColor8(g), toColor8(b), a8);
+    }
+
+    /**
+     * 0.0〜1.0の値を四捨五入して8bitへ変換する
+     */
+    private static int toColor8(float value) {
+        return Math.max(0, Math.min(255, (int) (value * 255.0f + 0.5f)));
+    }
+
+    /**
+     * RGBA色をまとめてHSVへ変換する
+     * <br>
+     * 結果は1ピクセルごとにH,S,Vの順で格納される。
+     *
+     * @param src       RGBA色
+     * @param dst       HSV要素の格納先
+     * @param dstOffset 書き込み開始位置（float）
+     * @param count     ピクセル数
+     */
+    public static void toHSV(int[] src, int srcOffset, float[] dst, int dstOffset, int count) {
+        toHSV(src, srcOffset, dst, dstOffset, count, false);
+    }
+
+    /**
+     * RGBA色をまとめてHSVへ変換する
+     *
+     * @param parallel ピクセル数が十分に多い場合、画像を帯状に分割して複数スレッドで処理する
+     * @see #toHSV(int[], int, float[], int, int)
+     */
+    public static void toHSV(final int[] src, final int srcOffset, final float[] dst, final int dstOffset, int count, boolean parallel) {
+        if (parallel) {
+            ParallelRange.run(count, PARALLEL_MIN_PIXELS, (begin, end) -> toHSV(src, srcOffset + begin, dst, dstOffset + begin * 3, end - begin, false));
+            return;
+        }
+
+        for (int i = 0; i < count; ++i) {
+            final int rgba = src[srcOffset + i];
+            toHSV((rgba >>> 24), (rgba >> 16) & 0xff, (rgba >> 8) & 0xff, dst, dstOffset + i * 3);
+        }
+    }
+
+    /**
+     * HSVをまとめてRGBA色へ変換する
+     * <br>
+     * Aは書き込み先の値を維持するため、toHSV()で変換した配列へ書き戻すことで色調のみを変更できる。
+     *
+     * @param src       H,S,Vの順に格納された値
+     * @param srcOffset 読み込み開始位置（float）
+     * @param dst       RGBA色の格納先
+     * @param count     ピクセル数
+     */
+    public static void fromHSV(float[] src, int srcOffset, int[] dst, int dstOffset, int count) {
+        fromHSV(src, srcOffset, dst, dstOffset, count, false);
+    }
+
+    /**
+     * HSVをまとめてRGBA色へ変換する
+     *
+     * @param parallel ピクセル数が十分に多い場合、画像を帯状に分割して複数スレッドで処理する
+     * @see #fromHSV(float[], int, int[], int, int)
+     */
+    public static void fromHSV(final float[] src, final int srcOffset, final int[] dst, final int dstOffset, int count, boolean parallel) {
+        if (parallel) {
+            ParallelRange.run(count, PARALLEL_MIN_PIXELS, (begin, end) -> fromHSV(src, srcOffset + begin * 3, dst, dstOffset + begin, end - begin, false));
+            return;
+        }
+
+        for (int i = 0; i < count; ++i) {
+            final int s = srcOffset + i * 3;
+            final int d = dstOffset + i;
+            dst[d] = fromHSV(src[s], src[s + 1], src[s + 2], dst[d] & 0xff);
+        }
     }
 
     /**
      * 色をブレンドして返す。
+     * blendは8.8固定小数へ丸めて{@link #blendColorFixed(int, int, int)}で計算する。
+     *
+     * @param blend rgba0のブレンド値 1.0f = rgba0 0.0f = rgba1
      */
     public static int blendColor(int rgba0, int rgba1, float blend) {
-        int result = 0;
+        return blendColorFixed(rgba0, rgba1, toBlendWeight(blend));
+    }
+
+    /**
+     * 色をブレンドして返す。
+     * 2成分ずつまとめて8.8固定小数で計算する。
+     *
+     * @param weight rgba0のブレンド値 256 = rgba0 0 = rgba1
+     */
+    public static int blendColorFixed(int rgba0, int rgba1, int weight) {
+        weight = Math.max(0, Math.min(256, weight));
+        final int inv = 256 - weight;
+        // G,A成分とR,B成分に分け、8bitの隙間を空けた状態で乗算する
+        final int ga = (((rgba0 & 0x00ff00ff) * weight + (rgba1 & 0x00ff00ff) * inv) >>> 8) & 0x00ff00ff;
+        final int rb = (((rgba0 >>> 8) & 0x00ff00ff) * weight + ((rgba1 >>> 8) & 0x00ff00ff) * inv) & 0xff00ff00;
+        return rb | ga;
+    }
 
-        {
-            int value0 = (ColorRGBA.toColorR(rgba0));
-            int value1 = (ColorRGBA.toColorR(rgba1));
+    /**
+     * 0.0〜1.0のブレンド値を8.8固定小数へ変換する
+     */
+    private static int toBlendWeight(float blend) {
+        return Math.max(0, Math.min(256, (int) (blend * 256.0f + 0.5f)));
+    }
 
-            int color = (int) (MathUtil.blendValue(value0, value1, blend));
-            result |= ((color & 0xff) << 24);
+    /**
+     * 2つのピクセル列をまとめてブレンドする
+     * dstはsrc0/src1と同じ配列・同じ位置でも良い。
+     *
+     * @param blend src0のブレンド値 1.0f = src0 0.0f = src1
+     * @param count ピクセル数
+     */
+    public static void blendColors(int[] src0, int src0Offset, int[] src1, int src1Offset, int[] dst, int dstOffset, int count, float blend) {
+        blendColors(src0, src0Offset, src1, src1Offset, dst, dstOffset, count, blend, false);
+    }
+
+    /**
+     * 2つのピクセル列をまとめてブレンドする
+     *
+     * @param parallel ピクセル数が十分に多い場合、画像を帯状に分割して複数スレッドで処理する
+     * @see #blendColors(int[], int, int[], int, int[], int, int, float)
+     */
+    public static void blendColors(final int[] src0, final int src0Offset, final int[] src1, final int src1Offset, final int[] dst, final int dstOffset, int count, float blend, boolean parallel) {
+        final int weight = toBlendWeight(blend);
+        if (parallel) {
+            ParallelRange.run(count, PARALLEL_MIN_PIXELS, (begin, end) -> blendColors(src0, src0Offset + begin, src1, src1Offset + begin, dst, dstOffset + begin, end - begin, weight));
+        } else {
+            blendColors(src0, src0Offset, src1, src1Offset, dst, dstOffset, count, weight);
+        }
+    }
+
+    private static void blendColors(int[] src0, int src0Offset, int[] src1, int src1Offset, int[] dst, int dstOffset, int count, int weight) {
+        if (weight == 256) {
+            System.arraycopy(src0, src0Offset, dst, dstOffset, count);
+            return;
+        } else if (weight == 0) {
+            System.arraycopy(src1, src1Offset, dst, dstOffset, count);
+            return;
         }
 
-        {
-            int value0 = (ColorRGBA.toColorG(rgba0));
-            int value1 = (ColorRGBA.toColorG(rgba1));
+        final int inv = 256 - weight;
+        for (int i = 0; i < count; ++i) {
+            final int c0 = src0[src0Offset + i];
+            final int c1 = src1[src1Offset + i];
+            final int ga = (((c0 & 0x00ff00ff) * weight + (c1 & 0x00ff00ff) * inv) >>> 8) & 0x00ff00ff;
+            final int rb = (((c0 >>> 8) & 0x00ff00ff) * weight + ((c1 >>> 8) & 0x00ff00ff) * inv) & 0xff00ff00;
+            dst[dstOffset + i] = rb | ga;
+        }
+    }
 
-            int color = (int) (MathUtil.blendValue(value0, value1, blend));
-            result |= ((color & 0xff) << 16);
+    /**
+     * 2つのピクセル列をまとめてブレンドする。<BR>
+     * バッファのposition/limitは変更しない。
+     *
+     * @see #blendColors(int[], int, int[], int, int[], int, int, float)
+     */
+    public static void blendColors(final IntBuffer src0, final int src0Offset, final IntBuffer src1, final int src1Offset, final IntBuffer dst, final int dstOffset, int count, float blend, boolean parallel) {
+        if (src0.hasArray() && src1.hasArray() && dst.hasArray()) {
+            blendColors(src0.array(), src0.arrayOffset() + src0Offset, src1.array(), src1.arrayOffset() + src1Offset, dst.array(), dst.arrayOffset() + dstOffset, count, blend, parallel);
+            return;
         }
 
-        {
-            int value0 = (ColorRGBA.toColorB(rgba0));
-            int value1 = (ColorRGBA.toColorB(rgba1));
+        final int weight = toBlendWeight(blend);
+        if (parallel) {
+            ParallelRange.run(count, PARALLEL_MIN_PIXELS, (begin, end) -> blendColors(src0, src0Offset + begin, src1, src1Offset + begin, dst, dstOffset + begin, end - begin, weight));
+        } else {
+            blendColors(src0, src0Offset, src1, src1Offset, dst, dstOffset, count, weight);
+        }
+    }
 
-            int color = (int) (MathUtil.blendValue(value0, value1, blend));
-            result |= ((color & 0xff) << 8);
+    private static void blendColors(IntBuffer src0, int src0Offset, IntBuffer src1, int src1Offset, IntBuffer dst, int dstOffset, int count, int weight) {
+        // DirectBufferは一定数ずつ配列へ読み込んでブレンドする
+        final int chunk = Math.min(count, BUFFER_CHUNK_PIXELS);
+        final int[] temp0 = new int[chunk];
+        final int[] temp1 = new int[chunk];
+        final IntBuffer read0 = src0.duplicate();
+        final IntBuffer read1 = src1.duplicate();
+        final IntBuffer write = dst.duplicate();
+        for (int i = 0; i < count; i += chunk) {
+            final int length = Math.min(chunk, count - i);
+            read0.position(src0Offset + i);
+            read0.get(temp0, 0, length);
+            read1.position(src1Offset + i);
+            read1.get(temp1, 0, length);
+            blendColors(temp0, 0, temp1, 0, temp0, 0, length, weight);
+            write.position(dstOffset + i);
+            write.put(temp0, 0, length);
         }
+    }
 
-        {
-            int value0 = (ColorRGBA.toColorA(rgba0));
-            int value1 = (ColorRGBA.toColorA(rgba1));
+    /**
+     * srcをdstの上へ合成する
+     * 各ピクセルはAを乗算済みのRGBAとして扱い、dst = src + dst * (1 - srcA)を計算する。
+     *
+     * @param count ピクセル数
+     */
+    public static void alphaOver(int[] src, int srcOffset, int[] dst, int dstOffset, int count) {
+        alphaOver(src, srcOffset, dst, dstOffset, count, false);
+    }
+
+    /**
+     * srcをdstの上へ合成する
+     *
+     * @param parallel ピクセル数が十分に多い場合、画像を帯状に分割して複数スレッドで処理する
+     * @see #alphaOver(int[], int, int[], int, int)
+     */
+    public static void alphaOver(final int[] src, final int srcOffset, final int[] dst, final int dstOffset, int count, boolean parallel) {
+        if (parallel) {
+            ParallelRange.run(count, PARALLEL_MIN_PIXELS, (begin, end) -> alphaOver(src, srcOffset + begin, dst, dstOffset + begin, end - begin, false));
+            return;
+        }
 
-            int color = (int) (MathUtil.blendValue(value0, value1, blend));
-            result |= ((color) & 0xff);
+        for (int i = 0; i < count; ++i) {
+            final int s = src[srcOffset + i];
+            final int inv = 0xff - (s & 0xff);
+            if (inv == 0) {
+                dst[dstOffset + i] = s;
+            } else if (s != 0) {
+                final int d = dst[dstOffset + i];
+                // dstの4成分にinv / 255を乗算する
+                int ga = (d & 0x00ff00ff) * inv + 0x00800080;
+                ga = ((ga + ((ga >>> 8) & 0x00ff00ff)) >>> 8) & 0x00ff00ff;
+                int rb = ((d >>> 8) & 0x00ff00ff) * inv + 0x00800080;
+                rb = (rb + ((rb >>> 8) & 0x00ff00ff)) & 0xff00ff00;
+                dst[dstOffset + i] = s + (rb | ga);
+            }
         }
+    }
 
-        return result;
+    /**
+     * 32bitピクセルをまとめて変換する。
+     * srcとdstは同じ配列・同じ位置でも良い。
+     *
+     * @param conversion 変換方法
+     * @param count      ピクセル数
+     */
+    public static void convertPixels(PixelConversion conversion, int[] src, int srcOffset, int[] dst, int dstOffset, int count) {
+        convertPixels(conversion, src, srcOffset, dst, dstOffset, count, false);
+    }
+
+    /**
+     * 32bitピクセルをまとめて変換する。
+     *
+     * @param parallel ピクセル数が十分に多い場合、画像を帯状に分割して複数スレッドで処理する
+     * @see #convertPixels(PixelConversion, int[], int, int[], int, int)
+     */
+    public static void convertPixels(final PixelConversion conversion, final int[] src, final int srcOffset, final int[] dst, final int dstOffset, int count, boolean parallel) {
+        if (parallel) {
+            ParallelRange.run(count, PARALLEL_MIN_PIXELS, (begin, end) -> convertPixels(conversion, src, srcOffset + begin, dst, dstOffset + begin, end - begin, false));
+            return;
+        }
+
+        switch (conversion) {
+            case ArgbToRgba:
+                for (int i = 0; i < count; ++i) {
+                    dst[dstOffset + i] = argb2rgba(src[srcOffset + i]);
+                }
+                break;
+            case RgbaToArgb:
+                for (int i = 0; i < count; ++i) {
+                    dst[dstOffset + i] = rgba2argb(src[srcOffset + i]);
+                }
+                break;
+            case ArgbToBgra:
+            case BgraToArgb:
+                // 並びが逆になるだけのため、どちらも同じ変換となる
+                for (int i = 0; i < count; ++i) {
+                    dst[dstOffset + i] = Integer.reverseBytes(src[srcOffset + i]);
+                }
+                break;
+            case PremultiplyRgba:
+                for (int i = 0; i < count; ++i) {
+                    final int rgba = src[srcOffset + i];
+                    final int a = rgba & 0xff;
+                    dst[dstOffset + i] = (premultiply(rgba >>> 8, a) << 8) | a;
+                }
+                break;
+            case UnpremultiplyRgba:
+                for (int i = 0; i < count; ++i) {
+                    final int rgba = src[srcOffset + i];
+                    final int a = rgba & 0xff;
+                    dst[dstOffset + i] = (unpremultiply(rgba >>> 8, a) << 8) | a;
+                }
+                break;
+            case PremultiplyArgb:
+                for (int i = 0; i < count; ++i) {
+                    final int argb = src[srcOffset + i];
+                    dst[dstOffset + i] = (argb & 0xff000000) | premultiply(argb & 0x00ffffff, argb >>> 24);
+                }
+                break;
+            case UnpremultiplyArgb:
+                for (int i = 0; i < count; ++i) {
+                    final int argb = src[srcOffset + i];
+                    dst[dstOffset + i] = (argb & 0xff000000) | unpremultiply(argb & 0x00ffffff, argb >>> 24);
+                }
+                break;
+        }
+    }
+
+    /**
+     * 32bitピクセルをまとめて変換する。<BR>
+     * バッファのposition/limitは変更しない。
+     *
+     * @see #convertPixels(PixelConversion, int[], int, int[], int, int)
+     */
+    public static void convertPixels(PixelConversion conversion, IntBuffer src, int srcOffset, IntBuffer dst, int dstOffset, int count) {
+        convertPixels(conversion, src, srcOffset, dst, dstOffset, count, false);
+    }
+
+    /**
+     * 32bitピクセルをまとめて変換する。
+     *
+     * @param parallel ピクセル数が十分に多い場合、画像を帯状に分割して複数スレッドで処理する
+     * @see #convertPixels(PixelConversion, int[], int, int[], int, int)
+     */
+    public static void convertPixels(final PixelConversion conversion, final IntBuffer src, final int srcOffset, final IntBuffer dst, final int dstOffset, int count, boolean parallel) {
+        if (src.hasArray() && dst.hasArray()) {
+            convertPixels(conversion, src.array(), src.arrayOffset() + srcOffset, dst.array(), dst.arrayOffset() + dstOffset, count, parallel);
+        } else if (parallel) {
+            ParallelRange.run(count, PARALLEL_MIN_PIXELS, (begin, end) -> convertPixels(conversion, src, srcOffset + begin, dst, dstOffset + begin, end - begin, false));
+        } else {
+            // DirectBufferは一定数ずつ配列へ読み込んで変換する
+            final int[] temp = new int[Math.min(count, BUFFER_CHUNK_PIXELS)];
+            final IntBuffer read = src.duplicate();
+            final IntBuffer write = dst.duplicate();
+            for (int i = 0; i < count; i += temp.length) {
+                final int length = Math.min(temp.length, count - i);
+                read.position(srcOffset + i);
+                read.get(temp, 0, length);
+                convertPixels(conversion, temp, 0, temp, 0, length, false);
+                write.position(dstOffset + i);
+                write.put(temp, 0, length);
+            }
+        }
+    }
+
+    /**
+     * 32bitピクセルをまとめて変換する。<BR>
+     * ピクセルはバッファのバイトオーダーに従ってintとして読み書きする。
+     * バッファのposition/limitは変更しない。
+     *
+     * @param srcOffset 読み込み開始位置（byte）
+     * @param dstOffset 書き込み開始位置（byte）
+     * @see #convertPixels(PixelConversion, int[], int, int[], int, int)
+     */
+    public static void convertPixels(PixelConversion conversion, ByteBuffer src, int srcOffset, ByteBuffer dst, int dstOffset, int count) {
+        convertPixels(conversion, src, srcOffset, dst, dstOffset, count, false);
+    }
+
+    /**
+     * 32bitピクセルをまとめて変換する。
+     *
+     * @param parallel ピクセル数が十分に多い場合、画像を帯状に分割して複数スレッドで処理する
+     * @see #convertPixels(PixelConversion, ByteBuffer, int, ByteBuffer, int, int)
+     */
+    public static void convertPixels(PixelConversion conversion, ByteBuffer src, int srcOffset, ByteBuffer dst, int dstOffset, int count, boolean parallel) {
+        convertPixels(conversion, asIntBuffer(src, srcOffset), 0, asIntBuffer(dst, dstOffset), 0, count, parallel);
+    }
+
+    /**
+     * RGBA8888のピクセルをまとめてRGB565へ変換する。
+     * 各成分は{@link #toColorRGB565(int, int, int)}と同じく下位ビットを切り捨てる。
+     *
+     * @param count ピクセル数
+     */
+    public static void rgba2rgb565(int[] src, int srcOffset, short[] dst, int dstOffset, int count) {
+        rgba2rgb565(src, srcOffset, dst, dstOffset, count, false);
+    }
+
+    /**
+     * RGBA8888のピクセルをまとめてRGB565へ変換する。
+     *
+     * @param parallel ピクセル数が十分に多い場合、画像を帯状に分割して複数スレッドで処理する
+     * @see #rgba2rgb565(int[], int, short[], int, int)
+     */
+    public static void rgba2rgb565(final int[] src, final int srcOffset, final short[] dst, final int dstOffset, int count, boolean parallel) {
+        if (parallel) {
+            ParallelRange.run(count, PARALLEL_MIN_PIXELS, (begin, end) -> rgba2rgb565(src, srcOffset + begin, dst, dstOffset + begin, end - begin, false));
+            return;
+        }
+
+        for (int i = 0; i < count; ++i) {
+            final int rgba = src[srcOffset + i];
+            dst[dstOffset + i] = (short) (((rgba >>> 16) & 0xf800) | ((rgba >>> 13) & 0x07e0) | ((rgba >>> 11) & 0x001f));
+        }
+    }
+
+    /**
+     * RGBA8888のピクセルをまとめてRGB565へ変換する。<BR>
+     * バッファのposition/limitは変更しない。
+     *
+     * @see #rgba2rgb565(int[], int, short[], int, int)
+     */
+    public static void rgba2rgb565(IntBuffer src, int srcOffset, ShortBuffer dst, int dstOffset, int count, boolean parallel) {
+        convertPixels16(false, src, srcOffset, dst, dstOffset, count, parallel);
+    }
+
+    /**
+     * RGBA8888のピクセルをまとめてRGB565へ変換する。<BR>
+     * ピクセルはバッファのバイトオーダーに従って読み書きする。
+     * srcとdstが同一のバッファであれば、同じ位置へ上書きして良い。その場合は並列処理を行わない。
+     *
+     * @param srcOffset 読み込み開始位置（byte）
+     * @param dstOffset 書き込み開始位置（byte）
+     * @see #rgba2rgb565(int[], int, short[], int, int)
+     */
+    public static void rgba2rgb565(ByteBuffer src, int srcOffset, ByteBuffer dst, int dstOffset, int count, boolean parallel) {
+        convertPixels16(false, asIntBuffer(src, srcOffset), 0, asShortBuffer(dst, dstOffset), 0, count, parallel && src != dst);
+    }
+
+    /**
+     * RGBA8888のピクセルをまとめてRGBA4444へ変換する。
+     * 各成分は下位ビットを切り捨てる。
+     *
+     * @param count ピクセル数
+     */
+    public static void rgba2rgba4444(int[] src, int srcOffset, short[] dst, int dstOffset, int count) {
+        rgba2rgba4444(src, srcOffset, dst, dstOffset, count, false);
+    }
+
+    /**
+     * RGBA8888のピクセルをまとめてRGBA4444へ変換する。
+     *
+     * @param parallel ピクセル数が十分に多い場合、画像を帯状に分割して複数スレッドで処理する
+     * @see #rgba2rgba4444(int[], int, short[], int, int)
+     */
+    public static void rgba2rgba4444(final int[] src, final int srcOffset, final short[] dst, final int dstOffset, int count, boolean parallel) {
+        if (parallel) {
+            ParallelRange.run(count, PARALLEL_MIN_PIXELS, (begin, end) -> rgba2rgba4444(src, srcOffset + begin, dst, dstOffset + begin, end - begin, false));
+            return;
+        }
+
+        for (int i = 0; i < count; ++i) {
+            final int rgba = src[srcOffset + i];
+            dst[dstOffset + i] = (short) (((rgba >>> 16) & 0xf000) | ((rgba >>> 12) & 0x0f00) | ((rgba >>> 8) & 0x00f0) | ((rgba >>> 4) & 0x000f));
+        }
+    }
+
+    /**
+     * RGBA8888のピクセルをまとめてRGBA4444へ変換する。<BR>
+     * バッファのposition/limitは変更しない。
+     *
+     * @see #rgba2rgba4444(int[], int, short[], int, int)
+     */
+    public static void rgba2rgba4444(IntBuffer src, int srcOffset, ShortBuffer dst, int dstOffset, int count, boolean parallel) {
+        convertPixels16(true, src, srcOffset, dst, dstOffset, count, parallel);
+    }
+
+    /**
+     * RGBA8888のピクセルをまとめてRGBA4444へ変換する。<BR>
+     * ピクセルはバッファのバイトオーダーに従って読み書きする。
+     * srcとdstが同一のバッファであれば、同じ位置へ上書きして良い。その場合は並列処理を行わない。
+     *
+     * @param srcOffset 読み込み開始位置（byte）
+     * @param dstOffset 書き込み開始位置（byte）
+     * @see #rgba2rgba4444(int[], int, short[], int, int)
+     */
+    public static void rgba2rgba4444(ByteBuffer src, int srcOffset, ByteBuffer dst, int dstOffset, int count, boolean parallel) {
+        convertPixels16(true, asIntBuffer(src, srcOffset), 0, asShortBuffer(dst, dstOffset), 0, count, parallel && src != dst);
+    }
+
+    /**
+     * 16bitピクセルへの変換を行う
+     * 書き込み位置が読み込み位置を追い越さないよう、先頭から順に処理する。
+     *
+     * @param rgba4444 trueであればRGBA4444、falseであればRGB565へ変換する
+     */
+    private static void convertPixels16(final boolean rgba4444, final IntBuffer src, final int srcOffset, final ShortBuffer dst, final int dstOffset, int count, boolean parallel) {
+        if (parallel) {
+            ParallelRange.run(count, PARALLEL_MIN_PIXELS, (begin, end) -> convertPixels16(rgba4444, src, srcOffset + begin, dst, dstOffset + begin, end - begin, false));
+            return;
+        }
+
+        final int chunk = Math.min(count, BUFFER_CHUNK_PIXELS);
+        final int[] temp = new int[chunk];
+        final short[] result = new short[chunk];
+        final IntBuffer read = src.duplicate();
+        final ShortBuffer write = dst.duplicate();
+        for (int i = 0; i < count; i += chunk) {
+            final int length = Math.min(chunk, count - i);
+            if (src.hasArray()) {
+                System.arraycopy(src.array(), src.arrayOffset() + srcOffset + i, temp, 0, length);
+            } else {
+                read.position(srcOffset + i);
+                read.get(temp, 0, length);
+            }
+            if (rgba4444) {
+                rgba2rgba4444(temp, 0, result, 0, length, false);
+            } else {
+                rgba2rgb565(temp, 0, result, 0, length, false);
+            }
+            write.position(dstOffset + i);
+            write.put(result, 0, length);
+        }
+    }
+
+    /**
+     * 指定位置から始まり、バッファのバイトオーダーを引き継いだIntBufferを作成する
+     */
+    private static IntBuffer asIntBuffer(ByteBuffer buffer, int byteOffset) {
+        ByteBuffer view = buffer.duplicate().order(buffer.order());
+        view.position(byteOffset);
+        return view.asIntBuffer();
+    }
+
+    /**
+     * 指定位置から始まり、バッファのバイトオーダーを引き継いだShortBufferを作成する
+     */
+    private static ShortBuffer asShortBuffer(ByteBuffer buffer, int byteOffset) {
+        ByteBuffer view = buffer.duplicate().order(buffer.order());
+        view.position(byteOffset);
+        return view.asShortBuffer();
+    }
+
+    /**
+     * 下位24bitに格納された3つの色成分にaを乗算する
+     * 各成分はc * a / 255を四捨五入した値となる。
+     */
+    private static int premultiply(int rgb, int a) {
+        int rb = (rgb & 0x00ff00ff) * a + 0x00800080;
+        rb = ((rb + ((rb >>> 8) & 0x00ff00ff)) >>> 8) & 0x00ff00ff;
+        int g = (rgb & 0x0000ff00) * a + 0x00008000;
+        g = ((g + ((g >>> 8) & 0x0000ff00)) >>> 8) & 0x0000ff00;
+        return rb | g;
+    }
+
+    /**
+     * 下位24bitに格納された、aを乗算済みの3つの色成分を元に戻す
+     * aより大きい成分はaとして扱う。
+     */
+    private static int unpremultiply(int rgb, int a) {
+        if (a == 0) {
+            return 0;
+        } else if (a == 0xff) {
+            return rgb;
+        }
+        final int scale = UNPREMULTIPLY_SCALE[a];
+        final int c0 = (Math.min(a, (rgb >>> 16) & 0xff) * scale + 0x400000) >>> 23;
+        final int c1 = (Math.min(a, (rgb >>> 8) & 0xff) * scale + 0x400000) >>> 23;
+        final int c2 = (Math.min(a, rgb & 0xff) * scale + 0x400000) >>> 23;
+        return (c0 << 16) | (c1 << 8) | c2;
     }
 }
@@ -1,13 +1,63 @@
 package com.eaglesakura.android.graphics;
 
+import com.eaglesakura.android.util.DirectBufferPool;
+
 import android.graphics.Bitmap;
+import android.os.Build;
 
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.IntBuffer;
 
+/**
+ * Bitmapのピクセルを、OpenGL ESへ転送可能な形式でDirectBufferへ展開する
+ *
+ * ピクセルバッファは{@link DirectBufferPool}から取得するため、不要になったら{@link #release()}を呼び出す。
+ */
 public class DecodedImage {
+
+    /**
+     * 展開するピクセル形式
+     */
+    public enum PixelFormat {
+        /**
+         * R,G,B,Aの順に1byteずつ並ぶ。Aは乗算済みとなる。
+         * GL_RGBA / GL_UNSIGNED_BYTE
+         */
+        RGBA8888(4),
+
+        /**
+         * ネイティブバイトオーダーの16bit
+         * GL_RGB / GL_UNSIGNED_SHORT_5_6_5
+         */
+        RGB565(2),
+
+        /**
+         * 輝度のみの1byte
+         * GL_LUMINANCE / GL_UNSIGNED_BYTE
+         */
+        Luminance(1);
+
+        final int bytesPerPixel;
+
+        PixelFormat(int bytesPerPixel) {
+            this.bytesPerPixel = bytesPerPixel;
+        }
+
+        /**
+         * 1ピクセルあたりのbyte数
+         */
+        public int getBytesPerPixel() {
+            return bytesPerPixel;
+        }
+    }
+
+    /**
+     * getPixels()を使用する場合に、一度に読み込むライン数
+     */
+    private static final int ONCE_READ_LINE = 128;
+
     /**
      * 幅
      */
@@ -18,10 +68,15 @@ public class DecodedImage {
      */
     int height = 0;
 
+    /**
+     * ピクセル形式
+     */
+    PixelFormat format;
+
     /**
      * ピクセルデータ
      */
-    Buffer pixels;
+    ByteBuffer pixels;
 
     private DecodedImage() {
     }
@@ -40,56 +95,167 @@ public class DecodedImage {
         return height;
     }
 
+    /**
+     * ピクセル形式を取得する
+     */
+    public PixelFormat getFormat() {
+        return format;
+    }
+
     /**
      * ピクセルバッファを取得する
+     * position = 0, limit = 幅 * 高さ * 1ピクセルあたりのbyte数となる。
      */
     public Buffer getPixels() {
         return pixels;
     }
 
     /**
-     * 画像からデコードを行う
+     * ピクセルバッファを返却する
+     * 以後、getPixels()はnullを返す。
+     */
+    public void release() {
+        if (pixels != null) {
+            DirectBufferPool.getDefault().release(pixels);
+            pixels = null;
+        }
+    }
+
+    /**
+     * 全てのピクセルを0で初期化した画像を生成する
+     * 書き込みはgetPixels()のバッファへ直接行う。
+     */
+    public static DecodedImage allocate(int width, int height, PixelFormat format) {
+        final int bytes = width * height * format.bytesPerPixel;
+        DecodedImage result = new DecodedImage();
+        result.width = width;
+        result.height = height;
+        result.format = format;
+        result.pixels = DirectBufferPool.getDefault().obtain(bytes);
+
+        // 再利用されたバッファは内容が不定のため、クリアする
+        final byte[] zero = new byte[Math.min(bytes, 1024 * 4)];
+        while (result.pixels.hasRemaining()) {
+            result.pixels.put(zero, 0, Math.min(zero.length, result.pixels.remaining()));
+        }
+        result.pixels.position(0);
+        return result;
+    }
+
+    /**
+     * 画像からRGBA8888でデコードを行う
      * 画像は自動ではrecycleされないため、呼び出し元で行うこと。
      */
     public static DecodedImage decodeFromBitmap(Bitmap image, boolean recycle) {
+        return decodeFromBitmap(image, PixelFormat.RGBA8888, recycle);
+    }
+
+    /**
+     * 画像から指定形式でデコードを行う
+     * 画像は自動ではrecycleされないため、呼び出し元で行うこと。
+     */
+    public static DecodedImage decodeFromBitmap(Bitmap image, PixelFormat format, boolean recycle) {
         if (image == null) {
             return null;
         }
 
-        final int image_width = image.getWidth();
-        final int image_height = image.getHeight();
+        final int imageWidth = image.getWidth();
+        final int imageHeight = image.getHeight();
+        final int pixelCount = imageWidth * imageHeight;
+        final Bitmap.Config config = image.getConfig();
+
         DecodedImage result = new DecodedImage();
+        result.width = imageWidth;
+        result.height = imageHeight;
+        result.format = format;
+
+        if (format == PixelFormat.RGB565 && config == Bitmap.Config.RGB_565 && image.getRowBytes() == imageWidth * 2) {
+            // そのまま転送できる
+            result.pixels = DirectBufferPool.getDefault().obtain(pixelCount * 2);
+            image.copyPixelsToBuffer(result.pixels);
+        } else {
+            // 一度RGBA8888で展開し、必要であれば同じバッファ内で変換する
+            ByteBuffer buffer = DirectBufferPool.getDefault().obtain(pixelCount * 4);
+            if (config == Bitmap.Config.ARGB_8888 && image.getRowBytes() == imageWidth * 4 && isPremultiplied(image)) {
+                // メモリ上でR,G,B,Aの順に並んでいるため、変換の必要がない
+                image.copyPixelsToBuffer(buffer);
+            } else {
+                readPixels(image, buffer);
+            }
+
+            if (format == PixelFormat.RGB565) {
+                // 書き込み位置は読み込み位置を追い越さないため、同じバッファへ上書きできる
+                ByteBuffer rgba = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+                ColorRGBA.rgba2rgb565(rgba, 0, buffer, 0, pixelCount, false);
+            } else if (format == PixelFormat.Luminance) {
+                toLuminance(buffer, pixelCount);
+            }
+            result.pixels = buffer;
+        }
+
+        // 書き込み位置をリセットする
+        result.pixels.order(ByteOrder.nativeOrder());
+        result.pixels.position(0);
+        result.pixels.limit(pixelCount * format.bytesPerPixel);
 
-        // ピクセル情報の格納先を確保
-        IntBuffer pixelBuffer = ByteBuffer.allocateDirect(image_width * image_height * 4)
-                .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
-        {
-            result.width = image_width;
-            result.height = image_height;
-            result.pixels = pixelBuffer;
+        if (recycle) {
+            image.recycle();
         }
+        return result;
+    }
 
-//        Logger.out(Logger.LEVEL_DEBUG, "image size(%d x %d)", image_width, image_height);
+    /**
+     * ピクセルがアルファ乗算済みで保持されている場合はtrue
+     * API 19未満では常に乗算済みとなる
+     */
+    private static boolean isPremultiplied(Bitmap image) {
+        return Build.VERSION.SDK_INT < 19 || image.isPremultiplied();
+    }
 
-        final int ONCE_READ_LINE = 128;
-        final int[] temp = new int[image_width * ONCE_READ_LINE];
+    /**
+     * getPixels()を使用して、RGBA8888(乗算済みアルファ)として読み込む
+     */
+    private static void readPixels(Bitmap image, ByteBuffer buffer) {
+        final int imageWidth = image.getWidth();
+        final int imageHeight = image.getHeight();
+        final int[] temp = new int[imageWidth * Math.min(imageHeight, ONCE_READ_LINE)];
 
-        int readHeight = image_height;
+        // ビッグエンディアンで書き込むことで、メモリ上でR,G,B,Aの順に並ぶ
+        IntBuffer pixelBuffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+        int readHeight = imageHeight;
         while (readHeight > 0) {
-            // 1ラインずつ読み込む
             final int readLine = Math.min(readHeight, ONCE_READ_LINE);
-            image.getPixels(temp, 0, image_width, 0, image_height - readHeight, image_width, readLine);
-            pixelBuffer.put(temp, 0, image_width * readLine);
+            final int length = imageWidth * readLine;
+            image.getPixels(temp, 0, imageWidth, 0, imageHeight - readHeight, imageWidth, readLine);
+            ColorRGBA.convertPixels(ColorRGBA.PixelConversion.ArgbToRgba, temp, 0, temp, 0, length);
+            ColorRGBA.convertPixels(ColorRGBA.PixelConversion.PremultiplyRgba, temp, 0, temp, 0, length);
+            pixelBuffer.put(temp, 0, length);
 
             readHeight -= readLine;
         }
+    }
 
-        // 書き込み位置をリセットする
-        pixelBuffer.position(0);
-
-        if (recycle) {
-            image.recycle();
+    /**
+     * R,G,B,Aの順に並ぶピクセルを、先頭から順に輝度へ変換する
+     */
+    private static void toLuminance(ByteBuffer buffer, int pixelCount) {
+        final int ONCE_READ_PIXELS = 1024 * 4;
+        final byte[] temp = new byte[Math.min(pixelCount, ONCE_READ_PIXELS) * 4];
+        final ByteBuffer read = buffer.duplicate();
+        final ByteBuffer write = buffer.duplicate();
+        for (int i = 0; i < pixelCount; i += ONCE_READ_PIXELS) {
+            final int length = Math.min(ONCE_READ_PIXELS, pixelCount - i);
+            read.position(i * 4);
+            read.get(temp, 0, length * 4);
+            for (int k = 0; k < length; ++k) {
+                final int r = temp[k * 4] & 0xff;
+                final int g = temp[k * 4 + 1] & 0xff;
+                final int b = temp[k * 4 + 2] & 0xff;
+                // ITU-R BT.601の係数を8bit固定小数で計算する
+                temp[k] = (byte) ((r * 77 + g * 150 + b * 29 + 128) >> 8);
+            }
+            write.position(i);
+            write.put(temp, 0, length);
         }
-        return result;
     }
 }
@@ -0,0 +1,505 @@
+package com.eaglesakura.android.graphics;
+
+import com.eaglesakura.android.thread.HandlerFuture;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Paint.Style;
+import android.graphics.PorterDuff.Mode;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Handler;
+
+import java.util.List;
+
+/**
+ * Graphicsの描画命令を記録し、任意のCanvasへ再生する
+ *
+ * 描画命令は種類と引数をプリミティブ配列へ詰めて保持し、描画時点のPaintと行列を命令ごとに記録する。
+ * Paintは状態が変化した時点で複製し、変化しない間は前の命令と共有する。
+ * 文字列の位置揃えは記録時に計算済みのため、再生時はテキストの計測を行わない。
+ * 記録が終わった後は変更されないため、バックグラウンドスレッドでBitmapへラスタライズできる。
+ * <pre>
+ * DisplayList list = new DisplayList();
+ * graphics.beginRecording(list);
+ * // graphicsへ描画する
+ * graphics.endRecording();
+ *
+ * // 前回の記録から変化した範囲のみを再描画する
+ * for (Rect region : list.diff(previous, regions)) {
+ *     list.replay(canvas, region);
+ * }
+ * </pre>
+ * 記録中のBitmapはリサイクルしてはならない。
+ */
+public class DisplayList {
+
+    private static final int OP_CLEAR = 0;
+
+    private static final int OP_FILL_RECT = 1;
+
+    private static final int OP_DRAW_RECT = 2;
+
+    private static final int OP_FILL_ROUND_RECT = 3;
+
+    private static final int OP_DRAW_ROUND_RECT = 4;
+
+    private static final int OP_FILL_CIRCLE = 5;
+
+    private static final int OP_DRAW_CIRCLE = 6;
+
+    private static final int OP_DRAW_LINE = 7;
+
+    private static final int OP_DRAW_TEXT = 8;
+
+    private static final int OP_DRAW_BITMAP = 9;
+
+    /**
+     * 命令ごとの整数 {op, color, start, end, bitmapGeneration}
+     */
+    private static final int INT_STRIDE = 5;
+
+    /**
+     * 命令ごとの小数 {引数 x 8}
+     */
+    private static final int FLOAT_STRIDE = 8;
+
+    /**
+     * 命令ごとの参照 {matrix, paint, text or bitmap}
+     */
+    private static final int REF_STRIDE = 3;
+
+    private int[] mInts = new int[INT_STRIDE * 32];
+
+    private float[] mFloats = new float[FLOAT_STRIDE * 32];
+
+    private Object[] mRefs = new Object[REF_STRIDE * 32];
+
+    /**
+     * 命令ごとの描画範囲 {left, top, right, bottom}
+     * 行列を適用した座標となる。
+     */
+    private int[] mBounds = new int[4 * 32];
+
+    private int mCount;
+
+    /**
+     * 記録中の行列、nullの場合は再生先Canvasの行列を使用する
+     */
+    private Matrix mMatrix;
+
+    /**
+     * 最後に複製したPaint
+     */
+    private Paint mPaint;
+
+    /**
+     * 描画範囲の計算用
+     */
+    private final RectF mTempBounds = new RectF();
+
+    private final Rect mTempRect = new Rect();
+
+    /**
+     * 再生用
+     */
+    private final Rect mReplaySrc = new Rect();
+
+    private final RectF mReplayRect = new RectF();
+
+    /**
+     * 描画範囲全体の大きさ
+     */
+    private int mWidth;
+
+    private int mHeight;
+
+    /**
+     * 記録した命令数を取得する
+     */
+    public int getCommandCount() {
+        return mCount;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * 記録を破棄し、新たに記録を開始する
+     *
+     * @param matrix 記録開始時点の行列、単位行列の場合はnull
+     */
+    void reset(int width, int height, Matrix matrix) {
+        for (int i = 0; i < mCount * REF_STRIDE; ++i) {
+            mRefs[i] = null;
+        }
+        mCount = 0;
+        mPaint = null;
+        mWidth = width;
+        mHeight = height;
+        setMatrix(matrix);
+    }
+
+    /**
+     * 以降の命令に適用する行列を指定する
+     */
+    void setMatrix(Matrix matrix) {
+        if (matrix == null || matrix.isIdentity()) {
+            mMatrix = null;
+        } else {
+            mMatrix = new Matrix(matrix);
+        }
+    }
+
+    /**
+     * 命令を追加し、インデックスを返す
+     */
+    private int add(int op, Paint paint) {
+        if (mCount * INT_STRIDE == mInts.length) {
+            final int capacity = mCount * 2;
+            int[] ints = new int[capacity * INT_STRIDE];
+            float[] floats = new float[capacity * FLOAT_STRIDE];
+            Object[] refs = new Object[capacity * REF_STRIDE];
+            int[] bounds = new int[capacity * 4];
+            System.arraycopy(mInts, 0, ints, 0, mCount * INT_STRIDE);
+            System.arraycopy(mFloats, 0, floats, 0, mCount * FLOAT_STRIDE);
+            System.arraycopy(mRefs, 0, refs, 0, mCount * REF_STRIDE);
+            System.arraycopy(mBounds, 0, bounds, 0, mCount * 4);
+            mInts = ints;
+            mFloats = floats;
+            mRefs = refs;
+            mBounds = bounds;
+        }
+
+        final int index = mCount++;
+        final int ints = index * INT_STRIDE;
+        mInts[ints] = op;
+        for (int i = 1; i < INT_STRIDE; ++i) {
+            mInts[ints + i] = 0;
+        }
+        final int floats = index * FLOAT_STRIDE;
+        for (int i = 0; i < FLOAT_STRIDE; ++i) {
+            mFloats[floats + i] = 0;
+        }
+
+        // Paintは変化した場合のみ複製する
+        if (mPaint == null || !equalsPaint(mPaint, paint)) {
+            mPaint = new Paint(paint);
+        }
+        mRefs[index * REF_STRIDE] = mMatrix;
+        mRefs[index * REF_STRIDE + 1] = mPaint;
+        mRefs[index * REF_STRIDE + 2] = null;
+        return index;
+    }
+
+    /**
+     * 描画結果に影響するPaintの状態が等しければtrue
+     * Styleは再生時に命令ごとに設定するため比較しない。
+     * Shader等のオブジェクトは、同じインスタンスであれば内容が変化していても等しいものとする。
+     */
+    private static boolean equalsPaint(Paint a, Paint b) {
+        return a.getFlags() == b.getFlags()
+                && a.getColor() == b.getColor()
+                && Float.compare(a.getStrokeWidth(), b.getStrokeWidth()) == 0
+                && Float.compare(a.getStrokeMiter(), b.getStrokeMiter()) == 0
+                && a.getStrokeCap() == b.getStrokeCap()
+                && a.getStrokeJoin() == b.getStrokeJoin()
+                && Float.compare(a.getTextSize(), b.getTextSize()) == 0
+                && Float.compare(a.getTextScaleX(), b.getTextScaleX()) == 0
+                && Float.compare(a.getTextSkewX(), b.getTextSkewX()) == 0
+                && a.getTextAlign() == b.getTextAlign()
+                && equalsObject(a.getTypeface(), b.getTypeface())
+                && a.getShader() == b.getShader()
+                && a.getXfermode() == b.getXfermode()
+                && a.getColorFilter() == b.getColorFilter()
+                && a.getPathEffect() == b.getPathEffect()
+                && a.getMaskFilter() == b.getMaskFilter();
+    }
+
+    private static boolean equalsObject(Object a, Object b) {
+        return a == b || (a != null && a.equals(b));
+    }
+
+    private void setArgs(int index, float a0, float a1, float a2, float a3) {
+        final int floats = index * FLOAT_STRIDE;
+        mFloats[floats] = a0;
+        mFloats[floats + 1] = a1;
+        mFloats[floats + 2] = a2;
+        mFloats[floats + 3] = a3;
+    }
+
+    /**
+     * 行列を適用した描画範囲を設定する
+     *
+     * @param outset 線の太さやアンチエイリアスによるはみ出し
+     */
+    private void setBounds(int index, float left, float top, float right, float bottom, float outset) {
+        RectF bounds = mTempBounds;
+        bounds.set(Math.min(left, right) - outset, Math.min(top, bottom) - outset, Math.max(left, right) + outset, Math.max(top, bottom) + outset);
+        if (mMatrix != null) {
+            mMatrix.mapRect(bounds);
+        }
+        bounds.roundOut(mTempRect);
+        final int head = index * 4;
+        mBounds[head] = mTempRect.left;
+        mBounds[head + 1] = mTempRect.top;
+        mBounds[head + 2] = mTempRect.right;
+        mBounds[head + 3] = mTempRect.bottom;
+    }
+
+    private static float getOutset(Paint paint, boolean stroke) {
+        return (stroke ? paint.getStrokeWidth() * 0.5f : 0) + 1;
+    }
+
+    void clear(Paint paint, int color) {
+        final int index = add(OP_CLEAR, paint);
+        mInts[index * INT_STRIDE + 1] = color;
+        final int head = index * 4;
+        mBounds[head] = Integer.MIN_VALUE / 2;
+        mBounds[head + 1] = Integer.MIN_VALUE / 2;
+        mBounds[head + 2] = Integer.MAX_VALUE / 2;
+        mBounds[head + 3] = Integer.MAX_VALUE / 2;
+    }
+
+    void rect(Paint paint, boolean stroke, float left, float top, float right, float bottom) {
+        final int index = add(stroke ? OP_DRAW_RECT : OP_FILL_RECT, paint);
+        setArgs(index, left, top, right, bottom);
+        setBounds(index, left, top, right, bottom, getOutset(paint, stroke));
+    }
+
+    void roundRect(Paint paint, boolean stroke, RectF rect, float radius) {
+        final int index = add(stroke ? OP_DRAW_ROUND_RECT : OP_FILL_ROUND_RECT, paint);
+        setArgs(index, rect.left, rect.top, rect.right, rect.bottom);
+        mFloats[index * FLOAT_STRIDE + 4] = radius;
+        setBounds(index, rect.left, rect.top, rect.right, rect.bottom, getOutset(paint, stroke));
+    }
+
+    void circle(Paint paint, boolean stroke, float x, float y, float radius) {
+        final int index = add(stroke ? OP_DRAW_CIRCLE : OP_FILL_CIRCLE, paint);
+        setArgs(index, x, y, radius, 0);
+        setBounds(index, x - radius, y - radius, x + radius, y + radius, getOutset(paint, stroke));
+    }
+
+    void line(Paint paint, float startX, float startY, float endX, float endY) {
+        final int index = add(OP_DRAW_LINE, paint);
+        setArgs(index, startX, startY, endX, endY);
+        setBounds(index, startX, startY, endX, endY, getOutset(paint, true));
+    }
+
+    /**
+     * @param textBounds 描画位置を原点としたテキストの範囲
+     */
+    void text(Paint paint, String text, int start, int end, float x, float y, Rect textBounds) {
+        final int index = add(OP_DRAW_TEXT, paint);
+        mInts[index * INT_STRIDE + 2] = start;
+        mInts[index * INT_STRIDE + 3] = end;
+        mRefs[index * REF_STRIDE + 2] = text;
+        setArgs(index, x, y, 0, 0);
+        setBounds(index, x + textBounds.left, y + textBounds.top, x + textBounds.right, y + textBounds.bottom, getOutset(paint, false));
+    }
+
+    void bitmap(Paint paint, Bitmap bitmap, Rect src, Rect dst) {
+        final int index = add(OP_DRAW_BITMAP, paint);
+        mInts[index * INT_STRIDE + 4] = bitmap.getGenerationId();
+        mRefs[index * REF_STRIDE + 2] = bitmap;
+        setArgs(index, dst.left, dst.top, dst.right, dst.bottom);
+        final int floats = index * FLOAT_STRIDE + 4;
+        mFloats[floats] = src.left;
+        mFloats[floats + 1] = src.top;
+        mFloats[floats + 2] = src.right;
+        mFloats[floats + 3] = src.bottom;
+        setBounds(index, dst.left, dst.top, dst.right, dst.bottom, getOutset(paint, false));
+    }
+
+    /**
+     * 記録した命令を再生する
+     * 記録した行列は再生先Canvasの行列に重ねて適用される。
+     * 再生はこのDisplayListが持つPaintを使用するため、複数スレッドからの呼び出しは順に処理される。
+     */
+    public synchronized void replay(Canvas canvas) {
+        replayCommands(canvas);
+    }
+
+    /**
+     * 指定範囲のみを再描画する
+     * 範囲の外側は変更されない。
+     */
+    public synchronized void replay(Canvas canvas, Rect clip) {
+        canvas.save();
+        canvas.clipRect(clip);
+        replayCommands(canvas);
+        canvas.restore();
+    }
+
+    private void replayCommands(Canvas canvas) {
+        final Matrix initialMatrix = canvas.getMatrix();
+        Object currentMatrix = null;
+        for (int i = 0; i < mCount; ++i) {
+            final int ints = i * INT_STRIDE;
+            final int floats = i * FLOAT_STRIDE;
+            final int op = mInts[ints];
+            final Object matrix = mRefs[i * REF_STRIDE];
+            if (matrix != currentMatrix) {
+                // 記録した行列は、再生先Canvasの行列に重ねる
+                canvas.setMatrix(initialMatrix);
+                if (matrix != null) {
+                    canvas.concat((Matrix) matrix);
+                }
+                currentMatrix = matrix;
+            }
+
+            final Paint paint = (Paint) mRefs[i * REF_STRIDE + 1];
+            final float a0 = mFloats[floats];
+            final float a1 = mFloats[floats + 1];
+            final float a2 = mFloats[floats + 2];
+            final float a3 = mFloats[floats + 3];
+            switch (op) {
+                case OP_CLEAR:
+                    canvas.drawColor(mInts[ints + 1], Mode.CLEAR);
+                    break;
+                case OP_FILL_RECT:
+                case OP_DRAW_RECT:
+                    paint.setStyle(op == OP_DRAW_RECT ? Style.STROKE : Style.FILL);
+                    canvas.drawRect(a0, a1, a2, a3, paint);
+                    break;
+                case OP_FILL_ROUND_RECT:
+                case OP_DRAW_ROUND_RECT:
+                    paint.setStyle(op == OP_DRAW_ROUND_RECT ? Style.STROKE : Style.FILL);
+                    mReplayRect.set(a0, a1, a2, a3);
+                    canvas.drawRoundRect(mReplayRect, mFloats[floats + 4], mFloats[floats + 4], paint);
+                    break;
+                case OP_FILL_CIRCLE:
+                case OP_DRAW_CIRCLE:
+                    paint.setStyle(op == OP_DRAW_CIRCLE ? Style.STROKE : Style.FILL);
+                    canvas.drawCircle(a0, a1, a2, paint);
+                    break;
+                case OP_DRAW_LINE:
+                    paint.setStyle(Style.STROKE);
+                    canvas.drawLine(a0, a1, a2, a3, paint);
+                    break;
+                case OP_DRAW_TEXT:
+                    paint.setStyle(Style.FILL);
+                    canvas.drawText((String) mRefs[i * REF_STRIDE + 2], mInts[ints + 2], mInts[ints + 3], a0, a1, paint);
+                    break;
+                case OP_DRAW_BITMAP:
+                    mReplaySrc.set((int) mFloats[floats + 4], (int) mFloats[floats + 5], (int) mFloats[floats + 6], (int) mFloats[floats + 7]);
+                    mReplayRect.set(a0, a1, a2, a3);
+                    canvas.drawBitmap((Bitmap) mRefs[i * REF_STRIDE + 2], mReplaySrc, mReplayRect, paint);
+                    break;
+            }
+        }
+        if (currentMatrix != null) {
+            canvas.setMatrix(initialMatrix);
+        }
+    }
+
+    /**
+     * 記録範囲と同じ大きさの、透明なBitmapへ描画する
+     * 記録を終えたDisplayListは変更されないため、バックグラウンドスレッドから呼び出すことができる。
+     */
+    public synchronized Bitmap rasterize(Bitmap.Config config) {
+        Bitmap result = Bitmap.createBitmap(mWidth, mHeight, config);
+        replayCommands(new Canvas(result));
+        return result;
+    }
+
+    /**
+     * 指定したHandlerのスレッドでBitmapへ描画する
+     */
+    public HandlerFuture<Bitmap> rasterizeAsync(Handler handler, final Bitmap.Config config) {
+        return HandlerFuture.post(handler, () -> rasterize(config));
+    }
+
+    /**
+     * 前回の記録と比較し、描画結果が変化する可能性のある範囲を取得する
+     * 同じ位置の命令同士を比較し、異なる命令の範囲を重なりがなくなるまで結合する。
+     * Bitmapは同じインスタンスかつgenerationIdが同じ場合に変化なしとする。
+     *
+     * @param previous 前回の記録、nullの場合は全ての命令の範囲となる
+     * @param result   結果の格納先、既存の内容は破棄される
+     * @return result
+     */
+    public List<Rect> diff(DisplayList previous, List<Rect> result) {
+        result.clear();
+        final int prevCount = previous != null ? previous.mCount : 0;
+        final int count = Math.max(mCount, prevCount);
+        for (int i = 0; i < count; ++i) {
+            if (i < mCount && i < prevCount && equalsCommand(i, previous, i)) {
+                continue;
+            }
+            if (i < mCount) {
+                addRegion(result, mBounds, i);
+            }
+            if (i < prevCount) {
+                addRegion(result, previous.mBounds, i);
+            }
+        }
+        return result;
+    }
+
+    private boolean equalsCommand(int index, DisplayList other, int otherIndex) {
+        for (int i = 0; i < INT_STRIDE; ++i) {
+            if (mInts[index * INT_STRIDE + i] != other.mInts[otherIndex * INT_STRIDE + i]) {
+                return false;
+            }
+        }
+        for (int i = 0; i < FLOAT_STRIDE; ++i) {
+            if (Float.compare(mFloats[index * FLOAT_STRIDE + i], other.mFloats[otherIndex * FLOAT_STRIDE + i]) != 0) {
+                return false;
+            }
+        }
+
+        final Object matrix = mRefs[index * REF_STRIDE];
+        final Object otherMatrix = other.mRefs[otherIndex * REF_STRIDE];
+        if (!equalsObject(matrix, otherMatrix)) {
+            return false;
+        }
+        final Paint paint = (Paint) mRefs[index * REF_STRIDE + 1];
+        final Paint otherPaint = (Paint) other.mRefs[otherIndex * REF_STRIDE + 1];
+        if (paint != otherPaint && !equalsPaint(paint, otherPaint)) {
+            return false;
+        }
+        final Object ref = mRefs[index * REF_STRIDE + 2];
+        final Object otherRef = other.mRefs[otherIndex * REF_STRIDE + 2];
+        if (ref instanceof String) {
+            return ref.equals(otherRef);
+        } else {
+            return ref == otherRef;
+        }
+    }
+
+    /**
+     * 範囲を追加し、重なる範囲を結合する
+     */
+    private void addRegion(List<Rect> regions, int[] bounds, int index) {
+        final int head = index * 4;
+        Rect region = new Rect(
+                Math.max(0, bounds[head]), Math.max(0, bounds[head + 1]),
+                Math.min(mWidth, bounds[head + 2]), Math.min(mHeight, bounds[head + 3]));
+        if (region.isEmpty()) {
+            return;
+        }
+
+        boolean merged;
+        do {
+            merged = false;
+            for (int i = 0; i < regions.size(); ++i) {
+                Rect other = regions.get(i);
+                if (Rect.intersects(region, other)) {
+                    region.union(other);
+                    regions.remove(i);
+                    merged = true;
+                    break;
+                }
+            }
+        } while (merged);
+        regions.add(region);
+    }
+}
@@ -1,9 +1,7 @@
 package com.eaglesakura.android.graphics;
 
 import com.eaglesakura.math.Vector2;
-import com.eaglesakura.util.CollectionUtil;
 import com.eaglesakura.util.StringUtil;
-import com.eaglesakura.util.Util;
 
 import android.graphics.Canvas;
 import android.graphics.Paint;
@@ -62,43 +60,14 @@ public class Font {
      * @param lineWidth       1行の幅
      * @param maxLines        最大行数
      */
-    public List<String> calcTextLinesFromRect(String text, String fooderText, int fontHeightPixel, int lineWidth, int maxLines) {
+    public synchronized List<String> calcTextLinesFromRect(String text, String fooderText, int fontHeightPixel, int lineWidth, int maxLines) {
         if (StringUtil.isEmpty(text)) {
             return new ArrayList<String>();
         }
 
-        List<String> lines = CollectionUtil.asList(text.split("\n"));
-
-        // 行ごとのチェックを行う
-        for (int lineNumber = 0; lineNumber < lines.size(); ++lineNumber) {
-            String line = lines.get(lineNumber);
-
-            // 各行に収まるテキストに変換する
-            line = calcTextInRectNewLine(line, lineWidth, fontHeightPixel);
-            lines.set(lineNumber, line);
-        }
-
-        // 再度改行分割をかける
-        List<String> renderingLines = new ArrayList<String>();
-        for (String line : lines) {
-            renderingLines.addAll(Util.convert(line.split("\n")));
-        }
-
-        // 最大行数を超える場合はdropする
-        boolean dropLines = false;
-        while (renderingLines.size() > maxLines) {
-            renderingLines.remove(renderingLines.size() - 1);
-            dropLines = true;
-        }
-
-        // 最終行のテキストを調整する
-        if (dropLines) {
-            String lastLine = renderingLines.get(renderingLines.size() - 1);
-            lastLine = calcTextInRect(lastLine, fooderText, true, lineWidth, fontHeightPixel);
-            renderingLines.set(renderingLines.size() - 1, lastLine);
-        }
-
-        return renderingLines;
+        // 描画に使用するpaintで計測するため、TextLayoutCacheは使用しない
+        calcFontSize(text, fontHeightPixel);
+        return TextLayout.create(paint, text, fooderText, lineWidth, maxLines).getLines();
     }
 
     /**
@@ -180,17 +149,14 @@ public class Font {
 
     /**
      * 指定した高さピクセル数を満たすフォントサイズを取得する
+     * 1行の高さはフォントメトリクスのみで決まるため、結果はTypefaceと高さごとにキャッシュされる。
      *
      * @param text        レンダリング対象の文字列
      * @param heightPixel 計算する高さピクセル数
      */
     public synchronized int calcFontSize(final String text, int heightPixel) {
-        Vector2 size = new Vector2();
-        int fontSize = heightPixel + 5;
-        while (calcTextSize(text, fontSize, size).y > heightPixel && heightPixel > 1) {
-            //                AndroidUtil.log(String.format("TextSize(%d x %d)", size.x, size.y));
-            --fontSize;
-        }
+        final int fontSize = FontSizeCache.getFontSize(font, heightPixel);
+        paint.setTextSize(fontSize);
         return fontSize;
     }
 
@@ -205,56 +171,22 @@ public class Font {
      * @param widthPixel  幅のピクセル数
      * @param heightPixel 高さピクセル数
      */
-    public String calcTextInRect(final String baseText, final String fooderText, boolean forceFooder, int widthPixel,
-                                 int heightPixel) {
-        String tempText = forceFooder ? (baseText + fooderText) : baseText;
-        final int fontSize = calcFontSize(tempText, heightPixel);
-        Vector2 tempTextSize = new Vector2();
-
-        int index = baseText.length();
-        while (tempText.length() > 0 && calcTextSize(tempText, fontSize, tempTextSize).x > widthPixel) {
-            tempText = baseText.substring(0, --index) + fooderText;
-        }
-
-        return tempText;
+    public synchronized String calcTextInRect(final String baseText, final String fooderText, boolean forceFooder, int widthPixel,
+                                              int heightPixel) {
+        calcFontSize(baseText, heightPixel);
+        return LineBreaker.calcTextInRect(paint, baseText, fooderText, forceFooder, widthPixel);
     }
 
     /**
      * 特定サイズに収めることができる文字を生成する。
      * <br>
-     * height/widthの値は変更せず、オーバーする場合は折り返しを行う
+     * height/widthの値は変更せず、オーバーする場合は単語単位で折り返しを行う
      *
      * @param widthPixel  1行の幅
      * @param heightPixel 1行の高さ
      */
-    public String calcTextInRectNewLine(final String baseText, int widthPixel, int heightPixel) {
-        final int fontSize = calcFontSize(baseText, heightPixel);
-        String allText = baseText;
-        Vector2 tempTextSize = new Vector2();
-
-        List<String> result = new ArrayList<String>();
-
-        while (!allText.isEmpty()) {
-            int index = allText.length();
-            String tempText = allText;
-            while (tempText.length() > 0 && calcTextSize(tempText, fontSize, tempTextSize).x > widthPixel) {
-                tempText = allText.substring(0, --index);
-            }
-
-            result.add(tempText);
-            allText = allText.substring(tempText.length());
-        }
-
-        String tempResult = "";
-        int index = 0;
-        for (String txt : result) {
-            if (index > 0) {
-                tempResult += "\n";
-            }
-            tempResult += txt;
-            ++index;
-        }
-
-        return tempResult;
+    public synchronized String calcTextInRectNewLine(final String baseText, int widthPixel, int heightPixel) {
+        calcFontSize(baseText, heightPixel);
+        return LineBreaker.calcTextInRectNewLine(paint, baseText, widthPixel);
     }
 }
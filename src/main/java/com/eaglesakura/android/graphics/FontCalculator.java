@@ -1,9 +1,7 @@
 package com.eaglesakura.android.graphics;
 
 import com.eaglesakura.math.Vector2;
-import com.eaglesakura.util.CollectionUtil;
 import com.eaglesakura.util.StringUtil;
-import com.eaglesakura.util.Util;
 
 import android.graphics.Canvas;
 import android.graphics.Paint;
@@ -48,9 +46,10 @@ public class FontCalculator {
 
     /**
      * フォントの高さを指定する
+     * フォントサイズはTypefaceと高さごとにキャッシュされる。
      */
     public void setFontHeight(int pixelHeight) {
-        this.fontSize = calcFontSize("Ag", pixelHeight, font);
+        this.fontSize = FontSizeCache.getFontSize(font, pixelHeight);
         this.fontHeightPixel = pixelHeight;
     }
 
@@ -66,38 +65,19 @@ public class FontCalculator {
             return new ArrayList<>();
         }
 
-        List<String> lines = CollectionUtil.asList(text.split("\n"));
-
-        // 行ごとのチェックを行う
-        for (int lineNumber = 0; lineNumber < lines.size(); ++lineNumber) {
-            String line = lines.get(lineNumber);
-
-            // 各行に収まるテキストに変換する
-            line = calcTextInRectNewLine(line, lineWidth);
-            lines.set(lineNumber, line);
-        }
-
-        // 再度改行分割をかける
-        List<String> renderingLines = new ArrayList<String>();
-        for (String line : lines) {
-            renderingLines.addAll(Util.convert(line.split("\n")));
-        }
-
-        // 最大行数を超える場合はdropする
-        boolean dropLines = false;
-        while (renderingLines.size() > maxLines) {
-            renderingLines.remove(renderingLines.size() - 1);
-            dropLines = true;
-        }
-
-        // 最終行のテキストを調整する
-        if (dropLines) {
-            String lastLine = renderingLines.get(renderingLines.size() - 1);
-            lastLine = calcTextInRect(lastLine, fooderText, true, lineWidth);
-            renderingLines.set(renderingLines.size() - 1, lastLine);
-        }
+        return getTextLayout(text, fooderText, lineWidth, maxLines).getLines();
+    }
 
-        return renderingLines;
+    /**
+     * 指定した1行幅と最大行数で、テキストを行へ分割する。
+     * 結果は{@link TextLayoutCache#getDefault()}にキャッシュされるため、バックグラウンドスレッドから呼び出して事前に計算しておくことができる。
+     *
+     * @param fooderText 文字列が収まらない場合のフッダーテキスト
+     * @param lineWidth  1行の幅
+     * @param maxLines   最大行数
+     */
+    public TextLayout getTextLayout(String text, String fooderText, int lineWidth, int maxLines) {
+        return TextLayoutCache.getDefault().get(text, fooderText, font, fontSize, lineWidth, maxLines);
     }
 
     /**
@@ -180,25 +160,6 @@ public class FontCalculator {
         return result;
     }
 
-    /**
-     * 指定した高さピクセル数を満たすフォントサイズを取得する
-     *
-     * @param text        レンダリング対象の文字列
-     * @param heightPixel 計算する高さピクセル数
-     */
-    private static int calcFontSize(final String text, final int heightPixel, final Typeface font) {
-        Vector2 size = new Vector2();
-        int fontSize = heightPixel + 5;
-        Paint paint = new Paint();
-        paint.setTypeface(font);
-        paint.setAntiAlias(true);
-        while (calcTextSize(text, paint, fontSize, size).y > heightPixel && heightPixel > 1) {
-            //                AndroidUtil.log(String.format("TextSize(%d x %d)", size.x, size.y));
-            --fontSize;
-        }
-        return fontSize;
-    }
-
     /**
      * テキストを描画した場合のエリアを取得する
      */
@@ -221,59 +182,27 @@ public class FontCalculator {
      * @param widthPixel  幅のピクセル数
      */
     public String calcTextInRect(final String baseText, final String fooderText, boolean forceFooder, int widthPixel) {
-        String tempText = forceFooder ? (baseText + fooderText) : baseText;
-        Vector2 tempTextSize = new Vector2();
-
-        int index = baseText.length();
-        Paint paint = new Paint();
-        paint.setTypeface(font);
-        paint.setTextSize(fontSize);
-
-        while (tempText.length() > 0 && calcTextSize(tempText, paint, fontSize, tempTextSize).x > widthPixel) {
-            tempText = baseText.substring(0, --index) + fooderText;
-        }
-
-        return tempText;
+        return LineBreaker.calcTextInRect(newPaint(), baseText, fooderText, forceFooder, widthPixel);
     }
 
     /**
      * 特定サイズに収めることができる文字を生成する。
      * <br>
-     * height/widthの値は変更せず、オーバーする場合は折り返しを行う
+     * height/widthの値は変更せず、オーバーする場合は単語単位で折り返しを行う
      *
      * @param widthPixel 1行の幅
      */
     public String calcTextInRectNewLine(final String baseText, int widthPixel) {
-        String allText = baseText;
-        Vector2 tempTextSize = new Vector2();
-
-        List<String> result = new ArrayList<String>();
+        return LineBreaker.calcTextInRectNewLine(newPaint(), baseText, widthPixel);
+    }
 
+    /**
+     * 計測用のPaintを生成する
+     */
+    private Paint newPaint() {
         Paint paint = new Paint();
         paint.setTypeface(font);
         paint.setTextSize(fontSize);
-
-        while (!allText.isEmpty()) {
-            int index = allText.length();
-            String tempText = allText;
-            while (tempText.length() > 0 && calcTextSize(tempText, paint, fontSize, tempTextSize).x > widthPixel) {
-                tempText = allText.substring(0, --index);
-            }
-
-            result.add(tempText);
-            allText = allText.substring(tempText.length());
-        }
-
-        String tempResult = "";
-        int index = 0;
-        for (String txt : result) {
-            if (index > 0) {
-                tempResult += "\n";
-            }
-            tempResult += txt;
-            ++index;
-        }
-
-        return tempResult;
+        return paint;
     }
 }
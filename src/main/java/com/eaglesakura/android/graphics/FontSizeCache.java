@@ -0,0 +1,99 @@
+package com.eaglesakura.android.graphics;
+
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * 1行の高さピクセル数を満たすフォントサイズを、(Typeface, 高さピクセル数)ごとにキャッシュする
+ *
+ * 1行の高さはフォントメトリクスのみで決まるため、テキストの計測は行わない。
+ * Typefaceは弱参照で保持する。
+ */
+class FontSizeCache {
+
+    /**
+     * 探索を開始するフォントサイズの、高さピクセル数に対する余裕
+     */
+    private static final int SEARCH_MARGIN = 5;
+
+    private static final Map<Typeface, Map<Integer, Integer>> sCache = new WeakHashMap<>();
+
+    private FontSizeCache() {
+    }
+
+    /**
+     * 指定した高さピクセル数を満たす、最大のフォントサイズを取得する
+     * heightPixel + 5から探索し、1行の高さがheightPixel以下となるサイズを返す。
+     *
+     * @param font        フォント
+     * @param heightPixel 1行の高さピクセル数
+     */
+    static int getFontSize(Typeface font, int heightPixel) {
+        synchronized (sCache) {
+            Map<Integer, Integer> sizes = sCache.get(font);
+            if (sizes != null) {
+                Integer result = sizes.get(heightPixel);
+                if (result != null) {
+                    return result;
+                }
+            }
+        }
+
+        final int result = searchFontSize(font, heightPixel);
+        synchronized (sCache) {
+            Map<Integer, Integer> sizes = sCache.get(font);
+            if (sizes == null) {
+                sizes = new HashMap<>();
+                sCache.put(font, sizes);
+            }
+            sizes.put(heightPixel, result);
+        }
+        return result;
+    }
+
+    /**
+     * 1行の高さが単調増加することを利用し、二分探索でフォントサイズを求める
+     */
+    private static int searchFontSize(Typeface font, int heightPixel) {
+        int high = heightPixel + SEARCH_MARGIN;
+        if (heightPixel <= 1) {
+            return high;
+        }
+
+        Paint paint = new Paint();
+        paint.setTypeface(font);
+        paint.setAntiAlias(true);
+        Paint.FontMetrics metrics = new Paint.FontMetrics();
+        if (getLineHeight(paint, high, metrics) <= heightPixel) {
+            return high;
+        }
+
+        // lowは条件を満たし、highは満たさない
+        int low = 0;
+        while (high - low > 1) {
+            final int mid = (low + high) >>> 1;
+            if (getLineHeight(paint, mid, metrics) <= heightPixel) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 指定サイズでの1行の高さを取得する
+     */
+    private static int getLineHeight(Paint paint, int fontSize, Paint.FontMetrics metrics) {
+        paint.setTextSize(fontSize);
+        paint.getFontMetrics(metrics);
+        return (int) Math.max(//
+                Math.abs(metrics.ascent) + Math.abs(metrics.descent),
+                //
+                (Math.abs(metrics.top) + Math.abs(metrics.bottom)));
+    }
+}
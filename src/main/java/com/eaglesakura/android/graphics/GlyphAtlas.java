@@ -0,0 +1,604 @@
+package com.eaglesakura.android.graphics;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 文字ごとの画像を1枚のテクスチャへ詰め込むグリフアトラス
+ *
+ * 文字列ごとにBitmapを生成して転送する代わりに、未登録の文字だけをラスタライズしてアトラスへ追加する。
+ * アトラスは同じ高さの文字を横に並べる棚(Shelf)単位で確保し、空きがない場合は最も長く使われていない文字を破棄する。
+ * 書き換えられた範囲は{@link #popDirtyRegions(List)}で取得できるため、テクスチャへは差分のみを転送する。
+ * <pre>
+ * GlyphAtlas atlas = new GlyphAtlas(calculator, 512, 512, DecodedImage.PixelFormat.Luminance);
+ *
+ * // フレームごと
+ * atlas.nextFrame();
+ * int quads = atlas.layout(text, x, y, vertices, 0);
+ * for (Rect region : atlas.popDirtyRegions(regions)) {
+ *     // region.top〜region.bottomの行をglTexSubImage2D()で転送する
+ * }
+ * </pre>
+ * スレッドセーフではないため、GLスレッド等の単一のスレッドから使用する。
+ */
+public class GlyphAtlas {
+
+    /**
+     * 1文字あたりの頂点情報の数
+     * left, top, right, bottom, u0, v0, u1, v1の順に格納する。
+     */
+    public static final int QUAD_STRIDE = 8;
+
+    /**
+     * 文字の周囲に確保する余白ピクセル数
+     * テクスチャのバイリニアフィルタで隣接する文字が混ざらないようにする。
+     */
+    private static final int PADDING = 1;
+
+    /**
+     * 文字の画像
+     */
+    public static final class Glyph {
+        final int codePoint;
+
+        /**
+         * アトラス上の領域、余白を含む
+         */
+        int x;
+
+        int y;
+
+        int width;
+
+        int height;
+
+        /**
+         * ベースライン上のペン位置から、画像左上までのオフセット
+         */
+        float offsetX;
+
+        float offsetY;
+
+        /**
+         * 次の文字までの送り幅
+         */
+        float advance;
+
+        Shelf shelf;
+
+        /**
+         * 最後に使用されたフレーム番号
+         */
+        long frame;
+
+        Glyph(int codePoint) {
+            this.codePoint = codePoint;
+        }
+
+        public int getCodePoint() {
+            return codePoint;
+        }
+
+        /**
+         * 空白等、描画する画像を持たない場合はfalse
+         */
+        public boolean hasImage() {
+            return shelf != null;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public float getOffsetX() {
+            return offsetX;
+        }
+
+        public float getOffsetY() {
+            return offsetY;
+        }
+
+        public float getAdvance() {
+            return advance;
+        }
+    }
+
+    /**
+     * 同じ高さの文字を並べる横長の領域
+     */
+    static final class Shelf {
+        final int y;
+
+        final int height;
+
+        /**
+         * 未使用領域の先頭X
+         */
+        int cursor;
+
+        /**
+         * 文字の破棄によって空いた領域 {x, width}
+         */
+        final List<int[]> freeSlots = new ArrayList<>();
+
+        int glyphCount;
+
+        /**
+         * 書き換えられた範囲、ない場合はdirtyLeft >= dirtyRight
+         */
+        int dirtyLeft = Integer.MAX_VALUE;
+
+        int dirtyRight;
+
+        Shelf(int y, int height) {
+            this.y = y;
+            this.height = height;
+        }
+
+        /**
+         * 幅widthの領域を確保し、X位置を返す
+         * 確保できない場合は-1となる。
+         */
+        int allocate(int width, int atlasWidth) {
+            // 最も幅の近い空き領域を再利用する
+            int best = -1;
+            for (int i = 0; i < freeSlots.size(); ++i) {
+                final int slotWidth = freeSlots.get(i)[1];
+                if (slotWidth >= width && (best < 0 || slotWidth < freeSlots.get(best)[1])) {
+                    best = i;
+                }
+            }
+            if (best >= 0) {
+                int[] slot = freeSlots.get(best);
+                final int x = slot[0];
+                if (slot[1] == width) {
+                    freeSlots.remove(best);
+                } else {
+                    slot[0] += width;
+                    slot[1] -= width;
+                }
+                return x;
+            }
+
+            if (cursor + width <= atlasWidth) {
+                final int x = cursor;
+                cursor += width;
+                return x;
+            }
+            return -1;
+        }
+
+        void free(int x, int width) {
+            if (--glyphCount == 0) {
+                cursor = 0;
+                freeSlots.clear();
+            } else {
+                freeSlots.add(new int[]{x, width});
+            }
+        }
+
+        void markDirty(int left, int right) {
+            dirtyLeft = Math.min(dirtyLeft, left);
+            dirtyRight = Math.max(dirtyRight, right);
+        }
+    }
+
+    private final FontCalculator mFont;
+
+    private final DecodedImage mImage;
+
+    private final Paint mPaint = new Paint();
+
+    private final Paint.FontMetrics mFontMetrics;
+
+    /**
+     * 1行の高さ
+     */
+    private final int mLineHeight;
+
+    /**
+     * 登録済みの文字、最も長く使われていない順に並ぶ
+     */
+    private final Map<Integer, Glyph> mGlyphs = new LinkedHashMap<>(64, 0.75f, true);
+
+    private final List<Shelf> mShelves = new ArrayList<>();
+
+    /**
+     * 新しい棚を確保するY位置
+     */
+    private int mShelfBottom;
+
+    private long mFrame;
+
+    private long mEvictionCount;
+
+    /**
+     * ラスタライズ用の作業領域
+     */
+    private Bitmap mScratch;
+
+    private Canvas mScratchCanvas;
+
+    private int[] mScratchPixels;
+
+    private final Rect mBounds = new Rect();
+
+    /**
+     * @param font   フォントとサイズ
+     * @param width  アトラスの幅
+     * @param height アトラスの高さ
+     * @param format アトラスのピクセル形式、LuminanceまたはRGBA8888
+     */
+    public GlyphAtlas(FontCalculator font, int width, int height, DecodedImage.PixelFormat format) {
+        if (format == DecodedImage.PixelFormat.RGB565) {
+            throw new IllegalArgumentException("format = " + format);
+        }
+        mFont = font;
+        mPaint.setTypeface(font.getFont());
+        mPaint.setTextSize(font.fontSize);
+        mPaint.setAntiAlias(true);
+        mPaint.setColor(Color.WHITE);
+        mFontMetrics = mPaint.getFontMetrics();
+        mLineHeight = (int) Math.max(//
+                Math.abs(mFontMetrics.ascent) + Math.abs(mFontMetrics.descent),
+                //
+                (Math.abs(mFontMetrics.top) + Math.abs(mFontMetrics.bottom)));
+        mImage = DecodedImage.allocate(width, height, format);
+    }
+
+    public FontCalculator getFont() {
+        return mFont;
+    }
+
+    /**
+     * アトラスの画像を取得する
+     * 初回は全体を、以後は{@link #popDirtyRegions(List)}の範囲を転送する。
+     */
+    public DecodedImage getImage() {
+        return mImage;
+    }
+
+    /**
+     * 1行の高さを取得する
+     */
+    public int getLineHeight() {
+        return mLineHeight;
+    }
+
+    /**
+     * 登録済みの文字数を取得する
+     */
+    public int getGlyphCount() {
+        return mGlyphs.size();
+    }
+
+    /**
+     * 空き領域を確保するために文字を破棄した回数
+     */
+    public long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * フレームを進める
+     * 現在のフレームで使用された文字は破棄されないため、描画中の頂点が参照する領域は書き換えられない。
+     */
+    public void nextFrame() {
+        ++mFrame;
+    }
+
+    /**
+     * 文字を取得する
+     * 未登録の場合はラスタライズしてアトラスへ追加する。
+     *
+     * @return アトラスに空きがなく、破棄できる文字もない場合はnull
+     */
+    public Glyph getGlyph(int codePoint) {
+        Glyph glyph = mGlyphs.get(codePoint);
+        if (glyph == null) {
+            glyph = rasterize(codePoint);
+            if (glyph == null) {
+                return null;
+            }
+            mGlyphs.put(codePoint, glyph);
+        }
+        glyph.frame = mFrame;
+        return glyph;
+    }
+
+    /**
+     * 文字列の頂点情報を生成する
+     * yは1行目の上端となり、改行ごとに1行の高さだけ下へ進める。カーニングは行わない。
+     * アトラスに収まらない文字は頂点を生成せず、送り幅のみ進める。
+     *
+     * @param quads  頂点情報の格納先、1文字あたり{@link #QUAD_STRIDE}個の要素を使用する
+     * @param offset 格納を開始する位置
+     * @return 生成した頂点情報の数
+     */
+    public int layout(String text, float x, float y, float[] quads, int offset) {
+        final float invWidth = 1.0f / mImage.getWidth();
+        final float invHeight = 1.0f / mImage.getHeight();
+        float penX = x;
+        float baseline = y - mFontMetrics.top;
+        int result = 0;
+        int index = 0;
+        while (index < text.length()) {
+            final int codePoint = text.codePointAt(index);
+            index += Character.charCount(codePoint);
+            if (codePoint == '\n') {
+                penX = x;
+                baseline += mLineHeight;
+                continue;
+            }
+
+            Glyph glyph = getGlyph(codePoint);
+            if (glyph == null) {
+                // アトラスに収まらない文字は頂点を生成せず、送り幅のみ進める
+                penX += measureAdvance(codePoint);
+                continue;
+            }
+            if (glyph.hasImage()) {
+                final float left = penX + glyph.offsetX;
+                final float top = baseline + glyph.offsetY;
+                quads[offset++] = left;
+                quads[offset++] = top;
+                quads[offset++] = left + glyph.width;
+                quads[offset++] = top + glyph.height;
+                quads[offset++] = glyph.x * invWidth;
+                quads[offset++] = glyph.y * invHeight;
+                quads[offset++] = (glyph.x + glyph.width) * invWidth;
+                quads[offset++] = (glyph.y + glyph.height) * invHeight;
+                ++result;
+            }
+            penX += glyph.advance;
+        }
+        return result;
+    }
+
+    /**
+     * 前回の呼び出し以降に書き換えられた範囲を取得する
+     * GL ES 2.0ではGL_UNPACK_ROW_LENGTHを指定できないため、転送時は各範囲のtop〜bottomの行全体を転送すると良い。
+     *
+     * @param result 格納先、既存の内容は破棄される
+     * @return result
+     */
+    public List<Rect> popDirtyRegions(List<Rect> result) {
+        result.clear();
+        for (Shelf shelf : mShelves) {
+            if (shelf.dirtyLeft < shelf.dirtyRight) {
+                result.add(new Rect(shelf.dirtyLeft, shelf.y, shelf.dirtyRight, shelf.y + shelf.height));
+                shelf.dirtyLeft = Integer.MAX_VALUE;
+                shelf.dirtyRight = 0;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 全ての文字を破棄する
+     * アトラスのピクセルは次に文字が書き込まれるまで残る。
+     */
+    public void clear() {
+        mGlyphs.clear();
+        mShelves.clear();
+        mShelfBottom = 0;
+    }
+
+    /**
+     * アトラスと作業領域を解放する
+     */
+    public void release() {
+        clear();
+        mImage.release();
+        if (mScratch != null) {
+            mScratch.recycle();
+            mScratch = null;
+            mScratchCanvas = null;
+            mScratchPixels = null;
+        }
+    }
+
+    /**
+     * 文字の送り幅を計測する
+     */
+    private float measureAdvance(int codePoint) {
+        return mPaint.measureText(new String(Character.toChars(codePoint)));
+    }
+
+    private Glyph rasterize(int codePoint) {
+        final String text = new String(Character.toChars(codePoint));
+        Glyph glyph = new Glyph(codePoint);
+        glyph.advance = mPaint.measureText(text);
+        mPaint.getTextBounds(text, 0, text.length(), mBounds);
+        if (mBounds.isEmpty()) {
+            // 空白
+            return glyph;
+        }
+
+        final int width = mBounds.width() + PADDING * 2;
+        final int height = mBounds.height() + PADDING * 2;
+        if (!allocate(glyph, width, height)) {
+            return null;
+        }
+        glyph.offsetX = mBounds.left - PADDING;
+        glyph.offsetY = mBounds.top - PADDING;
+
+        // 作業領域へ描画し、アトラスへ転送する
+        prepareScratch(width, height);
+        mScratch.eraseColor(Color.TRANSPARENT);
+        mScratchCanvas.drawText(text, PADDING - mBounds.left, PADDING - mBounds.top, mPaint);
+        mScratch.getPixels(mScratchPixels, 0, width, 0, 0, width, height);
+        writePixels(glyph);
+        glyph.shelf.markDirty(glyph.x, glyph.x + width);
+        return glyph;
+    }
+
+    private void prepareScratch(int width, int height) {
+        if (mScratch == null || mScratch.getWidth() < width || mScratch.getHeight() < height) {
+            final int scratchWidth = Math.max(width, mScratch != null ? mScratch.getWidth() : 0);
+            final int scratchHeight = Math.max(height, mScratch != null ? mScratch.getHeight() : 0);
+            if (mScratch != null) {
+                mScratch.recycle();
+            }
+            mScratch = Bitmap.createBitmap(scratchWidth, scratchHeight, Bitmap.Config.ARGB_8888);
+            mScratchCanvas = new Canvas(mScratch);
+            mScratchPixels = new int[scratchWidth * scratchHeight];
+        }
+    }
+
+    /**
+     * 作業領域のARGB色を、アトラスのピクセル形式で書き込む
+     */
+    private void writePixels(Glyph glyph) {
+        final int atlasWidth = mImage.getWidth();
+        final int width = glyph.width;
+        final int height = glyph.height;
+        final int[] pixels = mScratchPixels;
+        final ByteBuffer buffer = (ByteBuffer) mImage.getPixels();
+        if (mImage.getFormat() == DecodedImage.PixelFormat.Luminance) {
+            for (int row = 0; row < height; ++row) {
+                final int head = (glyph.y + row) * atlasWidth + glyph.x;
+                for (int i = 0; i < width; ++i) {
+                    buffer.put(head + i, (byte) (pixels[row * width + i] >>> 24));
+                }
+            }
+        } else {
+            final int length = width * height;
+            ColorRGBA.convertPixels(ColorRGBA.PixelConversion.ArgbToRgba, pixels, 0, pixels, 0, length);
+            ColorRGBA.convertPixels(ColorRGBA.PixelConversion.PremultiplyRgba, pixels, 0, pixels, 0, length);
+            // ビッグエンディアンで書き込むことで、メモリ上でR,G,B,Aの順に並ぶ
+            IntBuffer rgba = buffer.duplicate().order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+            for (int row = 0; row < height; ++row) {
+                rgba.position((glyph.y + row) * atlasWidth + glyph.x);
+                rgba.put(pixels, row * width, width);
+            }
+        }
+    }
+
+    /**
+     * アトラス上の領域を確保する
+     * 空きがない場合は、現在のフレームで使用されていない文字を古いものから破棄する。
+     */
+    private boolean allocate(Glyph glyph, int width, int height) {
+        if (width > mImage.getWidth() || height > mImage.getHeight()) {
+            return false;
+        }
+
+        while (!tryAllocate(glyph, width, height)) {
+            if (!evictOldest()) {
+                return false;
+            }
+        }
+        glyph.width = width;
+        glyph.height = height;
+        glyph.y = glyph.shelf.y;
+        ++glyph.shelf.glyphCount;
+        return true;
+    }
+
+    private boolean tryAllocate(Glyph glyph, int width, int height) {
+        final int atlasWidth = mImage.getWidth();
+
+        // 高さの近い棚を優先する
+        final int maxWaste = height / 4 + PADDING * 2;
+        for (Shelf shelf : mShelves) {
+            if (shelf.height >= height && shelf.height - height <= maxWaste) {
+                final int x = shelf.allocate(width, atlasWidth);
+                if (x >= 0) {
+                    glyph.shelf = shelf;
+                    glyph.x = x;
+                    return true;
+                }
+            }
+        }
+
+        if (mShelfBottom + height <= mImage.getHeight()) {
+            Shelf shelf = new Shelf(mShelfBottom, height);
+            mShelves.add(shelf);
+            mShelfBottom += height;
+            glyph.shelf = shelf;
+            glyph.x = shelf.allocate(width, atlasWidth);
+            return true;
+        }
+
+        // 新しい棚を確保できない場合は、高さに余裕のある棚も使用する
+        for (Shelf shelf : mShelves) {
+            if (shelf.height >= height) {
+                final int x = shelf.allocate(width, atlasWidth);
+                if (x >= 0) {
+                    glyph.shelf = shelf;
+                    glyph.x = x;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 最も長く使われていない文字を1つ破棄する
+     *
+     * @return 破棄できる文字がない場合はfalse
+     */
+    private boolean evictOldest() {
+        Iterator<Glyph> iterator = mGlyphs.values().iterator();
+        while (iterator.hasNext()) {
+            Glyph glyph = iterator.next();
+            if (glyph.frame == mFrame) {
+                // 以降は全て現在のフレームで使用されている
+                return false;
+            }
+            if (!glyph.hasImage()) {
+                continue;
+            }
+
+            iterator.remove();
+            glyph.shelf.free(glyph.x, glyph.width);
+            if (glyph.shelf.glyphCount == 0) {
+                releaseEmptyShelves();
+            }
+            glyph.shelf = null;
+            ++mEvictionCount;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 末尾の空の棚を解放し、異なる高さの棚を確保できるようにする
+     */
+    private void releaseEmptyShelves() {
+        while (!mShelves.isEmpty()) {
+            Shelf last = mShelves.get(mShelves.size() - 1);
+            if (last.glyphCount > 0) {
+                break;
+            }
+            mShelves.remove(mShelves.size() - 1);
+            mShelfBottom = last.y;
+        }
+    }
+}
@@ -30,6 +30,10 @@ public class Graphics {
      */
     int height = 0;
 
+    /**
+     * 記録中のDisplayList
+     */
+    DisplayList recording = null;
 
     /**
      * Canvasを指定して初期化
@@ -59,19 +63,67 @@ public class Graphics {
         this.height = height;
     }
 
+    /**
+     * 描画命令の記録を開始する
+     * <br>
+     * endRecording()までの描画はCanvasへ行わず、listへ記録する。listの既存の記録は破棄される。
+     * Canvasが指定されていない場合、setWidth()/setHeight()で描画範囲を指定しておく。
+     */
+    public void beginRecording(DisplayList list) {
+        list.reset(width, height, currentMatrix);
+        recording = list;
+    }
+
+    /**
+     * 描画命令の記録を終了する
+     * 記録中に変更した行列はCanvasへ反映される。
+     *
+     * @return 記録したDisplayList
+     */
+    public DisplayList endRecording() {
+        DisplayList result = recording;
+        recording = null;
+        // 記録中の行列操作はCanvasへ反映されていない
+        applyMatrix(currentMatrix);
+        return result;
+    }
+
+    /**
+     * 記録中であればtrue
+     */
+    public boolean isRecording() {
+        return recording != null;
+    }
+
+    /**
+     * 行列をCanvasへ反映する
+     */
+    private void applyMatrix(Matrix matrix) {
+        currentMatrix = matrix;
+        if (recording != null) {
+            recording.setMatrix(matrix);
+        } else if (canvas != null) {
+            canvas.setMatrix(matrix);
+        }
+    }
+
     /**
      * 描画時のスケーリングを指定する。
      */
     public void setDrawScalling(float x, float y) {
         Matrix m = new Matrix();
         m.setScale(x, y);
-        canvas.setMatrix(m);
+        applyMatrix(m);
     }
 
     /**
      * 背景を特定色でクリアする。
      */
     public void clearRGBA(int r, int g, int b, int a) {
+        if (recording != null) {
+            recording.clear(paint, toColorARGB(a, r, g, b));
+            return;
+        }
         canvas.drawColor(toColorARGB(a, r, g, b), Mode.CLEAR);
     }
 
@@ -139,6 +191,10 @@ public class Graphics {
      * イメージの描画を行う。
      */
     public void drawBitmap(Bitmap bmp, Rect src, Rect dst) {
+        if (recording != null) {
+            recording.bitmap(paint, bmp, src, dst);
+            return;
+        }
         canvas.drawBitmap(bmp, src, dst, paint);
     }
 
@@ -146,6 +202,12 @@ public class Graphics {
      * イメージ描画を行う。
      */
     public void drawBitmap(Bitmap bmp, int x, int y) {
+        if (recording != null) {
+            srcRect.set(0, 0, bmp.getWidth(), bmp.getHeight());
+            dstRect.set(x, y, x + bmp.getWidth(), y + bmp.getHeight());
+            recording.bitmap(paint, bmp, srcRect, dstRect);
+            return;
+        }
         canvas.drawBitmap(bmp, (float) x, (float) y, paint);
     }
 
@@ -165,6 +227,10 @@ public class Graphics {
      */
     public void drawCircle(int x, int y, float r) {
         paint.setStyle(Style.STROKE);
+        if (recording != null) {
+            recording.circle(paint, true, (float) x, (float) y, r);
+            return;
+        }
         canvas.drawCircle((float) x, (float) y, r, paint);
     }
 
@@ -175,6 +241,10 @@ public class Graphics {
      */
     public void fillCircle(int x, int y, float r) {
         paint.setStyle(Style.FILL);
+        if (recording != null) {
+            recording.circle(paint, false, (float) x, (float) y, r);
+            return;
+        }
         canvas.drawCircle((float) x, (float) y, r, paint);
     }
 
@@ -183,6 +253,10 @@ public class Graphics {
      */
     public void fillRect(int x, int y, int w, int h) {
         paint.setStyle(Style.FILL);
+        if (recording != null) {
+            recording.rect(paint, false, (float) x, (float) y, (float) (x + w), (float) (y + h));
+            return;
+        }
         canvas.drawRect((float) x, (float) y, (float) (x + w), (float) (y + h), paint);
     }
 
@@ -192,6 +266,10 @@ public class Graphics {
     public void fillRoundRect(int x, int y, int w, int h, float radius) {
         paint.setStyle(Style.FILL);
         dstRectF.set(x, y, (x + w), (y + h));
+        if (recording != null) {
+            recording.roundRect(paint, false, dstRectF, radius);
+            return;
+        }
         canvas.drawRoundRect(dstRectF, radius, radius, paint);
     }
 
@@ -201,6 +279,10 @@ public class Graphics {
     public void drawRoundRect(int x, int y, int w, int h, float radius) {
         paint.setStyle(Style.STROKE);
         dstRectF.set(x, y, (x + w), (y + h));
+        if (recording != null) {
+            recording.roundRect(paint, true, dstRectF, radius);
+            return;
+        }
         canvas.drawRoundRect(dstRectF, radius, radius, paint);
     }
 
@@ -209,6 +291,10 @@ public class Graphics {
      */
     public void drawRect(int x, int y, int w, int h) {
         paint.setStyle(Style.STROKE);
+        if (recording != null) {
+            recording.rect(paint, true, (float) x, (float) y, (float) (x + w), (float) (y + h));
+            return;
+        }
         canvas.drawRect((float) x, (float) y, (float) (x + w), (float) (y + h), paint);
     }
 
@@ -273,6 +359,10 @@ public class Graphics {
             y -= height;
         }
 
+        if (recording != null) {
+            recording.text(paint, str, start, end, (float) x, (float) y, area);
+            return;
+        }
         canvas.drawText(str, start, end, (float) x, (float) y, paint);
     }
 
@@ -308,6 +398,10 @@ public class Graphics {
      */
     public void drawLine(int startX, int startY, int endX, int endY) {
         paint.setStyle(Style.STROKE);
+        if (recording != null) {
+            recording.line(paint, (float) startX, (float) startY, (float) endX, (float) endY);
+            return;
+        }
         canvas.drawLine((float) startX, (float) startY, (float) endX, (float) endY, paint);
     }
 
@@ -330,6 +424,12 @@ public class Graphics {
      */
     List<Matrix> matrixStack = new ArrayList<Matrix>();
 
+    /**
+     * 現在Canvasへ指定している描画行列。
+     * setDrawScalling()で指定した行列は行列スタックに含まれないため、別に保持する。
+     */
+    Matrix currentMatrix = new Matrix();
+
     /**
      * 上に積まれた描画行列を全て消去する。
      */
@@ -340,9 +440,7 @@ public class Graphics {
         if (matrixStack.size() == 0) {
             matrixStack.add(new Matrix());
         }
-        if (canvas != null) {
-            canvas.setMatrix(matrixStack.get(0));
-        }
+        applyMatrix(matrixStack.get(0));
     }
 
     /**
@@ -352,7 +450,7 @@ public class Graphics {
         Matrix tempMatrix = new Matrix(matrixStack.get(0));
         tempMatrix.postConcat(matrix);
         matrixStack.add(0, tempMatrix);
-        canvas.setMatrix(tempMatrix);
+        applyMatrix(tempMatrix);
     }
 
     /**
@@ -361,7 +459,7 @@ public class Graphics {
     public void loadMatrix(Matrix matrix) {
         matrixStack.remove(0);
         matrixStack.add(new Matrix(matrix));
-        canvas.setMatrix(matrixStack.get(0));
+        applyMatrix(matrixStack.get(0));
     }
 
     /**
@@ -369,7 +467,7 @@ public class Graphics {
      */
     public void popMatrix() {
         matrixStack.remove(0);
-        canvas.setMatrix(matrixStack.get(0));
+        applyMatrix(matrixStack.get(0));
     }
 
     /**
@@ -0,0 +1,375 @@
+package com.eaglesakura.android.graphics;
+
+import android.graphics.Paint;
+
+/**
+ * テキストを指定幅の行へ分割する
+ *
+ * 文字ごとの送り幅をgetTextWidths()で一度だけ計測し、累積幅から行の終端を二分探索する。
+ * 行は単語の区切り（空白の後ろ）で分割し、日本語等のCJK文字は文字単位で分割する。
+ * 区切りが見つからない場合は文字単位で分割する。結果は文字列を作らず、行の範囲として格納する。
+ * <pre>
+ * LineBreaker breaker = new LineBreaker(paint);
+ * breaker.setText(text);
+ * LineBreaker.Lines lines = breaker.breakLines(0, text.length(), width, 0, new LineBreaker.Lines());
+ * for (int i = 0; i < lines.getCount(); ++i) {
+ *     canvas.drawText(text, lines.getStart(i), lines.getEnd(i), x, y + lineHeight * i, paint);
+ * }
+ * </pre>
+ * スレッドセーフではない。
+ */
+public class LineBreaker {
+
+    /**
+     * 分割された行の範囲
+     */
+    public static class Lines {
+        int[] starts = new int[8];
+
+        int[] ends = new int[8];
+
+        float[] widths = new float[8];
+
+        int count;
+
+        /**
+         * 分割されずに残ったテキストがある場合はtrue
+         */
+        boolean truncated;
+
+        void add(int start, int end, float width) {
+            if (count == starts.length) {
+                final int capacity = count * 2;
+                int[] newStarts = new int[capacity];
+                int[] newEnds = new int[capacity];
+                float[] newWidths = new float[capacity];
+                System.arraycopy(starts, 0, newStarts, 0, count);
+                System.arraycopy(ends, 0, newEnds, 0, count);
+                System.arraycopy(widths, 0, newWidths, 0, count);
+                starts = newStarts;
+                ends = newEnds;
+                widths = newWidths;
+            }
+            starts[count] = start;
+            ends[count] = end;
+            widths[count] = width;
+            ++count;
+        }
+
+        public void clear() {
+            count = 0;
+            truncated = false;
+        }
+
+        /**
+         * 行数を取得する
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * 行の先頭位置を取得する
+         */
+        public int getStart(int line) {
+            return starts[line];
+        }
+
+        /**
+         * 行の終端位置を取得する
+         * 行末の空白と改行は含まない。
+         */
+        public int getEnd(int line) {
+            return ends[line];
+        }
+
+        /**
+         * 行の幅を取得する
+         */
+        public float getWidth(int line) {
+            return widths[line];
+        }
+
+        /**
+         * 最大行数に達し、残りのテキストが破棄された場合はtrue
+         */
+        public boolean isTruncated() {
+            return truncated;
+        }
+    }
+
+    private final Paint mPaint;
+
+    private String mText = "";
+
+    /**
+     * 文字ごとの送り幅
+     */
+    private float[] mWidths = new float[64];
+
+    /**
+     * 累積幅
+     * mAdvances[i]は先頭からi文字の幅となる
+     */
+    private float[] mAdvances = new float[65];
+
+    /**
+     * @param paint 計測に使用するPaint、フォントとサイズは設定済みであること
+     */
+    public LineBreaker(Paint paint) {
+        mPaint = paint;
+    }
+
+    /**
+     * 分割対象のテキストを指定し、文字ごとの幅を計測する
+     */
+    public void setText(String text) {
+        final int length = text.length();
+        if (mWidths.length < length) {
+            mWidths = new float[length];
+            mAdvances = new float[length + 1];
+        }
+        mText = text;
+        if (length > 0) {
+            mPaint.getTextWidths(text, 0, length, mWidths);
+        }
+
+        float advance = 0;
+        mAdvances[0] = 0;
+        for (int i = 0; i < length; ++i) {
+            advance += mWidths[i];
+            mAdvances[i + 1] = advance;
+        }
+    }
+
+    public String getText() {
+        return mText;
+    }
+
+    /**
+     * [start, end)の幅を取得する
+     */
+    public float getWidth(int start, int end) {
+        return mAdvances[end] - mAdvances[start];
+    }
+
+    /**
+     * [start, end)のうち、先頭からの幅にextraWidthを加えてmaxWidthに収まる最大の終端位置を取得する
+     */
+    private int findFitEnd(int start, int end, float extraWidth, float maxWidth) {
+        final float base = mAdvances[start];
+        int low = start;
+        int high = end;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if ((mAdvances[mid] - base) + extraWidth <= maxWidth) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * [start, end)のテキストを行へ分割する
+     *
+     * @param maxWidth 1行の最大幅
+     * @param maxLines 最大行数、0以下の場合は制限しない
+     * @param result   結果の格納先、既存の内容は破棄される
+     * @return result
+     */
+    public Lines breakLines(int start, int end, float maxWidth, int maxLines, Lines result) {
+        result.clear();
+        final String text = mText;
+        int lineStart = start;
+        while (lineStart <= end) {
+            if (maxLines > 0 && result.count == maxLines) {
+                result.truncated = true;
+                break;
+            }
+
+            // 改行位置までを1段落として扱う
+            int paragraphEnd = text.indexOf('\n', lineStart);
+            if (paragraphEnd < 0 || paragraphEnd > end) {
+                paragraphEnd = end;
+            }
+
+            int lineEnd = findFitEnd(lineStart, paragraphEnd, 0, maxWidth);
+            int nextStart;
+            if (lineEnd >= paragraphEnd) {
+                lineEnd = paragraphEnd;
+                nextStart = paragraphEnd + 1;
+            } else {
+                lineEnd = findBreak(lineStart, lineEnd);
+                nextStart = lineEnd;
+                // 次の行の先頭の空白は詰める
+                while (nextStart < paragraphEnd && isSpace(text.charAt(nextStart))) {
+                    ++nextStart;
+                }
+                if (nextStart == paragraphEnd) {
+                    ++nextStart;
+                }
+            }
+
+            // 行末の空白は幅に含めない
+            int visibleEnd = lineEnd;
+            while (visibleEnd > lineStart && isSpace(text.charAt(visibleEnd - 1))) {
+                --visibleEnd;
+            }
+            result.add(lineStart, visibleEnd, getWidth(lineStart, visibleEnd));
+
+            if (paragraphEnd == end && nextStart > end) {
+                break;
+            }
+            lineStart = nextStart;
+        }
+        return result;
+    }
+
+    /**
+     * (lineStart, fitEnd]の範囲で、分割に適した位置を後ろから探す
+     * 見つからない場合は文字単位で分割し、最低1文字は行に含める。
+     */
+    private int findBreak(int lineStart, int fitEnd) {
+        final String text = mText;
+        for (int i = fitEnd; i > lineStart; --i) {
+            if (isBreakOpportunity(text.charAt(i - 1), text.charAt(i))) {
+                return i;
+            }
+        }
+
+        int result = Math.max(fitEnd, lineStart + 1);
+        // サロゲートペアは分割しない
+        if (result < text.length() && Character.isHighSurrogate(text.charAt(result - 1)) && Character.isLowSurrogate(text.charAt(result))) {
+            result = (result - 1 > lineStart) ? result - 1 : result + 1;
+        }
+        return result;
+    }
+
+    /**
+     * prevとnextの間で改行できる場合はtrue
+     */
+    static boolean isBreakOpportunity(char prev, char next) {
+        if (isSpace(next)) {
+            // 空白は行末にぶら下げる
+            return false;
+        }
+        if (isSpace(prev)) {
+            return true;
+        }
+        if (isNoLineStart(next)) {
+            return false;
+        }
+        return isCJK(prev) || isCJK(next);
+    }
+
+    static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '　';
+    }
+
+    /**
+     * 文字単位で改行できる文字であればtrue
+     */
+    static boolean isCJK(char c) {
+        return (c >= 0x2E80 && c <= 0x9FFF)     // CJK部首, 句読点, かな, 漢字
+                || (c >= 0xAC00 && c <= 0xD7AF) // ハングル
+                || (c >= 0xF900 && c <= 0xFAFF) // CJK互換漢字
+                || (c >= 0xFF00 && c <= 0xFFEF); // 全角英数, 半角カナ
+    }
+
+    /**
+     * 行頭に置くことができない文字（行頭禁則）であればtrue
+     */
+    static boolean isNoLineStart(char c) {
+        switch (c) {
+            case '、':
+            case '。':
+            case '，':
+            case '．':
+            case '）':
+            case '」':
+            case '』':
+            case '】':
+            case '〉':
+            case '》':
+            case '〕':
+            case '］':
+            case '｝':
+            case 'ー':
+            case '…':
+            case '！':
+            case '？':
+            case 'っ':
+            case 'ゃ':
+            case 'ゅ':
+            case 'ょ':
+            case 'ッ':
+            case 'ャ':
+            case 'ュ':
+            case 'ョ':
+            case '・':
+            case ')':
+            case ']':
+            case '}':
+            case ',':
+            case '.':
+            case '!':
+            case '?':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * [start, end)の先頭から、footerWidthを加えてmaxWidthに収まる最大の終端位置を取得する
+     * 1文字も収まらない場合はstartとなる。
+     */
+    public int findEllipsizeEnd(int start, int end, float footerWidth, float maxWidth) {
+        int result = findFitEnd(start, end, footerWidth, maxWidth);
+        // サロゲートペアは分割しない
+        if (result > start && result < mText.length() && Character.isHighSurrogate(mText.charAt(result - 1))) {
+            --result;
+        }
+        return result;
+    }
+
+    /**
+     * テキストを行へ分割し、改行で連結する
+     */
+    static String calcTextInRectNewLine(Paint paint, String text, int widthPixel) {
+        if (text.isEmpty()) {
+            return text;
+        }
+
+        LineBreaker breaker = new LineBreaker(paint);
+        breaker.setText(text);
+        Lines lines = breaker.breakLines(0, text.length(), widthPixel, 0, new Lines());
+        StringBuilder result = new StringBuilder(text.length() + lines.getCount());
+        for (int i = 0; i < lines.getCount(); ++i) {
+            if (i > 0) {
+                result.append('\n');
+            }
+            result.append(text, lines.getStart(i), lines.getEnd(i));
+        }
+        return result.toString();
+    }
+
+    /**
+     * 指定幅に収まらない場合、テキストの末尾を削ってfooderTextに置き換える
+     *
+     * @param forceFooder 強制的にフッダを付与する場合はtrue
+     */
+    static String calcTextInRect(Paint paint, String baseText, String fooderText, boolean forceFooder, int widthPixel) {
+        LineBreaker breaker = new LineBreaker(paint);
+        breaker.setText(baseText);
+        final int length = baseText.length();
+        if (!forceFooder && breaker.getWidth(0, length) <= widthPixel) {
+            return baseText;
+        }
+
+        final int end = breaker.findEllipsizeEnd(0, length, paint.measureText(fooderText), widthPixel);
+        return baseText.substring(0, end) + fooderText;
+    }
+}
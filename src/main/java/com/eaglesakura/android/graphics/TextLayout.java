@@ -0,0 +1,141 @@
+package com.eaglesakura.android.graphics;
+
+import android.graphics.Paint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * テキストを行へ分割した結果
+ *
+ * 行は元のテキストの範囲として保持し、文字列は必要になった時点で生成する。
+ * 最大行数を超えた場合、最終行の末尾はフッダーテキストに置き換えられる。
+ * 生成後は変更されないため、複数スレッドから参照できる。
+ */
+public final class TextLayout {
+
+    private final String mText;
+
+    private final String mFooderText;
+
+    private final int[] mStarts;
+
+    private final int[] mEnds;
+
+    private final float[] mWidths;
+
+    private final boolean mTruncated;
+
+    private TextLayout(String text, String fooderText, LineBreaker.Lines lines) {
+        final int count = lines.getCount();
+        mText = text;
+        mFooderText = fooderText;
+        mStarts = new int[count];
+        mEnds = new int[count];
+        mWidths = new float[count];
+        System.arraycopy(lines.starts, 0, mStarts, 0, count);
+        System.arraycopy(lines.ends, 0, mEnds, 0, count);
+        System.arraycopy(lines.widths, 0, mWidths, 0, count);
+        mTruncated = lines.isTruncated() && count > 0;
+    }
+
+    /**
+     * 分割対象のテキストを取得する
+     */
+    public String getText() {
+        return mText;
+    }
+
+    /**
+     * 行数を取得する
+     */
+    public int getLineCount() {
+        return mStarts.length;
+    }
+
+    /**
+     * 行の先頭位置を取得する
+     */
+    public int getLineStart(int line) {
+        return mStarts[line];
+    }
+
+    /**
+     * 行の終端位置を取得する
+     * 最終行がフッダーテキストに置き換えられる場合、置き換え前までの位置となる。
+     */
+    public int getLineEnd(int line) {
+        return mEnds[line];
+    }
+
+    /**
+     * 行の幅を取得する
+     * フッダーテキストの幅は含まない。
+     */
+    public float getLineWidth(int line) {
+        return mWidths[line];
+    }
+
+    /**
+     * 最大行数を超え、最終行がフッダーテキストに置き換えられている場合はtrue
+     */
+    public boolean isTruncated() {
+        return mTruncated;
+    }
+
+    /**
+     * 行の文字列を取得する
+     */
+    public String getLine(int line) {
+        String result = mText.substring(mStarts[line], mEnds[line]);
+        if (mTruncated && mFooderText != null && line == mStarts.length - 1) {
+            result += mFooderText;
+        }
+        return result;
+    }
+
+    /**
+     * 全ての行の文字列を取得する
+     */
+    public List<String> getLines() {
+        List<String> result = new ArrayList<>(mStarts.length);
+        for (int i = 0; i < mStarts.length; ++i) {
+            result.add(getLine(i));
+        }
+        return result;
+    }
+
+    /**
+     * テキストを行へ分割する
+     * 末尾の改行は行として扱わない。
+     *
+     * @param paint      計測に使用するPaint、フォントとサイズは設定済みであること
+     * @param fooderText 文字列が収まらない場合のフッダーテキスト、nullの場合は付与しない
+     * @param lineWidth  1行の幅
+     * @param maxLines   最大行数
+     */
+    static TextLayout create(Paint paint, String text, String fooderText, int lineWidth, int maxLines) {
+        LineBreaker.Lines lines = new LineBreaker.Lines();
+        int end = text.length();
+        while (end > 0 && text.charAt(end - 1) == '\n') {
+            --end;
+        }
+        if (end == 0) {
+            return new TextLayout(text, fooderText, lines);
+        }
+
+        LineBreaker breaker = new LineBreaker(paint);
+        breaker.setText(text);
+        breaker.breakLines(0, end, lineWidth, maxLines, lines);
+        if (lines.isTruncated() && lines.getCount() > 0) {
+            // 最終行はフッダーテキストが収まる位置まで削る
+            final int last = lines.getCount() - 1;
+            final int start = lines.getStart(last);
+            final float fooderWidth = fooderText != null ? paint.measureText(fooderText) : 0;
+            final int lastEnd = breaker.findEllipsizeEnd(start, lines.getEnd(last), fooderWidth, lineWidth);
+            lines.ends[last] = lastEnd;
+            lines.widths[last] = breaker.getWidth(start, lastEnd);
+        }
+        return new TextLayout(text, fooderText, lines);
+    }
+}
@@ -0,0 +1,220 @@
+package com.eaglesakura.android.graphics;
+
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * テキストの行分割結果を、最近使用された順に一定数キャッシュする
+ *
+ * リスト表示のように同じテキストを同じ幅で繰り返しレイアウトする場合、計測を省略できる。
+ * キーは(テキスト, Typeface, フォントサイズ, 1行の幅, 最大行数, フッダーテキスト)となる。
+ * バックグラウンドスレッドからget()を呼び出すことで、表示前にレイアウトを済ませておくことができる。
+ * <pre>
+ * TextLayout layout = TextLayoutCache.getDefault().get(text, "...", typeface, fontSize, width, 3);
+ * </pre>
+ * 全てのメソッドはスレッドセーフである。
+ */
+public class TextLayoutCache {
+
+    private static TextLayoutCache sDefault;
+
+    private final Map<Key, TextLayout> mLayouts;
+
+    /**
+     * キャッシュする最大数
+     */
+    private int mMaxSize;
+
+    private long mHitCount;
+
+    private long mMissCount;
+
+    private long mEvictionCount;
+
+    /**
+     * @param maxSize キャッシュする最大数
+     */
+    public TextLayoutCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize = " + maxSize);
+        }
+        mMaxSize = maxSize;
+        mLayouts = new LinkedHashMap<Key, TextLayout>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, TextLayout> eldest) {
+                if (size() > mMaxSize) {
+                    ++mEvictionCount;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 共有のキャッシュを取得する
+     */
+    public static synchronized TextLayoutCache getDefault() {
+        if (sDefault == null) {
+            sDefault = new TextLayoutCache(256);
+        }
+        return sDefault;
+    }
+
+    /**
+     * 行分割結果を取得する
+     * キャッシュに存在しない場合は、呼び出したスレッドで計測してキャッシュへ追加する。
+     *
+     * @param text       分割するテキスト
+     * @param fooderText 文字列が収まらない場合のフッダーテキスト、nullの場合は付与しない
+     * @param font       フォント
+     * @param fontSize   Paint用のフォントサイズ
+     * @param lineWidth  1行の幅
+     * @param maxLines   最大行数
+     */
+    public TextLayout get(String text, String fooderText, Typeface font, int fontSize, int lineWidth, int maxLines) {
+        final Key key = new Key(text, fooderText, font, fontSize, lineWidth, maxLines);
+        synchronized (this) {
+            TextLayout result = mLayouts.get(key);
+            if (result != null) {
+                ++mHitCount;
+                return result;
+            }
+            ++mMissCount;
+        }
+
+        // 計測中はロックを保持しない
+        Paint paint = new Paint();
+        paint.setTypeface(font);
+        paint.setTextSize(fontSize);
+        TextLayout result = TextLayout.create(paint, text, fooderText, lineWidth, maxLines);
+        synchronized (this) {
+            mLayouts.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * キャッシュする最大数を変更する
+     * 超過した分は古いものから破棄する。
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize = " + maxSize);
+        }
+        mMaxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    public synchronized int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * 現在キャッシュしている数を取得する
+     */
+    public synchronized int size() {
+        return mLayouts.size();
+    }
+
+    /**
+     * 古いものから破棄し、キャッシュ数をsize以下にする
+     */
+    public synchronized void trimToSize(int size) {
+        Iterator<TextLayout> iterator = mLayouts.values().iterator();
+        while (mLayouts.size() > size && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            ++mEvictionCount;
+        }
+    }
+
+    /**
+     * 全てのキャッシュを破棄する
+     * 統計情報は変更しない。
+     */
+    public synchronized void clear() {
+        mLayouts.clear();
+    }
+
+    /**
+     * キャッシュから取得できた回数
+     */
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * キャッシュに存在せず、計測を行った回数
+     */
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * 最大数を超えたため破棄した回数
+     */
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    private static final class Key {
+        final String text;
+
+        final String fooderText;
+
+        final Typeface font;
+
+        final int fontSize;
+
+        final int lineWidth;
+
+        final int maxLines;
+
+        final int hash;
+
+        Key(String text, String fooderText, Typeface font, int fontSize, int lineWidth, int maxLines) {
+            this.text = text;
+            this.fooderText = fooderText;
+            this.font = font;
+            this.fontSize = fontSize;
+            this.lineWidth = lineWidth;
+            this.maxLines = maxLines;
+
+            int hash = text.hashCode();
+            hash = hash * 31 + (fooderText != null ? fooderText.hashCode() : 0);
+            hash = hash * 31 + (font != null ? font.hashCode() : 0);
+            hash = hash * 31 + fontSize;
+            hash = hash * 31 + lineWidth;
+            hash = hash * 31 + maxLines;
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash
+                    && fontSize == other.fontSize
+                    && lineWidth == other.lineWidth
+                    && maxLines == other.maxLines
+                    && (font == null ? other.font == null : font.equals(other.font))
+                    && text.equals(other.text)
+                    && (fooderText == null ? other.fooderText == null : fooderText.equals(other.fooderText));
+        }
+    }
+}
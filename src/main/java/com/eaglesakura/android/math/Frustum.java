@@ -0,0 +1,309 @@
+package com.eaglesakura.android.math;
+
+import com.eaglesakura.android.thread.ParallelRange;
+
+/**
+ * 視錐台を管理し、球・AABBの可視判定を行う
+ *
+ * 平面はProjection * View行列から抽出し、法線は視錐台の内側を向く。
+ * 一括判定では、オブジェクトの座標等をstruct-of-arrays形式のfloat配列で受け取り、
+ * 可視判定の結果をint配列のビットマスクへ書き込む。i番目のオブジェクトの結果は
+ * (mask[i / 32] &gt;&gt;&gt; (i % 32)) &amp; 0x01 となる。
+ */
+public final class Frustum {
+
+    /**
+     * クリップ空間の深度範囲
+     */
+    public enum DepthRange {
+        /**
+         * -w &lt;= z &lt;= w
+         * android.opengl.Matrix.perspectiveM()/frustumM()で作成した行列
+         */
+        MinusOneToOne,
+
+        /**
+         * 0 &lt;= z &lt;= w
+         * {@link Matrix4x4#projection(float, float, float, float)}で作成した行列
+         */
+        ZeroToOne,
+    }
+
+    public static final int PLANE_LEFT = 0;
+
+    public static final int PLANE_RIGHT = 1;
+
+    public static final int PLANE_BOTTOM = 2;
+
+    public static final int PLANE_TOP = 3;
+
+    public static final int PLANE_NEAR = 4;
+
+    public static final int PLANE_FAR = 5;
+
+    private static final int PLANE_COUNT = 6;
+
+    /**
+     * 並列処理を行う場合の、1スレッドあたりの最小マスク数（32オブジェクト単位）
+     */
+    private static final int PARALLEL_MIN_WORDS = 128;
+
+    /**
+     * 平面ごとに(nx, ny, nz, d)を格納する
+     * nx * x + ny * y + nz * z + d &gt;= 0 が内側となる
+     */
+    public final float[] planes = new float[PLANE_COUNT * 4];
+
+    public Frustum() {
+    }
+
+    /**
+     * {@link Matrix4x4#projection(float, float, float, float)}の深度範囲として、行列から視錐台を作成する
+     * android.opengl.Matrixで作成した射影行列の場合は、{@link DepthRange#MinusOneToOne}を指定すること。
+     *
+     * @param viewProjection Projection * View行列
+     */
+    public Frustum set(Matrix4x4 viewProjection) {
+        return set(viewProjection, DepthRange.ZeroToOne);
+    }
+
+    /**
+     * 行列から視錐台を作成する
+     *
+     * @param viewProjection Projection * View行列
+     * @param depthRange     射影行列の深度範囲
+     */
+    public Frustum set(Matrix4x4 viewProjection, DepthRange depthRange) {
+        final float[] m = viewProjection.m;
+        // 列優先のため、i行目は(m[i], m[4 + i], m[8 + i], m[12 + i])となる
+        final float r0x = m[0], r0y = m[4], r0z = m[8], r0w = m[12];
+        final float r1x = m[1], r1y = m[5], r1z = m[9], r1w = m[13];
+        final float r2x = m[2], r2y = m[6], r2z = m[10], r2w = m[14];
+        final float r3x = m[3], r3y = m[7], r3z = m[11], r3w = m[15];
+
+        setPlane(PLANE_LEFT, r3x + r0x, r3y + r0y, r3z + r0z, r3w + r0w);
+        setPlane(PLANE_RIGHT, r3x - r0x, r3y - r0y, r3z - r0z, r3w - r0w);
+        setPlane(PLANE_BOTTOM, r3x + r1x, r3y + r1y, r3z + r1z, r3w + r1w);
+        setPlane(PLANE_TOP, r3x - r1x, r3y - r1y, r3z - r1z, r3w - r1w);
+        if (depthRange == DepthRange.ZeroToOne) {
+            setPlane(PLANE_NEAR, r2x, r2y, r2z, r2w);
+        } else {
+            setPlane(PLANE_NEAR, r3x + r2x, r3y + r2y, r3z + r2z, r3w + r2w);
+        }
+        setPlane(PLANE_FAR, r3x - r2x, r3y - r2y, r3z - r2z, r3w - r2w);
+        return this;
+    }
+
+    /**
+     * 平面を正規化して格納する
+     */
+    private void setPlane(int index, float nx, float ny, float nz, float d) {
+        final float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        final float invLength = length > 0.0f ? 1.0f / length : 0.0f;
+        final int i = index * 4;
+        planes[i] = nx * invLength;
+        planes[i + 1] = ny * invLength;
+        planes[i + 2] = nz * invLength;
+        planes[i + 3] = d * invLength;
+    }
+
+    /**
+     * 点が視錐台の内側にあればtrue
+     */
+    public boolean isVisiblePoint(float x, float y, float z) {
+        return isVisibleSphere(x, y, z, 0);
+    }
+
+    /**
+     * 球の一部でも視錐台の内側にあればtrue
+     */
+    public boolean isVisibleSphere(float x, float y, float z, float radius) {
+        final float[] p = planes;
+        for (int i = 0; i < PLANE_COUNT * 4; i += 4) {
+            if (p[i] * x + p[i + 1] * y + p[i + 2] * z + p[i + 3] < -radius) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * AABBの一部でも視錐台の内側にあればtrue
+     * 視錐台の角付近では、外側のAABBを可視と判定することがある。
+     *
+     * @param centerX AABBの中心
+     * @param extentX AABBの各軸の半分の大きさ
+     */
+    public boolean isVisibleBox(float centerX, float centerY, float centerZ, float extentX, float extentY, float extentZ) {
+        final float[] p = planes;
+        for (int i = 0; i < PLANE_COUNT * 4; i += 4) {
+            final float nx = p[i], ny = p[i + 1], nz = p[i + 2];
+            final float distance = nx * centerX + ny * centerY + nz * centerZ + p[i + 3];
+            final float radius = Math.abs(nx) * extentX + Math.abs(ny) * extentY + Math.abs(nz) * extentZ;
+            if (distance < -radius) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 球をまとめて判定し、可視であるもののビットを立てる
+     *
+     * @param x       球の中心
+     * @param radius  球の半径
+     * @param offset  各配列の読み込み開始位置
+     * @param count   球の数
+     * @param visible 結果の格納先、(count + 31) / 32以上の長さが必要
+     * @return 可視と判定された数
+     */
+    public int cullSpheres(float[] x, float[] y, float[] z, float[] radius, int offset, int count, int[] visible) {
+        return cullSpheres(x, y, z, radius, offset, count, visible, false);
+    }
+
+    /**
+     * 球をまとめて判定し、可視であるもののビットを立てる
+     *
+     * @param parallel 数が十分に多い場合、複数スレッドで処理する
+     * @see #cullSpheres(float[], float[], float[], float[], int, int, int[])
+     */
+    public int cullSpheres(final float[] x, final float[] y, final float[] z, final float[] radius, final int offset, final int count, final int[] visible, boolean parallel) {
+        final int words = getMaskLength(count);
+        if (parallel) {
+            ParallelRange.run(words, PARALLEL_MIN_WORDS, (begin, end) -> cullSpheres(planes, x, y, z, radius, offset, count, visible, begin, end));
+        } else {
+            cullSpheres(planes, x, y, z, radius, offset, count, visible, 0, words);
+        }
+        return countVisible(visible, words);
+    }
+
+    private static void cullSpheres(float[] p, float[] x, float[] y, float[] z, float[] radius, int offset, int count, int[] visible, int wordBegin, int wordEnd) {
+        final float p0x = p[0], p0y = p[1], p0z = p[2], p0w = p[3];
+        final float p1x = p[4], p1y = p[5], p1z = p[6], p1w = p[7];
+        final float p2x = p[8], p2y = p[9], p2z = p[10], p2w = p[11];
+        final float p3x = p[12], p3y = p[13], p3z = p[14], p3w = p[15];
+        final float p4x = p[16], p4y = p[17], p4z = p[18], p4w = p[19];
+        final float p5x = p[20], p5y = p[21], p5z = p[22], p5w = p[23];
+
+        for (int word = wordBegin; word < wordEnd; ++word) {
+            final int begin = word << 5;
+            final int end = Math.min(count, begin + 32);
+            int bits = 0;
+            for (int i = begin; i < end; ++i) {
+                final int index = offset + i;
+                final float cx = x[index];
+                final float cy = y[index];
+                final float cz = z[index];
+                final float r = -radius[index];
+
+                // 分岐を減らすため、全ての平面を評価する
+                final boolean inside = (p0x * cx + p0y * cy + p0z * cz + p0w >= r)
+                        & (p1x * cx + p1y * cy + p1z * cz + p1w >= r)
+                        & (p2x * cx + p2y * cy + p2z * cz + p2w >= r)
+                        & (p3x * cx + p3y * cy + p3z * cz + p3w >= r)
+                        & (p4x * cx + p4y * cy + p4z * cz + p4w >= r)
+                        & (p5x * cx + p5y * cy + p5z * cz + p5w >= r);
+                if (inside) {
+                    bits |= 1 << (i - begin);
+                }
+            }
+            visible[word] = bits;
+        }
+    }
+
+    /**
+     * AABBをまとめて判定し、可視であるもののビットを立てる
+     *
+     * @param centerX AABBの中心
+     * @param extentX AABBの各軸の半分の大きさ
+     * @param offset  各配列の読み込み開始位置
+     * @param count   AABBの数
+     * @param visible 結果の格納先、(count + 31) / 32以上の長さが必要
+     * @return 可視と判定された数
+     */
+    public int cullBoxes(float[] centerX, float[] centerY, float[] centerZ, float[] extentX, float[] extentY, float[] extentZ, int offset, int count, int[] visible) {
+        return cullBoxes(centerX, centerY, centerZ, extentX, extentY, extentZ, offset, count, visible, false);
+    }
+
+    /**
+     * AABBをまとめて判定し、可視であるもののビットを立てる
+     *
+     * @param parallel 数が十分に多い場合、複数スレッドで処理する
+     * @see #cullBoxes(float[], float[], float[], float[], float[], float[], int, int, int[])
+     */
+    public int cullBoxes(final float[] centerX, final float[] centerY, final float[] centerZ, final float[] extentX, final float[] extentY, final float[] extentZ, final int offset, final int count, final int[] visible, boolean parallel) {
+        final int words = getMaskLength(count);
+        if (parallel) {
+            ParallelRange.run(words, PARALLEL_MIN_WORDS, (begin, end) -> cullBoxes(planes, centerX, centerY, centerZ, extentX, extentY, extentZ, offset, count, visible, begin, end));
+        } else {
+            cullBoxes(planes, centerX, centerY, centerZ, extentX, extentY, extentZ, offset, count, visible, 0, words);
+        }
+        return countVisible(visible, words);
+    }
+
+    private static void cullBoxes(float[] p, float[] centerX, float[] centerY, float[] centerZ, float[] extentX, float[] extentY, float[] extentZ, int offset, int count, int[] visible, int wordBegin, int wordEnd) {
+        final float p0x = p[0], p0y = p[1], p0z = p[2], p0w = p[3];
+        final float p1x = p[4], p1y = p[5], p1z = p[6], p1w = p[7];
+        final float p2x = p[8], p2y = p[9], p2z = p[10], p2w = p[11];
+        final float p3x = p[12], p3y = p[13], p3z = p[14], p3w = p[15];
+        final float p4x = p[16], p4y = p[17], p4z = p[18], p4w = p[19];
+        final float p5x = p[20], p5y = p[21], p5z = p[22], p5w = p[23];
+
+        // AABBの投影半径の計算に使用する法線の絶対値
+        final float a0x = Math.abs(p0x), a0y = Math.abs(p0y), a0z = Math.abs(p0z);
+        final float a1x = Math.abs(p1x), a1y = Math.abs(p1y), a1z = Math.abs(p1z);
+        final float a2x = Math.abs(p2x), a2y = Math.abs(p2y), a2z = Math.abs(p2z);
+        final float a3x = Math.abs(p3x), a3y = Math.abs(p3y), a3z = Math.abs(p3z);
+        final float a4x = Math.abs(p4x), a4y = Math.abs(p4y), a4z = Math.abs(p4z);
+        final float a5x = Math.abs(p5x), a5y = Math.abs(p5y), a5z = Math.abs(p5z);
+
+        for (int word = wordBegin; word < wordEnd; ++word) {
+            final int begin = word << 5;
+            final int end = Math.min(count, begin + 32);
+            int bits = 0;
+            for (int i = begin; i < end; ++i) {
+                final int index = offset + i;
+                final float cx = centerX[index];
+                final float cy = centerY[index];
+                final float cz = centerZ[index];
+                final float ex = extentX[index];
+                final float ey = extentY[index];
+                final float ez = extentZ[index];
+
+                // 分岐を減らすため、全ての平面を評価する
+                final boolean inside = (p0x * cx + p0y * cy + p0z * cz + p0w >= -(a0x * ex + a0y * ey + a0z * ez))
+                        & (p1x * cx + p1y * cy + p1z * cz + p1w >= -(a1x * ex + a1y * ey + a1z * ez))
+                        & (p2x * cx + p2y * cy + p2z * cz + p2w >= -(a2x * ex + a2y * ey + a2z * ez))
+                        & (p3x * cx + p3y * cy + p3z * cz + p3w >= -(a3x * ex + a3y * ey + a3z * ez))
+                        & (p4x * cx + p4y * cy + p4z * cz + p4w >= -(a4x * ex + a4y * ey + a4z * ez))
+                        & (p5x * cx + p5y * cy + p5z * cz + p5w >= -(a5x * ex + a5y * ey + a5z * ez));
+                if (inside) {
+                    bits |= 1 << (i - begin);
+                }
+            }
+            visible[word] = bits;
+        }
+    }
+
+    /**
+     * 指定した数の結果を格納するために必要なマスクの長さを取得する
+     */
+    public static int getMaskLength(int count) {
+        return (count + 31) >>> 5;
+    }
+
+    /**
+     * マスクからindex番目の結果を取得する
+     */
+    public static boolean isVisible(int[] visible, int index) {
+        return ((visible[index >>> 5] >>> (index & 31)) & 0x01) != 0;
+    }
+
+    private static int countVisible(int[] visible, int words) {
+        int result = 0;
+        for (int i = 0; i < words; ++i) {
+            result += Integer.bitCount(visible[i]);
+        }
+        return result;
+    }
+}
@@ -1,11 +1,14 @@
 package com.eaglesakura.android.math;
 
+import com.eaglesakura.android.thread.ParallelRange;
 import com.eaglesakura.math.Vector3;
 
-import android.opengl.Matrix;
+import java.nio.FloatBuffer;
 
 /**
  * OpenGL ESの挙動に合わせた4x4行列を管理する
+ *
+ * 行列演算はandroid.opengl.Matrixと同じ列優先の配置で、JNIを経由せずJavaで行う。
  */
 public final class Matrix4x4 {
     /**
@@ -24,7 +27,7 @@ public final class Matrix4x4 {
      * 回転行列を作成する。
      */
     public void rotate(float x, float y, float z, float w) {
-        Matrix.rotateM(m, 0, w, x, y, z);
+        rotateM(m, w, x, y, z);
     }
 
     /**
@@ -40,14 +43,14 @@ public final class Matrix4x4 {
      * 逆行列を作成する。
      */
     public void invert() {
-        Matrix.invertM(m, 0, m, 0);
+        invertM(m, m);
     }
 
     /**
      * 逆行列を作成する。
      */
     public Matrix4x4 invert(Matrix4x4 result) {
-        Matrix.invertM(result.m, 0, m, 0);
+        invertM(result.m, m);
         return result;
     }
 
@@ -55,7 +58,7 @@ public final class Matrix4x4 {
      * this = this * transの計算を行う。
      */
     public void multiply(Matrix4x4 trans) {
-        Matrix.multiplyMM(m, 0, trans.m, 0, m, 0);
+        multiplyMM(m, trans.m, m);
     }
 
     /**
@@ -76,51 +79,106 @@ public final class Matrix4x4 {
         return result;
     }
 
-    private static Matrix4x4 tempTrans = new Matrix4x4();
-
     /**
      * 描画用変換行列を作成する。<BR>
      * 適用は<BR>
      * scale -＞ rotateX -＞ rotateY -＞ rotateZ -＞ position<BR>
      * となる。
+     * <BR>
+     * 行列の乗算は行わず、最終的な値を直接書き込む。
      *
+     * @param rotate 各軸の回転角（度）
      * @return resultの参照
      */
     public static Matrix4x4 create(Vector3 scale, Vector3 rotate, Vector3 position, Matrix4x4 result) {
-        result.identity();
+        float sx = 1.0f, sy = 1.0f, sz = 1.0f;
+        if (scale != null) {
+            sx = scale.x;
+            sy = scale.y;
+            sz = scale.z;
+        }
 
-        if (scale != null && (scale.x != 1.0f || scale.y != 1.0f || scale.z != 1.0f)) {
-            result.scale(scale.x, scale.y, scale.z);
+        // R = Rz * Ry * Rx
+        float r00 = 1.0f, r01 = 0.0f, r02 = 0.0f;
+        float r10 = 0.0f, r11 = 1.0f, r12 = 0.0f;
+        float r20 = 0.0f, r21 = 0.0f, r22 = 1.0f;
+        if (rotate != null && (rotate.x != 0.0f || rotate.y != 0.0f || rotate.z != 0.0f)) {
+            final float ax = rotate.x * DEG_TO_RAD;
+            final float ay = rotate.y * DEG_TO_RAD;
+            final float az = rotate.z * DEG_TO_RAD;
+            final float cx = (float) Math.cos(ax), snx = (float) Math.sin(ax);
+            final float cy = (float) Math.cos(ay), sny = (float) Math.sin(ay);
+            final float cz = (float) Math.cos(az), snz = (float) Math.sin(az);
+
+            r00 = cz * cy;
+            r01 = cz * sny * snx - snz * cx;
+            r02 = cz * sny * cx + snz * snx;
+            r10 = snz * cy;
+            r11 = snz * sny * snx + cz * cx;
+            r12 = snz * sny * cx - cz * snx;
+            r20 = -sny;
+            r21 = cy * snx;
+            r22 = cy * cx;
         }
 
-        if (rotate != null) {
-            //! x
-            if (rotate.x != 0.0f) {
-                tempTrans.identity();
-                tempTrans.rotate(1.0f, 0.0f, 0.0f, rotate.x);
-                result.multiply(tempTrans);
-            }
+        final float[] m = result.m;
+        m[0] = r00 * sx;
+        m[1] = r10 * sx;
+        m[2] = r20 * sx;
+        m[3] = 0.0f;
 
-            //! y
-            if (rotate.y != 0.0f) {
-                tempTrans.identity();
-                tempTrans.rotate(0.0f, 1.0f, 0.0f, rotate.y);
-                result.multiply(tempTrans);
-            }
+        m[4] = r01 * sy;
+        m[5] = r11 * sy;
+        m[6] = r21 * sy;
+        m[7] = 0.0f;
+
+        m[8] = r02 * sz;
+        m[9] = r12 * sz;
+        m[10] = r22 * sz;
+        m[11] = 0.0f;
+
+        if (position != null) {
+            m[12] = position.x;
+            m[13] = position.y;
+            m[14] = position.z;
+        } else {
+            m[12] = 0.0f;
+            m[13] = 0.0f;
+            m[14] = 0.0f;
+        }
+        m[15] = 1.0f;
+        return result;
+    }
+
+    /**
+     * 描画用変換行列を作成する。<BR>
+     * 適用は<BR>
+     * scale -＞ rotate -＞ position<BR>
+     * となる。
+     *
+     * @param rotate 正規化されたクォータニオン
+     * @return resultの参照
+     */
+    public static Matrix4x4 createFromQuaternion(Vector3 scale, Quaternion rotate, Vector3 position, Matrix4x4 result) {
+        final float[] m = result.m;
+        if (rotate != null) {
+            setRotateQuaternion(m, rotate.x, rotate.y, rotate.z, rotate.w);
+        } else {
+            result.identity();
+        }
 
-            //! z
-            if (rotate.z != 0.0f) {
-                tempTrans.identity();
-                tempTrans.rotate(0.0f, 0.0f, 1.0f, rotate.z);
-                result.multiply(tempTrans);
+        if (scale != null) {
+            for (int row = 0; row < 3; ++row) {
+                m[row] *= scale.x;
+                m[4 + row] *= scale.y;
+                m[8 + row] *= scale.z;
             }
         }
 
         if (position != null) {
-            tempTrans.identity();
-            tempTrans.translate(position.x, position.y, position.z);
-
-            result.multiply(tempTrans);
+            m[12] = position.x;
+            m[13] = position.y;
+            m[14] = position.z;
         }
         return result;
     }
@@ -129,7 +187,7 @@ public final class Matrix4x4 {
      * result = this * transの計算を行う。
      */
     public Matrix4x4 multiply(Matrix4x4 trans, Matrix4x4 result) {
-        Matrix.multiplyMM(result.m, 0, trans.m, 0, m, 0);
+        multiplyMM(result.m, trans.m, m);
 
         return result;
     }
@@ -250,4 +308,722 @@ public final class Matrix4x4 {
         m[TO_TRANS_INDEX(3, 2)] = -Q * near;
         m[TO_TRANS_INDEX(2, 3)] = 1;
     }
+
+    /**
+     * 並列処理を行う場合の、1スレッドあたりの最小頂点数
+     */
+    private static final int PARALLEL_MIN_VERTICES = 1024 * 8;
+
+    /**
+     * transNormals()で使用する法線行列の作業領域
+     * 並列処理中は呼び出し元のスレッドが待機しているため、他のスレッドから読み込んでも書き換えられない。
+     */
+    private static final ThreadLocal<float[]> sNormalMatrix = new ThreadLocal<float[]>() {
+        @Override
+        protected float[] initialValue() {
+            return new float[9];
+        }
+    };
+
+    private static void checkStride(int srcStride, int dstStride) {
+        if (srcStride < 3 || dstStride < 3) {
+            throw new IllegalArgumentException("stride < 3");
+        }
+    }
+
+    /**
+     * 頂点座標をまとめて変換する。<BR>
+     * アフィン変換行列として扱い、wによる除算は行わない。
+     * srcとdstは同じ配列・同じ配置でも良い。
+     *
+     * @param srcStride 頂点ごとのfloat数（3以上）
+     * @param dstStride 頂点ごとのfloat数（3以上）
+     * @param count     頂点数
+     */
+    public void transPositions(float[] src, int srcOffset, int srcStride, float[] dst, int dstOffset, int dstStride, int count) {
+        transPositions(src, srcOffset, srcStride, dst, dstOffset, dstStride, count, false);
+    }
+
+    /**
+     * 頂点座標をまとめて変換する。
+     *
+     * @param parallel 頂点数が十分に多い場合、複数スレッドで処理する
+     * @see #transPositions(float[], int, int, float[], int, int, int)
+     */
+    public void transPositions(final float[] src, final int srcOffset, final int srcStride, final float[] dst, final int dstOffset, final int dstStride, int count, boolean parallel) {
+        checkStride(srcStride, dstStride);
+        if (parallel) {
+            ParallelRange.run(count, PARALLEL_MIN_VERTICES, (begin, end) -> transPositions(m, src, srcOffset, srcStride, dst, dstOffset, dstStride, begin, end));
+        } else {
+            transPositions(m, src, srcOffset, srcStride, dst, dstOffset, dstStride, 0, count);
+        }
+    }
+
+    private static void transPositions(float[] m, float[] src, int srcOffset, int srcStride, float[] dst, int dstOffset, int dstStride, int begin, int end) {
+        final float m00 = m[0], m10 = m[1], m20 = m[2];
+        final float m01 = m[4], m11 = m[5], m21 = m[6];
+        final float m02 = m[8], m12 = m[9], m22 = m[10];
+        final float m03 = m[12], m13 = m[13], m23 = m[14];
+
+        int s = srcOffset + begin * srcStride;
+        int d = dstOffset + begin * dstStride;
+        for (int i = begin; i < end; ++i) {
+            final float x = src[s];
+            final float y = src[s + 1];
+            final float z = src[s + 2];
+            dst[d] = m00 * x + m01 * y + m02 * z + m03;
+            dst[d + 1] = m10 * x + m11 * y + m12 * z + m13;
+            dst[d + 2] = m20 * x + m21 * y + m22 * z + m23;
+            s += srcStride;
+            d += dstStride;
+        }
+    }
+
+    /**
+     * 頂点座標をまとめて変換する。<BR>
+     * バッファのposition/limitは変更しない。
+     *
+     * @see #transPositions(float[], int, int, float[], int, int, int)
+     */
+    public void transPositions(FloatBuffer src, int srcOffset, int srcStride, FloatBuffer dst, int dstOffset, int dstStride, int count) {
+        transPositions(src, srcOffset, srcStride, dst, dstOffset, dstStride, count, false);
+    }
+
+    /**
+     * 頂点座標をまとめて変換する。
+     *
+     * @param parallel 頂点数が十分に多い場合、複数スレッドで処理する
+     * @see #transPositions(float[], int, int, float[], int, int, int)
+     */
+    public void transPositions(final FloatBuffer src, final int srcOffset, final int srcStride, final FloatBuffer dst, final int dstOffset, final int dstStride, int count, boolean parallel) {
+        checkStride(srcStride, dstStride);
+        if (src.hasArray() && dst.hasArray()) {
+            transPositions(src.array(), src.arrayOffset() + srcOffset, srcStride, dst.array(), dst.arrayOffset() + dstOffset, dstStride, count, parallel);
+        } else if (parallel) {
+            ParallelRange.run(count, PARALLEL_MIN_VERTICES, (begin, end) -> transPositions(m, src, srcOffset, srcStride, dst, dstOffset, dstStride, begin, end));
+        } else {
+            transPositions(m, src, srcOffset, srcStride, dst, dstOffset, dstStride, 0, count);
+        }
+    }
+
+    private static void transPositions(float[] m, FloatBuffer src, int srcOffset, int srcStride, FloatBuffer dst, int dstOffset, int dstStride, int begin, int end) {
+        final float m00 = m[0], m10 = m[1], m20 = m[2];
+        final float m01 = m[4], m11 = m[5], m21 = m[6];
+        final float m02 = m[8], m12 = m[9], m22 = m[10];
+        final float m03 = m[12], m13 = m[13], m23 = m[14];
+
+        int s = srcOffset + begin * srcStride;
+        int d = dstOffset + begin * dstStride;
+        for (int i = begin; i < end; ++i) {
+            final float x = src.get(s);
+            final float y = src.get(s + 1);
+            final float z = src.get(s + 2);
+            dst.put(d, m00 * x + m01 * y + m02 * z + m03);
+            dst.put(d + 1, m10 * x + m11 * y + m12 * z + m13);
+            dst.put(d + 2, m20 * x + m21 * y + m22 * z + m23);
+            s += srcStride;
+            d += dstStride;
+        }
+    }
+
+    /**
+     * 頂点座標をまとめて射影変換する。<BR>
+     * {@link #transVector(Vector3, Vector3)}と同じく、結果はwで除算される。
+     *
+     * @see #transPositions(float[], int, int, float[], int, int, int)
+     */
+    public void transProjectives(float[] src, int srcOffset, int srcStride, float[] dst, int dstOffset, int dstStride, int count) {
+        transProjectives(src, srcOffset, srcStride, dst, dstOffset, dstStride, count, false);
+    }
+
+    /**
+     * 頂点座標をまとめて射影変換する。
+     *
+     * @param parallel 頂点数が十分に多い場合、複数スレッドで処理する
+     * @see #transProjectives(float[], int, int, float[], int, int, int)
+     */
+    public void transProjectives(final float[] src, final int srcOffset, final int srcStride, final float[] dst, final int dstOffset, final int dstStride, int count, boolean parallel) {
+        checkStride(srcStride, dstStride);
+        if (parallel) {
+            ParallelRange.run(count, PARALLEL_MIN_VERTICES, (begin, end) -> transProjectives(m, src, srcOffset, srcStride, dst, dstOffset, dstStride, begin, end));
+        } else {
+            transProjectives(m, src, srcOffset, srcStride, dst, dstOffset, dstStride, 0, count);
+        }
+    }
+
+    private static void transProjectives(float[] m, float[] src, int srcOffset, int srcStride, float[] dst, int dstOffset, int dstStride, int begin, int end) {
+        final float m00 = m[0], m10 = m[1], m20 = m[2], m30 = m[3];
+        final float m01 = m[4], m11 = m[5], m21 = m[6], m31 = m[7];
+        final float m02 = m[8], m12 = m[9], m22 = m[10], m32 = m[11];
+        final float m03 = m[12], m13 = m[13], m23 = m[14], m33 = m[15];
+
+        int s = srcOffset + begin * srcStride;
+        int d = dstOffset + begin * dstStride;
+        for (int i = begin; i < end; ++i) {
+            final float x = src[s];
+            final float y = src[s + 1];
+            final float z = src[s + 2];
+            final float invW = 1.0f / (m30 * x + m31 * y + m32 * z + m33);
+            dst[d] = (m00 * x + m01 * y + m02 * z + m03) * invW;
+            dst[d + 1] = (m10 * x + m11 * y + m12 * z + m13) * invW;
+            dst[d + 2] = (m20 * x + m21 * y + m22 * z + m23) * invW;
+            s += srcStride;
+            d += dstStride;
+        }
+    }
+
+    /**
+     * 頂点座標をまとめて射影変換する。<BR>
+     * バッファのposition/limitは変更しない。
+     *
+     * @see #transProjectives(float[], int, int, float[], int, int, int)
+     */
+    public void transProjectives(FloatBuffer src, int srcOffset, int srcStride, FloatBuffer dst, int dstOffset, int dstStride, int count) {
+        transProjectives(src, srcOffset, srcStride, dst, dstOffset, dstStride, count, false);
+    }
+
+    /**
+     * 頂点座標をまとめて射影変換する。
+     *
+     * @param parallel 頂点数が十分に多い場合、複数スレッドで処理する
+     * @see #transProjectives(float[], int, int, float[], int, int, int)
+     */
+    public void transProjectives(final FloatBuffer src, final int srcOffset, final int srcStride, final FloatBuffer dst, final int dstOffset, final int dstStride, int count, boolean parallel) {
+        checkStride(srcStride, dstStride);
+        if (src.hasArray() && dst.hasArray()) {
+            transProjectives(src.array(), src.arrayOffset() + srcOffset, srcStride, dst.array(), dst.arrayOffset() + dstOffset, dstStride, count, parallel);
+        } else if (parallel) {
+            ParallelRange.run(count, PARALLEL_MIN_VERTICES, (begin, end) -> transProjectives(m, src, srcOffset, srcStride, dst, dstOffset, dstStride, begin, end));
+        } else {
+            transProjectives(m, src, srcOffset, srcStride, dst, dstOffset, dstStride, 0, count);
+        }
+    }
+
+    private static void transProjectives(float[] m, FloatBuffer src, int srcOffset, int srcStride, FloatBuffer dst, int dstOffset, int dstStride, int begin, int end) {
+        final float m00 = m[0], m10 = m[1], m20 = m[2], m30 = m[3];
+        final float m01 = m[4], m11 = m[5], m21 = m[6], m31 = m[7];
+        final float m02 = m[8], m12 = m[9], m22 = m[10], m32 = m[11];
+        final float m03 = m[12], m13 = m[13], m23 = m[14], m33 = m[15];
+
+        int s = srcOffset + begin * srcStride;
+        int d = dstOffset + begin * dstStride;
+        for (int i = begin; i < end; ++i) {
+            final float x = src.get(s);
+            final float y = src.get(s + 1);
+            final float z = src.get(s + 2);
+            final float invW = 1.0f / (m30 * x + m31 * y + m32 * z + m33);
+            dst.put(d, (m00 * x + m01 * y + m02 * z + m03) * invW);
+            dst.put(d + 1, (m10 * x + m11 * y + m12 * z + m13) * invW);
+            dst.put(d + 2, (m20 * x + m21 * y + m22 * z + m23) * invW);
+            s += srcStride;
+            d += dstStride;
+        }
+    }
+
+    /**
+     * 法線の変換に使用する3x3行列（左上3x3の逆転置行列）を計算する。<BR>
+     * 逆行列が存在しない場合は左上3x3をそのまま使用する。
+     *
+     * @param result 列優先の3x3行列
+     * @return resultの参照
+     */
+    public float[] getNormalMatrix(float[] result) {
+        final float a00 = m[0], a10 = m[1], a20 = m[2];
+        final float a01 = m[4], a11 = m[5], a21 = m[6];
+        final float a02 = m[8], a12 = m[9], a22 = m[10];
+
+        // 余因子行列 / det が逆転置行列となる
+        final float c00 = a11 * a22 - a12 * a21;
+        final float c01 = a12 * a20 - a10 * a22;
+        final float c02 = a10 * a21 - a11 * a20;
+        final float det = a00 * c00 + a01 * c01 + a02 * c02;
+        if (det == 0.0f) {
+            result[0] = a00;
+            result[1] = a10;
+            result[2] = a20;
+            result[3] = a01;
+            result[4] = a11;
+            result[5] = a21;
+            result[6] = a02;
+            result[7] = a12;
+            result[8] = a22;
+            return result;
+        }
+
+        final float invdet = 1.0f / det;
+        result[0] = c00 * invdet;
+        result[1] = (a02 * a21 - a01 * a22) * invdet;
+        result[2] = (a01 * a12 - a02 * a11) * invdet;
+        result[3] = c01 * invdet;
+        result[4] = (a00 * a22 - a02 * a20) * invdet;
+        result[5] = (a02 * a10 - a00 * a12) * invdet;
+        result[6] = c02 * invdet;
+        result[7] = (a01 * a20 - a00 * a21) * invdet;
+        result[8] = (a00 * a11 - a01 * a10) * invdet;
+        return result;
+    }
+
+    /**
+     * 法線をまとめて変換する。<BR>
+     * 非一様スケールを含む場合も正しく変換できるよう、左上3x3の逆転置行列を使用する。
+     *
+     * @param normalize 変換後に正規化する場合はtrue
+     * @see #transPositions(float[], int, int, float[], int, int, int)
+     */
+    public void transNormals(float[] src, int srcOffset, int srcStride, float[] dst, int dstOffset, int dstStride, int count, boolean normalize) {
+        transNormals(src, srcOffset, srcStride, dst, dstOffset, dstStride, count, normalize, false);
+    }
+
+    /**
+     * 法線をまとめて変換する。
+     *
+     * @param parallel 頂点数が十分に多い場合、複数スレッドで処理する
+     * @see #transNormals(float[], int, int, float[], int, int, int, boolean)
+     */
+    public void transNormals(final float[] src, final int srcOffset, final int srcStride, final float[] dst, final int dstOffset, final int dstStride, int count, final boolean normalize, boolean parallel) {
+        checkStride(srcStride, dstStride);
+        final float[] n = getNormalMatrix(sNormalMatrix.get());
+        if (parallel) {
+            ParallelRange.run(count, PARALLEL_MIN_VERTICES, (begin, end) -> transNormals(n, src, srcOffset, srcStride, dst, dstOffset, dstStride, normalize, begin, end));
+        } else {
+            transNormals(n, src, srcOffset, srcStride, dst, dstOffset, dstStride, normalize, 0, count);
+        }
+    }
+
+    private static void transNormals(float[] n, float[] src, int srcOffset, int srcStride, float[] dst, int dstOffset, int dstStride, boolean normalize, int begin, int end) {
+        final float n00 = n[0], n10 = n[1], n20 = n[2];
+        final float n01 = n[3], n11 = n[4], n21 = n[5];
+        final float n02 = n[6], n12 = n[7], n22 = n[8];
+
+        int s = srcOffset + begin * srcStride;
+        int d = dstOffset + begin * dstStride;
+        for (int i = begin; i < end; ++i) {
+            final float x = src[s];
+            final float y = src[s + 1];
+            final float z = src[s + 2];
+            float rx = n00 * x + n01 * y + n02 * z;
+            float ry = n10 * x + n11 * y + n12 * z;
+            float rz = n20 * x + n21 * y + n22 * z;
+            if (normalize) {
+                final float lengthSq = rx * rx + ry * ry + rz * rz;
+                if (lengthSq > 0.0f) {
+                    final float invLength = (float) (1.0 / Math.sqrt(lengthSq));
+                    rx *= invLength;
+                    ry *= invLength;
+                    rz *= invLength;
+                }
+            }
+            dst[d] = rx;
+            dst[d + 1] = ry;
+            dst[d + 2] = rz;
+            s += srcStride;
+            d += dstStride;
+        }
+    }
+
+    /**
+     * 法線をまとめて変換する。<BR>
+     * バッファのposition/limitは変更しない。
+     *
+     * @see #transNormals(float[], int, int, float[], int, int, int, boolean)
+     */
+    public void transNormals(FloatBuffer src, int srcOffset, int srcStride, FloatBuffer dst, int dstOffset, int dstStride, int count, boolean normalize) {
+        transNormals(src, srcOffset, srcStride, dst, dstOffset, dstStride, count, normalize, false);
+    }
+
+    /**
+     * 法線をまとめて変換する。
+     *
+     * @param parallel 頂点数が十分に多い場合、複数スレッドで処理する
+     * @see #transNormals(float[], int, int, float[], int, int, int, boolean)
+     */
+    public void transNormals(final FloatBuffer src, final int srcOffset, final int srcStride, final FloatBuffer dst, final int dstOffset, final int dstStride, int count, final boolean normalize, boolean parallel) {
+        checkStride(srcStride, dstStride);
+        if (src.hasArray() && dst.hasArray()) {
+            transNormals(src.array(), src.arrayOffset() + srcOffset, srcStride, dst.array(), dst.arrayOffset() + dstOffset, dstStride, count, normalize, parallel);
+            return;
+        }
+
+        final float[] n = getNormalMatrix(sNormalMatrix.get());
+        if (parallel) {
+            ParallelRange.run(count, PARALLEL_MIN_VERTICES, (begin, end) -> transNormals(n, src, srcOffset, srcStride, dst, dstOffset, dstStride, normalize, begin, end));
+        } else {
+            transNormals(n, src, srcOffset, srcStride, dst, dstOffset, dstStride, normalize, 0, count);
+        }
+    }
+
+    private static void transNormals(float[] n, FloatBuffer src, int srcOffset, int srcStride, FloatBuffer dst, int dstOffset, int dstStride, boolean normalize, int begin, int end) {
+        final float n00 = n[0], n10 = n[1], n20 = n[2];
+        final float n01 = n[3], n11 = n[4], n21 = n[5];
+        final float n02 = n[6], n12 = n[7], n22 = n[8];
+
+        int s = srcOffset + begin * srcStride;
+        int d = dstOffset + begin * dstStride;
+        for (int i = begin; i < end; ++i) {
+            final float x = src.get(s);
+            final float y = src.get(s + 1);
+            final float z = src.get(s + 2);
+            float rx = n00 * x + n01 * y + n02 * z;
+            float ry = n10 * x + n11 * y + n12 * z;
+            float rz = n20 * x + n21 * y + n22 * z;
+            if (normalize) {
+                final float lengthSq = rx * rx + ry * ry + rz * rz;
+                if (lengthSq > 0.0f) {
+                    final float invLength = (float) (1.0 / Math.sqrt(lengthSq));
+                    rx *= invLength;
+                    ry *= invLength;
+                    rz *= invLength;
+                }
+            }
+            dst.put(d, rx);
+            dst.put(d + 1, ry);
+            dst.put(d + 2, rz);
+            s += srcStride;
+            d += dstStride;
+        }
+    }
+
+    /**
+     * 正規化されたクォータニオン(x, y, z, w)から回転行列を作成し、mへ格納する。
+     */
+    public static void setRotateQuaternion(float[] m, float x, float y, float z, float w) {
+        final float x2 = x + x, y2 = y + y, z2 = z + z;
+        final float xx = x * x2, yy = y * y2, zz = z * z2;
+        final float xy = x * y2, xz = x * z2, yz = y * z2;
+        final float wx = w * x2, wy = w * y2, wz = w * z2;
+
+        m[0] = 1.0f - (yy + zz);
+        m[1] = xy + wz;
+        m[2] = xz - wy;
+        m[3] = 0.0f;
+
+        m[4] = xy - wz;
+        m[5] = 1.0f - (xx + zz);
+        m[6] = yz + wx;
+        m[7] = 0.0f;
+
+        m[8] = xz + wy;
+        m[9] = yz - wx;
+        m[10] = 1.0f - (xx + yy);
+        m[11] = 0.0f;
+
+        m[12] = 0.0f;
+        m[13] = 0.0f;
+        m[14] = 0.0f;
+        m[15] = 1.0f;
+    }
+
+    private static final float DEG_TO_RAD = (float) (Math.PI / 180.0f);
+
+    /**
+     * result = lhs * rhsの計算を行う。<BR>
+     * android.opengl.Matrix.multiplyMM()と同じ結果となり、resultはlhs/rhsと同じ配列でも良い。
+     */
+    public static void multiplyMM(float[] result, float[] lhs, float[] rhs) {
+        final float l00 = lhs[0], l10 = lhs[1], l20 = lhs[2], l30 = lhs[3];
+        final float l01 = lhs[4], l11 = lhs[5], l21 = lhs[6], l31 = lhs[7];
+        final float l02 = lhs[8], l12 = lhs[9], l22 = lhs[10], l32 = lhs[11];
+        final float l03 = lhs[12], l13 = lhs[13], l23 = lhs[14], l33 = lhs[15];
+
+        float r0, r1, r2, r3;
+
+        r0 = rhs[0];
+        r1 = rhs[1];
+        r2 = rhs[2];
+        r3 = rhs[3];
+        result[0] = l00 * r0 + l01 * r1 + l02 * r2 + l03 * r3;
+        result[1] = l10 * r0 + l11 * r1 + l12 * r2 + l13 * r3;
+        result[2] = l20 * r0 + l21 * r1 + l22 * r2 + l23 * r3;
+        result[3] = l30 * r0 + l31 * r1 + l32 * r2 + l33 * r3;
+
+        r0 = rhs[4];
+        r1 = rhs[5];
+        r2 = rhs[6];
+        r3 = rhs[7];
+        result[4] = l00 * r0 + l01 * r1 + l02 * r2 + l03 * r3;
+        result[5] = l10 * r0 + l11 * r1 + l12 * r2 + l13 * r3;
+        result[6] = l20 * r0 + l21 * r1 + l22 * r2 + l23 * r3;
+        result[7] = l30 * r0 + l31 * r1 + l32 * r2 + l33 * r3;
+
+        r0 = rhs[8];
+        r1 = rhs[9];
+        r2 = rhs[10];
+        r3 = rhs[11];
+        result[8] = l00 * r0 + l01 * r1 + l02 * r2 + l03 * r3;
+        result[9] = l10 * r0 + l11 * r1 + l12 * r2 + l13 * r3;
+        result[10] = l20 * r0 + l21 * r1 + l22 * r2 + l23 * r3;
+        result[11] = l30 * r0 + l31 * r1 + l32 * r2 + l33 * r3;
+
+        r0 = rhs[12];
+        r1 = rhs[13];
+        r2 = rhs[14];
+        r3 = rhs[15];
+        result[12] = l00 * r0 + l01 * r1 + l02 * r2 + l03 * r3;
+        result[13] = l10 * r0 + l11 * r1 + l12 * r2 + l13 * r3;
+        result[14] = l20 * r0 + l21 * r1 + l22 * r2 + l23 * r3;
+        result[15] = l30 * r0 + l31 * r1 + l32 * r2 + l33 * r3;
+    }
+
+    /**
+     * アフィン変換行列（最下行が0, 0, 0, 1）であればtrue
+     */
+    public static boolean isAffine(float[] m) {
+        return m[3] == 0.0f && m[7] == 0.0f && m[11] == 0.0f && m[15] == 1.0f;
+    }
+
+    /**
+     * srcの逆行列をresultへ格納する。<BR>
+     * resultはsrcと同じ配列でも良い。
+     * アフィン変換行列の場合は3x3部分の逆行列と平行移動のみを計算する。
+     *
+     * @return 逆行列が存在しない場合はfalseを返し、resultは変更しない
+     */
+    public static boolean invertM(float[] result, float[] src) {
+        if (isAffine(src)) {
+            return invertAffineM(result, src);
+        }
+
+        final float src0 = src[0];
+        final float src4 = src[1];
+        final float src8 = src[2];
+        final float src12 = src[3];
+
+        final float src1 = src[4];
+        final float src5 = src[5];
+        final float src9 = src[6];
+        final float src13 = src[7];
+
+        final float src2 = src[8];
+        final float src6 = src[9];
+        final float src10 = src[10];
+        final float src14 = src[11];
+
+        final float src3 = src[12];
+        final float src7 = src[13];
+        final float src11 = src[14];
+        final float src15 = src[15];
+
+        // 下半分の2x2小行列式
+        final float atmp0 = src10 * src15;
+        final float atmp1 = src11 * src14;
+        final float atmp2 = src9 * src15;
+        final float atmp3 = src11 * src13;
+        final float atmp4 = src9 * src14;
+        final float atmp5 = src10 * src13;
+        final float atmp6 = src8 * src15;
+        final float atmp7 = src11 * src12;
+        final float atmp8 = src8 * src14;
+        final float atmp9 = src10 * src12;
+        final float atmp10 = src8 * src13;
+        final float atmp11 = src9 * src12;
+
+        final float dst0 = (atmp0 * src5 + atmp3 * src6 + atmp4 * src7)
+                - (atmp1 * src5 + atmp2 * src6 + atmp5 * src7);
+        final float dst1 = (atmp1 * src4 + atmp6 * src6 + atmp9 * src7)
+                - (atmp0 * src4 + atmp7 * src6 + atmp8 * src7);
+        final float dst2 = (atmp2 * src4 + atmp7 * src5 + atmp10 * src7)
+                - (atmp3 * src4 + atmp6 * src5 + atmp11 * src7);
+        final float dst3 = (atmp5 * src4 + atmp8 * src5 + atmp11 * src6)
+                - (atmp4 * src4 + atmp9 * src5 + atmp10 * src6);
+        final float dst4 = (atmp1 * src1 + atmp2 * src2 + atmp5 * src3)
+                - (atmp0 * src1 + atmp3 * src2 + atmp4 * src3);
+        final float dst5 = (atmp0 * src0 + atmp7 * src2 + atmp8 * src3)
+                - (atmp1 * src0 + atmp6 * src2 + atmp9 * src3);
+        final float dst6 = (atmp3 * src0 + atmp6 * src1 + atmp11 * src3)
+                - (atmp2 * src0 + atmp7 * src1 + atmp10 * src3);
+        final float dst7 = (atmp4 * src0 + atmp9 * src1 + atmp10 * src2)
+                - (atmp5 * src0 + atmp8 * src1 + atmp11 * src2);
+
+        // 上半分の2x2小行列式
+        final float btmp0 = src2 * src7;
+        final float btmp1 = src3 * src6;
+        final float btmp2 = src1 * src7;
+        final float btmp3 = src3 * src5;
+        final float btmp4 = src1 * src6;
+        final float btmp5 = src2 * src5;
+        final float btmp6 = src0 * src7;
+        final float btmp7 = src3 * src4;
+        final float btmp8 = src0 * src6;
+        final float btmp9 = src2 * src4;
+        final float btmp10 = src0 * src5;
+        final float btmp11 = src1 * src4;
+
+        final float dst8 = (btmp0 * src13 + btmp3 * src14 + btmp4 * src15)
+                - (btmp1 * src13 + btmp2 * src14 + btmp5 * src15);
+        final float dst9 = (btmp1 * src12 + btmp6 * src14 + btmp9 * src15)
+                - (btmp0 * src12 + btmp7 * src14 + btmp8 * src15);
+        final float dst10 = (btmp2 * src12 + btmp7 * src13 + btmp10 * src15)
+                - (btmp3 * src12 + btmp6 * src13 + btmp11 * src15);
+        final float dst11 = (btmp5 * src12 + btmp8 * src13 + btmp11 * src14)
+                - (btmp4 * src12 + btmp9 * src13 + btmp10 * src14);
+        final float dst12 = (btmp2 * src10 + btmp5 * src11 + btmp1 * src9)
+                - (btmp4 * src11 + btmp0 * src9 + btmp3 * src10);
+        final float dst13 = (btmp8 * src11 + btmp0 * src8 + btmp7 * src10)
+                - (btmp6 * src10 + btmp9 * src11 + btmp1 * src8);
+        final float dst14 = (btmp6 * src9 + btmp11 * src11 + btmp3 * src8)
+                - (btmp10 * src11 + btmp2 * src8 + btmp7 * src9);
+        final float dst15 = (btmp10 * src10 + btmp4 * src8 + btmp9 * src9)
+                - (btmp8 * src9 + btmp11 * src10 + btmp5 * src8);
+
+        final float det = src0 * dst0 + src1 * dst1 + src2 * dst2 + src3 * dst3;
+        if (det == 0.0f) {
+            return false;
+        }
+
+        final float invdet = 1.0f / det;
+        result[0] = dst0 * invdet;
+        result[1] = dst1 * invdet;
+        result[2] = dst2 * invdet;
+        result[3] = dst3 * invdet;
+
+        result[4] = dst4 * invdet;
+        result[5] = dst5 * invdet;
+        result[6] = dst6 * invdet;
+        result[7] = dst7 * invdet;
+
+        result[8] = dst8 * invdet;
+        result[9] = dst9 * invdet;
+        result[10] = dst10 * invdet;
+        result[11] = dst11 * invdet;
+
+        result[12] = dst12 * invdet;
+        result[13] = dst13 * invdet;
+        result[14] = dst14 * invdet;
+        result[15] = dst15 * invdet;
+        return true;
+    }
+
+    /**
+     * アフィン変換行列の逆行列をresultへ格納する。<BR>
+     * [A t] の逆行列は [A^-1 -A^-1*t] となる。
+     *
+     * @return 逆行列が存在しない場合はfalseを返し、resultは変更しない
+     */
+    private static boolean invertAffineM(float[] result, float[] src) {
+        final float a00 = src[0], a10 = src[1], a20 = src[2];
+        final float a01 = src[4], a11 = src[5], a21 = src[6];
+        final float a02 = src[8], a12 = src[9], a22 = src[10];
+        final float tx = src[12], ty = src[13], tz = src[14];
+
+        // 余因子
+        final float c00 = a11 * a22 - a12 * a21;
+        final float c01 = a12 * a20 - a10 * a22;
+        final float c02 = a10 * a21 - a11 * a20;
+
+        final float det = a00 * c00 + a01 * c01 + a02 * c02;
+        if (det == 0.0f) {
+            return false;
+        }
+
+        final float invdet = 1.0f / det;
+        final float i00 = c00 * invdet;
+        final float i01 = (a02 * a21 - a01 * a22) * invdet;
+        final float i02 = (a01 * a12 - a02 * a11) * invdet;
+        final float i10 = c01 * invdet;
+        final float i11 = (a00 * a22 - a02 * a20) * invdet;
+        final float i12 = (a02 * a10 - a00 * a12) * invdet;
+        final float i20 = c02 * invdet;
+        final float i21 = (a01 * a20 - a00 * a21) * invdet;
+        final float i22 = (a00 * a11 - a01 * a10) * invdet;
+
+        result[0] = i00;
+        result[1] = i10;
+        result[2] = i20;
+        result[3] = 0.0f;
+
+        result[4] = i01;
+        result[5] = i11;
+        result[6] = i21;
+        result[7] = 0.0f;
+
+        result[8] = i02;
+        result[9] = i12;
+        result[10] = i22;
+        result[11] = 0.0f;
+
+        result[12] = -(i00 * tx + i01 * ty + i02 * tz);
+        result[13] = -(i10 * tx + i11 * ty + i12 * tz);
+        result[14] = -(i20 * tx + i21 * ty + i22 * tz);
+        result[15] = 1.0f;
+        return true;
+    }
+
+    /**
+     * m = m * R(angle, x, y, z)の計算を行う。<BR>
+     * android.opengl.Matrix.rotateM()と同じ結果となる。
+     *
+     * @param angle 回転角（度）
+     */
+    public static void rotateM(float[] m, float angle, float x, float y, float z) {
+        final float a = angle * DEG_TO_RAD;
+        final float s = (float) Math.sin(a);
+        final float c = (float) Math.cos(a);
+
+        final float r00, r01, r02, r10, r11, r12, r20, r21, r22;
+        if (x == 1.0f && y == 0.0f && z == 0.0f) {
+            r00 = 1;
+            r01 = 0;
+            r02 = 0;
+            r10 = 0;
+            r11 = c;
+            r12 = -s;
+            r20 = 0;
+            r21 = s;
+            r22 = c;
+        } else if (x == 0.0f && y == 1.0f && z == 0.0f) {
+            r00 = c;
+            r01 = 0;
+            r02 = s;
+            r10 = 0;
+            r11 = 1;
+            r12 = 0;
+            r20 = -s;
+            r21 = 0;
+            r22 = c;
+        } else if (x == 0.0f && y == 0.0f && z == 1.0f) {
+            r00 = c;
+            r01 = -s;
+            r02 = 0;
+            r10 = s;
+            r11 = c;
+            r12 = 0;
+            r20 = 0;
+            r21 = 0;
+            r22 = 1;
+        } else {
+            final float len = (float) Math.sqrt(x * x + y * y + z * z);
+            if (len != 1.0f) {
+                final float recipLen = 1.0f / len;
+                x *= recipLen;
+                y *= recipLen;
+                z *= recipLen;
+            }
+            final float nc = 1.0f - c;
+            final float xy = x * y;
+            final float yz = y * z;
+            final float zx = z * x;
+            final float xs = x * s;
+            final float ys = y * s;
+            final float zs = z * s;
+            r00 = x * x * nc + c;
+            r01 = xy * nc - zs;
+            r02 = zx * nc + ys;
+            r10 = xy * nc + zs;
+            r11 = y * y * nc + c;
+            r12 = yz * nc - xs;
+            r20 = zx * nc - ys;
+            r21 = yz * nc + xs;
+            r22 = z * z * nc + c;
+        }
+
+        // 回転は3x3部分のみのため、m * Rで変化するのは0〜2列目のみとなる
+        for (int row = 0; row < 4; ++row) {
+            final float m0 = m[row];
+            final float m1 = m[4 + row];
+            final float m2 = m[8 + row];
+            m[row] = m0 * r00 + m1 * r10 + m2 * r20;
+            m[4 + row] = m0 * r01 + m1 * r11 + m2 * r21;
+            m[8 + row] = m0 * r02 + m1 * r12 + m2 * r22;
+        }
+    }
 }
@@ -0,0 +1,343 @@
+package com.eaglesakura.android.math;
+
+/**
+ * Matrix4x4のスタックを管理する
+ *
+ * 各階層の行列は事前に確保されたものを使い回すため、push()ごとのアロケートは行わない。
+ * 逆行列、逆転置行列、MVP行列は要求された時点で計算し、行列が変更されるまでキャッシュする。
+ * <pre>
+ * stack.setProjection(projection);
+ * stack.setView(view);
+ * stack.push();
+ * stack.transform(node.getLocalMatrix());
+ * shader.setMVP(stack.getModelViewProjection());
+ * stack.pop();
+ * </pre>
+ * スレッドセーフではない。
+ */
+public class MatrixStack {
+
+    /**
+     * スタックの1階層
+     */
+    static class Entry {
+        final Matrix4x4 matrix = new Matrix4x4();
+
+        final Matrix4x4 inverse = new Matrix4x4();
+
+        final Matrix4x4 inverseTranspose = new Matrix4x4();
+
+        final Matrix4x4 modelViewProjection = new Matrix4x4();
+
+        boolean inverseDirty = true;
+
+        boolean inverseTransposeDirty = true;
+
+        /**
+         * modelViewProjectionの計算に使用したView-Projection行列のバージョン
+         * -1の場合は未計算
+         */
+        long mvpVersion = -1;
+
+        void markDirty() {
+            inverseDirty = true;
+            inverseTransposeDirty = true;
+            mvpVersion = -1;
+        }
+
+        void set(Entry origin) {
+            matrix.set(origin.matrix);
+            inverseDirty = origin.inverseDirty;
+            if (!inverseDirty) {
+                inverse.set(origin.inverse);
+            }
+            inverseTransposeDirty = origin.inverseTransposeDirty;
+            if (!inverseTransposeDirty) {
+                inverseTranspose.set(origin.inverseTranspose);
+            }
+            mvpVersion = origin.mvpVersion;
+            if (mvpVersion >= 0) {
+                modelViewProjection.set(origin.modelViewProjection);
+            }
+        }
+    }
+
+    private Entry[] mEntries;
+
+    /**
+     * 現在の階層
+     */
+    private int mDepth;
+
+    private final Matrix4x4 mProjection = new Matrix4x4();
+
+    private final Matrix4x4 mView = new Matrix4x4();
+
+    private final Matrix4x4 mViewProjection = new Matrix4x4();
+
+    /**
+     * View/Projectionの変更ごとに加算される
+     */
+    private long mViewProjectionVersion;
+
+    private boolean mViewProjectionDirty = false;
+
+    /**
+     * 局所変換用の一時行列
+     */
+    private final float[] mTemp = new float[16];
+
+    /**
+     * 逆行列・MVP行列の計算回数
+     */
+    private long mComputeCount;
+
+    public MatrixStack() {
+        this(16);
+    }
+
+    /**
+     * @param initialCapacity 事前に確保する階層数
+     */
+    public MatrixStack(int initialCapacity) {
+        mEntries = new Entry[Math.max(1, initialCapacity)];
+        for (int i = 0; i < mEntries.length; ++i) {
+            mEntries[i] = new Entry();
+        }
+    }
+
+    private Entry top() {
+        return mEntries[mDepth];
+    }
+
+    /**
+     * 現在の行列をコピーして1階層積む
+     */
+    public void push() {
+        if (mDepth + 1 >= mEntries.length) {
+            // 容量が足りない場合のみ拡張する
+            Entry[] entries = new Entry[mEntries.length * 2];
+            System.arraycopy(mEntries, 0, entries, 0, mEntries.length);
+            for (int i = mEntries.length; i < entries.length; ++i) {
+                entries[i] = new Entry();
+            }
+            mEntries = entries;
+        }
+
+        mEntries[mDepth + 1].set(mEntries[mDepth]);
+        ++mDepth;
+    }
+
+    /**
+     * 1階層戻す
+     *
+     * @throws IllegalStateException push()されていない場合
+     */
+    public void pop() {
+        if (mDepth == 0) {
+            throw new IllegalStateException("stack underflow");
+        }
+        --mDepth;
+    }
+
+    /**
+     * 現在の階層を取得する
+     * push()されていない場合は0となる
+     */
+    public int getDepth() {
+        return mDepth;
+    }
+
+    /**
+     * スタックを初期状態に戻す
+     */
+    public void clear() {
+        mDepth = 0;
+        loadIdentity();
+    }
+
+    /**
+     * 現在の行列を単位行列にする
+     */
+    public void loadIdentity() {
+        Entry top = top();
+        top.matrix.identity();
+        top.markDirty();
+    }
+
+    /**
+     * 現在の行列を上書きする
+     */
+    public void load(Matrix4x4 matrix) {
+        Entry top = top();
+        top.matrix.set(matrix);
+        top.markDirty();
+    }
+
+    /**
+     * 現在の行列にローカル変換を適用する
+     * current = current * local（列ベクトル表記）となり、localが先に適用される。
+     */
+    public void transform(Matrix4x4 local) {
+        Entry top = top();
+        Matrix4x4.multiplyMM(top.matrix.m, top.matrix.m, local.m);
+        top.markDirty();
+    }
+
+    /**
+     * 現在の行列に平行移動を適用する
+     */
+    public void translate(float x, float y, float z) {
+        Entry top = top();
+        final float[] m = top.matrix.m;
+        for (int row = 0; row < 4; ++row) {
+            m[12 + row] += m[row] * x + m[4 + row] * y + m[8 + row] * z;
+        }
+        top.markDirty();
+    }
+
+    /**
+     * 現在の行列に回転を適用する
+     *
+     * @param angle 回転角（度）
+     */
+    public void rotate(float angle, float x, float y, float z) {
+        Entry top = top();
+        Matrix4x4.rotateM(top.matrix.m, angle, x, y, z);
+        top.markDirty();
+    }
+
+    /**
+     * 現在の行列にクォータニオンによる回転を適用する
+     *
+     * @param rotate 正規化されたクォータニオン
+     */
+    public void rotate(Quaternion rotate) {
+        Entry top = top();
+        Matrix4x4.setRotateQuaternion(mTemp, rotate.x, rotate.y, rotate.z, rotate.w);
+        Matrix4x4.multiplyMM(top.matrix.m, top.matrix.m, mTemp);
+        top.markDirty();
+    }
+
+    /**
+     * 現在の行列に拡大縮小を適用する
+     */
+    public void scale(float x, float y, float z) {
+        Entry top = top();
+        final float[] m = top.matrix.m;
+        for (int row = 0; row < 4; ++row) {
+            m[row] *= x;
+            m[4 + row] *= y;
+            m[8 + row] *= z;
+        }
+        top.markDirty();
+    }
+
+    /**
+     * 現在の行列を取得する
+     * 戻り値は変更してはならない。変更する場合は{@link #load(Matrix4x4)}を使用する。
+     */
+    public Matrix4x4 getMatrix() {
+        return top().matrix;
+    }
+
+    /**
+     * 現在の行列の逆行列を取得する
+     * 逆行列が存在しない場合は単位行列となる。戻り値は変更してはならない。
+     */
+    public Matrix4x4 getInverse() {
+        Entry top = top();
+        if (top.inverseDirty) {
+            ++mComputeCount;
+            if (!Matrix4x4.invertM(top.inverse.m, top.matrix.m)) {
+                top.inverse.identity();
+            }
+            top.inverseDirty = false;
+        }
+        return top.inverse;
+    }
+
+    /**
+     * 現在の行列の逆転置行列を取得する
+     * 法線の変換に使用する。戻り値は変更してはならない。
+     */
+    public Matrix4x4 getInverseTranspose() {
+        Entry top = top();
+        if (top.inverseTransposeDirty) {
+            final float[] inverse = getInverse().m;
+            final float[] result = top.inverseTranspose.m;
+            for (int col = 0; col < 4; ++col) {
+                for (int row = 0; row < 4; ++row) {
+                    result[col * 4 + row] = inverse[row * 4 + col];
+                }
+            }
+            top.inverseTransposeDirty = false;
+        }
+        return top.inverseTranspose;
+    }
+
+    /**
+     * Projection行列を指定する
+     */
+    public void setProjection(Matrix4x4 projection) {
+        mProjection.set(projection);
+        invalidateViewProjection();
+    }
+
+    /**
+     * View行列を指定する
+     */
+    public void setView(Matrix4x4 view) {
+        mView.set(view);
+        invalidateViewProjection();
+    }
+
+    public Matrix4x4 getProjection() {
+        return mProjection;
+    }
+
+    public Matrix4x4 getView() {
+        return mView;
+    }
+
+    private void invalidateViewProjection() {
+        mViewProjectionDirty = true;
+        ++mViewProjectionVersion;
+    }
+
+    /**
+     * Projection * Viewを取得する
+     * 戻り値は変更してはならない。
+     */
+    public Matrix4x4 getViewProjection() {
+        if (mViewProjectionDirty) {
+            ++mComputeCount;
+            Matrix4x4.multiplyMM(mViewProjection.m, mProjection.m, mView.m);
+            mViewProjectionDirty = false;
+        }
+        return mViewProjection;
+    }
+
+    /**
+     * Projection * View * 現在の行列を取得する
+     * 戻り値は変更してはならない。
+     */
+    public Matrix4x4 getModelViewProjection() {
+        Entry top = top();
+        if (top.mvpVersion != mViewProjectionVersion) {
+            final float[] viewProjection = getViewProjection().m;
+            ++mComputeCount;
+            Matrix4x4.multiplyMM(top.modelViewProjection.m, viewProjection, top.matrix.m);
+            top.mvpVersion = mViewProjectionVersion;
+        }
+        return top.modelViewProjection;
+    }
+
+    /**
+     * 逆行列・MVP行列等を計算した回数を取得する
+     * キャッシュの効果を確認するために使用する
+     */
+    public long getComputeCount() {
+        return mComputeCount;
+    }
+}
@@ -0,0 +1,436 @@
+package com.eaglesakura.android.math;
+
+import com.eaglesakura.math.Vector3;
+
+/**
+ * 回転を表すクォータニオンを管理する
+ *
+ * 各演算は結果の格納先を引数で受け取り、内部でのアロケートは行わない。
+ * 格納先には自身や引数と同じインスタンスを指定しても良い。
+ * 配列での一括処理では、1要素を(x, y, z, w)の4floatとして扱う。
+ */
+public final class Quaternion {
+
+    private static final float DEG_TO_RAD = (float) (Math.PI / 180.0f);
+
+    /**
+     * 2つのクォータニオンの内積がこれ以上の場合、slerpではなくnlerpで補間する
+     */
+    private static final float SLERP_THRESHOLD = 0.9995f;
+
+    public float x;
+
+    public float y;
+
+    public float z;
+
+    public float w = 1.0f;
+
+    /**
+     * 単位クォータニオンを作成する。
+     */
+    public Quaternion() {
+    }
+
+    public Quaternion(float x, float y, float z, float w) {
+        set(x, y, z, w);
+    }
+
+    public Quaternion(Quaternion origin) {
+        set(origin);
+    }
+
+    public Quaternion set(float x, float y, float z, float w) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.w = w;
+        return this;
+    }
+
+    public Quaternion set(Quaternion origin) {
+        return set(origin.x, origin.y, origin.z, origin.w);
+    }
+
+    /**
+     * 単位クォータニオンにする。
+     */
+    public Quaternion identity() {
+        return set(0, 0, 0, 1);
+    }
+
+    /**
+     * 回転軸と回転角から作成する。
+     *
+     * @param angle 回転角（度）
+     */
+    public Quaternion setAxisAngle(float angle, float axisX, float axisY, float axisZ) {
+        final float length = (float) Math.sqrt(axisX * axisX + axisY * axisY + axisZ * axisZ);
+        if (length == 0.0f) {
+            return identity();
+        }
+
+        final float half = angle * DEG_TO_RAD * 0.5f;
+        final float s = (float) Math.sin(half) / length;
+        return set(axisX * s, axisY * s, axisZ * s, (float) Math.cos(half));
+    }
+
+    /**
+     * オイラー角から作成する。<BR>
+     * {@link Matrix4x4#create(Vector3, Vector3, Vector3, Matrix4x4)}と同じく、
+     * rotateX -＞ rotateY -＞ rotateZ の順で適用される。
+     *
+     * @param rotate 各軸の回転角（度）
+     */
+    public Quaternion setEuler(Vector3 rotate) {
+        final float hx = rotate.x * DEG_TO_RAD * 0.5f;
+        final float hy = rotate.y * DEG_TO_RAD * 0.5f;
+        final float hz = rotate.z * DEG_TO_RAD * 0.5f;
+        final float cx = (float) Math.cos(hx), sx = (float) Math.sin(hx);
+        final float cy = (float) Math.cos(hy), sy = (float) Math.sin(hy);
+        final float cz = (float) Math.cos(hz), sz = (float) Math.sin(hz);
+
+        // qz * qy * qx
+        return set(
+                sx * cy * cz - cx * sy * sz,
+                cx * sy * cz + sx * cy * sz,
+                cx * cy * sz - sx * sy * cz,
+                cx * cy * cz + sx * sy * sz
+        );
+    }
+
+    /**
+     * 長さを取得する。
+     */
+    public float length() {
+        return (float) Math.sqrt(x * x + y * y + z * z + w * w);
+    }
+
+    /**
+     * 内積を取得する。
+     */
+    public float dot(Quaternion other) {
+        return x * other.x + y * other.y + z * other.z + w * other.w;
+    }
+
+    /**
+     * 正規化する。<BR>
+     * 長さが0の場合は単位クォータニオンとなる。
+     */
+    public Quaternion normalize() {
+        final float lengthSq = x * x + y * y + z * z + w * w;
+        if (lengthSq == 0.0f) {
+            return identity();
+        }
+        final float invLength = (float) (1.0 / Math.sqrt(lengthSq));
+        return set(x * invLength, y * invLength, z * invLength, w * invLength);
+    }
+
+    /**
+     * 共役クォータニオンをresultへ格納する。<BR>
+     * 正規化されている場合は逆回転となる。
+     *
+     * @return resultの参照
+     */
+    public Quaternion conjugate(Quaternion result) {
+        return result.set(-x, -y, -z, w);
+    }
+
+    /**
+     * result = this * rhsの計算を行う。<BR>
+     * rhsの回転を適用した後、thisの回転を適用することになる。
+     *
+     * @return resultの参照
+     */
+    public Quaternion multiply(Quaternion rhs, Quaternion result) {
+        final float ax = x, ay = y, az = z, aw = w;
+        final float bx = rhs.x, by = rhs.y, bz = rhs.z, bw = rhs.w;
+        return result.set(
+                aw * bx + ax * bw + ay * bz - az * by,
+                aw * by - ax * bz + ay * bw + az * bx,
+                aw * bz + ax * by - ay * bx + az * bw,
+                aw * bw - ax * bx - ay * by - az * bz
+        );
+    }
+
+    /**
+     * ベクトルを回転させ、resultへ格納する。
+     *
+     * @return resultの参照
+     */
+    public Vector3 transVector(Vector3 v, Vector3 result) {
+        // t = 2 * cross(q.xyz, v)
+        final float tx = 2.0f * (y * v.z - z * v.y);
+        final float ty = 2.0f * (z * v.x - x * v.z);
+        final float tz = 2.0f * (x * v.y - y * v.x);
+
+        // v + w * t + cross(q.xyz, t)
+        result.set(v.x + w * tx + (y * tz - z * ty),
+                v.y + w * ty + (z * tx - x * tz),
+                v.z + w * tz + (x * ty - y * tx));
+        return result;
+    }
+
+    /**
+     * 回転行列をresultへ格納する。<BR>
+     * 正規化されている必要がある。
+     *
+     * @return resultの参照
+     */
+    public Matrix4x4 toMatrix(Matrix4x4 result) {
+        Matrix4x4.setRotateQuaternion(result.m, x, y, z, w);
+        return result;
+    }
+
+    /**
+     * 行列の回転成分から作成する。<BR>
+     * 拡大縮小を含む場合は、各軸の長さで正規化してから変換する。
+     */
+    public Quaternion setMatrix(Matrix4x4 matrix) {
+        final float[] m = matrix.m;
+        float r00 = m[0], r10 = m[1], r20 = m[2];
+        float r01 = m[4], r11 = m[5], r21 = m[6];
+        float r02 = m[8], r12 = m[9], r22 = m[10];
+
+        // 拡大縮小を取り除く
+        final float sx = (float) Math.sqrt(r00 * r00 + r10 * r10 + r20 * r20);
+        final float sy = (float) Math.sqrt(r01 * r01 + r11 * r11 + r21 * r21);
+        final float sz = (float) Math.sqrt(r02 * r02 + r12 * r12 + r22 * r22);
+        if (sx == 0.0f || sy == 0.0f || sz == 0.0f) {
+            return identity();
+        }
+        if (sx != 1.0f) {
+            r00 /= sx;
+            r10 /= sx;
+            r20 /= sx;
+        }
+        if (sy != 1.0f) {
+            r01 /= sy;
+            r11 /= sy;
+            r21 /= sy;
+        }
+        if (sz != 1.0f) {
+            r02 /= sz;
+            r12 /= sz;
+            r22 /= sz;
+        }
+
+        final float trace = r00 + r11 + r22;
+        if (trace > 0.0f) {
+            final float s = (float) Math.sqrt(trace + 1.0f) * 2.0f;
+            set((r21 - r12) / s, (r02 - r20) / s, (r10 - r01) / s, 0.25f * s);
+        } else if (r00 > r11 && r00 > r22) {
+            final float s = (float) Math.sqrt(1.0f + r00 - r11 - r22) * 2.0f;
+            set(0.25f * s, (r01 + r10) / s, (r02 + r20) / s, (r21 - r12) / s);
+        } else if (r11 > r22) {
+            final float s = (float) Math.sqrt(1.0f + r11 - r00 - r22) * 2.0f;
+            set((r01 + r10) / s, 0.25f * s, (r12 + r21) / s, (r02 - r20) / s);
+        } else {
+            final float s = (float) Math.sqrt(1.0f + r22 - r00 - r11) * 2.0f;
+            set((r02 + r20) / s, (r12 + r21) / s, 0.25f * s, (r10 - r01) / s);
+        }
+        return normalize();
+    }
+
+    /**
+     * 線形補間後に正規化し、resultへ格納する。<BR>
+     * slerpより高速だが、角速度は一定にならない。
+     *
+     * @param t 0.0でfrom、1.0でtoとなる
+     * @return resultの参照
+     */
+    public static Quaternion nlerp(Quaternion from, Quaternion to, float t, Quaternion result) {
+        float bx = to.x, by = to.y, bz = to.z, bw = to.w;
+        if (from.dot(to) < 0.0f) {
+            // 最短経路で補間する
+            bx = -bx;
+            by = -by;
+            bz = -bz;
+            bw = -bw;
+        }
+        final float s = 1.0f - t;
+        result.set(from.x * s + bx * t, from.y * s + by * t, from.z * s + bz * t, from.w * s + bw * t);
+        return result.normalize();
+    }
+
+    /**
+     * 球面線形補間を行い、resultへ格納する。<BR>
+     * 2つの回転が十分に近い場合はnlerpで補間する。
+     *
+     * @param t 0.0でfrom、1.0でtoとなる
+     * @return resultの参照
+     */
+    public static Quaternion slerp(Quaternion from, Quaternion to, float t, Quaternion result) {
+        float bx = to.x, by = to.y, bz = to.z, bw = to.w;
+        float dot = from.dot(to);
+        if (dot < 0.0f) {
+            // 最短経路で補間する
+            dot = -dot;
+            bx = -bx;
+            by = -by;
+            bz = -bz;
+            bw = -bw;
+        }
+
+        float wa, wb;
+        if (dot > SLERP_THRESHOLD) {
+            wa = 1.0f - t;
+            wb = t;
+        } else {
+            final double theta = Math.acos(dot);
+            final double invSin = 1.0 / Math.sin(theta);
+            wa = (float) (Math.sin((1.0 - t) * theta) * invSin);
+            wb = (float) (Math.sin(t * theta) * invSin);
+        }
+
+        result.set(from.x * wa + bx * wb, from.y * wa + by * wb, from.z * wa + bz * wb, from.w * wa + bw * wb);
+        return dot > SLERP_THRESHOLD ? result.normalize() : result;
+    }
+
+    /**
+     * 配列に格納された複数のクォータニオンを、同じtでまとめて球面線形補間する。<BR>
+     * ボーンごとのキーフレーム間の補間に使用する。
+     * resultはfrom/toと同じ配列でも良い。
+     *
+     * @param count 補間するクォータニオン数
+     */
+    public static void slerp(float[] from, int fromOffset, float[] to, int toOffset, float t, float[] result, int resultOffset, int count) {
+        for (int i = 0; i < count; ++i) {
+            slerp(from, fromOffset + i * 4, to, toOffset + i * 4, t, result, resultOffset + i * 4);
+        }
+    }
+
+    /**
+     * 配列に格納された複数のクォータニオンを、要素ごとのtでまとめて球面線形補間する。
+     *
+     * @param t     要素ごとの補間係数
+     * @param count 補間するクォータニオン数
+     */
+    public static void slerp(float[] from, int fromOffset, float[] to, int toOffset, float[] t, int tOffset, float[] result, int resultOffset, int count) {
+        for (int i = 0; i < count; ++i) {
+            slerp(from, fromOffset + i * 4, to, toOffset + i * 4, t[tOffset + i], result, resultOffset + i * 4);
+        }
+    }
+
+    /**
+     * 配列に格納された複数のクォータニオンを、同じtでまとめてnlerpで補間する。
+     *
+     * @param count 補間するクォータニオン数
+     */
+    public static void nlerp(float[] from, int fromOffset, float[] to, int toOffset, float t, float[] result, int resultOffset, int count) {
+        final float s = 1.0f - t;
+        for (int i = 0; i < count; ++i) {
+            final int a = fromOffset + i * 4;
+            final int b = toOffset + i * 4;
+            final int r = resultOffset + i * 4;
+            final float ax = from[a], ay = from[a + 1], az = from[a + 2], aw = from[a + 3];
+            final float bx = to[b], by = to[b + 1], bz = to[b + 2], bw = to[b + 3];
+            final float tb = (ax * bx + ay * by + az * bz + aw * bw) < 0.0f ? -t : t;
+
+            final float x = ax * s + bx * tb;
+            final float y = ay * s + by * tb;
+            final float z = az * s + bz * tb;
+            final float w = aw * s + bw * tb;
+            final float lengthSq = x * x + y * y + z * z + w * w;
+            final float invLength = lengthSq > 0.0f ? (float) (1.0 / Math.sqrt(lengthSq)) : 0.0f;
+            result[r] = x * invLength;
+            result[r + 1] = y * invLength;
+            result[r + 2] = z * invLength;
+            result[r + 3] = w * invLength;
+        }
+    }
+
+    private static void slerp(float[] from, int a, float[] to, int b, float t, float[] result, int r) {
+        final float ax = from[a], ay = from[a + 1], az = from[a + 2], aw = from[a + 3];
+        float bx = to[b], by = to[b + 1], bz = to[b + 2], bw = to[b + 3];
+        float dot = ax * bx + ay * by + az * bz + aw * bw;
+        if (dot < 0.0f) {
+            dot = -dot;
+            bx = -bx;
+            by = -by;
+            bz = -bz;
+            bw = -bw;
+        }
+
+        float wa, wb;
+        boolean normalize;
+        if (dot > SLERP_THRESHOLD) {
+            wa = 1.0f - t;
+            wb = t;
+            normalize = true;
+        } else {
+            final double theta = Math.acos(dot);
+            final double invSin = 1.0 / Math.sin(theta);
+            wa = (float) (Math.sin((1.0 - t) * theta) * invSin);
+            wb = (float) (Math.sin(t * theta) * invSin);
+            normalize = false;
+        }
+
+        float x = ax * wa + bx * wb;
+        float y = ay * wa + by * wb;
+        float z = az * wa + bz * wb;
+        float w = aw * wa + bw * wb;
+        if (normalize) {
+            final float lengthSq = x * x + y * y + z * z + w * w;
+            if (lengthSq > 0.0f) {
+                final float invLength = (float) (1.0 / Math.sqrt(lengthSq));
+                x *= invLength;
+                y *= invLength;
+                z *= invLength;
+                w *= invLength;
+            }
+        }
+        result[r] = x;
+        result[r + 1] = y;
+        result[r + 2] = z;
+        result[r + 3] = w;
+    }
+
+    /**
+     * キーフレーム列から指定時刻の回転を補間して取得する。
+     *
+     * @param times     キーフレームの時刻（昇順）
+     * @param rotations キーフレームごとのクォータニオン、キーフレームごとにboneCount個が並ぶ
+     * @param keyCount  キーフレーム数
+     * @param boneCount 1キーフレームあたりのクォータニオン数
+     * @param time      補間する時刻、範囲外の場合は先頭・末尾のキーフレームとなる
+     * @param result    boneCount個のクォータニオンの格納先
+     * @return 補間に使用した先頭側のキーフレーム番号
+     */
+    public static int sampleKeyframes(float[] times, float[] rotations, int keyCount, int boneCount, float time, float[] result, int resultOffset) {
+        if (keyCount <= 0) {
+            throw new IllegalArgumentException("keyCount <= 0");
+        }
+
+        final int stride = boneCount * 4;
+        if (keyCount == 1 || time <= times[0]) {
+            System.arraycopy(rotations, 0, result, resultOffset, stride);
+            return 0;
+        }
+        if (time >= times[keyCount - 1]) {
+            System.arraycopy(rotations, (keyCount - 1) * stride, result, resultOffset, stride);
+            return keyCount - 1;
+        }
+
+        // times[key] <= time < times[key + 1]となるkeyを探す
+        int low = 0;
+        int high = keyCount - 1;
+        while (high - low > 1) {
+            final int mid = (low + high) >>> 1;
+            if (times[mid] <= time) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+
+        final float t = (time - times[low]) / (times[high] - times[low]);
+        slerp(rotations, low * stride, rotations, high * stride, t, result, resultOffset, boneCount);
+        return low;
+    }
+
+    @Override
+    public String toString() {
+        return "Quaternion(" + x + ", " + y + ", " + z + ", " + w + ")";
+    }
+}
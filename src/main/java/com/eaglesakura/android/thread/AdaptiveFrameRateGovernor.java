@@ -0,0 +1,177 @@
+package com.eaglesakura.android.thread;
+
+import com.eaglesakura.android.device.event.BatteryEventReceiver;
+import com.eaglesakura.android.device.event.ScreenEventReceiver;
+
+import android.support.annotation.Nullable;
+
+/**
+ * 更新の有無、画面状態、バッテリー残量からフレームレートを決定する
+ *
+ * 以下の条件のうち、最も低いフレームレートを採用する。
+ * <ul>
+ * <li>変化のないフレームが一定数続いた場合はidleFrameRate</li>
+ * <li>スクリーンOFFの場合はscreenOffFrameRate</li>
+ * <li>バッテリー残量が閾値を下回った場合はlowBatteryFrameRate</li>
+ * </ul>
+ * ユーザー入力があった場合は、一定時間最大フレームレートへ即座に戻す。
+ */
+public class AdaptiveFrameRateGovernor implements FrameRateGovernor {
+
+    /**
+     * 変化がない場合のフレームレート
+     */
+    private double mIdleFrameRate = 10;
+
+    /**
+     * 何フレーム変化がなければidleFrameRateへ落とすか
+     */
+    private int mIdleFrameThreshold = 30;
+
+    /**
+     * スクリーンOFF時のフレームレート
+     */
+    private double mScreenOffFrameRate = 1;
+
+    /**
+     * バッテリー残量が少ない場合のフレームレート
+     */
+    private double mLowBatteryFrameRate = 30;
+
+    /**
+     * バッテリー残量の閾値(0.0〜1.0)
+     */
+    private float mLowBatteryLevel = 0.15f;
+
+    /**
+     * 入力後、最大フレームレートを維持する時間
+     */
+    private long mInputBoostMs = 1000;
+
+    private ScreenEventReceiver mScreenReceiver;
+
+    private BatteryEventReceiver mBatteryReceiver;
+
+    /**
+     * Receiverを使用しない場合のスクリーン状態
+     */
+    private boolean mScreenPowerOn = true;
+
+    /**
+     * Receiverを使用しない場合のバッテリー残量
+     */
+    private float mBatteryLevel = 1;
+
+    /**
+     * 連続して変化がなかったフレーム数
+     */
+    private int mIdleFrames = 0;
+
+    /**
+     * 入力による最大フレームレートの維持期限
+     */
+    private long mBoostUntilMs = -1;
+
+    /**
+     * 最後に決定したフレームレート
+     */
+    private volatile double mCurrentFrameRate = 0;
+
+    public AdaptiveFrameRateGovernor() {
+    }
+
+    /**
+     * 状態を取得するReceiverを指定する
+     * nullの場合は{@link #setScreenPowerOn(boolean)}と{@link #setBatteryLevel(float)}で指定された値を使用する
+     */
+    public void bind(@Nullable ScreenEventReceiver screenReceiver, @Nullable BatteryEventReceiver batteryReceiver) {
+        mScreenReceiver = screenReceiver;
+        mBatteryReceiver = batteryReceiver;
+    }
+
+    public void setIdleFrameRate(double idleFrameRate) {
+        mIdleFrameRate = idleFrameRate;
+    }
+
+    public void setIdleFrameThreshold(int idleFrameThreshold) {
+        mIdleFrameThreshold = idleFrameThreshold;
+    }
+
+    public void setScreenOffFrameRate(double screenOffFrameRate) {
+        mScreenOffFrameRate = screenOffFrameRate;
+    }
+
+    public void setLowBatteryFrameRate(double lowBatteryFrameRate) {
+        mLowBatteryFrameRate = lowBatteryFrameRate;
+    }
+
+    public void setLowBatteryLevel(float lowBatteryLevel) {
+        mLowBatteryLevel = lowBatteryLevel;
+    }
+
+    public void setInputBoostMs(long inputBoostMs) {
+        mInputBoostMs = inputBoostMs;
+    }
+
+    public void setScreenPowerOn(boolean screenPowerOn) {
+        mScreenPowerOn = screenPowerOn;
+    }
+
+    public void setBatteryLevel(float batteryLevel) {
+        mBatteryLevel = batteryLevel;
+    }
+
+    /**
+     * 最後に決定したフレームレートを取得する
+     */
+    public double getCurrentFrameRate() {
+        return mCurrentFrameRate;
+    }
+
+    private boolean isScreenPowerOn() {
+        return mScreenReceiver != null ? mScreenReceiver.isScreenPowerOn() : mScreenPowerOn;
+    }
+
+    private float getBatteryLevel() {
+        return mBatteryReceiver != null ? mBatteryReceiver.getPowerLevel() : mBatteryLevel;
+    }
+
+    @Override
+    public double onFrame(long nowMs, double baseFrameRate, boolean changed) {
+        if (changed) {
+            mIdleFrames = 0;
+        } else if (mIdleFrames < Integer.MAX_VALUE) {
+            ++mIdleFrames;
+        }
+        return mCurrentFrameRate = select(nowMs, baseFrameRate);
+    }
+
+    @Override
+    public double onInput(long nowMs, double baseFrameRate) {
+        mIdleFrames = 0;
+        mBoostUntilMs = nowMs + mInputBoostMs;
+        return mCurrentFrameRate = select(nowMs, baseFrameRate);
+    }
+
+    private double select(long nowMs, double baseFrameRate) {
+        double result = baseFrameRate;
+
+        if (!isScreenPowerOn()) {
+            result = Math.min(result, mScreenOffFrameRate);
+        }
+
+        if (getBatteryLevel() < mLowBatteryLevel) {
+            result = Math.min(result, mLowBatteryFrameRate);
+        }
+
+        if (nowMs < mBoostUntilMs) {
+            // 入力直後はアイドル判定を行わない
+            return result;
+        }
+
+        if (mIdleFrames >= mIdleFrameThreshold) {
+            result = Math.min(result, mIdleFrameRate);
+        }
+        return result;
+    }
+}
@@ -1,10 +1,13 @@
 package com.eaglesakura.android.thread;
 
 import com.eaglesakura.util.ThrowableRunnable;
-import com.eaglesakura.util.ThrowableRunner;
 
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.Message;
+import android.os.SystemClock;
+
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 非同期実行用のハンドラ生成Util
@@ -12,16 +15,79 @@ import android.os.HandlerThread;
 public class AsyncHandler extends Handler {
     final HandlerThread thread;
 
+    /**
+     * スレッドを管理しているプール
+     * プール管理されていない場合はnull
+     */
+    final HandlerThreadPool pool;
+
+    final HandlerThreadPool.Lane lane;
+
+    final AtomicBoolean disposed = new AtomicBoolean(false);
+
     public AsyncHandler(HandlerThread thread) {
         super(thread.getLooper());
         this.thread = thread;
+        this.pool = null;
+        this.lane = null;
+    }
+
+    AsyncHandler(HandlerThreadPool pool, HandlerThreadPool.Lane lane) {
+        super(lane.thread.getLooper());
+        this.thread = lane.thread;
+        this.pool = pool;
+        this.lane = lane;
+    }
+
+    /**
+     * {@link HandlerProfiler}が有効な場合、待ち時間と実行時間を記録する
+     */
+    @Override
+    public void dispatchMessage(Message msg) {
+        HandlerProfiler profiler = HandlerProfiler.getInstance();
+        if (!profiler.isEnabled()) {
+            super.dispatchMessage(msg);
+            return;
+        }
+
+        final long startUptime = SystemClock.uptimeMillis();
+        final long startNano = System.nanoTime();
+        try {
+            super.dispatchMessage(msg);
+        } finally {
+            profiler.endDispatch(thread.getName(), msg, startUptime, startNano);
+        }
     }
 
     /**
-     * ハンドラとスレッドを廃棄する。
-     * これの呼び出し以降、ハンドラは正常に動作しない。
+     * 廃棄済みの場合はメッセージを受け付けずにfalseを返す
+     * プール管理されている場合、返却後のスレッドは他のハンドラが使用しているため
+     */
+    @Override
+    public boolean sendMessageAtTime(Message msg, long uptimeMillis) {
+        if (disposed.get()) {
+            return false;
+        }
+        return super.sendMessageAtTime(msg, uptimeMillis);
+    }
+
+    /**
+     * ハンドラを廃棄する。
+     * プール管理されている場合、未実行の処理を破棄してスレッドをプールへ返却する。
+     * そうでない場合はスレッドを終了させる。
+     * これの呼び出し以降、post()等は処理を受け付けずにfalseを返す。
      */
     public void dispose() {
+        if (!disposed.compareAndSet(false, true)) {
+            return;
+        }
+
+        if (pool != null) {
+            removeCallbacksAndMessages(null);
+            pool.release(lane);
+            return;
+        }
+
         try {
             boolean handlerThread = isHandlerThread();
             thread.quit();
@@ -33,10 +99,19 @@ public class AsyncHandler extends Handler {
         }
     }
 
+    /**
+     * ハンドラで処理を行わせ、完了を待つ
+     * ハンドラのスレッドから呼び出された場合はその場で実行する
+     */
     public <ReturnType, ErrorType extends Exception> ReturnType await(ThrowableRunnable<ReturnType, ErrorType> action) throws ErrorType {
-        ThrowableRunner<ReturnType, ErrorType> runner = new ThrowableRunner<>(action);
-        post(runner);
-        return runner.await();
+        return HandlerFuture.postOrRun(this, action).<ErrorType>getResult();
+    }
+
+    /**
+     * ハンドラで処理を行わせ、完了を待つためのFutureを取得する
+     */
+    public <ReturnType, ErrorType extends Exception> HandlerFuture<ReturnType> submit(ThrowableRunnable<ReturnType, ErrorType> action) {
+        return HandlerFuture.post(this, action);
     }
 
     /**
@@ -53,12 +128,18 @@ public class AsyncHandler extends Handler {
         return Thread.currentThread().equals(getThread());
     }
 
+    /**
+     * プール管理されている場合はtrue
+     */
+    public boolean isPooled() {
+        return pool != null;
+    }
+
     /**
      * ハンドラを生成する。
+     * スレッドは{@link HandlerThreadPool#getDefault()}から取得される。
      */
     public static AsyncHandler createInstance(String name) {
-        HandlerThread thread = new HandlerThread(name);
-        thread.start();
-        return new AsyncHandler(thread);
+        return HandlerThreadPool.getDefault().acquire(name);
     }
 }
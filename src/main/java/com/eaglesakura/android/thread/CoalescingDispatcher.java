@@ -0,0 +1,323 @@
+package com.eaglesakura.android.thread;
+
+import com.eaglesakura.lambda.Action1;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * キーごとに処理をまとめ、1フレームに1回だけハンドラへ処理を投げる
+ *
+ * 同じキーへ短時間に大量のpostを行っても、ハンドラへのディスパッチはフレーム境界で1回にまとめられる。
+ * minSdkVersionの都合でChoreographerは使用せず、{@link #FRAME_INTERVAL_MS}単位に揃えてディスパッチする。
+ */
+public class CoalescingDispatcher {
+
+    /**
+     * 処理のまとめ方
+     */
+    public enum Mode {
+        /**
+         * 次のフレームで、最後にpostされたペイロードを処理する
+         */
+        LastWins,
+
+        /**
+         * 次のフレームで、最初にpostされたペイロードを処理する
+         */
+        FirstWins,
+
+        /**
+         * 指定した間隔に1回だけ、最後にpostされたペイロードを処理する
+         */
+        Throttle,
+
+        /**
+         * 最後のpostから指定時間が経過したら、最後にpostされたペイロードを処理する
+         */
+        Debounce,
+    }
+
+    /**
+     * 同じキーへpostされたペイロードを統合する
+     */
+    public interface PayloadMerger<T> {
+        /**
+         * @param current 統合済みのペイロード
+         * @param next    新たにpostされたペイロード
+         * @return 統合後のペイロード
+         */
+        T merge(T current, T next);
+    }
+
+    /**
+     * ディスパッチ間隔
+     */
+    public static final long FRAME_INTERVAL_MS = 16;
+
+    /**
+     * キーごとの待機中の処理
+     */
+    static class Entry {
+        Mode mode;
+
+        Object payload;
+
+        PayloadMerger merger;
+
+        Action1 callback;
+
+        long windowMs;
+
+        long maxLatencyMs;
+
+        /**
+         * 待機を開始した時刻
+         */
+        long firstPostTime;
+
+        /**
+         * 処理予定時刻
+         */
+        long dueTime;
+
+        /**
+         * 最後にディスパッチした時刻
+         */
+        long lastDispatchTime = -1;
+
+        /**
+         * 処理待ちのペイロードがあればtrue
+         */
+        boolean pending;
+    }
+
+    private final Handler mHandler;
+
+    private final Object mLock = new Object();
+
+    private final Map<Object, Entry> mEntries = new HashMap<>();
+
+    /**
+     * 予約済みのディスパッチ時刻、予約されていなければ-1
+     */
+    private long mScheduledTime = -1;
+
+    public CoalescingDispatcher(Handler handler) {
+        mHandler = handler;
+    }
+
+    public Handler getHandler() {
+        return mHandler;
+    }
+
+    /**
+     * 次のフレームで処理を行う
+     * 同じキーで複数回postされた場合、1回だけ実行される
+     */
+    public void post(Object key, Runnable runnable) {
+        post(key, Mode.LastWins, 0, 0, runnable, null, Runnable::run);
+    }
+
+    /**
+     * キーごとにまとめて処理を行う
+     *
+     * @param key      処理をまとめるキー
+     * @param mode     まとめ方
+     * @param windowMs ThrottleとDebounceで使用する時間
+     * @param payload  処理対象のデータ
+     * @param callback ハンドラで実行される処理
+     */
+    public <T> void post(Object key, Mode mode, long windowMs, T payload, Action1<T> callback) {
+        post(key, mode, windowMs, 0, payload, null, callback);
+    }
+
+    /**
+     * キーごとにまとめて処理を行う
+     *
+     * @param key          処理をまとめるキー
+     * @param mode         まとめ方
+     * @param windowMs     ThrottleとDebounceで使用する時間
+     * @param maxLatencyMs 最初のpostから処理までの最大待ち時間、0以下の場合は無制限
+     * @param payload      処理対象のデータ
+     * @param merger       ペイロードの統合処理、nullの場合はmodeに従って選択する
+     * @param callback     ハンドラで実行される処理
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void post(Object key, Mode mode, long windowMs, long maxLatencyMs, T payload, @Nullable PayloadMerger<T> merger, Action1<T> callback) {
+        if (key == null || mode == null || callback == null) {
+            throw new NullPointerException();
+        }
+
+        final long now = SystemClock.uptimeMillis();
+        final long dueTime;
+        synchronized (mLock) {
+            Entry entry = mEntries.get(key);
+            if (entry == null) {
+                entry = new Entry();
+                mEntries.put(key, entry);
+            }
+
+            entry.mode = mode;
+            entry.windowMs = Math.max(0, windowMs);
+            entry.maxLatencyMs = maxLatencyMs;
+            entry.merger = merger;
+            entry.callback = callback;
+
+            if (!entry.pending) {
+                entry.pending = true;
+                entry.firstPostTime = now;
+                entry.payload = payload;
+            } else if (merger != null) {
+                entry.payload = merger.merge((T) entry.payload, payload);
+            } else if (mode != Mode.FirstWins) {
+                entry.payload = payload;
+            }
+
+            switch (mode) {
+                case Throttle:
+                    entry.dueTime = entry.lastDispatchTime < 0 ? now : Math.max(now, entry.lastDispatchTime + entry.windowMs);
+                    break;
+                case Debounce:
+                    entry.dueTime = now + entry.windowMs;
+                    break;
+                default:
+                    entry.dueTime = now;
+                    break;
+            }
+
+            if (maxLatencyMs > 0) {
+                entry.dueTime = Math.min(entry.dueTime, entry.firstPostTime + maxLatencyMs);
+            }
+            dueTime = entry.dueTime;
+        }
+
+        schedule(dueTime);
+    }
+
+    /**
+     * 待機中の処理をキャンセルする
+     */
+    public void cancel(Object key) {
+        synchronized (mLock) {
+            mEntries.remove(key);
+        }
+    }
+
+    /**
+     * 待機中の処理を全てキャンセルする
+     */
+    public void cancelAll() {
+        synchronized (mLock) {
+            mEntries.clear();
+            mScheduledTime = -1;
+        }
+        mHandler.removeCallbacks(mDispatchRunner);
+    }
+
+    /**
+     * 処理待ちのキー数を取得する
+     */
+    public int getPendingCount() {
+        synchronized (mLock) {
+            int result = 0;
+            for (Entry entry : mEntries.values()) {
+                if (entry.pending) {
+                    ++result;
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 指定時刻以降の最初のフレーム境界でディスパッチを予約する
+     * 現在のフレームで既にディスパッチしている可能性があるため、現在時刻ちょうどの境界は使用しない
+     */
+    private void schedule(long dueTime) {
+        final long now = SystemClock.uptimeMillis();
+        final long time = alignFrame(Math.max(now + 1, dueTime));
+        synchronized (mLock) {
+            if (mScheduledTime >= 0 && mScheduledTime <= time) {
+                // より早いディスパッチが予約済み
+                return;
+            }
+            mScheduledTime = time;
+            mHandler.removeCallbacks(mDispatchRunner);
+            mHandler.postAtTime(mDispatchRunner, time);
+        }
+    }
+
+    private static long alignFrame(long time) {
+        return ((time + FRAME_INTERVAL_MS - 1) / FRAME_INTERVAL_MS) * FRAME_INTERVAL_MS;
+    }
+
+    private final Runnable mDispatchRunner = new Runnable() {
+        @Override
+        public void run() {
+            final long now = SystemClock.uptimeMillis();
+            final List<Object> payloads = new ArrayList<>();
+            final List<Action1> callbacks = new ArrayList<>();
+            long nextDueTime = -1;
+
+            synchronized (mLock) {
+                mScheduledTime = -1;
+                Iterator<Entry> iterator = mEntries.values().iterator();
+                while (iterator.hasNext()) {
+                    Entry entry = iterator.next();
+                    if (!entry.pending) {
+                        // Throttleの間隔が過ぎたものは管理から外す
+                        if (now - entry.lastDispatchTime >= entry.windowMs) {
+                            iterator.remove();
+                        }
+                        continue;
+                    }
+
+                    if (entry.dueTime <= now) {
+                        payloads.add(entry.payload);
+                        callbacks.add(entry.callback);
+                        entry.payload = null;
+                        entry.pending = false;
+                        entry.lastDispatchTime = now;
+                        if (entry.mode != Mode.Throttle) {
+                            iterator.remove();
+                        }
+                    } else if (nextDueTime < 0 || entry.dueTime < nextDueTime) {
+                        nextDueTime = entry.dueTime;
+                    }
+                }
+            }
+
+            if (nextDueTime >= 0) {
+                schedule(nextDueTime);
+            }
+
+            // 取り出した処理は管理から外れているため、例外が発生しても残りを全て実行し、最初の例外を投げ直す
+            Throwable error = null;
+            for (int i = 0; i < callbacks.size(); ++i) {
+                try {
+                    callbacks.get(i).action(payloads.get(i));
+                } catch (Throwable e) {
+                    if (error == null) {
+                        error = e;
+                    }
+                }
+            }
+
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            } else if (error instanceof Error) {
+                throw (Error) error;
+            } else if (error != null) {
+                throw new RuntimeException(error);
+            }
+        }
+    };
+}
@@ -0,0 +1,28 @@
+package com.eaglesakura.android.thread;
+
+/**
+ * HandlerLoopControllerのフレームレートを動的に決定する
+ *
+ * 全てのメソッドはループを実行するハンドラのスレッドから呼び出される。
+ * 時刻は引数で渡されるため、仮想時刻を与えてテストすることができる。
+ */
+public interface FrameRateGovernor {
+    /**
+     * 1フレームの処理が終わった
+     *
+     * @param nowMs         現在時刻（ミリ秒）
+     * @param baseFrameRate {@link HandlerLoopController#setFrameRate(double)}で指定された最大フレームレート
+     * @param changed       このフレームの更新で変化があった場合true
+     * @return 次のフレームで使用するフレームレート
+     */
+    double onFrame(long nowMs, double baseFrameRate, boolean changed);
+
+    /**
+     * ユーザー入力があった
+     *
+     * @param nowMs         現在時刻（ミリ秒）
+     * @param baseFrameRate {@link HandlerLoopController#setFrameRate(double)}で指定された最大フレームレート
+     * @return 次のフレームで使用するフレームレート
+     */
+    double onInput(long nowMs, double baseFrameRate);
+}
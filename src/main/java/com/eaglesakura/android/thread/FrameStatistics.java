@@ -0,0 +1,159 @@
+package com.eaglesakura.android.thread;
+
+import java.util.Arrays;
+
+/**
+ * ループ処理のフレーム統計情報
+ *
+ * 記録はループを実行するスレッドから行い、参照は任意のスレッドから行える。
+ */
+public class FrameStatistics {
+    /**
+     * 直近のフレーム間隔を保持するリングバッファ（ナノ秒）
+     */
+    private final long[] mIntervalWindow;
+
+    /**
+     * 直近の更新処理時間を保持するリングバッファ（ナノ秒）
+     */
+    private final long[] mUpdateWindow;
+
+    /**
+     * 次に書き込むリングバッファの位置
+     */
+    private int mWindowHead = 0;
+
+    /**
+     * リングバッファに格納されている有効な値の数
+     */
+    private int mWindowCount = 0;
+
+    /**
+     * 記録したフレーム数
+     */
+    private long mFrameCount = 0;
+
+    /**
+     * 実行した更新処理の回数
+     */
+    private long mUpdateCount = 0;
+
+    /**
+     * 間に合わなかったデッドラインの数
+     */
+    private long mMissedDeadlineCount = 0;
+
+    /**
+     * 直前のフレーム間隔（ナノ秒）
+     */
+    private long mLastIntervalNano = 0;
+
+    /**
+     * 直前のフレームの更新処理時間（ナノ秒）
+     */
+    private long mLastUpdateNano = 0;
+
+    public FrameStatistics() {
+        this(120);
+    }
+
+    /**
+     * @param windowSize パーセンタイル計算に使用するフレーム数
+     */
+    public FrameStatistics(int windowSize) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("windowSize <= 0");
+        }
+        mIntervalWindow = new long[windowSize];
+        mUpdateWindow = new long[windowSize];
+    }
+
+    /**
+     * 1フレームの情報を記録する
+     *
+     * @param intervalNano 前のフレームからの実際の経過時間
+     * @param updateNano   更新処理にかかった時間
+     * @param updateSteps  このフレームで実行した更新処理の回数
+     * @param missed       このフレームで間に合わなかったデッドラインの数
+     */
+    synchronized void record(long intervalNano, long updateNano, int updateSteps, int missed) {
+        mLastIntervalNano = intervalNano;
+        mLastUpdateNano = updateNano;
+        mIntervalWindow[mWindowHead] = intervalNano;
+        mUpdateWindow[mWindowHead] = updateNano;
+        mWindowHead = (mWindowHead + 1) % mIntervalWindow.length;
+        mWindowCount = Math.min(mWindowCount + 1, mIntervalWindow.length);
+
+        ++mFrameCount;
+        mUpdateCount += updateSteps;
+        mMissedDeadlineCount += missed;
+    }
+
+    /**
+     * 記録を初期化する
+     */
+    public synchronized void reset() {
+        mWindowHead = 0;
+        mWindowCount = 0;
+        mFrameCount = 0;
+        mUpdateCount = 0;
+        mMissedDeadlineCount = 0;
+        mLastIntervalNano = 0;
+        mLastUpdateNano = 0;
+    }
+
+    public synchronized long getFrameCount() {
+        return mFrameCount;
+    }
+
+    public synchronized long getUpdateCount() {
+        return mUpdateCount;
+    }
+
+    public synchronized long getMissedDeadlineCount() {
+        return mMissedDeadlineCount;
+    }
+
+    /**
+     * 直前のフレーム間隔を秒単位で取得する
+     */
+    public synchronized double getLastIntervalSec() {
+        return (double) mLastIntervalNano / 1000.0 / 1000.0 / 1000.0;
+    }
+
+    /**
+     * 直前のフレームの更新処理時間を秒単位で取得する
+     */
+    public synchronized double getLastUpdateSec() {
+        return (double) mLastUpdateNano / 1000.0 / 1000.0 / 1000.0;
+    }
+
+    /**
+     * 直近のフレーム間隔のパーセンタイルを秒単位で取得する
+     *
+     * @param percentile 0.0〜1.0の範囲で指定する
+     */
+    public double getIntervalPercentileSec(double percentile) {
+        return percentile(mIntervalWindow, percentile);
+    }
+
+    /**
+     * 直近の更新処理時間のパーセンタイルを秒単位で取得する
+     *
+     * @param percentile 0.0〜1.0の範囲で指定する
+     */
+    public double getUpdatePercentileSec(double percentile) {
+        return percentile(mUpdateWindow, percentile);
+    }
+
+    private synchronized double percentile(long[] window, double percentile) {
+        if (mWindowCount == 0) {
+            return 0;
+        }
+
+        long[] sorted = Arrays.copyOf(window, mWindowCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.round(Math.max(0.0, Math.min(1.0, percentile)) * (sorted.length - 1));
+        return (double) sorted[index] / 1000.0 / 1000.0 / 1000.0;
+    }
+}
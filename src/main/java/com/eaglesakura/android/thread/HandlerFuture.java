@@ -0,0 +1,400 @@
+package com.eaglesakura.android.thread;
+
+import com.eaglesakura.android.util.AndroidThreadUtil;
+import com.eaglesakura.lambda.CallbackUtils;
+import com.eaglesakura.lambda.CancelCallback;
+import com.eaglesakura.util.ThrowableRunnable;
+
+import android.os.Handler;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Handlerへ投げた処理の完了を待つためのFuture
+ *
+ * 待機中のスレッドはスピンせずにparkし、完了時にunparkされる。
+ * CancelCallbackによる待機はコールバックの確認のため、一定間隔で起床する。
+ */
+public class HandlerFuture<T> implements Future<T> {
+
+    /**
+     * 完了時に呼び出される処理
+     */
+    public interface Continuation<T, R> {
+        R onComplete(HandlerFuture<T> future) throws Exception;
+    }
+
+    private static final int STATE_PENDING = 0;
+
+    private static final int STATE_COMPLETING = 1;
+
+    private static final int STATE_COMPLETED = 2;
+
+    private static final int STATE_FAILED = 3;
+
+    private static final int STATE_CANCELED = 4;
+
+    /**
+     * CancelCallbackを確認する間隔
+     */
+    private static final long CANCEL_CHECK_INTERVAL_NANO = 1000 * 1000 * 10;
+
+    private final AtomicInteger mState = new AtomicInteger(STATE_PENDING);
+
+    private T mResult;
+
+    private Throwable mError;
+
+    /**
+     * 待機中のスレッド
+     */
+    private final ConcurrentLinkedQueue<Thread> mWaiters = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 完了時に実行する処理
+     * 完了後はnullとなる
+     */
+    private List<Runnable> mContinuations = new ArrayList<>();
+
+    /**
+     * キャンセル時にタスクを取り除くハンドラ
+     */
+    private volatile Handler mHandler;
+
+    private volatile Runnable mTask;
+
+    public HandlerFuture() {
+    }
+
+    /**
+     * 指定したハンドラへ処理を投げる
+     */
+    public static <T, E extends Exception> HandlerFuture<T> post(Handler handler, ThrowableRunnable<T, E> action) {
+        HandlerFuture<T> result = new HandlerFuture<>();
+        Runnable task = result.newTask(action);
+        result.mHandler = handler;
+        result.mTask = task;
+        handler.post(task);
+        return result;
+    }
+
+    /**
+     * 指定したハンドラのスレッドであればその場で実行し、そうでなければ処理を投げる
+     */
+    public static <T, E extends Exception> HandlerFuture<T> postOrRun(@Nullable Handler handler, ThrowableRunnable<T, E> action) {
+        if (handler == null || AndroidThreadUtil.isHandlerThread(handler)) {
+            HandlerFuture<T> result = new HandlerFuture<>();
+            result.newTask(action).run();
+            return result;
+        } else {
+            return post(handler, action);
+        }
+    }
+
+    <E extends Exception> Runnable newTask(ThrowableRunnable<T, E> action) {
+        return () -> {
+            if (isDone()) {
+                // キャンセル済み
+                return;
+            }
+
+            try {
+                complete(action.run());
+            } catch (Throwable e) {
+                fail(e);
+            }
+        };
+    }
+
+    /**
+     * 処理結果を設定する
+     *
+     * @return 既に完了している場合はfalse
+     */
+    public boolean complete(T result) {
+        if (!mState.compareAndSet(STATE_PENDING, STATE_COMPLETING)) {
+            return false;
+        }
+        mResult = result;
+        mState.set(STATE_COMPLETED);
+        onFinished();
+        return true;
+    }
+
+    /**
+     * 処理を失敗させる
+     *
+     * @return 既に完了している場合はfalse
+     */
+    public boolean fail(Throwable error) {
+        if (!mState.compareAndSet(STATE_PENDING, STATE_COMPLETING)) {
+            return false;
+        }
+        mError = error;
+        mState.set(STATE_FAILED);
+        onFinished();
+        return true;
+    }
+
+    /**
+     * 処理をキャンセルする
+     * ハンドラで未実行の場合、ハンドラからも処理を取り除く
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!mState.compareAndSet(STATE_PENDING, STATE_COMPLETING)) {
+            return false;
+        }
+        mState.set(STATE_CANCELED);
+        if (mHandler != null) {
+            mHandler.removeCallbacks(mTask);
+        }
+        onFinished();
+        return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return mState.get() == STATE_CANCELED;
+    }
+
+    @Override
+    public boolean isDone() {
+        return mState.get() > STATE_COMPLETING;
+    }
+
+    /**
+     * 例外で終了した場合はtrue
+     */
+    public boolean isFailed() {
+        return mState.get() == STATE_FAILED;
+    }
+
+    /**
+     * 例外で終了した場合、その例外を取得する
+     */
+    @Nullable
+    public Throwable getError() {
+        return mState.get() == STATE_FAILED ? mError : null;
+    }
+
+    private void onFinished() {
+        Thread waiter;
+        while ((waiter = mWaiters.poll()) != null) {
+            LockSupport.unpark(waiter);
+        }
+
+        List<Runnable> continuations;
+        synchronized (this) {
+            continuations = mContinuations;
+            mContinuations = null;
+        }
+        for (Runnable continuation : continuations) {
+            continuation.run();
+        }
+    }
+
+    /**
+     * 完了するか、タイムアウトするまで待機する
+     *
+     * @param timeoutNano タイムアウト時間、0未満の場合は無制限
+     * @param cancel      キャンセルチェック
+     * @param interruptible 割り込みで待機を終了する場合true
+     * @return 完了した場合true
+     */
+    private boolean awaitDone(long timeoutNano, @Nullable CancelCallback cancel, boolean interruptible) throws InterruptedException {
+        if (isDone()) {
+            return true;
+        }
+
+        final Thread current = Thread.currentThread();
+        final long deadline = System.nanoTime() + timeoutNano;
+        boolean interrupted = false;
+        mWaiters.add(current);
+        try {
+            while (!isDone()) {
+                if (cancel != null && CallbackUtils.isCanceled(cancel)) {
+                    return false;
+                }
+
+                long park = cancel != null ? CANCEL_CHECK_INTERVAL_NANO : Long.MAX_VALUE;
+                if (timeoutNano >= 0) {
+                    long remain = deadline - System.nanoTime();
+                    if (remain <= 0) {
+                        return false;
+                    }
+                    park = Math.min(park, remain);
+                }
+
+                if (park == Long.MAX_VALUE) {
+                    LockSupport.park(this);
+                } else {
+                    LockSupport.parkNanos(this, park);
+                }
+
+                if (Thread.interrupted()) {
+                    if (interruptible) {
+                        throw new InterruptedException();
+                    }
+                    interrupted = true;
+                }
+            }
+            return true;
+        } finally {
+            mWaiters.remove(current);
+            if (interrupted) {
+                current.interrupt();
+            }
+        }
+    }
+
+    /**
+     * 完了するまで待機する
+     * タイムアウトするか、キャンセルコールバックがキャンセルを返した場合、処理をキャンセルしてfalseを返す
+     *
+     * @param timeoutMs タイムアウト時間、0未満の場合は無制限
+     * @param cancel    キャンセルチェック
+     * @return 処理が完了した場合true
+     */
+    public boolean await(long timeoutMs, @Nullable CancelCallback cancel) {
+        try {
+            if (awaitDone(timeoutMs < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(timeoutMs), cancel, false)) {
+                return !isCancelled();
+            }
+        } catch (InterruptedException e) {
+            // 割り込みは許可していない
+        }
+        return !cancel(false) && !isCancelled();
+    }
+
+    /**
+     * 完了するまで待機する
+     * キャンセルコールバックがキャンセルを返した場合、処理をキャンセルしてfalseを返す
+     *
+     * @return 処理が完了した場合true
+     */
+    public boolean await(@Nullable CancelCallback cancel) {
+        return await(-1, cancel);
+    }
+
+    /**
+     * 完了するまで待機する
+     * タイムアウトした場合は処理をキャンセルしてfalseを返す
+     *
+     * @return 処理が完了した場合true
+     */
+    public boolean await(long timeoutMs) {
+        return await(Math.max(0, timeoutMs), null);
+    }
+
+    /**
+     * 完了するまで待機する
+     * await()と異なり、タイムアウトしても処理はキャンセルせず、ハンドラに残したままとする
+     *
+     * @param timeoutMs タイムアウト時間、0以下の場合は無制限
+     * @return 処理が終了した場合true
+     */
+    public boolean awaitWithoutCancel(long timeoutMs) {
+        try {
+            return awaitDone(timeoutMs <= 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(timeoutMs), null, false);
+        } catch (InterruptedException e) {
+            // 割り込みは許可していない
+            return isDone();
+        }
+    }
+
+    /**
+     * 完了を待って処理結果を取得する
+     * 処理が例外を投げた場合、その例外をそのまま投げる
+     *
+     * @throws CancellationException キャンセルされた場合
+     */
+    @SuppressWarnings("unchecked")
+    public <E extends Exception> T getResult() throws E {
+        try {
+            awaitDone(-1, null, false);
+        } catch (InterruptedException e) {
+            // 割り込みは許可していない
+        }
+
+        switch (mState.get()) {
+            case STATE_COMPLETED:
+                return mResult;
+            case STATE_FAILED:
+                if (mError instanceof Error) {
+                    throw (Error) mError;
+                }
+                throw (E) mError;
+            default:
+                throw new CancellationException();
+        }
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        awaitDone(-1, null, true);
+        return report();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!awaitDone(Math.max(0, unit.toNanos(timeout)), null, true)) {
+            throw new TimeoutException();
+        }
+        return report();
+    }
+
+    private T report() throws ExecutionException {
+        switch (mState.get()) {
+            case STATE_COMPLETED:
+                return mResult;
+            case STATE_FAILED:
+                throw new ExecutionException(mError);
+            default:
+                throw new CancellationException();
+        }
+    }
+
+    /**
+     * 完了後に指定したハンドラで処理を行う
+     *
+     * @param handler      実行するハンドラ、nullの場合は完了したスレッドで実行する
+     * @param continuation 完了後の処理
+     * @return continuationの処理結果
+     */
+    public <R> HandlerFuture<R> then(@Nullable Handler handler, Continuation<T, R> continuation) {
+        final HandlerFuture<R> result = new HandlerFuture<>();
+        final Runnable task = () -> {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                result.complete(continuation.onComplete(this));
+            } catch (Throwable e) {
+                result.fail(e);
+            }
+        };
+        final Runnable dispatch = () -> AndroidThreadUtil.postOrRun(handler, task);
+
+        synchronized (this) {
+            if (mContinuations != null) {
+                mContinuations.add(dispatch);
+                return result;
+            }
+        }
+
+        // 既に完了している
+        dispatch.run();
+        return result;
+    }
+}
@@ -1,6 +1,7 @@
 package com.eaglesakura.android.thread;
 
 import android.os.Handler;
+import android.os.SystemClock;
 import android.support.annotation.Nullable;
 
 import com.eaglesakura.lambda.Action1;
@@ -10,6 +11,28 @@ import com.eaglesakura.util.Timer;
  * 指定のハンドラでループ処理を行うUtilクラス
  */
 public class HandlerLoopController {
+    /**
+     * ループのスケジューリング方式
+     */
+    public enum ScheduleMode {
+        /**
+         * ミリ秒単位で前回の処理時間を差し引いてpostする
+         * 互換性のためのデフォルト動作で、フレームレートの正確性は保証しない
+         */
+        Legacy,
+
+        /**
+         * ナノ秒単位の絶対デッドラインでスケジュールし、実際の経過時間をデルタ時間として1回更新する
+         */
+        VariableStep,
+
+        /**
+         * ナノ秒単位の絶対デッドラインでスケジュールし、固定のデルタ時間で更新する
+         * 処理が遅れた場合は最大{@link #setMaxCatchUpSteps(int)}回まで追加で更新を行う
+         */
+        FixedStep,
+    }
+
     final private Handler mHandler;
 
     /**
@@ -43,6 +66,57 @@ public class HandlerLoopController {
      */
     private Action1<Double> mHandlerAction;
 
+    /**
+     * スケジューリング方式
+     */
+    private ScheduleMode mScheduleMode = ScheduleMode.Legacy;
+
+    /**
+     * 実行中のループが使用しているスケジューリング方式
+     * connect()時点のmScheduleModeが反映される
+     */
+    private ScheduleMode mLoopScheduleMode = ScheduleMode.Legacy;
+
+    /**
+     * FixedStepで1フレームに実行できる最大の更新回数
+     */
+    private int mMaxCatchUpSteps = 4;
+
+    /**
+     * 次のフレームのデッドライン（nanoTime()基準）
+     */
+    private long mNextDeadlineNano;
+
+    /**
+     * 前のフレームの実行時刻（nanoTime()基準）
+     */
+    private long mLastFrameNano;
+
+    /**
+     * FixedStepで未消化の経過時間
+     */
+    private long mAccumulatorNano;
+
+    /**
+     * フレームレートを動的に決定する
+     */
+    private FrameRateGovernor mGovernor;
+
+    /**
+     * Governorが決定したフレームレート
+     */
+    private volatile double mEffectiveFrameRate = mFrameRate;
+
+    /**
+     * 現在のフレームで変化があった場合true
+     */
+    private boolean mFrameChanged = true;
+
+    /**
+     * フレーム統計
+     */
+    private final FrameStatistics mStatistics = new FrameStatistics();
+
     /**
      * コンストラクタにメソッド参照を渡すことを推奨する
      */
@@ -88,6 +162,81 @@ public class HandlerLoopController {
         return mFrameRate;
     }
 
+    /**
+     * フレームレートを動的に決定するGovernorを指定する
+     * nullの場合は{@link #setFrameRate(double)}の値で固定される
+     */
+    public void setFrameRateGovernor(@Nullable FrameRateGovernor governor) {
+        mGovernor = governor;
+        mEffectiveFrameRate = mFrameRate;
+    }
+
+    public FrameRateGovernor getFrameRateGovernor() {
+        return mGovernor;
+    }
+
+    /**
+     * 実際に使用しているフレームレートを取得する
+     * Governorが指定されていない場合は{@link #getFrameRate()}と同じ値となる
+     */
+    public double getEffectiveFrameRate() {
+        return mGovernor != null ? mEffectiveFrameRate : mFrameRate;
+    }
+
+    /**
+     * 現在のフレームの更新で変化がなかったことを通知する
+     * 更新処理の中から呼び出す
+     */
+    public void reportNoChange() {
+        mFrameChanged = false;
+    }
+
+    /**
+     * ユーザー入力があったことを通知する
+     * Governorがフレームレートを上げた場合、即座に次のフレームを処理する
+     */
+    public void notifyInput() {
+        mHandler.post(inputRunner);
+    }
+
+    /**
+     * スケジューリング方式を指定する
+     * ループ中に変更した場合、次のconnect()から反映される
+     */
+    public void setScheduleMode(ScheduleMode scheduleMode) {
+        if (scheduleMode == null) {
+            throw new NullPointerException("scheduleMode == null");
+        }
+        mScheduleMode = scheduleMode;
+    }
+
+    public ScheduleMode getScheduleMode() {
+        return mScheduleMode;
+    }
+
+    /**
+     * FixedStepで処理が遅れた場合に、1フレームで実行できる最大の更新回数を指定する
+     * これを超えた遅れは切り捨てられる
+     */
+    public void setMaxCatchUpSteps(int maxCatchUpSteps) {
+        if (maxCatchUpSteps <= 0) {
+            throw new IllegalArgumentException("maxCatchUpSteps <= 0");
+        }
+        mMaxCatchUpSteps = maxCatchUpSteps;
+    }
+
+    public int getMaxCatchUpSteps() {
+        return mMaxCatchUpSteps;
+    }
+
+    /**
+     * フレーム統計を取得する
+     * Legacyモードでは記録されない
+     */
+    public FrameStatistics getStatistics() {
+        return mStatistics;
+    }
+
     /**
      * 処理を開始する
      */
@@ -97,7 +246,19 @@ public class HandlerLoopController {
         }
         mLooping = true;
         mHandler.removeCallbacks(loopRunner);
-        mHandler.post(loopRunner);
+        mHandler.removeCallbacks(deadlineLoopRunner);
+        mLoopScheduleMode = mScheduleMode;
+        if (mLoopScheduleMode == ScheduleMode.Legacy) {
+            mHandler.post(loopRunner);
+        } else {
+            final long frameNano = getFrameNano();
+            final long now = nanoTime();
+            // 初回フレームの経過時間が1フレーム分となるようにする
+            mLastFrameNano = now - frameNano;
+            mNextDeadlineNano = now;
+            mAccumulatorNano = 0;
+            mHandler.post(deadlineLoopRunner);
+        }
     }
 
     /**
@@ -106,13 +267,19 @@ public class HandlerLoopController {
     public void disconnect() {
         mLooping = false;
         mHandler.removeCallbacks(loopRunner);
+        mHandler.removeCallbacks(deadlineLoopRunner);
     }
 
     /**
      * 開放処理を行う
      */
     public void dispose() {
-        if (mHandler != UIHandler.getInstance()) {
+        if (mHandler instanceof AsyncHandler) {
+            // AsyncHandlerのLooperを直接終了させると、プールへ終了済みのスレッドが残るためdispose()で返却する
+            disconnect();
+            ((AsyncHandler) mHandler).dispose();
+            mDisposed = true;
+        } else if (mHandler != UIHandler.getInstance()) {
             mHandler.getLooper().quit();
             mDisposed = true;
         }
@@ -156,7 +323,7 @@ public class HandlerLoopController {
     private Runnable loopRunner = new Runnable() {
         @Override
         public void run() {
-            final long FRAME_TIME = (long) (1000.0 / mFrameRate); // 1フレームの許容時間
+            final long FRAME_TIME = (long) (1000.0 / getEffectiveFrameRate()); // 1フレームの許容時間
             // デルタ時間を計算
             long deltaMs = mTimer.end();
             if (deltaMs > 0) {
@@ -169,9 +336,119 @@ public class HandlerLoopController {
             onUpdate();
 
             final long UPDATE_TIME = mTimer.end();
+            onFrameFinished();
             if (mLooping) {
                 mHandler.postDelayed(this, Math.max(1, FRAME_TIME - UPDATE_TIME));   // 1フレームにかけた時間を差し引いてpostする
             }
         }
     };
+
+    /**
+     * デッドラインの計算に使用する現在時刻をナノ秒単位で取得する
+     */
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * 1フレームの時間をナノ秒単位で取得する
+     */
+    private long getFrameNano() {
+        return Math.max(1, (long) (1000.0 * 1000.0 * 1000.0 / getEffectiveFrameRate()));
+    }
+
+    /**
+     * Governorへフレームの終了を通知する
+     */
+    private void onFrameFinished() {
+        FrameRateGovernor governor = mGovernor;
+        if (governor != null) {
+            mEffectiveFrameRate = governor.onFrame(SystemClock.uptimeMillis(), mFrameRate, mFrameChanged);
+        }
+        mFrameChanged = true;
+    }
+
+    /**
+     * 入力をGovernorへ通知する
+     */
+    private Runnable inputRunner = new Runnable() {
+        @Override
+        public void run() {
+            FrameRateGovernor governor = mGovernor;
+            if (governor == null) {
+                return;
+            }
+
+            final double oldFrameRate = mEffectiveFrameRate;
+            mEffectiveFrameRate = governor.onInput(SystemClock.uptimeMillis(), mFrameRate);
+            if (!mLooping || mEffectiveFrameRate <= oldFrameRate) {
+                return;
+            }
+
+            // フレームレートが上がったので、待機中のフレームを即座に処理する
+            if (mLoopScheduleMode == ScheduleMode.Legacy) {
+                mHandler.removeCallbacks(loopRunner);
+                mHandler.post(loopRunner);
+            } else {
+                mHandler.removeCallbacks(deadlineLoopRunner);
+                mNextDeadlineNano = nanoTime();
+                mHandler.post(deadlineLoopRunner);
+            }
+        }
+    };
+
+    /**
+     * 絶対デッドラインに基づいてループを行う
+     */
+    private Runnable deadlineLoopRunner = new Runnable() {
+        @Override
+        public void run() {
+            final long FRAME_NANO = getFrameNano();
+            final long frameStart = nanoTime();
+            final long interval = frameStart - mLastFrameNano;
+            mLastFrameNano = frameStart;
+
+            int steps = 0;
+            int missed = 0;
+            if (mLoopScheduleMode == ScheduleMode.FixedStep) {
+                mAccumulatorNano += interval;
+                mDeltaTime = (double) FRAME_NANO / 1000.0 / 1000.0 / 1000.0;
+                while (mAccumulatorNano >= FRAME_NANO && steps < mMaxCatchUpSteps) {
+                    mAccumulatorNano -= FRAME_NANO;
+                    ++steps;
+                    onUpdate();
+                    if (!mLooping) {
+                        break;
+                    }
+                }
+
+                // 追いつけない分は切り捨てる
+                mAccumulatorNano %= FRAME_NANO;
+            } else {
+                mDeltaTime = (double) interval / 1000.0 / 1000.0 / 1000.0;
+                steps = 1;
+                onUpdate();
+            }
+
+            final long now = nanoTime();
+            final long updateTime = now - frameStart;
+
+            // 前回のデッドラインを基準に次のデッドラインを決めることで、誤差を蓄積させない
+            mNextDeadlineNano += FRAME_NANO;
+            if (mNextDeadlineNano <= now) {
+                long skip = (now - mNextDeadlineNano) / FRAME_NANO + 1;
+                missed += (int) skip;
+                mNextDeadlineNano += skip * FRAME_NANO;
+            }
+
+            mStatistics.record(interval, updateTime, steps, missed);
+            onFrameFinished();
+
+            if (mLooping) {
+                // ミリ秒単位に切り上げ、デッドラインより前に起床しないようにする
+                long delayMs = (mNextDeadlineNano - now + (1000 * 1000 - 1)) / (1000 * 1000);
+                mHandler.postDelayed(this, delayMs);
+            }
+        }
+    };
 }
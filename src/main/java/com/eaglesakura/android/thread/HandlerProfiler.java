@@ -0,0 +1,368 @@
+package com.eaglesakura.android.thread;
+
+import android.os.Message;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * UIHandler / AsyncHandlerで実行される処理の待ち時間と実行時間を記録する
+ *
+ * 有効化されていない場合、記録処理はvolatileフラグの確認のみとなる。
+ * 記録はハンドラ（スレッド名）ごとと、タスクのタグごとに行われる。
+ * タグは{@link #tag(String, Runnable)}で指定でき、指定されていない場合はRunnableのクラス名となる。
+ */
+public class HandlerProfiler {
+
+    /**
+     * タグ付けされたタスク
+     */
+    public static class TaggedRunnable implements Runnable {
+        final String tag;
+
+        final Runnable runnable;
+
+        /**
+         * post時刻（System.nanoTime()基準）
+         */
+        final long postTimeNano;
+
+        /**
+         * post元のスタック、サンプリングされなかった場合はnull
+         */
+        final Throwable postStack;
+
+        TaggedRunnable(String tag, Runnable runnable, Throwable postStack) {
+            this.tag = tag;
+            this.runnable = runnable;
+            this.postTimeNano = System.nanoTime();
+            this.postStack = postStack;
+        }
+
+        public String getTag() {
+            return tag;
+        }
+
+        @Override
+        public void run() {
+            runnable.run();
+        }
+    }
+
+    /**
+     * 1フレームの時間を超過したタスクの記録
+     */
+    public static class SlowTask {
+        final String handlerName;
+
+        final String tag;
+
+        final long waitNano;
+
+        final long executeNano;
+
+        final StackTraceElement[] postStack;
+
+        SlowTask(String handlerName, String tag, long waitNano, long executeNano, StackTraceElement[] postStack) {
+            this.handlerName = handlerName;
+            this.tag = tag;
+            this.waitNano = waitNano;
+            this.executeNano = executeNano;
+            this.postStack = postStack;
+        }
+
+        public String getHandlerName() {
+            return handlerName;
+        }
+
+        public String getTag() {
+            return tag;
+        }
+
+        public long getWaitNano() {
+            return waitNano;
+        }
+
+        public long getExecuteNano() {
+            return executeNano;
+        }
+
+        /**
+         * post元のスタックを取得する
+         * サンプリングされなかった場合はnull
+         */
+        public StackTraceElement[] getPostStack() {
+            return postStack;
+        }
+    }
+
+    /**
+     * 待ち時間と実行時間のヒストグラム
+     */
+    public static class Stats {
+        final LatencyHistogram wait = new LatencyHistogram();
+
+        final LatencyHistogram execute = new LatencyHistogram();
+    }
+
+    /**
+     * ある時点での記録のコピー
+     */
+    public static class Snapshot {
+        final Map<String, LatencyHistogram.Snapshot[]> handlers = new HashMap<>();
+
+        final Map<String, LatencyHistogram.Snapshot[]> tags = new HashMap<>();
+
+        final List<SlowTask> slowTasks = new ArrayList<>();
+
+        /**
+         * ハンドラ名ごとの待ち時間を取得する
+         */
+        public LatencyHistogram.Snapshot getHandlerWait(String handlerName) {
+            LatencyHistogram.Snapshot[] result = handlers.get(handlerName);
+            return result != null ? result[0] : null;
+        }
+
+        /**
+         * ハンドラ名ごとの実行時間を取得する
+         */
+        public LatencyHistogram.Snapshot getHandlerExecute(String handlerName) {
+            LatencyHistogram.Snapshot[] result = handlers.get(handlerName);
+            return result != null ? result[1] : null;
+        }
+
+        /**
+         * タグごとの待ち時間を取得する
+         */
+        public LatencyHistogram.Snapshot getTagWait(String tag) {
+            LatencyHistogram.Snapshot[] result = tags.get(tag);
+            return result != null ? result[0] : null;
+        }
+
+        /**
+         * タグごとの実行時間を取得する
+         */
+        public LatencyHistogram.Snapshot getTagExecute(String tag) {
+            LatencyHistogram.Snapshot[] result = tags.get(tag);
+            return result != null ? result[1] : null;
+        }
+
+        public List<String> listHandlerNames() {
+            return new ArrayList<>(handlers.keySet());
+        }
+
+        public List<String> listTags() {
+            return new ArrayList<>(tags.keySet());
+        }
+
+        /**
+         * 1フレームの時間を超過したタスクを取得する
+         */
+        public List<SlowTask> listSlowTasks() {
+            return Collections.unmodifiableList(slowTasks);
+        }
+
+        /**
+         * デバッグ出力用の文字列を生成する
+         */
+        public String dump() {
+            StringBuilder result = new StringBuilder();
+            for (Map.Entry<String, LatencyHistogram.Snapshot[]> entry : handlers.entrySet()) {
+                result.append("handler[").append(entry.getKey()).append("]\n");
+                result.append("  wait    ").append(entry.getValue()[0]).append('\n');
+                result.append("  execute ").append(entry.getValue()[1]).append('\n');
+            }
+            for (Map.Entry<String, LatencyHistogram.Snapshot[]> entry : tags.entrySet()) {
+                result.append("tag[").append(entry.getKey()).append("]\n");
+                result.append("  wait    ").append(entry.getValue()[0]).append('\n');
+                result.append("  execute ").append(entry.getValue()[1]).append('\n');
+            }
+            for (SlowTask task : slowTasks) {
+                result.append(String.format("slow[%s] %s wait=%.2fms execute=%.2fms\n",
+                        task.handlerName, task.tag, task.waitNano / 1000000.0, task.executeNano / 1000000.0));
+                if (task.postStack != null) {
+                    for (StackTraceElement element : task.postStack) {
+                        result.append("    at ").append(element).append('\n');
+                    }
+                }
+            }
+            return result.toString();
+        }
+    }
+
+    private static final HandlerProfiler sInstance = new HandlerProfiler();
+
+    /**
+     * 保持するSlowTaskの最大数
+     */
+    private static final int SLOW_TASK_CAPACITY = 64;
+
+    private volatile boolean mEnabled = false;
+
+    /**
+     * 1フレームの許容時間
+     */
+    private volatile long mFrameBudgetNano = 1000 * 1000 * 16;
+
+    /**
+     * post元スタックを取得する間隔
+     * 0以下の場合は取得しない
+     */
+    private volatile int mStackSampleInterval = 16;
+
+    private final AtomicInteger mStackSampleCounter = new AtomicInteger();
+
+    private final ConcurrentHashMap<String, Stats> mHandlerStats = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, Stats> mTagStats = new ConcurrentHashMap<>();
+
+    private final AtomicReferenceArray<SlowTask> mSlowTasks = new AtomicReferenceArray<>(SLOW_TASK_CAPACITY);
+
+    private final AtomicLong mSlowTaskIndex = new AtomicLong();
+
+    HandlerProfiler() {
+    }
+
+    public static HandlerProfiler getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * 記録を有効化する
+     */
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * 1フレームの許容時間を指定する
+     * これを超過したタスクはSlowTaskとして記録される
+     */
+    public void setFrameBudgetMs(double budgetMs) {
+        mFrameBudgetNano = (long) (budgetMs * 1000.0 * 1000.0);
+    }
+
+    /**
+     * post元のスタックを取得する間隔を指定する
+     * 1の場合は全てのタグ付きタスクで取得し、0以下の場合は取得しない
+     */
+    public void setStackSampleInterval(int interval) {
+        mStackSampleInterval = interval;
+    }
+
+    /**
+     * タスクにタグを付与する
+     * 記録が有効な場合、post時刻とサンプリングされたpost元スタックが保持される
+     */
+    public static Runnable tag(String tag, Runnable runnable) {
+        HandlerProfiler profiler = sInstance;
+        if (!profiler.mEnabled) {
+            return runnable;
+        }
+
+        Throwable stack = null;
+        int interval = profiler.mStackSampleInterval;
+        if (interval > 0 && (profiler.mStackSampleCounter.incrementAndGet() % interval) == 0) {
+            stack = new Throwable();
+        }
+        return new TaggedRunnable(tag, runnable, stack);
+    }
+
+    /**
+     * 1メッセージの実行を記録する
+     *
+     * @param handlerName ハンドラ名
+     * @param msg         実行したメッセージ
+     * @param startUptime 実行開始時のSystemClock.uptimeMillis()
+     * @param startNano   実行開始時のSystem.nanoTime()
+     */
+    void endDispatch(String handlerName, Message msg, long startUptime, long startNano) {
+        final long executeNano = System.nanoTime() - startNano;
+        final Runnable callback = msg.getCallback();
+
+        String tag;
+        long waitNano;
+        Throwable postStack = null;
+        if (callback instanceof TaggedRunnable) {
+            TaggedRunnable tagged = (TaggedRunnable) callback;
+            tag = tagged.tag;
+            postStack = tagged.postStack;
+            // postDelayedされたタスクは指定時刻からの待ち時間とする
+            waitNano = Math.min(startNano - tagged.postTimeNano, Math.max(0, startUptime - msg.getWhen()) * 1000 * 1000);
+        } else {
+            tag = callback != null ? callback.getClass().getName() : ("what=" + msg.what);
+            waitNano = Math.max(0, startUptime - msg.getWhen()) * 1000 * 1000;
+        }
+
+        Stats handlerStats = getStats(mHandlerStats, handlerName);
+        handlerStats.wait.record(waitNano);
+        handlerStats.execute.record(executeNano);
+
+        Stats tagStats = getStats(mTagStats, tag);
+        tagStats.wait.record(waitNano);
+        tagStats.execute.record(executeNano);
+
+        if (executeNano > mFrameBudgetNano) {
+            int index = (int) (mSlowTaskIndex.getAndIncrement() % SLOW_TASK_CAPACITY);
+            mSlowTasks.set(index, new SlowTask(handlerName, tag, waitNano, executeNano, postStack != null ? postStack.getStackTrace() : null));
+        }
+    }
+
+    private static Stats getStats(ConcurrentHashMap<String, Stats> map, String key) {
+        Stats result = map.get(key);
+        if (result == null) {
+            Stats newStats = new Stats();
+            result = map.putIfAbsent(key, newStats);
+            if (result == null) {
+                result = newStats;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 現在の記録のコピーを取得する
+     */
+    public Snapshot snapshot() {
+        Snapshot result = new Snapshot();
+        for (Map.Entry<String, Stats> entry : mHandlerStats.entrySet()) {
+            result.handlers.put(entry.getKey(), new LatencyHistogram.Snapshot[]{
+                    entry.getValue().wait.snapshot(), entry.getValue().execute.snapshot()
+            });
+        }
+        for (Map.Entry<String, Stats> entry : mTagStats.entrySet()) {
+            result.tags.put(entry.getKey(), new LatencyHistogram.Snapshot[]{
+                    entry.getValue().wait.snapshot(), entry.getValue().execute.snapshot()
+            });
+        }
+        for (int i = 0; i < SLOW_TASK_CAPACITY; ++i) {
+            SlowTask task = mSlowTasks.get(i);
+            if (task != null) {
+                result.slowTasks.add(task);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 記録を初期化する
+     */
+    public void reset() {
+        mHandlerStats.clear();
+        mTagStats.clear();
+        for (int i = 0; i < SLOW_TASK_CAPACITY; ++i) {
+            mSlowTasks.set(i, null);
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.eaglesakura.android.thread;
+
+import com.eaglesakura.lambda.CallbackUtils;
+import com.eaglesakura.lambda.CancelCallback;
+import com.eaglesakura.util.ThrowableRunnable;
+
+import android.os.Handler;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+
+/**
+ * 複数の処理を並列に実行し、まとめて完了を待つ
+ *
+ * fork()した処理は、指定したハンドラへラウンドロビンで割り当てられるか、Executorで実行される。
+ * join()はJoinPolicyに従って完了を待ち、不要になった処理はキャンセルする。
+ * fork()とjoin()は同じスレッドから呼び出す必要がある。
+ *
+ * <pre>
+ * HandlerTaskScope&lt;Data&gt; scope = HandlerTaskScope.acquire(JoinPolicy.FirstFailure, "loader", 4);
+ * try {
+ *     scope.fork(() -&gt; loadUser());
+ *     scope.fork(() -&gt; loadHistory());
+ *     List&lt;Data&gt; result = scope.&lt;IOException&gt;join();
+ * } finally {
+ *     scope.dispose();
+ * }
+ * </pre>
+ */
+public class HandlerTaskScope<T> {
+
+    /**
+     * join()の完了条件
+     */
+    public enum JoinPolicy {
+        /**
+         * 全ての処理の完了を待つ
+         * 失敗した処理がある場合、全ての完了後に最初の例外を投げる
+         */
+        All,
+
+        /**
+         * 全ての処理の完了を待つ
+         * 失敗した処理があった時点で残りの処理をキャンセルし、その例外を投げる
+         */
+        FirstFailure,
+
+        /**
+         * 最初に成功した処理の完了を待つ
+         * 残りの処理はキャンセルされる。全て失敗した場合は最初の例外を投げる
+         */
+        Any,
+    }
+
+    private final Object lock = new Object();
+
+    private final JoinPolicy policy;
+
+    /**
+     * 処理を割り当てるハンドラ
+     * Executorを使用する場合はnull
+     */
+    private final Handler[] handlers;
+
+    private final Executor executor;
+
+    /**
+     * dispose()時に廃棄するハンドラ
+     */
+    private final boolean ownHandlers;
+
+    private final List<HandlerFuture<T>> futures = new ArrayList<>();
+
+    /**
+     * join()の完了条件を満たした時点で完了する
+     */
+    private final HandlerFuture<Void> done = new HandlerFuture<>();
+
+    private int laneIndex;
+
+    private int finishedCount;
+
+    private Throwable firstError;
+
+    private HandlerFuture<T> firstSuccess;
+
+    private boolean joined;
+
+    private volatile boolean canceled;
+
+    private long timeoutMs = -1;
+
+    private CancelCallback cancelCallback;
+
+    /**
+     * 処理を指定したハンドラへ割り当てるスコープを生成する
+     */
+    public HandlerTaskScope(JoinPolicy policy, Handler... handlers) {
+        this(policy, handlers, null, false);
+    }
+
+    /**
+     * 処理を指定したExecutorで実行するスコープを生成する
+     */
+    public HandlerTaskScope(JoinPolicy policy, Executor executor) {
+        this(policy, null, executor, false);
+    }
+
+    private HandlerTaskScope(JoinPolicy policy, Handler[] handlers, Executor executor, boolean ownHandlers) {
+        if (policy == null) {
+            throw new NullPointerException("policy == null");
+        }
+        if (executor == null && (handlers == null || handlers.length == 0)) {
+            throw new IllegalArgumentException("handlers is empty");
+        }
+        this.policy = policy;
+        this.handlers = handlers;
+        this.executor = executor;
+        this.ownHandlers = ownHandlers;
+    }
+
+    /**
+     * {@link HandlerThreadPool#getDefault()}から指定数のハンドラを取得し、スコープを生成する
+     * ハンドラはdispose()でプールへ返却される
+     *
+     * @param name  スレッド名
+     * @param lanes 並列数
+     */
+    public static <T> HandlerTaskScope<T> acquire(JoinPolicy policy, String name, int lanes) {
+        if (lanes <= 0) {
+            throw new IllegalArgumentException("lanes <= 0");
+        }
+
+        HandlerThreadPool pool = HandlerThreadPool.getDefault();
+        AsyncHandler[] handlers = new AsyncHandler[lanes];
+        for (int i = 0; i < lanes; ++i) {
+            handlers[i] = pool.acquire(name + "-" + i);
+        }
+        return new HandlerTaskScope<>(policy, handlers, null, true);
+    }
+
+    /**
+     * join()のタイムアウト時間を指定する
+     *
+     * @param timeoutMs タイムアウト時間、0未満の場合は無制限
+     */
+    public HandlerTaskScope<T> setTimeoutMs(long timeoutMs) {
+        synchronized (lock) {
+            this.timeoutMs = timeoutMs;
+        }
+        return this;
+    }
+
+    /**
+     * join()を中断するためのコールバックを指定する
+     */
+    public HandlerTaskScope<T> setCancelCallback(@Nullable CancelCallback cancelCallback) {
+        synchronized (lock) {
+            this.cancelCallback = cancelCallback;
+        }
+        return this;
+    }
+
+    /**
+     * 処理を並列実行する
+     *
+     * @return 処理の完了を待つためのFuture
+     */
+    public <ErrorType extends Exception> HandlerFuture<T> fork(ThrowableRunnable<T, ErrorType> action) {
+        final HandlerFuture<T> future;
+        synchronized (lock) {
+            if (joined) {
+                throw new IllegalStateException("already joined");
+            }
+
+            if (canceled) {
+                // キャンセル済みのため実行しない
+                future = new HandlerFuture<>();
+            } else if (executor != null) {
+                future = new HandlerFuture<>();
+                executor.execute(future.newTask(action));
+            } else {
+                future = HandlerFuture.post(handlers[laneIndex], action);
+                laneIndex = (laneIndex + 1) % handlers.length;
+            }
+            futures.add(future);
+        }
+
+        if (canceled) {
+            future.cancel(false);
+        }
+
+        future.then(null, it -> {
+            onTaskFinished(it);
+            return null;
+        });
+        return future;
+    }
+
+    /**
+     * fork()した処理数を取得する
+     */
+    public int getForkCount() {
+        synchronized (lock) {
+            return futures.size();
+        }
+    }
+
+    private void onTaskFinished(HandlerFuture<T> future) {
+        boolean satisfied;
+        synchronized (lock) {
+            ++finishedCount;
+            if (future.isFailed()) {
+                if (firstError == null) {
+                    firstError = future.getError();
+                }
+            } else if (!future.isCancelled() && firstSuccess == null) {
+                firstSuccess = future;
+            }
+            satisfied = joined && isSatisfied();
+        }
+
+        if (satisfied) {
+            done.complete(null);
+        }
+    }
+
+    /**
+     * join()の完了条件を満たしていればtrue
+     */
+    private boolean isSatisfied() {
+        if (finishedCount >= futures.size()) {
+            return true;
+        }
+
+        switch (policy) {
+            case FirstFailure:
+                return firstError != null;
+            case Any:
+                return firstSuccess != null;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 処理の完了を待つ
+     *
+     * 結果はfork()した順に格納される。
+     * {@link JoinPolicy#Any}の場合、最初に成功した処理の結果のみが格納される。
+     * 処理が例外を投げた場合、その例外をそのまま投げる。
+     *
+     * @throws CancellationException タイムアウトした場合、キャンセルされた場合
+     */
+    @SuppressWarnings("unchecked")
+    public <ErrorType extends Exception> List<T> join() throws ErrorType {
+        final boolean satisfied;
+        final long timeoutMs;
+        final CancelCallback cancelCallback;
+        synchronized (lock) {
+            if (joined) {
+                throw new IllegalStateException("already joined");
+            }
+            joined = true;
+            satisfied = isSatisfied();
+            timeoutMs = this.timeoutMs;
+            cancelCallback = this.cancelCallback;
+        }
+
+        if (satisfied) {
+            done.complete(null);
+        }
+
+        if (!done.await(timeoutMs, cancelCallback)) {
+            final boolean timeout = !canceled && (cancelCallback == null || !CallbackUtils.isCanceled(cancelCallback));
+            cancel();
+            throw new CancellationException(timeout ? ("timeout " + timeoutMs + "ms") : "canceled");
+        }
+
+        // 完了条件を満たしたので、残りの処理は不要となる
+        cancelPending();
+
+        final List<HandlerFuture<T>> futures;
+        final Throwable error;
+        final HandlerFuture<T> success;
+        synchronized (lock) {
+            futures = new ArrayList<>(this.futures);
+            error = firstError;
+            success = firstSuccess;
+        }
+
+        if (policy == JoinPolicy.Any && success != null) {
+            return Collections.singletonList(success.<ErrorType>getResult());
+        }
+
+        if (error != null) {
+            if (error instanceof Error) {
+                throw (Error) error;
+            }
+            throw (ErrorType) error;
+        }
+
+        List<T> result = new ArrayList<>(futures.size());
+        for (HandlerFuture<T> future : futures) {
+            result.add(future.<ErrorType>getResult());
+        }
+        return result;
+    }
+
+    /**
+     * 未完了の処理をキャンセルする
+     * join()中の場合、join()はCancellationExceptionを投げる
+     */
+    public void cancel() {
+        canceled = true;
+        done.cancel(false);
+        cancelPending();
+    }
+
+    private void cancelPending() {
+        List<HandlerFuture<T>> pending;
+        synchronized (lock) {
+            pending = new ArrayList<>(futures);
+        }
+
+        // キャンセル時のコールバックはロック外で行う
+        for (HandlerFuture<T> future : pending) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * 未完了の処理をキャンセルし、スコープを廃棄する
+     * {@link #acquire(JoinPolicy, String, int)}で生成された場合、ハンドラをプールへ返却する
+     */
+    public void dispose() {
+        cancel();
+        if (ownHandlers) {
+            for (Handler handler : handlers) {
+                ((AsyncHandler) handler).dispose();
+            }
+        }
+    }
+}
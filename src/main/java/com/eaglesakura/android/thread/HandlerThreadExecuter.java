@@ -2,25 +2,71 @@ package com.eaglesakura.android.thread;
 
 import android.os.Handler;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * タスクをキャッシュし、指定したハンドラで一括実行する
+ *
+ * タスクはロックフリーキューに格納されるため、add()がハンドラ側の実行にブロックされることはない。
+ * 1回のDrainで処理するタスク数と時間は制限でき、制限を超えた場合は残りを次のメッセージへ持ち越してLooperへ処理を返す。
  */
 public class HandlerThreadExecuter {
 
-    List<Runnable> runners = new ArrayList<>();
+    /**
+     * 実行待ちのタスク
+     */
+    final Queue<Runnable> runners = new ConcurrentLinkedQueue<>();
 
     Handler handler = UIHandler.getInstance();
 
+    /**
+     * Drain処理がハンドラへpost済みであればtrue
+     */
+    final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    /**
+     * execute()による実行要求があればtrue
+     */
+    final AtomicBoolean requested = new AtomicBoolean(false);
+
+    /**
+     * 1回のDrainで実行する最大タスク数
+     */
+    int maxBatchSize = Integer.MAX_VALUE;
+
+    /**
+     * 1回のDrainで使用できる時間（ナノ秒）
+     * 0以下の場合は無制限
+     */
+    long drainBudgetNano = 0;
+
+    /**
+     * add()されたタスク数
+     */
+    final AtomicLong enqueuedCount = new AtomicLong();
+
+    /**
+     * 実行済みのタスク数
+     */
+    final AtomicLong drainedCount = new AtomicLong();
+
+    /**
+     * 制限によって次のDrainへ持ち越されたタスク数
+     */
+    final AtomicLong carriedOverCount = new AtomicLong();
+
     public HandlerThreadExecuter() {
     }
 
     public void add(Runnable runnable) {
-        synchronized (runners) {
-            runners.add(runnable);
+        if (runnable == null) {
+            throw new NullPointerException("runnable == null");
         }
+        runners.offer(runnable);
+        enqueuedCount.incrementAndGet();
     }
 
     /**
@@ -34,23 +80,127 @@ public class HandlerThreadExecuter {
         return handler;
     }
 
+    /**
+     * 1回のDrainで実行する最大タスク数を指定する
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize <= 0");
+        }
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * 1回のDrainで使用できる時間を指定する
+     *
+     * @param budgetMs 許容時間（ミリ秒）、0以下の場合は無制限
+     */
+    public void setDrainTimeBudgetMs(double budgetMs) {
+        this.drainBudgetNano = budgetMs > 0 ? (long) (budgetMs * 1000.0 * 1000.0) : 0;
+    }
+
+    public double getDrainTimeBudgetMs() {
+        return (double) drainBudgetNano / 1000.0 / 1000.0;
+    }
+
+    /**
+     * add()されたタスク数を取得する
+     */
+    public long getEnqueuedCount() {
+        return enqueuedCount.get();
+    }
+
+    /**
+     * 実行済みのタスク数を取得する
+     */
+    public long getDrainedCount() {
+        return drainedCount.get();
+    }
+
+    /**
+     * 制限によって次のDrainへ持ち越されたタスク数の累計を取得する
+     */
+    public long getCarriedOverCount() {
+        return carriedOverCount.get();
+    }
+
+    /**
+     * 実行待ちのタスク数を取得する
+     */
+    public long getPendingCount() {
+        return Math.max(0, enqueuedCount.get() - drainedCount.get());
+    }
+
     /**
      * キューを実行する
      */
     public void execute() {
-        synchronized (runners) {
+        if (runners.isEmpty()) {
+            return;
+        }
+
+        requested.set(true);
+        if (scheduled.compareAndSet(false, true)) {
+            handler.post(drainRunner);
+        }
+    }
+
+    /**
+     * 制限の範囲内でキューを実行する
+     *
+     * @return 持ち越したタスクがある場合true
+     */
+    boolean drain() {
+        requested.set(false);
+
+        final long budget = drainBudgetNano;
+        final long startTime = budget > 0 ? System.nanoTime() : 0;
+        final int batchSize = maxBatchSize;
+
+        int executed = 0;
+        Runnable task;
+        while ((task = runners.poll()) != null) {
+            try {
+                task.run();
+            } finally {
+                drainedCount.incrementAndGet();
+            }
+
+            ++executed;
             if (runners.isEmpty()) {
-                return;
+                return false;
+            }
+
+            if (executed >= batchSize || (budget > 0 && (System.nanoTime() - startTime) >= budget)) {
+                carriedOverCount.addAndGet(getPendingCount());
+                return true;
             }
         }
+        return false;
+    }
 
-        handler.post(() -> {
-            synchronized (runners) {
-                for (Runnable r : runners) {
-                    r.run();
+    private final Runnable drainRunner = new Runnable() {
+        @Override
+        public void run() {
+            boolean carryOver = false;
+            try {
+                carryOver = drain();
+            } finally {
+                if (carryOver) {
+                    // 残りは次のメッセージで処理し、Looperへ処理を返す
+                    handler.post(this);
+                } else {
+                    scheduled.set(false);
+                    // Drain中に追加された実行要求を拾う
+                    if (requested.get() && !runners.isEmpty() && scheduled.compareAndSet(false, true)) {
+                        handler.post(this);
+                    }
                 }
-                runners.clear();
             }
-        });
-    }
+        }
+    };
 }
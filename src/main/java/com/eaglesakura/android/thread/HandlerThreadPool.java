@@ -0,0 +1,413 @@
+package com.eaglesakura.android.thread;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * AsyncHandler用のHandlerThreadを使い回すプール
+ *
+ * 解放されたスレッドは一定時間プールに保持され、その間に要求があれば再利用される。
+ * スレッド数が上限に達している場合、利用数が最も少ないスレッドを他のハンドラと共有する。
+ * 共有されたハンドラの一方で長時間の処理を行うと、もう一方の処理も待たされる。
+ * {@link #setUnpooledOverflow(boolean)}を指定した場合、共有せずにプール管理しない専用のスレッドを生成する。
+ */
+public class HandlerThreadPool {
+
+    /**
+     * プールで管理するスレッド
+     */
+    static class Lane {
+        final HandlerThread thread;
+
+        final Handler handler;
+
+        /**
+         * このスレッドを利用しているAsyncHandlerの数
+         */
+        int refCount;
+
+        Lane(HandlerThread thread) {
+            this.thread = thread;
+            this.handler = new Handler(thread.getLooper());
+        }
+
+        /**
+         * スレッドが終了していなければtrue
+         */
+        boolean isAlive() {
+            return thread.isAlive() && thread.getLooper() != null;
+        }
+    }
+
+    private final Object lock = new Object();
+
+    private final List<Lane> lanes = new ArrayList<>();
+
+    /**
+     * プールで管理する最大スレッド数
+     */
+    private int maxThreads;
+
+    /**
+     * 生成中のスレッド数
+     * 上限の判定に含めるため、ロック外で生成している間も枠を確保しておく
+     */
+    private int pendingCount;
+
+    /**
+     * 上限に達した場合、スレッドを共有せずにプール外のスレッドを生成する場合はtrue
+     */
+    private boolean unpooledOverflow;
+
+    /**
+     * 参照がなくなってから、スレッドを終了するまでの時間
+     */
+    private long idleTimeoutMs;
+
+    /**
+     * acquire()の呼び出し回数
+     */
+    private long acquireCount;
+
+    /**
+     * 既存スレッドを再利用した回数
+     */
+    private long reuseCount;
+
+    /**
+     * 生成したスレッド数
+     */
+    private long createdCount;
+
+    /**
+     * 上限に達していたため、他のハンドラとスレッドを共有した回数
+     */
+    private long sharedCount;
+
+    /**
+     * 上限に達していたため、プール外で生成したスレッド数
+     */
+    private long unpooledCount;
+
+    private static HandlerThreadPool sDefault;
+
+    public HandlerThreadPool(int maxThreads, long idleTimeoutMs) {
+        setMaxThreads(maxThreads);
+        setIdleTimeoutMs(idleTimeoutMs);
+    }
+
+    /**
+     * AsyncHandler.createInstance()が使用するデフォルトのプールを取得する
+     */
+    public static synchronized HandlerThreadPool getDefault() {
+        if (sDefault == null) {
+            sDefault = new HandlerThreadPool(32, 1000 * 30);
+        }
+        return sDefault;
+    }
+
+    /**
+     * プールで管理する最大スレッド数を指定する
+     */
+    public void setMaxThreads(int maxThreads) {
+        if (maxThreads <= 0) {
+            throw new IllegalArgumentException("maxThreads <= 0");
+        }
+        synchronized (lock) {
+            this.maxThreads = maxThreads;
+        }
+    }
+
+    public int getMaxThreads() {
+        synchronized (lock) {
+            return maxThreads;
+        }
+    }
+
+    /**
+     * スレッド数が上限に達した場合の動作を指定する
+     *
+     * @param unpooledOverflow trueの場合はプール管理しない専用のスレッドを生成し、falseの場合は既存のスレッドを共有する
+     */
+    public void setUnpooledOverflow(boolean unpooledOverflow) {
+        synchronized (lock) {
+            this.unpooledOverflow = unpooledOverflow;
+        }
+    }
+
+    public boolean isUnpooledOverflow() {
+        synchronized (lock) {
+            return unpooledOverflow;
+        }
+    }
+
+    /**
+     * 参照がなくなったスレッドを終了するまでの時間を指定する
+     */
+    public void setIdleTimeoutMs(long idleTimeoutMs) {
+        if (idleTimeoutMs < 0) {
+            throw new IllegalArgumentException("idleTimeoutMs < 0");
+        }
+        synchronized (lock) {
+            this.idleTimeoutMs = idleTimeoutMs;
+        }
+    }
+
+    public long getIdleTimeoutMs() {
+        synchronized (lock) {
+            return idleTimeoutMs;
+        }
+    }
+
+    /**
+     * ハンドラを取得する。
+     *
+     * 待機中のスレッドがあればそれを再利用し、なければ新たにスレッドを生成する。
+     * スレッド数が上限に達している場合は、利用数が最も少ないスレッドを共有する。
+     * {@link #setUnpooledOverflow(boolean)}が指定されている場合は、プール管理しない専用のスレッドで動作するハンドラを返す。
+     * 不要になったら{@link AsyncHandler#dispose()}でプールへ返却する。
+     *
+     * @param name スレッド名
+     */
+    public AsyncHandler acquire(String name) {
+        Lane lane = acquireLane(name);
+        if (lane == null) {
+            return new AsyncHandler(startUnpooledThread(name));
+        }
+        return new AsyncHandler(this, lane);
+    }
+
+    /**
+     * プール管理しない専用のスレッドを生成する
+     */
+    HandlerThread startUnpooledThread(String name) {
+        synchronized (lock) {
+            ++unpooledCount;
+        }
+        HandlerThread thread = new HandlerThread(name);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * スレッドを取得し、参照数を加算する
+     *
+     * @return スレッド数が上限に達し、プール外のスレッドを生成する場合はnull
+     */
+    Lane acquireLane(String name) {
+        boolean interrupted = false;
+        try {
+            synchronized (lock) {
+                ++acquireCount;
+                while (true) {
+                    // 外部からLooperを終了されたスレッドは再利用できないため取り除く
+                    Iterator<Lane> iterator = lanes.iterator();
+                    while (iterator.hasNext()) {
+                        if (!iterator.next().isAlive()) {
+                            iterator.remove();
+                        }
+                    }
+
+                    // 同名の待機スレッドを優先して再利用する
+                    Lane lane = null;
+                    for (Lane check : lanes) {
+                        if (check.refCount == 0) {
+                            if (lane == null || name.equals(check.thread.getName())) {
+                                lane = check;
+                            }
+                        }
+                    }
+
+                    if (lane != null) {
+                        ++reuseCount;
+                        lane.handler.removeCallbacksAndMessages(lane);
+                        lane.thread.setName(name);
+                        ++lane.refCount;
+                        return lane;
+                    }
+
+                    if (lanes.size() + pendingCount < maxThreads) {
+                        // 枠を確保し、スレッドの生成はロック外で行う
+                        ++pendingCount;
+                        break;
+                    }
+
+                    if (unpooledOverflow) {
+                        // 呼び出し元でプール外のスレッドを生成する
+                        return null;
+                    }
+
+                    // 利用数が最も少ないスレッドを共有する
+                    for (Lane check : lanes) {
+                        if (lane == null || check.refCount < lane.refCount) {
+                            lane = check;
+                        }
+                    }
+                    if (lane != null) {
+                        ++sharedCount;
+                        ++lane.refCount;
+                        return lane;
+                    }
+
+                    // 全ての枠がスレッドの生成中であるため、完了を待つ
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        Lane lane = null;
+        try {
+            HandlerThread thread = new HandlerThread(name);
+            thread.start();
+            lane = new Lane(thread);
+        } finally {
+            synchronized (lock) {
+                --pendingCount;
+                if (lane != null) {
+                    ++createdCount;
+                    lane.refCount = 1;
+                    lanes.add(lane);
+                }
+                lock.notifyAll();
+            }
+        }
+        return lane;
+    }
+
+    /**
+     * スレッドをプールへ返却する
+     */
+    void release(final Lane lane) {
+        synchronized (lock) {
+            if (lane.refCount <= 0) {
+                return;
+            }
+
+            --lane.refCount;
+            if (lane.refCount > 0) {
+                return;
+            }
+
+            // 一定時間再利用されなければスレッドを終了する
+            lane.handler.postAtTime(() -> reclaim(lane), lane, SystemClock.uptimeMillis() + idleTimeoutMs);
+        }
+    }
+
+    /**
+     * 待機中のスレッドを終了させる
+     */
+    private void reclaim(Lane lane) {
+        synchronized (lock) {
+            if (lane.refCount > 0 || !lanes.remove(lane)) {
+                return;
+            }
+        }
+        lane.thread.quit();
+    }
+
+    /**
+     * 待機中のスレッドを全て終了させる
+     * メモリ不足時等に呼び出す
+     */
+    public void trim() {
+        List<Lane> idle = new ArrayList<>();
+        synchronized (lock) {
+            for (Lane lane : lanes) {
+                if (lane.refCount == 0) {
+                    idle.add(lane);
+                }
+            }
+            lanes.removeAll(idle);
+        }
+
+        for (Lane lane : idle) {
+            lane.handler.removeCallbacksAndMessages(lane);
+            lane.thread.quit();
+        }
+    }
+
+    /**
+     * 動作中のスレッド数を取得する
+     */
+    public int getLiveThreadCount() {
+        synchronized (lock) {
+            return lanes.size();
+        }
+    }
+
+    /**
+     * 再利用待ちのスレッド数を取得する
+     */
+    public int getIdleLaneCount() {
+        synchronized (lock) {
+            int result = 0;
+            for (Lane lane : lanes) {
+                if (lane.refCount == 0) {
+                    ++result;
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * acquire()の呼び出し回数を取得する
+     */
+    public long getAcquireCount() {
+        synchronized (lock) {
+            return acquireCount;
+        }
+    }
+
+    /**
+     * これまでに生成したスレッド数を取得する
+     */
+    public long getCreatedThreadCount() {
+        synchronized (lock) {
+            return createdCount;
+        }
+    }
+
+    /**
+     * 上限に達していたため、他のハンドラとスレッドを共有した回数を取得する
+     */
+    public long getSharedCount() {
+        synchronized (lock) {
+            return sharedCount;
+        }
+    }
+
+    /**
+     * 上限に達していたため、プール外で生成したスレッド数を取得する
+     */
+    public long getUnpooledThreadCount() {
+        synchronized (lock) {
+            return unpooledCount;
+        }
+    }
+
+    /**
+     * acquire()のうち、既存スレッドを再利用した割合を取得する
+     */
+    public double getReuseRate() {
+        synchronized (lock) {
+            if (acquireCount == 0) {
+                return 0;
+            }
+            return (double) reuseCount / (double) acquireCount;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.eaglesakura.android.thread;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * ロックフリーで記録できる時間のヒストグラム
+ *
+ * HDR Histogram同様、2のべき乗ごとの区間を8分割した対数線形のバケットで値を保持する。
+ * 記録された値の相対誤差は最大12.5%となる。
+ */
+public class LatencyHistogram {
+    /**
+     * 1区間あたりの分割数のbit数
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private static final int BUCKET_COUNT = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final AtomicLong mCount = new AtomicLong();
+
+    private final AtomicLong mTotal = new AtomicLong();
+
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * 値を記録する
+     *
+     * @param nano 記録する時間（ナノ秒）
+     */
+    public void record(long nano) {
+        if (nano < 0) {
+            nano = 0;
+        }
+
+        mBuckets.incrementAndGet(toIndex(nano));
+        mCount.incrementAndGet();
+        mTotal.addAndGet(nano);
+
+        long max;
+        while ((max = mMax.get()) < nano) {
+            if (mMax.compareAndSet(max, nano)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 記録を初期化する
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            mBuckets.set(i, 0);
+        }
+        mCount.set(0);
+        mTotal.set(0);
+        mMax.set(0);
+    }
+
+    /**
+     * 現在の記録のコピーを取得する
+     */
+    public Snapshot snapshot() {
+        long[] buckets = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            buckets[i] = mBuckets.get(i);
+        }
+        return new Snapshot(buckets, mCount.get(), mTotal.get(), mMax.get());
+    }
+
+    static int toIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exp - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exp - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + sub;
+    }
+
+    /**
+     * バケットに含まれる最大値を取得する
+     */
+    static long toHighestValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int exp = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        int sub = index % SUB_BUCKET_COUNT;
+        int shift = exp - SUB_BUCKET_BITS;
+        return (((long) (SUB_BUCKET_COUNT + sub)) << shift) + (1L << shift) - 1;
+    }
+
+    /**
+     * ヒストグラムのコピー
+     */
+    public static class Snapshot {
+        private final long[] mBuckets;
+
+        private final long mCount;
+
+        private final long mTotal;
+
+        private final long mMax;
+
+        Snapshot(long[] buckets, long count, long total, long max) {
+            mBuckets = buckets;
+            mCount = count;
+            mTotal = total;
+            mMax = max;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        /**
+         * 平均値をナノ秒単位で取得する
+         */
+        public long getMeanNano() {
+            return mCount > 0 ? mTotal / mCount : 0;
+        }
+
+        /**
+         * 最大値をナノ秒単位で取得する
+         */
+        public long getMaxNano() {
+            return mMax;
+        }
+
+        /**
+         * パーセンタイル値をナノ秒単位で取得する
+         *
+         * @param percentile 0.0〜1.0の範囲で指定する
+         */
+        public long getPercentileNano(double percentile) {
+            long total = 0;
+            for (long count : mBuckets) {
+                total += count;
+            }
+            if (total == 0) {
+                return 0;
+            }
+
+            long target = Math.max(1, (long) Math.ceil(Math.max(0.0, Math.min(1.0, percentile)) * total));
+            long current = 0;
+            for (int i = 0; i < mBuckets.length; ++i) {
+                current += mBuckets[i];
+                if (current >= target) {
+                    return Math.min(toHighestValue(i), mMax);
+                }
+            }
+            return mMax;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d mean=%.2fms p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms",
+                    getCount(),
+                    getMeanNano() / 1000000.0,
+                    getPercentileNano(0.5) / 1000000.0,
+                    getPercentileNano(0.9) / 1000000.0,
+                    getPercentileNano(0.99) / 1000000.0,
+                    getMaxNano() / 1000000.0);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.eaglesakura.android.thread;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 配列等の範囲処理を分割し、複数のCPUコアで並列実行する
+ *
+ * 分割した範囲のうち1つは呼び出し元のスレッドで処理し、全ての範囲の処理が終わるまで待機する。
+ * 範囲が小さい場合は分割せず、呼び出し元のスレッドのみで処理する。
+ * 分割した範囲の処理中に再度呼び出された場合も、ワーカースレッドの待機によるデッドロックを避けるため分割しない。
+ */
+public class ParallelRange {
+
+    /**
+     * 範囲の処理
+     */
+    public interface Action {
+        /**
+         * [begin, end)の範囲を処理する
+         */
+        void run(int begin, int end);
+    }
+
+    private static Executor sExecutor;
+
+    /**
+     * 分割した範囲を処理しているワーカースレッドであればTRUE
+     */
+    private static final ThreadLocal<Boolean> sWorker = new ThreadLocal<>();
+
+    private ParallelRange() {
+    }
+
+    /**
+     * 並列処理に使用するExecutorを取得する
+     * CPUコア数 - 1のスレッドを持ち、一定時間利用されなければ終了する
+     */
+    public static synchronized Executor getExecutor() {
+        if (sExecutor == null) {
+            final int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            final AtomicInteger number = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ParallelRange-" + number.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+            sExecutor = executor;
+        }
+        return sExecutor;
+    }
+
+    /**
+     * 並列処理に使用するExecutorを指定する
+     */
+    public static synchronized void setExecutor(Executor executor) {
+        if (executor == null) {
+            throw new NullPointerException("executor == null");
+        }
+        sExecutor = executor;
+    }
+
+    /**
+     * 並列処理を行う場合の分割数を取得する
+     */
+    public static int getParallelism() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * [0, count)の範囲を分割して処理する
+     *
+     * @param count    処理数
+     * @param minChunk 1スレッドで処理する最小数、countがこれの2倍未満の場合は分割しない
+     * @param action   範囲の処理
+     */
+    public static void run(int count, int minChunk, Action action) {
+        // ワーカースレッドで分割すると、待機中のワーカーが分割した範囲を処理できずにデッドロックする
+        final int chunks = sWorker.get() != null ? 1 : Math.min(getParallelism(), count / Math.max(1, minChunk));
+        if (chunks <= 1) {
+            if (count > 0) {
+                action.run(0, count);
+            }
+            return;
+        }
+
+        final int chunkSize = (count + chunks - 1) / chunks;
+        final CountDownLatch latch = new CountDownLatch(chunks - 1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final Executor executor = getExecutor();
+        for (int i = 1; i < chunks; ++i) {
+            final int begin = i * chunkSize;
+            final int end = Math.min(count, begin + chunkSize);
+            executor.execute(() -> {
+                sWorker.set(Boolean.TRUE);
+                try {
+                    if (begin < end) {
+                        action.run(begin, end);
+                    }
+                } catch (Throwable e) {
+                    error.compareAndSet(null, e);
+                } finally {
+                    sWorker.remove();
+                    latch.countDown();
+                }
+            });
+        }
+
+        // 先頭の範囲は呼び出し元で処理する
+        try {
+            action.run(0, Math.min(count, chunkSize));
+        } catch (Throwable e) {
+            error.compareAndSet(null, e);
+        }
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        Throwable e = error.get();
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        } else if (e instanceof Error) {
+            throw (Error) e;
+        } else if (e != null) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package com.eaglesakura.android.thread;
+
+import com.eaglesakura.util.ThrowableRunnable;
+
+import android.os.HandlerThread;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 優先度とデッドラインを考慮して処理を行うAsyncHandler
+ *
+ * 優先度の高いキューから順に処理を行い、同じ優先度の中ではデッドラインの早いものから処理する（EDF）。
+ * デッドラインを持たない処理は、デッドラインを持つ処理の後にFIFOで処理される。
+ * 1回のメッセージで1つの処理を行うため、通常のpost()とも共存できる。
+ */
+public class PriorityAsyncHandler extends AsyncHandler {
+
+    /**
+     * 処理の優先度
+     */
+    public enum Priority {
+        /**
+         * ユーザー操作に起因する処理等、遅延させたくない処理
+         */
+        High,
+
+        Normal,
+
+        /**
+         * 先読み等、遅れても問題ない処理
+         */
+        Low,
+    }
+
+    /**
+     * デッドラインを過ぎた処理の扱い
+     */
+    public enum ExpirePolicy {
+        /**
+         * 処理を破棄する
+         * 対応するHandlerFutureはキャンセルされる
+         */
+        Drop,
+
+        /**
+         * 優先度を1段階下げ、デッドラインを解除する
+         */
+        Demote,
+
+        /**
+         * そのまま処理する
+         */
+        Run,
+    }
+
+    /**
+     * キューに格納される処理
+     */
+    static class Task implements Comparable<Task> {
+        final Runnable runnable;
+
+        final HandlerFuture<?> future;
+
+        final long sequence;
+
+        Priority priority;
+
+        /**
+         * デッドライン（SystemClock.uptimeMillis()基準）
+         * 持たない場合はLong.MAX_VALUE
+         */
+        long deadline;
+
+        Task(Runnable runnable, HandlerFuture<?> future, long sequence, Priority priority, long deadline) {
+            this.runnable = runnable;
+            this.future = future;
+            this.sequence = sequence;
+            this.priority = priority;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (deadline != other.deadline) {
+                return deadline < other.deadline ? -1 : 1;
+            }
+            if (sequence != other.sequence) {
+                return sequence < other.sequence ? -1 : 1;
+            }
+            return 0;
+        }
+    }
+
+    private final Object lock = new Object();
+
+    private final PriorityQueue<Task>[] queues;
+
+    /**
+     * 優先度ごとのキューの最大深さ
+     */
+    private final int[] maxQueueDepth;
+
+    /**
+     * 優先度ごとの実行数
+     */
+    private final long[] executedCount;
+
+    private long sequence;
+
+    private long droppedCount;
+
+    private long demotedCount;
+
+    private ExpirePolicy expirePolicy = ExpirePolicy.Demote;
+
+    public PriorityAsyncHandler(HandlerThread thread) {
+        super(thread);
+        queues = newQueues();
+        maxQueueDepth = new int[queues.length];
+        executedCount = new long[queues.length];
+    }
+
+    PriorityAsyncHandler(HandlerThreadPool pool, HandlerThreadPool.Lane lane) {
+        super(pool, lane);
+        queues = newQueues();
+        maxQueueDepth = new int[queues.length];
+        executedCount = new long[queues.length];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PriorityQueue<Task>[] newQueues() {
+        PriorityQueue<Task>[] result = new PriorityQueue[Priority.values().length];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = new PriorityQueue<>();
+        }
+        return result;
+    }
+
+    /**
+     * デッドラインを過ぎた処理の扱いを指定する
+     */
+    public void setExpirePolicy(ExpirePolicy expirePolicy) {
+        if (expirePolicy == null) {
+            throw new NullPointerException("expirePolicy == null");
+        }
+        synchronized (lock) {
+            this.expirePolicy = expirePolicy;
+        }
+    }
+
+    public ExpirePolicy getExpirePolicy() {
+        synchronized (lock) {
+            return expirePolicy;
+        }
+    }
+
+    /**
+     * 優先度を指定して処理を行わせる
+     *
+     * @param priority   優先度
+     * @param deadlineMs 現在からのデッドライン、0以下の場合はデッドラインを持たない
+     * @param action     処理
+     * @return 処理の完了を待つためのFuture
+     */
+    public <ReturnType, ErrorType extends Exception> HandlerFuture<ReturnType> submit(Priority priority, long deadlineMs, ThrowableRunnable<ReturnType, ErrorType> action) {
+        if (priority == null) {
+            throw new NullPointerException("priority == null");
+        }
+
+        HandlerFuture<ReturnType> future = new HandlerFuture<>();
+        Runnable runnable = future.newTask(action);
+        long deadline = deadlineMs > 0 ? SystemClock.uptimeMillis() + deadlineMs : Long.MAX_VALUE;
+        synchronized (lock) {
+            PriorityQueue<Task> queue = queues[priority.ordinal()];
+            queue.add(new Task(runnable, future, sequence++, priority, deadline));
+            maxQueueDepth[priority.ordinal()] = Math.max(maxQueueDepth[priority.ordinal()], queue.size());
+        }
+        post(pumpRunner);
+        return future;
+    }
+
+    /**
+     * 優先度を指定して処理を行わせる
+     */
+    public void post(Priority priority, Runnable runnable) {
+        submit(priority, 0, () -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    /**
+     * 優先度を指定して処理を行わせ、完了を待つ
+     * ハンドラのスレッドから呼び出された場合はその場で実行する
+     */
+    public <ReturnType, ErrorType extends Exception> ReturnType await(Priority priority, ThrowableRunnable<ReturnType, ErrorType> action) throws ErrorType {
+        if (isHandlerThread()) {
+            return HandlerFuture.postOrRun(null, action).<ErrorType>getResult();
+        }
+        return submit(priority, 0, action).<ErrorType>getResult();
+    }
+
+    /**
+     * Normal優先度で処理を行わせ、完了を待つ
+     */
+    @Override
+    public <ReturnType, ErrorType extends Exception> ReturnType await(ThrowableRunnable<ReturnType, ErrorType> action) throws ErrorType {
+        return await(Priority.Normal, action);
+    }
+
+    /**
+     * Normal優先度で処理を行わせ、完了を待つためのFutureを取得する
+     */
+    @Override
+    public <ReturnType, ErrorType extends Exception> HandlerFuture<ReturnType> submit(ThrowableRunnable<ReturnType, ErrorType> action) {
+        return submit(Priority.Normal, 0, action);
+    }
+
+    /**
+     * 現在のキューの深さを取得する
+     */
+    public int getQueueDepth(Priority priority) {
+        synchronized (lock) {
+            return queues[priority.ordinal()].size();
+        }
+    }
+
+    /**
+     * これまでのキューの最大の深さを取得する
+     */
+    public int getMaxQueueDepth(Priority priority) {
+        synchronized (lock) {
+            return maxQueueDepth[priority.ordinal()];
+        }
+    }
+
+    /**
+     * 実行した処理数を取得する
+     */
+    public long getExecutedCount(Priority priority) {
+        synchronized (lock) {
+            return executedCount[priority.ordinal()];
+        }
+    }
+
+    /**
+     * デッドラインを過ぎて破棄した処理数を取得する
+     */
+    public long getDroppedCount() {
+        synchronized (lock) {
+            return droppedCount;
+        }
+    }
+
+    /**
+     * デッドラインを過ぎて優先度を下げた処理数を取得する
+     */
+    public long getDemotedCount() {
+        synchronized (lock) {
+            return demotedCount;
+        }
+    }
+
+    /**
+     * 次に実行する処理を取り出す
+     *
+     * @param dropped デッドラインを過ぎて破棄された処理の格納先
+     */
+    private Task nextTask(List<Task> dropped) {
+        final long now = SystemClock.uptimeMillis();
+        synchronized (lock) {
+            for (int i = 0; i < queues.length; ++i) {
+                Task task;
+                while ((task = queues[i].poll()) != null) {
+                    if (task.future.isDone()) {
+                        // キャンセル済み
+                        continue;
+                    }
+
+                    if (task.deadline >= now || expirePolicy == ExpirePolicy.Run) {
+                        ++executedCount[i];
+                        return task;
+                    }
+
+                    if (expirePolicy == ExpirePolicy.Drop) {
+                        ++droppedCount;
+                        dropped.add(task);
+                    } else {
+                        ++demotedCount;
+                        task.deadline = Long.MAX_VALUE;
+                        task.priority = Priority.values()[Math.min(i + 1, queues.length - 1)];
+                        queues[task.priority.ordinal()].add(task);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 処理を1つ実行する
+     * submit()ごとに1回postされる
+     */
+    private final Runnable pumpRunner = () -> {
+        List<Task> dropped = new ArrayList<>();
+        Task task = nextTask(dropped);
+
+        // キャンセル時のコールバックはロック外で行う
+        for (Task drop : dropped) {
+            drop.future.cancel(false);
+        }
+
+        if (task != null) {
+            task.runnable.run();
+        }
+    };
+
+    /**
+     * 未実行の処理をキャンセルし、ハンドラを廃棄する
+     */
+    @Override
+    public void dispose() {
+        List<Task> canceled = new ArrayList<>();
+        synchronized (lock) {
+            for (PriorityQueue<Task> queue : queues) {
+                canceled.addAll(queue);
+                queue.clear();
+            }
+        }
+        for (Task task : canceled) {
+            task.future.cancel(false);
+        }
+        super.dispose();
+    }
+
+    /**
+     * ハンドラを生成する。
+     * スレッドは{@link HandlerThreadPool#getDefault()}から取得される。
+     */
+    public static PriorityAsyncHandler createInstance(String name) {
+        HandlerThreadPool pool = HandlerThreadPool.getDefault();
+        HandlerThreadPool.Lane lane = pool.acquireLane(name);
+        if (lane == null) {
+            return new PriorityAsyncHandler(pool.startUnpooledThread(name));
+        }
+        return new PriorityAsyncHandler(pool, lane);
+    }
+}
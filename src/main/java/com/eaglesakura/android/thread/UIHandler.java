@@ -1,14 +1,13 @@
 package com.eaglesakura.android.thread;
 
 import com.eaglesakura.android.util.AndroidThreadUtil;
-import com.eaglesakura.lambda.CallbackUtils;
 import com.eaglesakura.lambda.CancelCallback;
-import com.eaglesakura.thread.Holder;
 import com.eaglesakura.util.ThrowableRunnable;
-import com.eaglesakura.util.ThrowableRunner;
 
 import android.os.Handler;
 import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
 
 /**
  * UIスレッド専用のハンドラ
@@ -21,6 +20,28 @@ public class UIHandler extends Handler {
 
     private static UIHandler instance = null;
 
+    private static CoalescingDispatcher coalescer = null;
+
+    /**
+     * {@link HandlerProfiler}が有効な場合、待ち時間と実行時間を記録する
+     */
+    @Override
+    public void dispatchMessage(Message msg) {
+        HandlerProfiler profiler = HandlerProfiler.getInstance();
+        if (!profiler.isEnabled()) {
+            super.dispatchMessage(msg);
+            return;
+        }
+
+        final long startUptime = SystemClock.uptimeMillis();
+        final long startNano = System.nanoTime();
+        try {
+            super.dispatchMessage(msg);
+        } finally {
+            profiler.endDispatch("main", msg, startUptime, startNano);
+        }
+    }
+
     /**
      * 唯一のインスタンスを取得する。
      *
@@ -67,37 +88,68 @@ public class UIHandler extends Handler {
         instance.postDelayed(runnable, delay);
     }
 
+    /**
+     * UIスレッド用のCoalescingDispatcherを取得する
+     */
+    public static synchronized CoalescingDispatcher getCoalescer() {
+        if (coalescer == null) {
+            coalescer = new CoalescingDispatcher(getInstance());
+        }
+        return coalescer;
+    }
+
+    /**
+     * 次のフレームでUIスレッドの処理を行う
+     * 同じキーで複数回呼び出された場合、1回だけ実行される
+     */
+    public static void coalesceUI(Object key, Runnable runnable) {
+        getCoalescer().post(key, runnable);
+    }
+
+    /**
+     * 最後の呼び出しから指定時間が経過したらUIスレッドで処理を行う
+     */
+    public static void debounceUI(Object key, long delayMs, Runnable runnable) {
+        getCoalescer().post(key, CoalescingDispatcher.Mode.Debounce, delayMs, runnable, Runnable::run);
+    }
+
+    /**
+     * 指定した間隔に1回だけUIスレッドで処理を行う
+     */
+    public static void throttleUI(Object key, long intervalMs, Runnable runnable) {
+        getCoalescer().post(key, CoalescingDispatcher.Mode.Throttle, intervalMs, runnable, Runnable::run);
+    }
+
     public static <ReturnType, ErrorType extends Exception> ReturnType await(ThrowableRunnable<ReturnType, ErrorType> action) throws ErrorType {
-        ThrowableRunner<ReturnType, ErrorType> runner = new ThrowableRunner<>(action);
-        postUIorRun(runner);
-        return runner.await();
+        return HandlerFuture.postOrRun(getInstance(), action).<ErrorType>getResult();
+    }
+
+    /**
+     * UIスレッドで処理を行わせ、完了を待つためのFutureを取得する
+     * UIスレッドの場合はその場で実行する
+     */
+    public static <ReturnType, ErrorType extends Exception> HandlerFuture<ReturnType> submit(ThrowableRunnable<ReturnType, ErrorType> action) {
+        return HandlerFuture.postOrRun(getInstance(), action);
     }
 
     /**
      * UIスレッドにPOSTし、実行終了を待つ
+     * タイムアウトした場合は待機を終えるが、処理はキャンセルせずにUIスレッドで実行される
+     * 処理が例外を投げた場合、呼び出し元へ投げ直す
+     *
+     * @param timeoutMs タイムアウト時間、0以下の場合は無制限
      */
     @Deprecated
     public static void postWithWait(final Runnable runnable, long timeoutMs) {
         if (AndroidThreadUtil.isUIThread()) {
             runnable.run();
         } else {
-            final Object sync = new Object();
-
-            UIHandler.postUI(new Runnable() {
-                @Override
-                public void run() {
-                    runnable.run();
-                    synchronized (sync) {
-                        sync.notifyAll();
-                    }
-                }
+            HandlerFuture<Void> future = HandlerFuture.post(getInstance(), () -> {
+                runnable.run();
+                return null;
             });
-
-            synchronized (sync) {
-                try {
-                    sync.wait(timeoutMs);
-                } catch (InterruptedException e) {
-                }
+            if (future.awaitWithoutCancel(timeoutMs)) {
+                future.<RuntimeException>getResult();
             }
         }
     }
@@ -105,31 +157,22 @@ public class UIHandler extends Handler {
     /**
      * UIスレッドにPOSTし、実行終了を待つ
      * タイムアウトはキャンセルコールバックを通じて行う
+     * 処理が例外を投げた場合、呼び出し元へ投げ直す
      */
     public static boolean postWithWait(final Runnable runnable, CancelCallback callback) {
         if (AndroidThreadUtil.isUIThread()) {
             runnable.run();
+            return true;
         } else {
-            Holder<Boolean> finished = new Holder<>();
-            Runnable task = () -> {
-                try {
-                    runnable.run();
-                } finally {
-                    finished.set(Boolean.TRUE);
-                }
-            };
-
-            UIHandler.postUI(task);
-
-            while (!Boolean.TRUE.equals(finished.get())) {
-
-                // キャンセルされたのでコールバックを廃棄する
-                if (CallbackUtils.isCanceled(callback)) {
-                    getInstance().removeCallbacks(task);
-                    return false;
-                }
+            HandlerFuture<Void> future = HandlerFuture.post(getInstance(), () -> {
+                runnable.run();
+                return null;
+            });
+            if (!future.await(callback)) {
+                return false;
             }
+            future.<RuntimeException>getResult();
+            return true;
         }
-        return true;
     }
 }
@@ -1,5 +1,8 @@
 package com.eaglesakura.android.util;
 
+import com.eaglesakura.android.thread.HandlerFuture;
+import com.eaglesakura.util.ThrowableRunnable;
+
 import android.os.Handler;
 import android.os.Looper;
 
@@ -52,4 +55,15 @@ public class AndroidThreadUtil {
             handler.post(runnable);
         }
     }
+
+    /**
+     * 指定したハンドラのスレッドである場合は処理を実行し、異なるスレッドである場合は処理を投げる
+     *
+     * @param handler 対象ハンドラ
+     * @param action  実行処理
+     * @return 処理の完了を待つためのFuture
+     */
+    public static <ReturnType, ErrorType extends Exception> HandlerFuture<ReturnType> postOrRunFuture(Handler handler, ThrowableRunnable<ReturnType, ErrorType> action) {
+        return HandlerFuture.postOrRun(handler, action);
+    }
 }
@@ -0,0 +1,560 @@
+package com.eaglesakura.android.util;
+
+import android.content.ComponentCallbacks2;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DirectByteBufferを2の累乗サイズごとに再利用する
+ *
+ * allocateDirect()はJavaヒープ外の確保とゼロクリアを伴い、解放はGCのファイナライズまで遅延するため、
+ * テクスチャ等の大きなバッファを毎回確保すると、確保時間とネイティブメモリの枯渇が問題となる。
+ * obtain()で取得したバッファは、不要になった時点でrelease()で返却する。
+ * <pre>
+ * ByteBuffer buffer = DirectBufferPool.getDefault().obtain(width * height * 4);
+ * try {
+ *     // bufferを使用する
+ * } finally {
+ *     DirectBufferPool.getDefault().release(buffer);
+ * }
+ * </pre>
+ * 小さなバッファはスレッドごとのキャッシュで受け渡すため、同じスレッドで取得と返却を繰り返す場合は共有のプールをロックしない。
+ * メモリ不足時はApplication#onTrimMemory()等から{@link #onTrimMemory(int)}を呼び出すことで、保持しているバッファを手放す。
+ * 全てのメソッドはスレッドセーフである。
+ */
+public class DirectBufferPool {
+
+    /**
+     * 返却されずにGCされたバッファを通知する
+     */
+    public interface LeakListener {
+        /**
+         * @param capacity   バッファの容量
+         * @param allocation バッファを取得した時点のスタックトレース
+         */
+        void onBufferLeaked(DirectBufferPool pool, int capacity, Throwable allocation);
+    }
+
+    /**
+     * 最小のサイズクラス(64byte)
+     */
+    private static final int MIN_SHIFT = 6;
+
+    /**
+     * 最大のサイズクラス(1GB)
+     */
+    private static final int MAX_SHIFT = 30;
+
+    /**
+     * スレッドごとにキャッシュする最大のサイズクラス(64KB)
+     */
+    private static final int THREAD_CACHE_MAX_SHIFT = 16;
+
+    /**
+     * スレッドごとに、1サイズクラスあたりキャッシュするバッファ数
+     */
+    private static final int THREAD_CACHE_SIZE = 4;
+
+    private static DirectBufferPool sDefault;
+
+    /**
+     * サイズクラスごとの未使用バッファ
+     */
+    private final List<ByteBuffer>[] mFreeBuffers;
+
+    /**
+     * プールに保持する最大byte数
+     */
+    private volatile long mHighWaterMark;
+
+    /**
+     * 共有の未使用バッファとして保持しているbyte数
+     */
+    private final AtomicLong mPooledBytes = new AtomicLong();
+
+    /**
+     * スレッドごとのキャッシュに保持しているbyte数
+     */
+    private final AtomicLong mThreadCachedBytes = new AtomicLong();
+
+    /**
+     * 取得され、返却されていないbyte数
+     */
+    private final AtomicLong mOutstandingBytes = new AtomicLong();
+
+    /**
+     * mOutstandingBytesの最大値
+     */
+    private final AtomicLong mPeakOutstandingBytes = new AtomicLong();
+
+    /**
+     * allocateDirect()を行った回数
+     */
+    private final AtomicLong mAllocateCount = new AtomicLong();
+
+    /**
+     * trimが行われるごとに加算され、スレッドごとのキャッシュを破棄させる
+     */
+    private volatile int mTrimGeneration;
+
+    private final ThreadLocal<ThreadCache> mThreadCache = new ThreadLocal<ThreadCache>() {
+        @Override
+        protected ThreadCache initialValue() {
+            ThreadCache cache = new ThreadCache(Thread.currentThread());
+            synchronized (DirectBufferPool.this) {
+                purgeDeadThreadCaches();
+                mThreadCaches.add(cache);
+            }
+            return cache;
+        }
+    };
+
+    /**
+     * 作成済みのスレッドごとのキャッシュ
+     * 終了したスレッドのキャッシュを回収するために保持する。
+     */
+    private final List<ThreadCache> mThreadCaches = new ArrayList<>();
+
+    /**
+     * リーク検出を行う場合はtrue
+     */
+    private volatile boolean mLeakDetection;
+
+    private final ReferenceQueue<ByteBuffer> mLeakQueue = new ReferenceQueue<>();
+
+    /**
+     * 取得され、返却されていないバッファ
+     * キーはSystem.identityHashCode()
+     * このプールから取得していないバッファの返却を判別するため、リーク検出の有無に関わらず追跡する。
+     */
+    private final Map<Integer, List<TrackedReference>> mTracked = new HashMap<>();
+
+    private int mLeakCount;
+
+    private LeakListener mLeakListener;
+
+    /**
+     * @param highWaterMark プールに保持する最大byte数、これを超えて返却されたバッファは破棄する
+     */
+    @SuppressWarnings("unchecked")
+    public DirectBufferPool(long highWaterMark) {
+        mHighWaterMark = highWaterMark;
+        mFreeBuffers = new List[MAX_SHIFT + 1];
+        for (int i = MIN_SHIFT; i <= MAX_SHIFT; ++i) {
+            mFreeBuffers[i] = new ArrayList<>();
+        }
+    }
+
+    /**
+     * 共有のプールを取得する
+     */
+    public static synchronized DirectBufferPool getDefault() {
+        if (sDefault == null) {
+            sDefault = new DirectBufferPool(1024 * 1024 * 32);
+        }
+        return sDefault;
+    }
+
+    /**
+     * 指定byte数を格納できるサイズクラスを取得する
+     */
+    static int getSizeClass(int bytes) {
+        if (bytes < 0 || bytes > (1 << MAX_SHIFT)) {
+            throw new IllegalArgumentException("bytes = " + bytes);
+        }
+        final int shift = 32 - Integer.numberOfLeadingZeros(Math.max(bytes, 1) - 1);
+        return Math.max(MIN_SHIFT, shift);
+    }
+
+    /**
+     * バッファを取得する
+     * <br>
+     * capacityは2の累乗に切り上げられ、limitは指定byte数、positionは0、バイトオーダーはネイティブとなる。
+     * 再利用されたバッファの内容は不定である。
+     *
+     * @param bytes 必要なbyte数
+     */
+    public ByteBuffer obtain(int bytes) {
+        final int sizeClass = getSizeClass(bytes);
+        pollLeaks();
+
+        ByteBuffer result = null;
+        if (sizeClass <= THREAD_CACHE_MAX_SHIFT) {
+            result = mThreadCache.get().poll(sizeClass);
+        }
+        if (result == null) {
+            synchronized (this) {
+                List<ByteBuffer> buffers = mFreeBuffers[sizeClass];
+                if (!buffers.isEmpty()) {
+                    result = buffers.remove(buffers.size() - 1);
+                    mPooledBytes.addAndGet(-result.capacity());
+                }
+            }
+        }
+
+        if (result == null) {
+            mAllocateCount.incrementAndGet();
+            result = ByteBuffer.allocateDirect(1 << sizeClass);
+        }
+
+        final long outstanding = mOutstandingBytes.addAndGet(result.capacity());
+        long peak;
+        while (outstanding > (peak = mPeakOutstandingBytes.get())) {
+            if (mPeakOutstandingBytes.compareAndSet(peak, outstanding)) {
+                break;
+            }
+        }
+        track(result);
+
+        result.order(ByteOrder.nativeOrder());
+        result.position(0);
+        result.limit(bytes);
+        return result;
+    }
+
+    /**
+     * バッファを返却する
+     * <br>
+     * このプールから取得していないバッファ(slice()等で生成したビューを含む)、または返却済みのバッファは何もしない。
+     * 返却後のバッファは使用してはならない。
+     *
+     * @throws IllegalStateException リーク検出中に、このプールから取得していないバッファ、または返却済みのバッファを指定した場合
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+
+        if (!untrack(buffer)) {
+            if (mLeakDetection) {
+                throw new IllegalStateException("buffer is not obtained or already released");
+            }
+            return;
+        }
+
+        final int capacity = buffer.capacity();
+        mOutstandingBytes.addAndGet(-capacity);
+
+        final int sizeClass = getSizeClass(capacity);
+        if (getPooledBytes() + capacity > mHighWaterMark) {
+            // 保持せずGCに任せる
+            return;
+        }
+
+        if (sizeClass <= THREAD_CACHE_MAX_SHIFT && mThreadCache.get().offer(sizeClass, buffer)) {
+            return;
+        }
+
+        synchronized (this) {
+            mFreeBuffers[sizeClass].add(buffer);
+        }
+        mPooledBytes.addAndGet(capacity);
+    }
+
+    /**
+     * プールに保持する最大byte数を指定する
+     * 現在保持しているbyte数が上回る場合、即座に破棄する。
+     */
+    public void setHighWaterMark(long bytes) {
+        mHighWaterMark = bytes;
+        trimToSize(bytes);
+    }
+
+    public long getHighWaterMark() {
+        return mHighWaterMark;
+    }
+
+    /**
+     * プールに保持しているbyte数を取得する
+     * スレッドごとのキャッシュを含む。
+     */
+    public long getPooledBytes() {
+        return mPooledBytes.get() + mThreadCachedBytes.get();
+    }
+
+    /**
+     * 取得され、返却されていないbyte数を取得する
+     */
+    public long getOutstandingBytes() {
+        return mOutstandingBytes.get();
+    }
+
+    /**
+     * 取得され、返却されていないbyte数の最大値を取得する
+     */
+    public long getPeakOutstandingBytes() {
+        return mPeakOutstandingBytes.get();
+    }
+
+    /**
+     * allocateDirect()を行った回数を取得する
+     */
+    public long getAllocateCount() {
+        return mAllocateCount.get();
+    }
+
+    /**
+     * 保持しているバッファを、指定byte数以下になるまで大きなものから破棄する
+     * スレッドごとのキャッシュは、各スレッドが次にプールを使用した時点で全て破棄される。
+     */
+    public void trimToSize(long bytes) {
+        synchronized (this) {
+            ++mTrimGeneration;
+            purgeDeadThreadCaches();
+
+            // スレッドごとのキャッシュは全て破棄されるため、共有のバッファのみで判定する
+            for (int i = MAX_SHIFT; i >= MIN_SHIFT && mPooledBytes.get() > bytes; --i) {
+                List<ByteBuffer> buffers = mFreeBuffers[i];
+                while (!buffers.isEmpty() && mPooledBytes.get() > bytes) {
+                    buffers.remove(buffers.size() - 1);
+                    mPooledBytes.addAndGet(-(1 << i));
+                }
+            }
+        }
+    }
+
+    /**
+     * 終了したスレッドのキャッシュを破棄する
+     * 呼び出し元でthisをロックしておく。
+     */
+    private void purgeDeadThreadCaches() {
+        Iterator<ThreadCache> iterator = mThreadCaches.iterator();
+        while (iterator.hasNext()) {
+            ThreadCache cache = iterator.next();
+            Thread owner = cache.owner.get();
+            if (owner == null || !owner.isAlive()) {
+                iterator.remove();
+                cache.discard();
+            }
+        }
+    }
+
+    /**
+     * 保持しているバッファを全て破棄する
+     */
+    public void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * ComponentCallbacks2#onTrimMemory()の通知に合わせてバッファを破棄する
+     *
+     * @param level ComponentCallbacks2.TRIM_MEMORY_*
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(mHighWaterMark / 2);
+        }
+    }
+
+    /**
+     * ComponentCallbacks#onLowMemory()の通知に合わせてバッファを全て破棄する
+     */
+    public void onLowMemory() {
+        clear();
+    }
+
+    /**
+     * リーク検出の有無を指定する
+     * <br>
+     * 有効な間に取得したバッファは、取得時のスタックトレースとともに追跡され、
+     * 返却されずにGCされた場合はリークとして数えられる。スタックトレースの取得にコストがかかるため、デバッグ時のみ有効にする。
+     */
+    public void setLeakDetection(boolean enable) {
+        mLeakDetection = enable;
+    }
+
+    public synchronized void setLeakListener(LeakListener listener) {
+        mLeakListener = listener;
+    }
+
+    /**
+     * 検出されたリーク数を取得する
+     * 検出はGCの後、obtain()を呼び出した時点で行われる。
+     */
+    public int getLeakCount() {
+        pollLeaks();
+        synchronized (mTracked) {
+            return mLeakCount;
+        }
+    }
+
+    private void track(ByteBuffer buffer) {
+        TrackedReference ref = new TrackedReference(buffer, mLeakQueue, mLeakDetection);
+        synchronized (mTracked) {
+            List<TrackedReference> refs = mTracked.get(ref.hash);
+            if (refs == null) {
+                refs = new ArrayList<>(1);
+                mTracked.put(ref.hash, refs);
+            }
+            refs.add(ref);
+        }
+    }
+
+    /**
+     * 追跡を解除する
+     *
+     * @return 追跡中のバッファであればtrue
+     */
+    private boolean untrack(ByteBuffer buffer) {
+        final int hash = System.identityHashCode(buffer);
+        synchronized (mTracked) {
+            List<TrackedReference> refs = mTracked.get(hash);
+            if (refs == null) {
+                return false;
+            }
+            for (int i = 0; i < refs.size(); ++i) {
+                TrackedReference ref = refs.get(i);
+                if (ref.get() == buffer) {
+                    ref.clear();
+                    refs.remove(i);
+                    if (refs.isEmpty()) {
+                        mTracked.remove(hash);
+                    }
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * GCされた追跡中のバッファを破棄する
+     * リーク検出中に取得されたバッファは、リークとして処理する
+     */
+    private void pollLeaks() {
+        TrackedReference ref;
+        while ((ref = (TrackedReference) mLeakQueue.poll()) != null) {
+            LeakListener listener;
+            synchronized (mTracked) {
+                List<TrackedReference> refs = mTracked.get(ref.hash);
+                if (refs == null || !refs.remove(ref)) {
+                    continue;
+                }
+                if (refs.isEmpty()) {
+                    mTracked.remove(ref.hash);
+                }
+                if (ref.allocation != null) {
+                    ++mLeakCount;
+                }
+            }
+            mOutstandingBytes.addAndGet(-ref.capacity);
+            if (ref.allocation == null) {
+                continue;
+            }
+
+            synchronized (this) {
+                listener = mLeakListener;
+            }
+            if (listener != null) {
+                listener.onBufferLeaked(this, ref.capacity, ref.allocation);
+            }
+        }
+    }
+
+    /**
+     * 追跡中のバッファ
+     */
+    private static class TrackedReference extends WeakReference<ByteBuffer> {
+        final int hash;
+
+        final int capacity;
+
+        /**
+         * 取得時のスタックトレース
+         * リーク検出が無効な間に取得された場合はnull
+         */
+        final Throwable allocation;
+
+        TrackedReference(ByteBuffer buffer, ReferenceQueue<ByteBuffer> queue, boolean leakDetection) {
+            super(buffer, queue);
+            hash = System.identityHashCode(buffer);
+            capacity = buffer.capacity();
+            allocation = leakDetection ? new Throwable("DirectBufferPool.obtain(" + capacity + ")") : null;
+        }
+    }
+
+    /**
+     * スレッドごとのキャッシュ
+     * 終了したスレッドのキャッシュは、trimToSize()または他のスレッドが新たにキャッシュを作成した時点で破棄される。
+     */
+    private class ThreadCache {
+        final WeakReference<Thread> owner;
+
+        final ByteBuffer[][] buffers = new ByteBuffer[THREAD_CACHE_MAX_SHIFT + 1][THREAD_CACHE_SIZE];
+
+        final int[] counts = new int[THREAD_CACHE_MAX_SHIFT + 1];
+
+        /**
+         * キャッシュしているbyte数
+         * 所有スレッドのみが書き込み、終了後は回収するスレッドが読み込む。
+         */
+        volatile long bytes;
+
+        int generation = mTrimGeneration;
+
+        ThreadCache(Thread owner) {
+            this.owner = new WeakReference<>(owner);
+        }
+
+        /**
+         * trimされていればキャッシュを破棄する
+         */
+        void validate() {
+            final int current = mTrimGeneration;
+            if (generation == current) {
+                return;
+            }
+            generation = current;
+            discard();
+        }
+
+        /**
+         * キャッシュを全て破棄する
+         */
+        void discard() {
+            for (int i = MIN_SHIFT; i <= THREAD_CACHE_MAX_SHIFT; ++i) {
+                while (counts[i] > 0) {
+                    buffers[i][--counts[i]] = null;
+                }
+            }
+            mThreadCachedBytes.addAndGet(-bytes);
+            bytes = 0;
+        }
+
+        ByteBuffer poll(int sizeClass) {
+            validate();
+            if (counts[sizeClass] == 0) {
+                return null;
+            }
+            final int index = --counts[sizeClass];
+            ByteBuffer result = buffers[sizeClass][index];
+            buffers[sizeClass][index] = null;
+            bytes -= result.capacity();
+            mThreadCachedBytes.addAndGet(-result.capacity());
+            return result;
+        }
+
+        boolean offer(int sizeClass, ByteBuffer buffer) {
+            validate();
+            if (counts[sizeClass] == THREAD_CACHE_SIZE) {
+                return false;
+            }
+            buffers[sizeClass][counts[sizeClass]++] = buffer;
+            bytes += buffer.capacity();
+            mThreadCachedBytes.addAndGet(buffer.capacity());
+            return true;
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.eaglesakura.android.graphics;
+
+import com.eaglesakura.android.utils.CiJUnitTester;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ColorRGBATest extends CiJUnitTester {
+
+    /**
+     * 並列処理で分割されるピクセル数
+     */
+    static final int PIXEL_COUNT = 256 * 1024 + 7;
+
+    /**
+     * 先頭のピクセルが全てのA値を含む、ランダムなRGBAピクセルを生成する
+     */
+    static int[] randomPixels(long seed) {
+        Random random = new Random(seed);
+        int[] result = new int[PIXEL_COUNT];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = (random.nextInt() & 0xffffff00) | (i & 0xff);
+        }
+        // 色成分が0, 255, Aと等しい場合を含める
+        for (int a = 0; a < 256; ++a) {
+            result[a] = a;
+            result[256 + a] = 0xffffff00 | a;
+            result[512 + a] = (a << 24) | (a << 16) | (a << 8) | a;
+        }
+        return result;
+    }
+
+    /**
+     * 1ピクセルずつ計算した結果
+     */
+    static int convert(ColorRGBA.PixelConversion conversion, int pixel) {
+        switch (conversion) {
+            case ArgbToRgba:
+                return ColorRGBA.argb2rgba(pixel);
+            case RgbaToArgb:
+                return ColorRGBA.rgba2argb(pixel);
+            case ArgbToBgra:
+            case BgraToArgb:
+                return ((pixel & 0xff) << 24) | ((pixel & 0xff00) << 8) | ((pixel >>> 8) & 0xff00) | (pixel >>> 24);
+            case PremultiplyRgba:
+                return ColorRGBA.argb2rgba(premultiply(ColorRGBA.rgba2argb(pixel)));
+            case UnpremultiplyRgba:
+                return ColorRGBA.argb2rgba(unpremultiply(ColorRGBA.rgba2argb(pixel)));
+            case PremultiplyArgb:
+                return premultiply(pixel);
+            case UnpremultiplyArgb:
+                return unpremultiply(pixel);
+            default:
+                throw new IllegalArgumentException();
+        }
+    }
+
+    static int premultiply(int argb) {
+        final int a = argb >>> 24;
+        int result = argb & 0xff000000;
+        for (int shift = 0; shift < 24; shift += 8) {
+            final int c = (argb >>> shift) & 0xff;
+            result |= ((c * a + 127) / 255) << shift;
+        }
+        return result;
+    }
+
+    static int unpremultiply(int argb) {
+        final int a = argb >>> 24;
+        int result = argb & 0xff000000;
+        for (int shift = 0; shift < 24; shift += 8) {
+            final int c = Math.min(a, (argb >>> shift) & 0xff);
+            if (a == 0xff) {
+                result |= ((argb >>> shift) & 0xff) << shift;
+            } else if (a > 0) {
+                // 四捨五入する
+                result |= ((c * 255 * 2 + a) / (a * 2)) << shift;
+            }
+        }
+        return result;
+    }
+
+    static short rgb565(int rgba) {
+        return ColorRGBA.toColorRGB565(ColorRGBA.toColorR(rgba), ColorRGBA.toColorG(rgba), ColorRGBA.toColorB(rgba));
+    }
+
+    static short rgba4444(int rgba) {
+        return (short) (((ColorRGBA.toColorR(rgba) >> 4) << 12) | ((ColorRGBA.toColorG(rgba) >> 4) << 8) | ((ColorRGBA.toColorB(rgba) >> 4) << 4) | (ColorRGBA.toColorA(rgba) >> 4));
+    }
+
+    static IntBuffer directIntBuffer(int[] pixels, ByteOrder order) {
+        IntBuffer result = ByteBuffer.allocateDirect(pixels.length * 4).order(order).asIntBuffer();
+        result.put(pixels);
+        result.position(0);
+        return result;
+    }
+
+    static int[] toArray(IntBuffer buffer) {
+        int[] result = new int[buffer.capacity()];
+        buffer.duplicate().get(result);
+        return result;
+    }
+
+    static short[] toArray(ShortBuffer buffer) {
+        short[] result = new short[buffer.capacity()];
+        buffer.duplicate().get(result);
+        return result;
+    }
+
+    @Test
+    public void 一括変換の結果が1ピクセルずつの変換と一致する() throws Exception {
+        final int[] src = randomPixels(0);
+        for (ColorRGBA.PixelConversion conversion : ColorRGBA.PixelConversion.values()) {
+            final String message = conversion.name();
+            int[] expected = new int[src.length];
+            for (int i = 0; i < src.length; ++i) {
+                expected[i] = convert(conversion, src[i]);
+            }
+
+            // 配列
+            int[] dst = new int[src.length];
+            ColorRGBA.convertPixels(conversion, src, 0, dst, 0, src.length);
+            assertArrayEquals(message, expected, dst);
+
+            // 並列
+            dst = new int[src.length];
+            ColorRGBA.convertPixels(conversion, src, 0, dst, 0, src.length, true);
+            assertArrayEquals(message, expected, dst);
+
+            // 同じ配列へ上書き
+            dst = src.clone();
+            ColorRGBA.convertPixels(conversion, dst, 0, dst, 0, dst.length, true);
+            assertArrayEquals(message, expected, dst);
+
+            // オフセット指定
+            dst = new int[src.length];
+            ColorRGBA.convertPixels(conversion, src, 3, dst, 5, src.length - 5);
+            for (int i = 0; i < src.length - 5; ++i) {
+                assertEquals(message, expected[3 + i], dst[5 + i]);
+            }
+
+            // DirectBuffer
+            for (boolean parallel : new boolean[]{false, true}) {
+                IntBuffer direct = directIntBuffer(src, ByteOrder.nativeOrder());
+                ColorRGBA.convertPixels(conversion, direct, 0, direct, 0, src.length, parallel);
+                assertArrayEquals(message, expected, toArray(direct));
+
+                IntBuffer heap = IntBuffer.allocate(src.length);
+                ColorRGBA.convertPixels(conversion, IntBuffer.wrap(src), 0, heap, 0, src.length, parallel);
+                assertArrayEquals(message, expected, toArray(heap));
+            }
+
+            // ByteBufferはバイトオーダーに従って読み書きする
+            ByteBuffer bytes = ByteBuffer.allocateDirect(src.length * 4 + 8).order(ByteOrder.BIG_ENDIAN);
+            bytes.position(8);
+            bytes.asIntBuffer().put(src);
+            ColorRGBA.convertPixels(conversion, bytes, 8, bytes, 8, src.length, true);
+            bytes.position(8);
+            int[] result = new int[src.length];
+            bytes.asIntBuffer().get(result);
+            assertArrayEquals(message, expected, result);
+        }
+    }
+
+    @Test
+    public void RGB565とRGBA4444への一括変換の結果が1ピクセルずつの変換と一致する() throws Exception {
+        final int[] src = randomPixels(1);
+        for (boolean rgba4444 : new boolean[]{false, true}) {
+            final String message = rgba4444 ? "RGBA4444" : "RGB565";
+            short[] expected = new short[src.length];
+            for (int i = 0; i < src.length; ++i) {
+                expected[i] = rgba4444 ? rgba4444(src[i]) : rgb565(src[i]);
+            }
+
+            // 配列
+            for (boolean parallel : new boolean[]{false, true}) {
+                short[] dst = new short[src.length];
+                if (rgba4444) {
+                    ColorRGBA.rgba2rgba4444(src, 0, dst, 0, src.length, parallel);
+                } else {
+                    ColorRGBA.rgba2rgb565(src, 0, dst, 0, src.length, parallel);
+                }
+                assertArrayEquals(message, expected, dst);
+            }
+
+            // DirectBuffer
+            for (boolean parallel : new boolean[]{false, true}) {
+                IntBuffer direct = directIntBuffer(src, ByteOrder.nativeOrder());
+                ShortBuffer dst = ByteBuffer.allocateDirect(src.length * 2).order(ByteOrder.nativeOrder()).asShortBuffer();
+                if (rgba4444) {
+                    ColorRGBA.rgba2rgba4444(direct, 0, dst, 0, src.length, parallel);
+                } else {
+                    ColorRGBA.rgba2rgb565(direct, 0, dst, 0, src.length, parallel);
+                }
+                assertArrayEquals(message, expected, toArray(dst));
+            }
+
+            // 同じByteBufferへ上書きする
+            ByteBuffer bytes = ByteBuffer.allocateDirect(src.length * 4).order(ByteOrder.nativeOrder());
+            ByteBuffer rgba = bytes.duplicate().order(ByteOrder.BIG_ENDIAN);
+            rgba.asIntBuffer().put(src);
+            if (rgba4444) {
+                ColorRGBA.rgba2rgba4444(rgba, 0, bytes, 0, src.length, true);
+            } else {
+                ColorRGBA.rgba2rgb565(rgba, 0, bytes, 0, src.length, true);
+            }
+            short[] result = new short[src.length];
+            bytes.asShortBuffer().get(result);
+            assertArrayEquals(message, expected, result);
+        }
+    }
+
+    /**
+     * 成分ごとに(c0 * weight + c1 * (256 - weight)) / 256を計算する
+     */
+    static int blend(int rgba0, int rgba1, int weight) {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            final int c0 = (rgba0 >>> shift) & 0xff;
+            final int c1 = (rgba1 >>> shift) & 0xff;
+            result |= ((c0 * weight + c1 * (256 - weight)) >> 8) << shift;
+        }
+        return result;
+    }
+
+    /**
+     * 乗算済みアルファのsrcをdstの上へ合成する
+     */
+    static int alphaOver(int src, int dst) {
+        final int inv = 255 - (src & 0xff);
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            final int s = (src >>> shift) & 0xff;
+            final int d = (dst >>> shift) & 0xff;
+            result |= (s + (d * inv + 127) / 255) << shift;
+        }
+        return result;
+    }
+
+    @Test
+    public void 固定小数のブレンドが成分ごとの計算と一致する() throws Exception {
+        final int[] src0 = randomPixels(2);
+        final int[] src1 = randomPixels(3);
+        for (int weight = 0; weight <= 256; ++weight) {
+            for (int i = 0; i < 4096; ++i) {
+                assertEquals(blend(src0[i], src1[i], weight), ColorRGBA.blendColorFixed(src0[i], src1[i], weight));
+            }
+        }
+        // 範囲外の値は丸める
+        assertEquals(src0[0], ColorRGBA.blendColorFixed(src0[0], src1[0], 300));
+        assertEquals(src1[0], ColorRGBA.blendColorFixed(src0[0], src1[0], -1));
+    }
+
+    @Test
+    public void 一括ブレンドの結果が1ピクセルずつのブレンドと一致する() throws Exception {
+        final int[] src0 = randomPixels(4);
+        final int[] src1 = randomPixels(5);
+        for (float blend : new float[]{0.0f, 0.25f, 0.5f, 0.7f, 1.0f}) {
+            int[] expected = new int[src0.length];
+            for (int i = 0; i < expected.length; ++i) {
+                expected[i] = ColorRGBA.blendColor(src0[i], src1[i], blend);
+            }
+            final String message = "blend = " + blend;
+
+            for (boolean parallel : new boolean[]{false, true}) {
+                int[] dst = new int[src0.length];
+                ColorRGBA.blendColors(src0, 0, src1, 0, dst, 0, dst.length, blend, parallel);
+                assertArrayEquals(message, expected, dst);
+
+                // src0へ上書き
+                dst = src0.clone();
+                ColorRGBA.blendColors(dst, 0, src1, 0, dst, 0, dst.length, blend, parallel);
+                assertArrayEquals(message, expected, dst);
+
+                IntBuffer direct = directIntBuffer(src0, ByteOrder.nativeOrder());
+                ColorRGBA.blendColors(direct, 0, directIntBuffer(src1, ByteOrder.BIG_ENDIAN), 0, direct, 0, src0.length, blend, parallel);
+                assertArrayEquals(message, expected, toArray(direct));
+
+                IntBuffer heap = IntBuffer.allocate(src0.length);
+                ColorRGBA.blendColors(IntBuffer.wrap(src0), 0, IntBuffer.wrap(src1), 0, heap, 0, src0.length, blend, parallel);
+                assertArrayEquals(message, expected, toArray(heap));
+            }
+        }
+    }
+
+    @Test
+    public void アルファ合成の結果が成分ごとの計算と一致する() throws Exception {
+        // srcは乗算済みアルファとする
+        final int[] src = randomPixels(6);
+        ColorRGBA.convertPixels(ColorRGBA.PixelConversion.PremultiplyRgba, src, 0, src, 0, src.length);
+        final int[] dst = randomPixels(7);
+        ColorRGBA.convertPixels(ColorRGBA.PixelConversion.PremultiplyRgba, dst, 0, dst, 0, dst.length);
+
+        int[] expected = new int[dst.length];
+        for (int i = 0; i < expected.length; ++i) {
+            expected[i] = alphaOver(src[i], dst[i]);
+        }
+
+        for (boolean parallel : new boolean[]{false, true}) {
+            int[] result = dst.clone();
+            ColorRGBA.alphaOver(src, 0, result, 0, result.length, parallel);
+            assertArrayEquals(expected, result);
+        }
+
+        // 全てのA値について、dstの全ての値と合成する
+        for (int a = 0; a < 256; ++a) {
+            final int s = ((a / 3) << 24) | ((a / 2) << 16) | (a << 8) | a;
+            for (int d = 0; d < 256; ++d) {
+                final int gray = (d << 24) | (d << 16) | (d << 8) | d;
+                final int[] pixel = {gray};
+                ColorRGBA.alphaOver(new int[]{s}, 0, pixel, 0, 1);
+                assertEquals(alphaOver(s, gray), pixel[0]);
+            }
+        }
+    }
+}
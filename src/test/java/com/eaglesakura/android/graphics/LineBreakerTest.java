@@ -0,0 +1,179 @@
+package com.eaglesakura.android.graphics;
+
+import com.eaglesakura.android.utils.CiJUnitTester;
+
+import org.junit.Test;
+
+import android.graphics.Paint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LineBreakerTest extends CiJUnitTester {
+
+    /**
+     * ASCIIは1、サロゲートは1/2文字ずつ1、それ以外は2の固定幅で計測する
+     */
+    static class FixedWidthPaint extends Paint {
+        static float charWidth(char c) {
+            if (c < 0x80 || Character.isSurrogate(c)) {
+                return 1;
+            }
+            return 2;
+        }
+
+        @Override
+        public int getTextWidths(String text, int start, int end, float[] widths) {
+            for (int i = start; i < end; ++i) {
+                widths[i - start] = charWidth(text.charAt(i));
+            }
+            return end - start;
+        }
+
+        @Override
+        public float measureText(String text) {
+            return measureText(text, 0, text.length());
+        }
+
+        @Override
+        public float measureText(String text, int start, int end) {
+            float result = 0;
+            for (int i = start; i < end; ++i) {
+                result += charWidth(text.charAt(i));
+            }
+            return result;
+        }
+    }
+
+    static List<String> breakLines(String text, float width) {
+        LineBreaker breaker = new LineBreaker(new FixedWidthPaint());
+        breaker.setText(text);
+        LineBreaker.Lines lines = breaker.breakLines(0, text.length(), width, 0, new LineBreaker.Lines());
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < lines.getCount(); ++i) {
+            result.add(text.substring(lines.getStart(i), lines.getEnd(i)));
+        }
+        return result;
+    }
+
+    @Test
+    public void 単語の区切りで改行される() throws Exception {
+        assertEquals(Arrays.asList("hello", "world"), breakLines("hello world", 8));
+        assertEquals(Arrays.asList("hello world"), breakLines("hello world", 11));
+    }
+
+    @Test
+    public void 行に収まらない単語は文字単位で分割される() throws Exception {
+        assertEquals(Arrays.asList("abcd", "efgh", "ij"), breakLines("abcdefghij", 4));
+        assertEquals(Arrays.asList("abc", "defgh", "ijkl"), breakLines("abc defghijkl", 5));
+    }
+
+    @Test
+    public void CJKは文字単位で改行され行頭禁則が適用される() throws Exception {
+        assertEquals(Arrays.asList("あいう", "えおか", "き"), breakLines("あいうえおかき", 6));
+        // "。"は行頭に置かない
+        assertEquals(Arrays.asList("あい", "う。え", "お"), breakLines("あいう。えお", 6));
+        assertEquals(Arrays.asList("Hello 世", "界"), breakLines("Hello 世界", 8));
+    }
+
+    @Test
+    public void 空の段落は空行となる() throws Exception {
+        assertEquals(Arrays.asList("a", "", "b"), breakLines("a\n\nb", 10));
+        assertEquals(Arrays.asList("a", "", "b"), breakLines("a\n   \nb", 10));
+        assertEquals(Arrays.asList("a", ""), breakLines("a\n", 10));
+        assertEquals("a\n\nb", LineBreaker.calcTextInRectNewLine(new FixedWidthPaint(), "a\n\nb", 10));
+    }
+
+    @Test
+    public void 幅が1文字に満たなくても1文字ずつ改行される() throws Exception {
+        assertEquals(Arrays.asList("a", "b", "c"), breakLines("abc", 0.5f));
+        assertEquals(Arrays.asList("あ", "い"), breakLines("あい", 1));
+        assertEquals(Arrays.asList("a", "b"), breakLines("a b", 0));
+    }
+
+    @Test
+    public void サロゲートペアは分割されない() throws Exception {
+        final String emoji = new String(Character.toChars(0x1F600));
+        assertEquals(Arrays.asList(emoji, emoji), breakLines(emoji + emoji, 1));
+        assertEquals(Arrays.asList(emoji, emoji), breakLines(emoji + emoji, 3));
+
+        // 省略位置がサロゲートペアの間となる場合は手前で削る
+        assertEquals("a.", LineBreaker.calcTextInRect(new FixedWidthPaint(), "a" + emoji + "b", ".", false, 3));
+    }
+
+    @Test
+    public void 最大行数を超えた場合は切り捨てられる() throws Exception {
+        LineBreaker breaker = new LineBreaker(new FixedWidthPaint());
+        breaker.setText("abcdefghij");
+        LineBreaker.Lines lines = breaker.breakLines(0, 10, 4, 2, new LineBreaker.Lines());
+        assertEquals(2, lines.getCount());
+        assertTrue(lines.isTruncated());
+
+        lines = breaker.breakLines(0, 10, 4, 3, lines);
+        assertEquals(3, lines.getCount());
+        assertFalse(lines.isTruncated());
+    }
+
+    /**
+     * 変更前の実装と同じく、末尾から1文字ずつ削って計測する
+     */
+    static String legacyTextInRectNewLine(Paint paint, String baseText, int widthPixel) {
+        String allText = baseText;
+        StringBuilder result = new StringBuilder();
+        while (!allText.isEmpty()) {
+            int index = allText.length();
+            String tempText = allText;
+            while (tempText.length() > 0 && paint.measureText(tempText) > widthPixel) {
+                tempText = allText.substring(0, --index);
+            }
+            if (result.length() > 0) {
+                result.append('\n');
+            }
+            result.append(tempText);
+            allText = allText.substring(tempText.length());
+        }
+        return result.toString();
+    }
+
+    static String legacyTextInRect(Paint paint, String baseText, String fooderText, boolean forceFooder, int widthPixel) {
+        String tempText = forceFooder ? (baseText + fooderText) : baseText;
+        int index = baseText.length();
+        while (tempText.length() > 0 && paint.measureText(tempText) > widthPixel) {
+            tempText = baseText.substring(0, --index) + fooderText;
+        }
+        return tempText;
+    }
+
+    @Test
+    public void 変更前に正しく処理できていた入力は同じ結果となる() throws Exception {
+        final Paint paint = new FixedWidthPaint();
+        final String kana = "あいうえおかきくけこさしすせそ漢字日本語";
+        final String ascii = "abcdefghijklmnopqrstuvwxyz";
+        Random random = new Random(0);
+        for (int i = 0; i < 500; ++i) {
+            // 禁則文字と空白を含まない日本語は文字単位の改行となる
+            StringBuilder cjk = new StringBuilder();
+            StringBuilder latin = new StringBuilder();
+            final int length = 1 + random.nextInt(30);
+            for (int k = 0; k < length; ++k) {
+                cjk.append(kana.charAt(random.nextInt(kana.length())));
+                latin.append(ascii.charAt(random.nextInt(ascii.length())));
+            }
+            final int width = 2 + random.nextInt(20);
+            final String text = cjk.toString();
+            assertEquals(legacyTextInRectNewLine(paint, text, width), LineBreaker.calcTextInRectNewLine(paint, text, width));
+
+            // 末尾の省略は文字種によらず同じ結果となる
+            for (String base : new String[]{text, latin.toString()}) {
+                assertEquals(legacyTextInRect(paint, base, "...", false, width + 3), LineBreaker.calcTextInRect(paint, base, "...", false, width + 3));
+                assertEquals(legacyTextInRect(paint, base, "...", true, width + 3), LineBreaker.calcTextInRect(paint, base, "...", true, width + 3));
+            }
+        }
+    }
+}
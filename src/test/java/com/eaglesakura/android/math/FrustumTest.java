@@ -0,0 +1,299 @@
+package com.eaglesakura.android.math;
+
+import com.eaglesakura.android.utils.CiJUnitTester;
+import com.eaglesakura.math.Vector3;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrustumTest extends CiJUnitTester {
+
+    static final float NEAR = 1.0f;
+
+    static final float FAR = 100.0f;
+
+    /**
+     * クリップ空間で判定するための視錐台
+     */
+    static class Scene {
+        final Matrix4x4 viewProjection = new Matrix4x4();
+
+        final Matrix4x4 inverseView = new Matrix4x4();
+
+        Scene(Random random) {
+            Matrix4x4 projection = new Matrix4x4();
+            projection.projection(NEAR, FAR, 60, 1.5f);
+
+            Vector3 rotate = new Vector3(random.nextFloat() * 360, random.nextFloat() * 360, random.nextFloat() * 360);
+            Vector3 position = new Vector3(random.nextFloat() * 200 - 100, random.nextFloat() * 200 - 100, random.nextFloat() * 200 - 100);
+            Matrix4x4 view = Matrix4x4.create(null, rotate, position, new Matrix4x4());
+            view.invert(inverseView);
+            Matrix4x4.multiplyMM(viewProjection.m, projection.m, view.m);
+        }
+
+        /**
+         * カメラ付近の座標をランダムに生成する
+         */
+        Vector3 randomPosition(Random random) {
+            float z = random.nextFloat() * (FAR * 1.2f) - FAR * 0.1f;
+            float range = Math.abs(z) + 5;
+            Vector3 local = new Vector3(random.nextFloat() * range * 2 - range, random.nextFloat() * range * 2 - range, z);
+            return inverseView.transVector(local, new Vector3());
+        }
+
+        /**
+         * 平面kのクリップ空間での値を取得する、0以上であれば内側となる
+         */
+        double planeValue(int k, double x, double y, double z) {
+            final float[] m = viewProjection.m;
+            double cx = m[0] * x + m[4] * y + m[8] * z + m[12];
+            double cy = m[1] * x + m[5] * y + m[9] * z + m[13];
+            double cz = m[2] * x + m[6] * y + m[10] * z + m[14];
+            double cw = m[3] * x + m[7] * y + m[11] * z + m[15];
+            switch (k) {
+                case Frustum.PLANE_LEFT:
+                    return cw + cx;
+                case Frustum.PLANE_RIGHT:
+                    return cw - cx;
+                case Frustum.PLANE_BOTTOM:
+                    return cw + cy;
+                case Frustum.PLANE_TOP:
+                    return cw - cy;
+                case Frustum.PLANE_NEAR:
+                    return cz;
+                default:
+                    return cw - cz;
+            }
+        }
+
+        /**
+         * 平面kまでの符号付き距離を取得する
+         */
+        double distance(int k, double x, double y, double z) {
+            double origin = planeValue(k, 0, 0, 0);
+            double gx = planeValue(k, 1, 0, 0) - origin;
+            double gy = planeValue(k, 0, 1, 0) - origin;
+            double gz = planeValue(k, 0, 0, 1) - origin;
+            return planeValue(k, x, y, z) / Math.sqrt(gx * gx + gy * gy + gz * gz);
+        }
+    }
+
+    @Test
+    public void 射影行列から正規化された平面を取得できる() throws Exception {
+        Matrix4x4 projection = new Matrix4x4();
+        projection.projection(NEAR, FAR, 60, 1.5f);
+        Frustum frustum = new Frustum().set(projection);
+        for (int i = 0; i < 6; ++i) {
+            float[] p = frustum.planes;
+            assertEquals(1.0f, (float) Math.sqrt(p[i * 4] * p[i * 4] + p[i * 4 + 1] * p[i * 4 + 1] + p[i * 4 + 2] * p[i * 4 + 2]), 1e-5f);
+        }
+
+        // 0 <= z <= wの範囲で、near/farは+z方向となる
+        assertTrue(frustum.isVisiblePoint(0, 0, NEAR + 0.01f));
+        assertFalse(frustum.isVisiblePoint(0, 0, NEAR - 0.01f));
+        assertTrue(frustum.isVisiblePoint(0, 0, FAR - 0.01f));
+        assertFalse(frustum.isVisiblePoint(0, 0, FAR + 0.01f));
+        assertFalse(frustum.isVisiblePoint(0, 0, -50));
+        assertEquals(-NEAR, frustum.planes[Frustum.PLANE_NEAR * 4 + 3], 1e-5f);
+        assertEquals(FAR, frustum.planes[Frustum.PLANE_FAR * 4 + 3], 1e-3f);
+
+        // near平面の手前にある球は、半径がnear平面まで届く場合のみ可視となる
+        assertTrue(frustum.isVisibleSphere(0, 0, NEAR - 0.5f, 0.6f));
+        assertFalse(frustum.isVisibleSphere(0, 0, NEAR - 0.5f, 0.4f));
+    }
+
+    @Test
+    public void MinusOneToOneではnear平面がマイナスz方向となる() throws Exception {
+        // android.opengl.Matrix.perspectiveM()と同じ行列
+        final float f = (float) (1.0 / Math.tan(Math.toRadians(60) * 0.5));
+        Matrix4x4 projection = new Matrix4x4();
+        for (int i = 0; i < 16; ++i) {
+            projection.m[i] = 0;
+        }
+        projection.m[0] = f / 1.5f;
+        projection.m[5] = f;
+        projection.m[10] = (FAR + NEAR) / (NEAR - FAR);
+        projection.m[11] = -1;
+        projection.m[14] = 2 * FAR * NEAR / (NEAR - FAR);
+
+        Frustum frustum = new Frustum().set(projection, Frustum.DepthRange.MinusOneToOne);
+        assertTrue(frustum.isVisiblePoint(0, 0, -NEAR - 0.01f));
+        assertFalse(frustum.isVisiblePoint(0, 0, -NEAR + 0.01f));
+        assertTrue(frustum.isVisiblePoint(0, 0, -FAR + 0.01f));
+        assertFalse(frustum.isVisiblePoint(0, 0, -FAR - 0.01f));
+
+        // 深度範囲を誤るとnear平面の位置がずれる
+        frustum.set(projection, Frustum.DepthRange.ZeroToOne);
+        assertFalse(frustum.isVisiblePoint(0, 0, -NEAR - 0.01f));
+    }
+
+    @Test
+    public void 点の判定がクリップ空間の判定と一致する() throws Exception {
+        Random random = new Random(0);
+        for (int loop = 0; loop < 10; ++loop) {
+            Scene scene = new Scene(random);
+            Frustum frustum = new Frustum().set(scene.viewProjection);
+            for (int i = 0; i < 1000; ++i) {
+                Vector3 v = scene.randomPosition(random);
+                boolean inside = true;
+                boolean boundary = false;
+                for (int k = 0; k < 6; ++k) {
+                    double distance = scene.distance(k, v.x, v.y, v.z);
+                    inside &= distance >= 0;
+                    boundary |= Math.abs(distance) < 1e-3;
+                }
+                if (!boundary) {
+                    assertEquals(inside, frustum.isVisiblePoint(v.x, v.y, v.z));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void 球のカリング結果が総当たりの判定と一致する() throws Exception {
+        Random random = new Random(1);
+        final int offset = 3;
+        final int count = 1000;
+        for (int loop = 0; loop < 10; ++loop) {
+            Scene scene = new Scene(random);
+            Frustum frustum = new Frustum().set(scene.viewProjection);
+
+            float[] x = new float[offset + count];
+            float[] y = new float[offset + count];
+            float[] z = new float[offset + count];
+            float[] radius = new float[offset + count];
+            for (int i = offset; i < offset + count; ++i) {
+                Vector3 v = scene.randomPosition(random);
+                x[i] = v.x;
+                y[i] = v.y;
+                z[i] = v.z;
+                radius[i] = random.nextFloat() * 20;
+            }
+
+            int[] visible = new int[Frustum.getMaskLength(count)];
+            int visibleCount = frustum.cullSpheres(x, y, z, radius, offset, count, visible);
+            int expectedCount = 0;
+            for (int i = 0; i < count; ++i) {
+                final int index = offset + i;
+                // いずれかの平面の外側に球全体があれば不可視となる
+                boolean expected = true;
+                boolean boundary = false;
+                for (int k = 0; k < 6; ++k) {
+                    double distance = scene.distance(k, x[index], y[index], z[index]);
+                    expected &= distance >= -radius[index];
+                    boundary |= Math.abs(distance + radius[index]) < 1e-3;
+                }
+
+                assertEquals(frustum.isVisibleSphere(x[index], y[index], z[index], radius[index]), Frustum.isVisible(visible, i));
+                if (!boundary) {
+                    assertEquals("index=" + i, expected, Frustum.isVisible(visible, i));
+                }
+                if (Frustum.isVisible(visible, i)) {
+                    ++expectedCount;
+                }
+            }
+            assertEquals(expectedCount, visibleCount);
+            assertTrue(visibleCount > 0 && visibleCount < count);
+        }
+    }
+
+    @Test
+    public void AABBのカリング結果が総当たりの判定と一致する() throws Exception {
+        Random random = new Random(2);
+        final int offset = 5;
+        final int count = 1000;
+        for (int loop = 0; loop < 10; ++loop) {
+            Scene scene = new Scene(random);
+            Frustum frustum = new Frustum().set(scene.viewProjection);
+
+            float[] cx = new float[offset + count];
+            float[] cy = new float[offset + count];
+            float[] cz = new float[offset + count];
+            float[] ex = new float[offset + count];
+            float[] ey = new float[offset + count];
+            float[] ez = new float[offset + count];
+            for (int i = offset; i < offset + count; ++i) {
+                Vector3 v = scene.randomPosition(random);
+                cx[i] = v.x;
+                cy[i] = v.y;
+                cz[i] = v.z;
+                ex[i] = random.nextFloat() * 10;
+                ey[i] = random.nextFloat() * 10;
+                ez[i] = random.nextFloat() * 10;
+            }
+
+            int[] visible = new int[Frustum.getMaskLength(count)];
+            int visibleCount = frustum.cullBoxes(cx, cy, cz, ex, ey, ez, offset, count, visible);
+            int expectedCount = 0;
+            for (int i = 0; i < count; ++i) {
+                final int index = offset + i;
+                // 8頂点全てが同じ平面の外側にあれば不可視となる
+                boolean expected = true;
+                boolean boundary = false;
+                for (int k = 0; k < 6; ++k) {
+                    double max = -Double.MAX_VALUE;
+                    for (int corner = 0; corner < 8; ++corner) {
+                        double x = cx[index] + ((corner & 0x01) != 0 ? ex[index] : -ex[index]);
+                        double y = cy[index] + ((corner & 0x02) != 0 ? ey[index] : -ey[index]);
+                        double z = cz[index] + ((corner & 0x04) != 0 ? ez[index] : -ez[index]);
+                        max = Math.max(max, scene.distance(k, x, y, z));
+                    }
+                    expected &= max >= 0;
+                    boundary |= Math.abs(max) < 1e-3;
+                }
+
+                assertEquals(frustum.isVisibleBox(cx[index], cy[index], cz[index], ex[index], ey[index], ez[index]), Frustum.isVisible(visible, i));
+                if (!boundary) {
+                    assertEquals("index=" + i, expected, Frustum.isVisible(visible, i));
+                }
+                if (Frustum.isVisible(visible, i)) {
+                    ++expectedCount;
+                }
+            }
+            assertEquals(expectedCount, visibleCount);
+            assertTrue(visibleCount > 0 && visibleCount < count);
+        }
+    }
+
+    @Test
+    public void 並列処理の結果が逐次処理と一致する() throws Exception {
+        Random random = new Random(3);
+        Scene scene = new Scene(random);
+        Frustum frustum = new Frustum().set(scene.viewProjection);
+
+        final int count = 32 * 1024 + 7;
+        float[] x = new float[count];
+        float[] y = new float[count];
+        float[] z = new float[count];
+        float[] size = new float[count];
+        for (int i = 0; i < count; ++i) {
+            Vector3 v = scene.randomPosition(random);
+            x[i] = v.x;
+            y[i] = v.y;
+            z[i] = v.z;
+            size[i] = random.nextFloat() * 10;
+        }
+
+        int[] serial = new int[Frustum.getMaskLength(count)];
+        int[] parallel = new int[Frustum.getMaskLength(count)];
+
+        int serialCount = frustum.cullSpheres(x, y, z, size, 0, count, serial, false);
+        int parallelCount = frustum.cullSpheres(x, y, z, size, 0, count, parallel, true);
+        assertEquals(serialCount, parallelCount);
+        for (int i = 0; i < serial.length; ++i) {
+            assertEquals(serial[i], parallel[i]);
+        }
+
+        serialCount = frustum.cullBoxes(x, y, z, size, size, size, 0, count, serial, false);
+        parallelCount = frustum.cullBoxes(x, y, z, size, size, size, 0, count, parallel, true);
+        assertEquals(serialCount, parallelCount);
+        for (int i = 0; i < serial.length; ++i) {
+            assertEquals(serial[i], parallel[i]);
+        }
+    }
+}
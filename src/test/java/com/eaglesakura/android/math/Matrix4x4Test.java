@@ -0,0 +1,170 @@
+package com.eaglesakura.android.math;
+
+import com.eaglesakura.android.utils.CiJUnitTester;
+import com.eaglesakura.math.Vector3;
+
+import org.junit.Test;
+
+import android.opengl.Matrix;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class Matrix4x4Test extends CiJUnitTester {
+
+    private static void assertMatrixEquals(float[] expected, float[] actual, float delta) {
+        for (int i = 0; i < 16; ++i) {
+            float scale = Math.max(1.0f, Math.abs(expected[i]));
+            assertEquals("index=" + i, expected[i], actual[i], delta * scale);
+        }
+    }
+
+    private static float[] randomMatrix(Random random) {
+        float[] result = new float[16];
+        for (int i = 0; i < 16; ++i) {
+            result[i] = random.nextFloat() * 2.0f - 1.0f;
+        }
+        return result;
+    }
+
+    /**
+     * 以前のcreate()と同じ手順で、android.opengl.Matrixを使用して変換行列を作成する
+     */
+    private static float[] createByGLMatrix(Vector3 scale, Vector3 rotate, Vector3 position) {
+        float[] result = new float[16];
+        float[] temp = new float[16];
+        Matrix.setIdentityM(result, 0);
+        result[0] = scale.x;
+        result[5] = scale.y;
+        result[10] = scale.z;
+
+        Matrix.setRotateM(temp, 0, rotate.x, 1, 0, 0);
+        Matrix.multiplyMM(result, 0, temp, 0, result, 0);
+        Matrix.setRotateM(temp, 0, rotate.y, 0, 1, 0);
+        Matrix.multiplyMM(result, 0, temp, 0, result, 0);
+        Matrix.setRotateM(temp, 0, rotate.z, 0, 0, 1);
+        Matrix.multiplyMM(result, 0, temp, 0, result, 0);
+
+        Matrix.setIdentityM(temp, 0);
+        Matrix.translateM(temp, 0, position.x, position.y, position.z);
+        Matrix.multiplyMM(result, 0, temp, 0, result, 0);
+        return result;
+    }
+
+    @Test
+    public void 乗算がGLMatrixと一致する() throws Exception {
+        Random random = new Random(0);
+        for (int i = 0; i < 1000; ++i) {
+            float[] lhs = randomMatrix(random);
+            float[] rhs = randomMatrix(random);
+
+            float[] expected = new float[16];
+            Matrix.multiplyMM(expected, 0, lhs, 0, rhs, 0);
+
+            float[] actual = new float[16];
+            Matrix4x4.multiplyMM(actual, lhs, rhs);
+            assertMatrixEquals(expected, actual, 1e-5f);
+
+            // 入力と出力が同じ配列でも良い
+            float[] aliasRhs = rhs.clone();
+            Matrix4x4.multiplyMM(aliasRhs, lhs, aliasRhs);
+            assertMatrixEquals(expected, aliasRhs, 1e-5f);
+
+            float[] aliasLhs = lhs.clone();
+            Matrix4x4.multiplyMM(aliasLhs, aliasLhs, rhs);
+            assertMatrixEquals(expected, aliasLhs, 1e-5f);
+        }
+    }
+
+    @Test
+    public void 逆行列がGLMatrixと一致する() throws Exception {
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; ++i) {
+            float[] src = randomMatrix(random);
+
+            float[] expected = new float[16];
+            if (!Matrix.invertM(expected, 0, src, 0)) {
+                continue;
+            }
+
+            float[] actual = new float[16];
+            assertTrue(Matrix4x4.invertM(actual, src));
+            assertMatrixEquals(expected, actual, 1e-3f);
+        }
+    }
+
+    @Test
+    public void アフィン行列の逆行列がGLMatrixと一致する() throws Exception {
+        Random random = new Random(2);
+        for (int i = 0; i < 1000; ++i) {
+            Vector3 scale = new Vector3(random.nextFloat() * 4 + 0.1f, random.nextFloat() * 4 + 0.1f, random.nextFloat() * 4 + 0.1f);
+            Vector3 rotate = new Vector3(random.nextFloat() * 720 - 360, random.nextFloat() * 720 - 360, random.nextFloat() * 720 - 360);
+            Vector3 position = new Vector3(random.nextFloat() * 200 - 100, random.nextFloat() * 200 - 100, random.nextFloat() * 200 - 100);
+            Matrix4x4 src = Matrix4x4.create(scale, rotate, position, new Matrix4x4());
+            assertTrue(Matrix4x4.isAffine(src.m));
+
+            float[] expected = new float[16];
+            assertTrue(Matrix.invertM(expected, 0, src.m, 0));
+
+            Matrix4x4 actual = src.invert(new Matrix4x4());
+            assertMatrixEquals(expected, actual.m, 1e-3f);
+
+            // 自身への書き込み
+            src.invert();
+            assertMatrixEquals(expected, src.m, 1e-3f);
+        }
+    }
+
+    @Test
+    public void 逆行列が存在しない場合は変更しない() throws Exception {
+        float[] src = new float[16];
+        float[] result = {
+                1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16
+        };
+        float[] origin = result.clone();
+        assertFalse(Matrix4x4.invertM(result, src));
+        assertMatrixEquals(origin, result, 0);
+
+        // アフィン行列
+        src[15] = 1;
+        assertFalse(Matrix4x4.invertM(result, src));
+        assertMatrixEquals(origin, result, 0);
+    }
+
+    @Test
+    public void 変換行列の作成がGLMatrixと一致する() throws Exception {
+        Random random = new Random(3);
+        for (int i = 0; i < 1000; ++i) {
+            Vector3 scale = new Vector3(random.nextFloat() * 4 + 0.1f, random.nextFloat() * 4 + 0.1f, random.nextFloat() * 4 + 0.1f);
+            Vector3 rotate = new Vector3(random.nextFloat() * 720 - 360, random.nextFloat() * 720 - 360, random.nextFloat() * 720 - 360);
+            Vector3 position = new Vector3(random.nextFloat() * 200 - 100, random.nextFloat() * 200 - 100, random.nextFloat() * 200 - 100);
+
+            float[] expected = createByGLMatrix(scale, rotate, position);
+            Matrix4x4 actual = Matrix4x4.create(scale, rotate, position, new Matrix4x4());
+            assertMatrixEquals(expected, actual.m, 1e-5f);
+        }
+
+        // 省略した場合は単位行列
+        assertMatrixEquals(new Matrix4x4().m, Matrix4x4.create(null, null, null, new Matrix4x4()).m, 0);
+    }
+
+    @Test
+    public void 回転がGLMatrixと一致する() throws Exception {
+        Random random = new Random(4);
+        for (int i = 0; i < 1000; ++i) {
+            float[] expected = randomMatrix(random);
+            float[] actual = expected.clone();
+            float angle = random.nextFloat() * 720 - 360;
+            float x = random.nextFloat() * 2 - 1;
+            float y = random.nextFloat() * 2 - 1;
+            float z = random.nextFloat() * 2 - 1;
+
+            Matrix.rotateM(expected, 0, angle, x, y, z);
+            Matrix4x4.rotateM(actual, angle, x, y, z);
+            assertMatrixEquals(expected, actual, 1e-5f);
+        }
+    }
+}
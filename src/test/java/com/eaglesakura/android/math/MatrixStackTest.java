@@ -0,0 +1,197 @@
+package com.eaglesakura.android.math;
+
+import com.eaglesakura.android.utils.CiJUnitTester;
+import com.eaglesakura.math.Vector3;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class MatrixStackTest extends CiJUnitTester {
+
+    private static void assertMatrixEquals(float[] expected, float[] actual, float delta) {
+        for (int i = 0; i < 16; ++i) {
+            float scale = Math.max(1.0f, Math.abs(expected[i]));
+            assertEquals("index=" + i, expected[i], actual[i], delta * scale);
+        }
+    }
+
+    private static Matrix4x4 randomTransform(Random random) {
+        Vector3 scale = new Vector3(random.nextFloat() * 4 + 0.1f, random.nextFloat() * 4 + 0.1f, random.nextFloat() * 4 + 0.1f);
+        Vector3 rotate = new Vector3(random.nextFloat() * 720 - 360, random.nextFloat() * 720 - 360, random.nextFloat() * 720 - 360);
+        Vector3 position = new Vector3(random.nextFloat() * 200 - 100, random.nextFloat() * 200 - 100, random.nextFloat() * 200 - 100);
+        return Matrix4x4.create(scale, rotate, position, new Matrix4x4());
+    }
+
+    private static float[] multiply(float[] lhs, float[] rhs) {
+        float[] result = new float[16];
+        Matrix4x4.multiplyMM(result, lhs, rhs);
+        return result;
+    }
+
+    @Test
+    public void popで直前の行列に戻る() throws Exception {
+        Random random = new Random(0);
+        MatrixStack stack = new MatrixStack(2);
+        Matrix4x4 root = randomTransform(random);
+        stack.load(root);
+
+        // 初期容量を超えて積む
+        float[][] expected = new float[8][];
+        expected[0] = root.m.clone();
+        for (int i = 1; i < expected.length; ++i) {
+            stack.push();
+            assertEquals(i, stack.getDepth());
+            assertMatrixEquals(expected[i - 1], stack.getMatrix().m, 0);
+
+            Matrix4x4 local = randomTransform(random);
+            stack.transform(local);
+            expected[i] = multiply(expected[i - 1], local.m);
+            assertMatrixEquals(expected[i], stack.getMatrix().m, 1e-5f);
+        }
+
+        for (int i = expected.length - 1; i > 0; --i) {
+            stack.pop();
+            assertEquals(i - 1, stack.getDepth());
+            assertMatrixEquals(expected[i - 1], stack.getMatrix().m, 1e-5f);
+        }
+
+        try {
+            stack.pop();
+            fail();
+        } catch (IllegalStateException e) {
+        }
+
+        stack.push();
+        stack.clear();
+        assertEquals(0, stack.getDepth());
+        assertMatrixEquals(new Matrix4x4().m, stack.getMatrix().m, 0);
+    }
+
+    @Test
+    public void ローカル変換は現在の行列の右から乗算される() throws Exception {
+        Random random = new Random(1);
+        for (int i = 0; i < 100; ++i) {
+            Matrix4x4 origin = randomTransform(random);
+            MatrixStack stack = new MatrixStack();
+
+            float x = random.nextFloat() * 20 - 10;
+            float y = random.nextFloat() * 20 - 10;
+            float z = random.nextFloat() * 20 - 10;
+
+            float[] translate = new Matrix4x4().m;
+            translate[12] = x;
+            translate[13] = y;
+            translate[14] = z;
+            stack.load(origin);
+            stack.translate(x, y, z);
+            assertMatrixEquals(multiply(origin.m, translate), stack.getMatrix().m, 1e-5f);
+
+            float[] scale = new Matrix4x4().m;
+            scale[0] = x;
+            scale[5] = y;
+            scale[10] = z;
+            stack.load(origin);
+            stack.scale(x, y, z);
+            assertMatrixEquals(multiply(origin.m, scale), stack.getMatrix().m, 1e-5f);
+
+            float angle = random.nextFloat() * 720 - 360;
+            float[] rotate = origin.m.clone();
+            Matrix4x4.rotateM(rotate, angle, x, y, z);
+            stack.load(origin);
+            stack.rotate(angle, x, y, z);
+            assertMatrixEquals(rotate, stack.getMatrix().m, 1e-5f);
+
+            stack.load(origin);
+            stack.rotate(new Quaternion().setAxisAngle(angle, x, y, z));
+            assertMatrixEquals(rotate, stack.getMatrix().m, 1e-4f);
+        }
+    }
+
+    @Test
+    public void 逆行列は変更されるまでキャッシュされる() throws Exception {
+        Random random = new Random(2);
+        MatrixStack stack = new MatrixStack();
+        stack.load(randomTransform(random));
+
+        Matrix4x4 inverse = stack.getInverse();
+        assertMatrixEquals(new Matrix4x4().m, multiply(stack.getMatrix().m, inverse.m), 1e-4f);
+        final long computed = stack.getComputeCount();
+        assertSame(inverse, stack.getInverse());
+        assertEquals(computed, stack.getComputeCount());
+
+        // 逆転置行列は逆行列を転置したものとなる
+        float[] inverseTranspose = stack.getInverseTranspose().m;
+        for (int col = 0; col < 4; ++col) {
+            for (int row = 0; row < 4; ++row) {
+                assertEquals(inverse.m[row * 4 + col], inverseTranspose[col * 4 + row], 0);
+            }
+        }
+        assertEquals(computed, stack.getComputeCount());
+
+        // push()はキャッシュを引き継ぐ
+        float[] parentInverse = inverse.m.clone();
+        stack.push();
+        assertMatrixEquals(parentInverse, stack.getInverse().m, 0);
+        assertEquals(computed, stack.getComputeCount());
+
+        // 変更後は再計算される
+        stack.translate(1, 2, 3);
+        assertMatrixEquals(new Matrix4x4().m, multiply(stack.getMatrix().m, stack.getInverse().m), 1e-4f);
+        assertEquals(computed + 1, stack.getComputeCount());
+
+        // pop()後は親のキャッシュがそのまま使われる
+        stack.pop();
+        assertMatrixEquals(parentInverse, stack.getInverse().m, 0);
+        assertEquals(computed + 1, stack.getComputeCount());
+    }
+
+    @Test
+    public void 逆行列が存在しない場合は単位行列となる() throws Exception {
+        MatrixStack stack = new MatrixStack();
+        stack.scale(0, 1, 1);
+        assertMatrixEquals(new Matrix4x4().m, stack.getInverse().m, 0);
+    }
+
+    @Test
+    public void MVP行列はViewとProjectionの変更で再計算される() throws Exception {
+        Random random = new Random(3);
+        Matrix4x4 projection = new Matrix4x4();
+        projection.projection(1, 100, 60, 1.5f);
+        Matrix4x4 view = randomTransform(random);
+        Matrix4x4 model = randomTransform(random);
+
+        MatrixStack stack = new MatrixStack();
+        stack.setProjection(projection);
+        stack.setView(view);
+        stack.load(model);
+
+        float[] expected = multiply(multiply(projection.m, view.m), model.m);
+        assertMatrixEquals(expected, stack.getModelViewProjection().m, 1e-4f);
+        final long computed = stack.getComputeCount();
+        assertMatrixEquals(expected, stack.getModelViewProjection().m, 1e-4f);
+        assertEquals(computed, stack.getComputeCount());
+
+        // 子の階層
+        Matrix4x4 local = randomTransform(random);
+        stack.push();
+        assertMatrixEquals(expected, stack.getModelViewProjection().m, 1e-4f);
+        assertEquals(computed, stack.getComputeCount());
+        stack.transform(local);
+        float[] expectedChild = multiply(expected, local.m);
+        assertMatrixEquals(expectedChild, stack.getModelViewProjection().m, 1e-3f);
+        stack.pop();
+        assertMatrixEquals(expected, stack.getModelViewProjection().m, 1e-4f);
+
+        // Viewの変更は全ての階層のキャッシュを無効にする
+        Matrix4x4 newView = randomTransform(random);
+        stack.setView(newView);
+        expected = multiply(multiply(projection.m, newView.m), model.m);
+        assertMatrixEquals(expected, stack.getModelViewProjection().m, 1e-4f);
+        assertMatrixEquals(multiply(projection.m, newView.m), stack.getViewProjection().m, 1e-4f);
+    }
+}
@@ -0,0 +1,181 @@
+package com.eaglesakura.android.math;
+
+import com.eaglesakura.android.utils.CiJUnitTester;
+import com.eaglesakura.math.Vector3;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QuaternionTest extends CiJUnitTester {
+
+    private static void assertMatrixEquals(float[] expected, float[] actual, float delta) {
+        for (int i = 0; i < 16; ++i) {
+            float scale = Math.max(1.0f, Math.abs(expected[i]));
+            assertEquals("index=" + i, expected[i], actual[i], delta * scale);
+        }
+    }
+
+    /**
+     * qと-qは同じ回転を表すため、符号を揃えて比較する
+     */
+    private static void assertRotationEquals(Quaternion expected, Quaternion actual, float delta) {
+        float sign = expected.dot(actual) < 0 ? -1 : 1;
+        assertEquals(expected.x, actual.x * sign, delta);
+        assertEquals(expected.y, actual.y * sign, delta);
+        assertEquals(expected.z, actual.z * sign, delta);
+        assertEquals(expected.w, actual.w * sign, delta);
+    }
+
+    private static Quaternion randomRotation(Random random) {
+        return new Quaternion().setAxisAngle(random.nextFloat() * 720 - 360,
+                random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1);
+    }
+
+    /**
+     * 2つの回転の間の角度（度）を取得する
+     */
+    private static double angleBetween(Quaternion a, Quaternion b) {
+        double dot = Math.min(1.0, Math.abs(a.dot(b)));
+        return Math.toDegrees(Math.acos(dot) * 2);
+    }
+
+    @Test
+    public void 回転軸と回転角からの行列がrotateMと一致する() throws Exception {
+        Random random = new Random(0);
+        for (int i = 0; i < 1000; ++i) {
+            float angle = random.nextFloat() * 720 - 360;
+            float x = random.nextFloat() * 2 - 1;
+            float y = random.nextFloat() * 2 - 1;
+            float z = random.nextFloat() * 2 - 1;
+
+            float[] expected = new Matrix4x4().m;
+            Matrix4x4.rotateM(expected, angle, x, y, z);
+
+            Matrix4x4 actual = new Quaternion().setAxisAngle(angle, x, y, z).toMatrix(new Matrix4x4());
+            assertMatrixEquals(expected, actual.m, 1e-5f);
+        }
+    }
+
+    @Test
+    public void オイラー角からの回転がMatrix4x4_createと一致する() throws Exception {
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; ++i) {
+            Vector3 rotate = new Vector3(random.nextFloat() * 720 - 360, random.nextFloat() * 720 - 360, random.nextFloat() * 720 - 360);
+            Matrix4x4 expected = Matrix4x4.create(null, rotate, null, new Matrix4x4());
+            Matrix4x4 actual = new Quaternion().setEuler(rotate).toMatrix(new Matrix4x4());
+            assertMatrixEquals(expected.m, actual.m, 1e-5f);
+
+            // 行列から復元したクォータニオンは同じ回転となる
+            Quaternion restored = new Quaternion().setMatrix(expected);
+            assertRotationEquals(new Quaternion().setEuler(rotate), restored, 1e-4f);
+        }
+    }
+
+    @Test
+    public void 乗算とベクトル変換が行列の演算と一致する() throws Exception {
+        Random random = new Random(2);
+        for (int i = 0; i < 1000; ++i) {
+            Quaternion a = randomRotation(random);
+            Quaternion b = randomRotation(random);
+
+            float[] expected = new float[16];
+            Matrix4x4.multiplyMM(expected, a.toMatrix(new Matrix4x4()).m, b.toMatrix(new Matrix4x4()).m);
+            Quaternion ab = a.multiply(b, new Quaternion());
+            assertMatrixEquals(expected, ab.toMatrix(new Matrix4x4()).m, 1e-5f);
+
+            Vector3 v = new Vector3(random.nextFloat() * 20 - 10, random.nextFloat() * 20 - 10, random.nextFloat() * 20 - 10);
+            Vector3 expectedVector = ab.toMatrix(new Matrix4x4()).transVector(v, new Vector3());
+            Vector3 actualVector = ab.transVector(v, new Vector3());
+            assertEquals(expectedVector.x, actualVector.x, 1e-4f);
+            assertEquals(expectedVector.y, actualVector.y, 1e-4f);
+            assertEquals(expectedVector.z, actualVector.z, 1e-4f);
+        }
+    }
+
+    @Test
+    public void slerpの端点は補間元と補間先に一致する() throws Exception {
+        Random random = new Random(3);
+        for (int i = 0; i < 1000; ++i) {
+            Quaternion from = randomRotation(random);
+            Quaternion to = randomRotation(random);
+
+            Quaternion result = Quaternion.slerp(from, to, 0, new Quaternion());
+            assertRotationEquals(from, result, 1e-5f);
+            result = Quaternion.slerp(from, to, 1, new Quaternion());
+            assertRotationEquals(to, result, 1e-5f);
+
+            result = Quaternion.nlerp(from, to, 0, new Quaternion());
+            assertRotationEquals(from, result, 1e-5f);
+            result = Quaternion.nlerp(from, to, 1, new Quaternion());
+            assertRotationEquals(to, result, 1e-5f);
+        }
+    }
+
+    @Test
+    public void slerpは最短経路を一定の角速度で補間する() throws Exception {
+        // 同じ回転を符号反転したクォータニオンでも最短経路をとる
+        Quaternion from = new Quaternion();
+        Quaternion to = new Quaternion().setAxisAngle(90, 0, 0, 1);
+        Quaternion negated = new Quaternion(-to.x, -to.y, -to.z, -to.w);
+        Quaternion half = new Quaternion().setAxisAngle(45, 0, 0, 1);
+        assertRotationEquals(half, Quaternion.slerp(from, to, 0.5f, new Quaternion()), 1e-5f);
+        assertRotationEquals(half, Quaternion.slerp(from, negated, 0.5f, new Quaternion()), 1e-5f);
+        assertRotationEquals(half, Quaternion.nlerp(from, negated, 0.5f, new Quaternion()), 1e-5f);
+
+        Random random = new Random(4);
+        for (int i = 0; i < 1000; ++i) {
+            from = randomRotation(random);
+            to = randomRotation(random);
+            double total = angleBetween(from, to);
+            assertTrue(total <= 180.0 + 1e-3);
+
+            float t = random.nextFloat();
+            Quaternion result = Quaternion.slerp(from, to, t, new Quaternion());
+            assertEquals(1.0f, result.length(), 1e-4f);
+            assertEquals(total * t, angleBetween(from, result), 0.2);
+            assertEquals(total * (1 - t), angleBetween(result, to), 0.2);
+        }
+    }
+
+    @Test
+    public void 配列のslerpはクォータニオン単位のslerpと一致する() throws Exception {
+        Random random = new Random(5);
+        final int count = 100;
+        float[] from = new float[count * 4 + 1];
+        float[] to = new float[count * 4 + 2];
+        float[] times = new float[count];
+        Quaternion[] fromQuaternions = new Quaternion[count];
+        Quaternion[] toQuaternions = new Quaternion[count];
+        for (int i = 0; i < count; ++i) {
+            fromQuaternions[i] = randomRotation(random);
+            toQuaternions[i] = randomRotation(random);
+            if (i % 10 == 0) {
+                // nlerpで補間される近い回転も含める
+                toQuaternions[i].set(fromQuaternions[i]);
+            }
+            times[i] = random.nextFloat();
+
+            Quaternion q = fromQuaternions[i];
+            System.arraycopy(new float[]{q.x, q.y, q.z, q.w}, 0, from, 1 + i * 4, 4);
+            q = toQuaternions[i];
+            System.arraycopy(new float[]{q.x, q.y, q.z, q.w}, 0, to, 2 + i * 4, 4);
+        }
+
+        float[] result = new float[count * 4];
+        Quaternion.slerp(from, 1, to, 2, 0.25f, result, 0, count);
+        for (int i = 0; i < count; ++i) {
+            Quaternion expected = Quaternion.slerp(fromQuaternions[i], toQuaternions[i], 0.25f, new Quaternion());
+            assertRotationEquals(expected, new Quaternion(result[i * 4], result[i * 4 + 1], result[i * 4 + 2], result[i * 4 + 3]), 1e-6f);
+        }
+
+        Quaternion.slerp(from, 1, to, 2, times, 0, result, 0, count);
+        for (int i = 0; i < count; ++i) {
+            Quaternion expected = Quaternion.slerp(fromQuaternions[i], toQuaternions[i], times[i], new Quaternion());
+            assertRotationEquals(expected, new Quaternion(result[i * 4], result[i * 4 + 1], result[i * 4 + 2], result[i * 4 + 3]), 1e-6f);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.eaglesakura.android.thread;
+
+import com.eaglesakura.android.utils.CiJUnitTester;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class AdaptiveFrameRateGovernorTest extends CiJUnitTester {
+
+    @Test
+    public void 変化がないフレームが続くとフレームレートが下がる() throws Exception {
+        AdaptiveFrameRateGovernor governor = new AdaptiveFrameRateGovernor();
+        governor.setIdleFrameThreshold(3);
+        governor.setIdleFrameRate(10);
+
+        long now = 0;
+        assertEquals(60.0, governor.onFrame(now += 16, 60, false), 0.0);
+        assertEquals(60.0, governor.onFrame(now += 16, 60, false), 0.0);
+        assertEquals(10.0, governor.onFrame(now += 16, 60, false), 0.0);
+        assertEquals(10.0, governor.getCurrentFrameRate(), 0.0);
+
+        // 変化があれば即座に戻る
+        assertEquals(60.0, governor.onFrame(now += 100, 60, true), 0.0);
+    }
+
+    @Test
+    public void 入力があると即座に最大フレームレートへ戻る() throws Exception {
+        AdaptiveFrameRateGovernor governor = new AdaptiveFrameRateGovernor();
+        governor.setIdleFrameThreshold(1);
+        governor.setInputBoostMs(500);
+
+        long now = 0;
+        assertEquals(10.0, governor.onFrame(now += 16, 60, false), 0.0);
+        assertEquals(60.0, governor.onInput(now += 50, 60), 0.0);
+
+        // 入力直後は変化がなくても維持される
+        assertEquals(60.0, governor.onFrame(now += 16, 60, false), 0.0);
+        assertEquals(10.0, governor.onFrame(now += 500, 60, false), 0.0);
+    }
+
+    @Test
+    public void スクリーンOFFとバッテリー残量でフレームレートが下がる() throws Exception {
+        AdaptiveFrameRateGovernor governor = new AdaptiveFrameRateGovernor();
+        governor.setScreenOffFrameRate(1);
+        governor.setLowBatteryFrameRate(30);
+        governor.setLowBatteryLevel(0.2f);
+
+        governor.setBatteryLevel(0.1f);
+        assertEquals(30.0, governor.onFrame(16, 60, true), 0.0);
+
+        governor.setScreenPowerOn(false);
+        assertEquals(1.0, governor.onFrame(32, 60, true), 0.0);
+
+        // スクリーンOFFの間は入力があっても上げない
+        assertEquals(1.0, governor.onInput(48, 60), 0.0);
+    }
+}
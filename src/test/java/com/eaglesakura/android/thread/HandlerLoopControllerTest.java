@@ -0,0 +1,152 @@
+package com.eaglesakura.android.thread;
+
+import com.eaglesakura.android.utils.CiJUnitTester;
+import com.eaglesakura.lambda.Action1;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.shadows.ShadowLooper;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class HandlerLoopControllerTest extends CiJUnitTester {
+
+    /**
+     * メインスレッドの時刻を基準に、任意の遅れを加えて計測するループ
+     */
+    static class TestLoopController extends HandlerLoopController {
+        final List<Double> deltaTimes = new ArrayList<>();
+
+        /**
+         * 処理の遅れとして加算する時間
+         */
+        long lagNano;
+
+        TestLoopController(ScheduleMode scheduleMode) {
+            super(new Handler(Looper.getMainLooper()), (Action1<Double>) null);
+            setScheduleMode(scheduleMode);
+            setFrameRate(10);
+        }
+
+        void lag(long ms) {
+            lagNano += ms * 1000 * 1000;
+        }
+
+        @Override
+        long nanoTime() {
+            return SystemClock.uptimeMillis() * 1000 * 1000 + lagNano;
+        }
+
+        @Override
+        protected void onUpdate() {
+            deltaTimes.add(getDeltaTime());
+        }
+    }
+
+    private static void assertDeltaTimes(List<Double> actual, double... expected) {
+        assertEquals(expected.length, actual.size());
+        for (int i = 0; i < expected.length; ++i) {
+            assertEquals("index=" + i, expected[i], actual.get(i), 0.000001);
+        }
+    }
+
+    @Before
+    public void pauseMainLooper() {
+        ShadowLooper.pauseMainLooper();
+    }
+
+    @Test
+    public void FixedStepは遅れた分を固定のデルタ時間で更新する() throws Exception {
+        TestLoopController loop = new TestLoopController(HandlerLoopController.ScheduleMode.FixedStep);
+        loop.connect();
+        ShadowLooper.runUiThreadTasks();
+        ShadowLooper.idleMainLooper(100);
+        assertDeltaTimes(loop.deltaTimes, 0.1, 0.1);
+
+        // 250ms遅れたフレームでは3回更新し、過ぎたデッドラインは飛ばす
+        loop.lag(250);
+        ShadowLooper.idleMainLooper(100);
+        assertDeltaTimes(loop.deltaTimes, 0.1, 0.1, 0.1, 0.1, 0.1);
+        assertEquals(2, loop.getStatistics().getMissedDeadlineCount());
+
+        // 次のデッドラインは遅れを含めた時刻から50ms後となる
+        ShadowLooper.idleMainLooper(49);
+        assertEquals(5, loop.deltaTimes.size());
+        ShadowLooper.idleMainLooper(1);
+        assertEquals(6, loop.deltaTimes.size());
+        assertEquals(4, loop.getStatistics().getFrameCount());
+        assertEquals(6, loop.getStatistics().getUpdateCount());
+        loop.disconnect();
+    }
+
+    @Test
+    public void FixedStepの追加更新は上限で切り捨てられる() throws Exception {
+        TestLoopController loop = new TestLoopController(HandlerLoopController.ScheduleMode.FixedStep);
+        loop.setMaxCatchUpSteps(2);
+        loop.connect();
+        ShadowLooper.runUiThreadTasks();
+
+        loop.lag(1000);
+        ShadowLooper.idleMainLooper(100);
+        assertEquals(3, loop.deltaTimes.size());
+        assertEquals(10, loop.getStatistics().getMissedDeadlineCount());
+
+        // 切り捨てた遅れは次のフレームへ持ち越さない
+        ShadowLooper.idleMainLooper(100);
+        assertDeltaTimes(loop.deltaTimes, 0.1, 0.1, 0.1, 0.1);
+        loop.disconnect();
+    }
+
+    @Test
+    public void VariableStepは実際の経過時間で1回更新する() throws Exception {
+        TestLoopController loop = new TestLoopController(HandlerLoopController.ScheduleMode.VariableStep);
+        loop.connect();
+        ShadowLooper.runUiThreadTasks();
+
+        // デッドラインは前回のデッドライン基準のため、遅れた次のフレームは早く実行される
+        loop.lag(30);
+        ShadowLooper.idleMainLooper(100);
+        ShadowLooper.idleMainLooper(70);
+        assertDeltaTimes(loop.deltaTimes, 0.1, 0.13, 0.07);
+        assertEquals(0, loop.getStatistics().getMissedDeadlineCount());
+        loop.disconnect();
+    }
+
+    @Test
+    public void ループ中のスケジューリング方式の変更は次のconnectから反映される() throws Exception {
+        TestLoopController loop = new TestLoopController(HandlerLoopController.ScheduleMode.VariableStep);
+        loop.connect();
+        ShadowLooper.runUiThreadTasks();
+
+        loop.setScheduleMode(HandlerLoopController.ScheduleMode.FixedStep);
+        loop.lag(250);
+        ShadowLooper.idleMainLooper(100);
+        assertDeltaTimes(loop.deltaTimes, 0.1, 0.35);
+
+        loop.disconnect();
+        loop.connect();
+        ShadowLooper.runUiThreadTasks();
+        loop.lag(250);
+        ShadowLooper.idleMainLooper(100);
+        assertDeltaTimes(loop.deltaTimes, 0.1, 0.35, 0.1, 0.1, 0.1, 0.1);
+        loop.disconnect();
+    }
+
+    @Test
+    public void disconnect後は更新されない() throws Exception {
+        TestLoopController loop = new TestLoopController(HandlerLoopController.ScheduleMode.FixedStep);
+        loop.connect();
+        ShadowLooper.runUiThreadTasks();
+        loop.disconnect();
+
+        ShadowLooper.idleMainLooper(1000);
+        assertEquals(1, loop.deltaTimes.size());
+    }
+}
@@ -0,0 +1,256 @@
+package com.eaglesakura.android.thread;
+
+import com.eaglesakura.android.utils.CiJUnitTester;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HandlerTaskScopeTest extends CiJUnitTester {
+
+    ExecutorService mExecutor;
+
+    /**
+     * テスト終了時に開放し、待機中の処理を終了させる
+     */
+    CountDownLatch mBlock;
+
+    @Before
+    public void initExecutor() {
+        mExecutor = Executors.newFixedThreadPool(4);
+        mBlock = new CountDownLatch(1);
+    }
+
+    @After
+    public void shutdownExecutor() throws Exception {
+        mBlock.countDown();
+        mExecutor.shutdown();
+        assertTrue(mExecutor.awaitTermination(1, TimeUnit.SECONDS));
+    }
+
+    /**
+     * テスト終了まで完了しない処理
+     */
+    String block() throws InterruptedException {
+        mBlock.await();
+        return "blocked";
+    }
+
+    @Test
+    public void Allは全ての結果をfork順に返す() throws Exception {
+        HandlerTaskScope<String> scope = new HandlerTaskScope<>(HandlerTaskScope.JoinPolicy.All, mExecutor);
+        final CountDownLatch first = new CountDownLatch(1);
+        final CountDownLatch second = new CountDownLatch(1);
+
+        // 完了順はfork順の逆になる
+        scope.fork(() -> {
+            first.await();
+            return "a";
+        });
+        scope.fork(() -> {
+            second.await();
+            first.countDown();
+            return "b";
+        });
+        scope.fork(() -> {
+            second.countDown();
+            return "c";
+        });
+        assertEquals(3, scope.getForkCount());
+
+        List<String> result = scope.join();
+        assertEquals(3, result.size());
+        assertEquals("a", result.get(0));
+        assertEquals("b", result.get(1));
+        assertEquals("c", result.get(2));
+
+        try {
+            scope.fork(() -> "d");
+            fail();
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    @Test
+    public void Allは全ての完了後に最初の例外を投げる() throws Exception {
+        HandlerTaskScope<String> scope = new HandlerTaskScope<>(HandlerTaskScope.JoinPolicy.All, mExecutor);
+        final CountDownLatch failed = new CountDownLatch(1);
+        final IOException error = new IOException("failed");
+
+        scope.fork(() -> {
+            failed.countDown();
+            throw error;
+        });
+        HandlerFuture<String> slow = scope.fork(() -> {
+            failed.await();
+            Thread.sleep(50);
+            return "slow";
+        });
+
+        try {
+            scope.<IOException>join();
+            fail();
+        } catch (IOException e) {
+            assertSame(error, e);
+        }
+
+        // 失敗後も残りの処理は最後まで実行される
+        assertTrue(slow.isDone());
+        assertFalse(slow.isCancelled());
+        assertEquals("slow", slow.getResult());
+    }
+
+    @Test
+    public void FirstFailureは失敗した時点で残りの処理をキャンセルする() throws Exception {
+        HandlerTaskScope<String> scope = new HandlerTaskScope<>(HandlerTaskScope.JoinPolicy.FirstFailure, mExecutor);
+        HandlerFuture<String> blocked = scope.fork(this::block);
+        scope.fork(() -> {
+            throw new IOException("failed");
+        });
+
+        try {
+            scope.<IOException>join();
+            fail();
+        } catch (IOException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        assertTrue(blocked.isCancelled());
+    }
+
+    @Test
+    public void FirstFailureはErrorもそのまま投げる() throws Exception {
+        HandlerTaskScope<String> scope = new HandlerTaskScope<>(HandlerTaskScope.JoinPolicy.FirstFailure, mExecutor);
+        scope.fork(this::block);
+        scope.fork(() -> {
+            throw new AssertionError("error");
+        });
+
+        try {
+            scope.<IOException>join();
+            fail();
+        } catch (AssertionError e) {
+            assertEquals("error", e.getMessage());
+        }
+    }
+
+    @Test
+    public void Anyは最初に成功した結果のみを返す() throws Exception {
+        HandlerTaskScope<String> scope = new HandlerTaskScope<>(HandlerTaskScope.JoinPolicy.Any, mExecutor);
+        HandlerFuture<String> blocked = scope.fork(this::block);
+        scope.fork(() -> {
+            throw new IOException("failed");
+        });
+        scope.fork(() -> "success");
+
+        List<String> result = scope.<IOException>join();
+        assertEquals(1, result.size());
+        assertEquals("success", result.get(0));
+        assertTrue(blocked.isCancelled());
+    }
+
+    @Test
+    public void Anyは全て失敗した場合に最初の例外を投げる() throws Exception {
+        // 完了順を固定するため、1スレッドで順に実行する
+        ExecutorService serial = Executors.newFixedThreadPool(1);
+        try {
+            HandlerTaskScope<String> scope = new HandlerTaskScope<>(HandlerTaskScope.JoinPolicy.Any, serial);
+            scope.fork(() -> {
+                throw new IOException("first");
+            });
+            scope.fork(() -> {
+                throw new IOException("second");
+            });
+
+            try {
+                scope.<IOException>join();
+                fail();
+            } catch (IOException e) {
+                assertEquals("first", e.getMessage());
+            }
+        } finally {
+            serial.shutdown();
+        }
+    }
+
+    @Test
+    public void タイムアウトした場合はCancellationExceptionを投げる() throws Exception {
+        HandlerTaskScope<String> scope = new HandlerTaskScope<>(HandlerTaskScope.JoinPolicy.All, mExecutor);
+        scope.setTimeoutMs(50);
+        HandlerFuture<String> blocked = scope.fork(this::block);
+
+        try {
+            scope.join();
+            fail();
+        } catch (CancellationException e) {
+            assertTrue(e.getMessage().startsWith("timeout"));
+        }
+        assertTrue(blocked.isCancelled());
+    }
+
+    @Test
+    public void CancelCallbackでjoinを中断できる() throws Exception {
+        HandlerTaskScope<String> scope = new HandlerTaskScope<>(HandlerTaskScope.JoinPolicy.All, mExecutor);
+        final long canceledTime = System.currentTimeMillis() + 50;
+        scope.setCancelCallback(() -> System.currentTimeMillis() >= canceledTime);
+        HandlerFuture<String> blocked = scope.fork(this::block);
+
+        try {
+            scope.join();
+            fail();
+        } catch (CancellationException e) {
+            assertEquals("canceled", e.getMessage());
+        }
+        assertTrue(blocked.isCancelled());
+    }
+
+    @Test
+    public void cancelで他のスレッドのjoinを中断できる() throws Exception {
+        final HandlerTaskScope<String> scope = new HandlerTaskScope<>(HandlerTaskScope.JoinPolicy.All, mExecutor);
+        HandlerFuture<String> blocked = scope.fork(this::block);
+
+        new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+            }
+            scope.cancel();
+        }).start();
+
+        try {
+            scope.join();
+            fail();
+        } catch (CancellationException e) {
+            assertEquals("canceled", e.getMessage());
+        }
+        assertTrue(blocked.isCancelled());
+    }
+
+    @Test
+    public void cancel後にforkした処理はキャンセルされる() throws Exception {
+        HandlerTaskScope<String> scope = new HandlerTaskScope<>(HandlerTaskScope.JoinPolicy.All, mExecutor);
+        scope.cancel();
+        HandlerFuture<String> forked = scope.fork(() -> "ignored");
+        assertTrue(forked.isCancelled());
+
+        try {
+            scope.join();
+            fail();
+        } catch (CancellationException e) {
+            assertEquals("canceled", e.getMessage());
+        }
+    }
+}